@@ -116,6 +116,7 @@ public class BenchmarkMain {
 		plotLineGraph(tests.testMultiThreadedConstantDelay(0), 0, false);
 		plotBarGraph("Single Thread", "bonecp-singlethread-poolsize-"+BenchmarkTests.pool_size+"-threads-"+BenchmarkTests.threads+".png", tests.testSingleThread());
 		plotBarGraph("Prepared Statement\nSingle Threaded", "bonecp-preparedstatement-single-poolsize-"+BenchmarkTests.pool_size+"-threads-"+BenchmarkTests.threads+".png", tests.testPreparedStatementSingleThread());
+		tests.testAllocationPerCheckout();
 
 		
 		System.out.println("Starting benchmark tests with "
@@ -17,6 +17,7 @@
 package com.jolbox.benchmark;
 
 import java.beans.PropertyVetoException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -222,6 +223,21 @@ return dsb;
 	 * @throws SQLException 
 	 */
 	private BoneCPDataSource multiThreadedBoneCP(boolean doPreparedStatement, int partitions) throws PropertyVetoException, InterruptedException, SQLException {
+		return multiThreadedBoneCP(doPreparedStatement, partitions, "DEFAULT");
+	}
+
+	/**
+	 * 
+	 *
+	 * @param doPreparedStatement 
+	 * @param partitions 
+	 * @param freeConnectionQueueType DEFAULT or LOCKFREE
+	 * @return time taken
+	 * @throws PropertyVetoException 
+	 * @throws InterruptedException 
+	 * @throws SQLException 
+	 */
+	private BoneCPDataSource multiThreadedBoneCP(boolean doPreparedStatement, int partitions, String freeConnectionQueueType) throws PropertyVetoException, InterruptedException, SQLException {
 
 		BoneCPDataSource dsb = new BoneCPDataSource();
 		dsb.setDriverClass("com.jolbox.bonecp.MockJDBCDriver");
@@ -239,6 +255,7 @@ return dsb;
 		dsb.setMaxConnectionsPerPartition(pool_size / partitions);
 		dsb.setPartitionCount(partitions);
 		dsb.setAcquireIncrement(5);
+		dsb.setFreeConnectionQueueType(freeConnectionQueueType);
 		return dsb;
 
 	}
@@ -251,6 +268,17 @@ return dsb;
 	 * @throws SQLException
 	 */
 	private long singleBoneCP() throws SQLException{
+		return singleBoneCP("DEFAULT");
+	}
+
+	/**
+	 * 
+	 *
+	 * @param freeConnectionQueueType DEFAULT or LOCKFREE
+	 * @return time taken
+	 * @throws SQLException
+	 */
+	private long singleBoneCP(String freeConnectionQueueType) throws SQLException{
 		// Start BoneCP
 		BoneCPConfig config = new BoneCPConfig();
 		config.setJdbcUrl(url);
@@ -262,6 +290,7 @@ return dsb;
 		config.setPartitionCount(1);
 		config.setAcquireIncrement(5);
 		config.setDisableConnectionTracking(true);
+		config.setFreeConnectionQueueType(freeConnectionQueueType);
 		BoneCP dsb = new BoneCP(config);
 
 		long start = System.currentTimeMillis();
@@ -448,6 +477,9 @@ return dsb;
 				case BONECP_1_PARTITIONS: 		
 					cycleResults[i]=singleBoneCP();
 					break;
+				case BONECP_1_PARTITIONS_LOCKFREE: 		
+					cycleResults[i]=singleBoneCP("LOCKFREE");
+					break;
 				case TOMCAT_JDBC:
 					cycleResults[i]=singleTomcatJDBC();
 				case DBPOOL:
@@ -469,6 +501,54 @@ return dsb;
 		return results;
 	}
 
+	/**
+	 * Measures the bytes allocated by a single getConnection()/close() cycle in BoneCP, with the 
+	 * connection handle being recreated on close (the default) and being reused.
+	 *
+	 * @return bytes per checkout, indexed 0 = recreate, 1 = reuse. -1 if the JVM can't tell us.
+	 * @throws SQLException
+	 */
+	public long[] testAllocationPerCheckout() throws SQLException{
+		System.out.println("Bytes allocated per get/release connection");
+		long[] results = new long[2];
+		java.lang.management.ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+		if (!(mxBean instanceof com.sun.management.ThreadMXBean) 
+				|| !((com.sun.management.ThreadMXBean) mxBean).isThreadAllocatedMemorySupported()){
+			results[0] = results[1] = -1;
+			return results;
+		}
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) mxBean;
+		long threadId = Thread.currentThread().getId();
+
+		for (int mode=0; mode < 2; mode++){
+			BoneCPConfig config = new BoneCPConfig();
+			config.setJdbcUrl(url);
+			config.setUsername(username);
+			config.setPassword(password);
+			config.setStatementsCacheSize(0);
+			config.setMinConnectionsPerPartition(pool_size);
+			config.setMaxConnectionsPerPartition(pool_size);
+			config.setPartitionCount(1);
+			config.setAcquireIncrement(5);
+			config.setDisableConnectionTracking(true);
+			config.setReuseConnectionHandle(mode == 1);
+			BoneCP dsb = new BoneCP(config);
+
+			for (int i=0; i < MAX_CONNECTIONS; i++){ // warm up
+				dsb.getConnection().close();
+			}
+			long start = threadBean.getThreadAllocatedBytes(threadId);
+			for (int i=0; i < MAX_CONNECTIONS; i++){
+				dsb.getConnection().close();
+			}
+			results[mode] = (threadBean.getThreadAllocatedBytes(threadId) - start) / MAX_CONNECTIONS;
+			System.out.println("|- " + (mode == 0 ? "recreate handle: " : "reuse handle: ") + results[mode] + " bytes");
+
+			dsb.shutdown();
+		}
+		return results;
+	}
+
 	/**
 	 * 
 	 *
@@ -613,6 +693,9 @@ return dsb;
 		case BONECP_1_PARTITIONS: 			
 			ds=multiThreadedBoneCP(doPreparedStatement, 1);
 			break;
+		case BONECP_1_PARTITIONS_LOCKFREE: 			
+			ds=multiThreadedBoneCP(doPreparedStatement, 1, "LOCKFREE");
+			break;
 		case BONECP_2_PARTITIONS: 			
 			ds=multiThreadedBoneCP(doPreparedStatement,2);
 			break;
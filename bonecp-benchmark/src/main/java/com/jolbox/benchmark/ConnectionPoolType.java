@@ -36,6 +36,8 @@ public enum ConnectionPoolType {
 	TOMCAT_JDBC(false),
 	/** pool type. */
 	BONECP_1_PARTITIONS(true, false),
+	/** pool type (single partition, lock-free free connection queue). */
+	BONECP_1_PARTITIONS_LOCKFREE(true, false),
 	/** pool type. */
 	BONECP_2_PARTITIONS(false, true),
 	/** pool type. */
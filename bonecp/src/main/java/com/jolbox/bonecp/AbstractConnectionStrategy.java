@@ -42,7 +42,7 @@ public abstract class AbstractConnectionStrategy implements ConnectionStrategy,S
 	
 	
 	/** Prep for a new connection
-	 * @return if stats are enabled, return the nanoTime when this connection was requested.
+	 * @return if stats or autoscaling are enabled, return the nanoTime when this connection was requested.
 	 * @throws SQLException
 	 */
 	protected long preConnection() throws SQLException{
@@ -56,6 +56,8 @@ public abstract class AbstractConnectionStrategy implements ConnectionStrategy,S
 		if (this.pool.statisticsEnabled){
 			statsObtainTime = System.nanoTime();
 			this.pool.statistics.incrementConnectionsRequested();
+		} else if (this.pool.autoScaling){
+			statsObtainTime = System.nanoTime();
 		}
 		
 		return statsObtainTime;
@@ -79,8 +81,22 @@ public abstract class AbstractConnectionStrategy implements ConnectionStrategy,S
 			this.pool.watchConnection(handle);
 		}
 
-		if (this.pool.statisticsEnabled){
-			this.pool.statistics.addCumulativeConnectionWaitTime(System.nanoTime()-statsObtainTime);
+		if (this.pool.leakDetector != null){
+			this.pool.leakDetector.checkout(handle);
+		}
+
+		if (this.pool.statisticsEnabled || this.pool.autoScaling){
+			long now = System.nanoTime();
+			handle.connectionCheckoutTimeInNanos = now;
+			if (this.pool.statisticsEnabled){
+				this.pool.statistics.addCumulativeConnectionWaitTime(now-statsObtainTime);
+				if (this.pool.connectionTags != null){
+					handle.connectionTag = this.pool.connectionTags.recordCheckout(BoneCP.getConnectionTag(), now-statsObtainTime);
+				}
+			}
+			if (this.pool.autoScaling){
+				handle.getOriginatingPartition().recordCheckout(now - statsObtainTime);
+			}
 		}
 	}
 
@@ -95,6 +111,29 @@ public abstract class AbstractConnectionStrategy implements ConnectionStrategy,S
 		return result;
 	}
 
+	public Connection getConnection(String sqlHint) throws SQLException {
+		long statsObtainTime = preConnection();
+
+		ConnectionHandle result = sqlHint == null ? null : pollConnection(sqlHint);
+		if (result == null){
+			result = (ConnectionHandle) getConnectionInternal();
+		}
+		if (result != null){
+			postConnection(result, statsObtainTime);
+		}
+
+		return result;
+	}
+
+	/** Takes a free connection that has the given statement in its statement cache, without blocking.
+	 * @param sqlHint statement about to be prepared
+	 * @return a connection, or null if none was found (or the strategy doesn't look)
+	 */
+	protected ConnectionHandle pollConnection(String sqlHint){
+		// usually overridden
+		return null;
+	}
+
 	/** Actual call that returns a connection
 	 * @return Connection
 	 * @throws SQLException
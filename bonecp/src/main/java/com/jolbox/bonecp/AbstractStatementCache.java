@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+
+/**
+ * Cache key calculation and convenience lookups shared by the statement cache implementations.
+ *
+ * @author wallacew
+ */
+public abstract class AbstractStatementCache implements IStatementCache {
+
+	/** Returns the cache key of a statement prepared with the given parameters.
+	 * @param sql
+	 * @param resultSetConcurrency
+	 * @param resultSetHoldability
+	 * @param resultSetType
+	 * @return cache key to use
+	 */
+	public StatementCacheKey calculateCacheKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability){
+		return new StatementCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	/** Cache key calculation.
+	 * @param sql string
+	 * @param resultSetType
+	 * @param resultSetConcurrency
+	 * @return cache key
+	 */
+	public StatementCacheKey calculateCacheKey(String sql, int resultSetType, int resultSetConcurrency){
+		return new StatementCacheKey(sql, resultSetType, resultSetConcurrency);
+	}
+
+	/** Alternate version of autoGeneratedKeys.
+	 * @param sql
+	 * @param autoGeneratedKeys
+	 * @return cache key to use.
+	 */
+	public StatementCacheKey calculateCacheKey(String sql, int autoGeneratedKeys) {
+		return new StatementCacheKey(sql, autoGeneratedKeys);
+	}
+
+	/** Calculate a cache key.
+	 * @param sql to use
+	 * @param columnIndexes to use
+	 * @return cache key to use.
+	 */
+	public StatementCacheKey calculateCacheKey(String sql, int[] columnIndexes) {
+		return new StatementCacheKey(sql, columnIndexes);
+	}
+
+	/** Calculate a cache key.
+	 * @param sql to use
+	 * @param columnNames to use
+	 * @return cache key to use.
+	 */
+	public StatementCacheKey calculateCacheKey(String sql, String[] columnNames) {
+		return new StatementCacheKey(sql, columnNames);
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+		return get(calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+	}
+
+
+	// @Override
+	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency) {
+		return get(calculateCacheKey(sql, resultSetType, resultSetConcurrency));
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int autoGeneratedKeys) {
+		return get(calculateCacheKey(sql, autoGeneratedKeys));
+	}
+
+
+	// @Override
+	public StatementHandle get(String sql, int[] columnIndexes) {
+		return get(calculateCacheKey(sql, columnIndexes));
+	}
+
+
+	// @Override
+	public StatementHandle get(String sql, String[] columnNames) {
+		return get(calculateCacheKey(sql, columnNames));
+	}
+
+}
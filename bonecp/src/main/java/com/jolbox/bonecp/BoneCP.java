@@ -17,6 +17,7 @@
 package com.jolbox.bonecp;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
 import java.lang.ref.Reference;
@@ -26,13 +27,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -81,6 +87,8 @@ public class BoneCP implements Serializable, Closeable {
 	private static final String[] METADATATABLE = new String[] {"TABLE"};
 	/** Constant for keep-alive test */
 	private static final String KEEPALIVEMETADATA = "BONECPKEEPALIVE";
+	/** Max statements per connection waiting for the statement release helper threads. */
+	private static final int STATEMENT_RELEASE_QUEUE_SIZE_PER_CONNECTION = 10;
 	/** Create more connections when we hit x% of our possible number of connections. */
 	protected final int poolAvailabilityThreshold;
 	/** Number of partitions passed in constructor. **/
@@ -129,6 +137,14 @@ public class BoneCP implements Serializable, Closeable {
 	protected boolean statisticsEnabled;
 	/** statistics handle. */
 	protected Statistics statistics = new Statistics(this);
+	/** Pool-wide limit on cached statements (which also counts them). */
+	protected StatementCacheBudget statementCacheBudget;
+	/** Statements to prepare on new connections, null if statementsCacheWarmUpSize is not set. */
+	protected HotStatementSet hotStatements;
+	/** Config setting. */
+	protected int statementsCacheAffinitySearchLimit;
+	/** Outcome of IN-list bucketing by statement, null if inListBucketingEnabled is not set. */
+	protected ConcurrentMap<String, InListBucketing> inListBucketingMemo;
 	/** Config setting. */
 	@VisibleForTesting protected boolean nullOnConnectionTimeout;
 	/** Config setting. */
@@ -138,6 +154,52 @@ public class BoneCP implements Serializable, Closeable {
 	protected boolean cachedPoolStrategy;
 	/** Currently active get connection strategy class to use. */
 	protected ConnectionStrategy connectionStrategy;
+	/** Threads waiting for a connection in any partition, or null if crossPartitionHandoff is off. */
+	protected ConnectionWaiters connectionWaiters;
+	/** Connections closed by the application that the release helper threads have yet to place back in the pool. 
+	 * Null if connections are released on the caller's thread. */
+	protected BlockingQueue<ConnectionHandle> connectionsPendingRelease;
+	/** Statements closed by the application that the statement release helper threads have yet to close off. 
+	 * Null if statements are closed on the caller's thread. */
+	protected BlockingQueue<Statement> statementsPendingRelease;
+	/** Executor for the release helper threads. */
+	private ExecutorService releaseHelper;
+	/** Executor for the statement release helper threads. */
+	private ExecutorService statementReleaseHelper;
+	/** Statements waiting to be logged by the statement log writer, null if statements are logged on the caller's thread. */
+	protected StatementLogQueue statementLog;
+	/** Executor for the statement log writer. */
+	private ExecutorService statementLogWriter;
+	/** Per-statement execution profile, null if statement profiling is off. */
+	protected StatementProfiler statementProfiler;
+	/** Checkout statistics per connection tag, null if statistics are off. */
+	protected ConnectionTagStatistics connectionTags;
+	/** Reports connections held for too long, null if leak detection is off. */
+	protected LeakDetector leakDetector;
+	/** Tag given to the connections checked out by the current thread, see setConnectionTag. */
+	private static final ThreadLocal<String> CONNECTION_TAG = new ThreadLocal<String>();
+	/** If true, partitions are sized by a PoolAutoScaler and checkouts/releases are timed for it. */
+	protected boolean autoScaling;
+	/** Runs the PoolAutoScaler of each partition, null if autoscaling is off. */
+	private ScheduledExecutorService autoScaleScheduler;
+	/** Opens new connections in parallel, null if acquireParallelism is not set. */
+	protected ExecutorService connectionCreator;
+	/** If true, idle connections are tested while left in the free queue and borrowers skip the ones under test. */
+	protected boolean idleConnectionTestInPlace;
+	/** Tests idle connections in place, null if they are tested one at a time on the housekeeping thread. */
+	protected ExecutorService idleConnectionTester;
+	/** Config setting. */
+	protected boolean lightweightConnectionTest;
+	/** Config setting. */
+	protected long connectionTestBypassWindowInMs;
+	/** Config setting, rounded up to seconds as the driver wants it. */
+	private int connectionTestTimeoutInSeconds;
+	/** Set once the driver turns out not to implement Connection.isValid(). */
+	private volatile boolean isValidUnsupported;
+	/** Our lane on the process-wide scheduler if sharedScheduler is set, in which case we have no scheduler threads of our own. */
+	protected SharedPoolScheduler.Lane sharedLane;
+	/** How often a connection is checked on with closeConnectionWatch when running on the shared scheduler. */
+	private static final long CLOSE_CONNECTION_WATCH_POLL_INTERVAL_IN_MS = 1000;
 	/** If true, there are no connections to be taken. */
 	private AtomicBoolean dbIsDown = new AtomicBoolean();
 	/** Config setting. */
@@ -158,26 +220,79 @@ public class BoneCP implements Serializable, Closeable {
 			logger.info("Shutting down connection pool...");
 			this.poolShuttingDown = true;
 			this.shutdownStackTrace = captureStackTrace(SHUTDOWN_LOCATION_TRACE);
-			this.keepAliveScheduler.shutdownNow(); // stop threads from firing.
-			this.maxAliveScheduler.shutdownNow(); // stop threads from firing.
-			this.connectionsScheduler.shutdownNow(); // stop threads from firing.
+			if (this.hotStatements != null && this.config.getStatementsCacheWarmUpFile() != null){
+				try {
+					this.hotStatements.save(this.config.getStatementsCacheWarmUpFile());
+				} catch (IOException e) {
+					logger.error("Could not save the statements to warm up the statement caches with to "+this.config.getStatementsCacheWarmUpFile(), e);
+				}
+			}
+			if (this.sharedLane != null){
+				this.sharedLane.shutdown(); // stop tasks from firing.
+			} else {
+				this.keepAliveScheduler.shutdownNow(); // stop threads from firing.
+				this.maxAliveScheduler.shutdownNow(); // stop threads from firing.
+				this.connectionsScheduler.shutdownNow(); // stop threads from firing.
+			}
+			if (this.autoScaleScheduler != null){
+				this.autoScaleScheduler.shutdownNow(); // stop threads from firing.
+			}
 			this.asyncExecutor.shutdownNow();
+			if (this.connectionCreator != null){
+				this.connectionCreator.shutdownNow();
+			}
+			if (this.idleConnectionTester != null){
+				this.idleConnectionTester.shutdownNow();
+			}
+			if (this.releaseHelper != null){
+				this.releaseHelper.shutdownNow();
+			}
+			if (this.statementReleaseHelper != null){
+				this.statementReleaseHelper.shutdownNow();
+			}
+			if (this.statementLogWriter != null){
+				this.statementLog.close();
+				this.statementLogWriter.shutdownNow(); // logs whatever is still queued, then stops.
+			}
 
 			try {
-				this.connectionsScheduler.awaitTermination(5, TimeUnit.SECONDS);
+				if (this.sharedLane != null){
+					this.sharedLane.awaitTermination(5, TimeUnit.SECONDS);
+				} else {
+					this.connectionsScheduler.awaitTermination(5, TimeUnit.SECONDS);
 
-				this.maxAliveScheduler.awaitTermination(5, TimeUnit.SECONDS);
-				this.keepAliveScheduler.awaitTermination(5, TimeUnit.SECONDS);
+					this.maxAliveScheduler.awaitTermination(5, TimeUnit.SECONDS);
+					this.keepAliveScheduler.awaitTermination(5, TimeUnit.SECONDS);
+				}
 				this.asyncExecutor.awaitTermination(5, TimeUnit.SECONDS);
 				
 				if (this.closeConnectionExecutor != null){
 					this.closeConnectionExecutor.shutdownNow();
 					this.closeConnectionExecutor.awaitTermination(5, TimeUnit.SECONDS);
 				}
+				if (this.releaseHelper != null){
+					this.releaseHelper.awaitTermination(5, TimeUnit.SECONDS);
+				}
+				if (this.autoScaleScheduler != null){
+					this.autoScaleScheduler.awaitTermination(5, TimeUnit.SECONDS);
+				}
+				if (this.connectionCreator != null){
+					this.connectionCreator.awaitTermination(5, TimeUnit.SECONDS);
+				}
+				if (this.idleConnectionTester != null){
+					this.idleConnectionTester.awaitTermination(5, TimeUnit.SECONDS);
+				}
+				if (this.statementReleaseHelper != null){
+					this.statementReleaseHelper.awaitTermination(5, TimeUnit.SECONDS);
+				}
+				if (this.statementLogWriter != null){
+					this.statementLogWriter.awaitTermination(5, TimeUnit.SECONDS);
+				}
 				
 			} catch (InterruptedException e) {
 				// do nothing
 			}
+			drainPendingReleases();
 			this.connectionStrategy.terminateAllConnections();
 			unregisterDriver();
 			registerUnregisterJMX(false);
@@ -188,6 +303,26 @@ public class BoneCP implements Serializable, Closeable {
 		}
 	}
 
+	/** Closes off whatever the release helper threads did not get round to before shutting down. */
+	private void drainPendingReleases() {
+		ConnectionHandle connection;
+		while (this.connectionsPendingRelease != null && (connection = this.connectionsPendingRelease.poll()) != null){
+			try {
+				connection.internalClose();
+			} catch (SQLException e) {
+				logger.error("Error in attempting to close connection", e);
+			}
+		}
+		Statement statement;
+		while (this.statementsPendingRelease != null && (statement = this.statementsPendingRelease.poll()) != null){
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				// do nothing
+			}
+		}
+	}
+
 	/** Drops a driver from the DriverManager's list. */
 	protected void unregisterDriver(){
 		String jdbcURL = this.config.getJdbcUrl();
@@ -212,14 +347,14 @@ public class BoneCP implements Serializable, Closeable {
 	 * @param conn
 	 */
 	protected void destroyConnection(ConnectionHandle conn) {
-		if (conn.isClosed()) {
+		if (conn.isLogicallyClosed()) {
 			conn.setInReplayMode(true); // we're dead, stop attempting to replay anything
 			return;
 		}
 		try {
 			conn.lockForClose();
 			conn.setInReplayMode(true); // we're dead, stop attempting to replay anything
-			if (conn.isClosed()) {
+			if (conn.isLogicallyClosed()) {
 				return;
 			}
 			try {
@@ -233,6 +368,42 @@ public class BoneCP implements Serializable, Closeable {
 		}
 	}
  
+	/** Opens the given number of new connections and adds them to the partition, at most acquireParallelism
+	 * at a time across the whole pool. Returns once all of them have been dealt with.
+	 * @param partition partition to add the connections to
+	 * @param count number of connections to open
+	 * @throws SQLException the first failure seen (connections that could be opened are still added)
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	protected void addFreeConnectionsInParallel(final ConnectionPartition partition, int count) throws SQLException, InterruptedException {
+		List<Future<Void>> tasks = new ArrayList<Future<Void>>(count);
+		for (int i=0; i < count; i++){
+			tasks.add(this.connectionCreator.submit(new Callable<Void>() {
+				public Void call() throws SQLException {
+					if (!BoneCP.this.poolShuttingDown){
+						partition.addFreeConnection(new ConnectionHandle(null, partition, BoneCP.this, false));
+					}
+					return null;
+				}
+			}));
+		}
+
+		SQLException failure = null;
+		for (Future<Void> task: tasks){
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (failure == null){
+					failure = e.getCause() instanceof SQLException ? (SQLException) e.getCause() 
+							: PoolUtil.generateSQLException("Unable to open a new connection", e.getCause());
+				}
+			}
+		}
+		if (failure != null){
+			throw failure;
+		}
+	}
+
 	/** Update counters and call hooks.
 	 * @param handle connection handle.
 	 */
@@ -449,9 +620,13 @@ public class BoneCP implements Serializable, Closeable {
 		}
 
 
-		this.keepAliveScheduler =  Executors.newScheduledThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-keep-alive-scheduler"+suffix, true));
-		this.maxAliveScheduler =  Executors.newScheduledThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-max-alive-scheduler"+suffix, true));
-		this.connectionsScheduler =  Executors.newFixedThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-pool-watch-thread"+suffix, true));
+		if (this.config.isSharedScheduler()){
+			this.sharedLane = SharedPoolScheduler.newLane(this.config.getPoolName() == null ? "BoneCP" : this.config.getPoolName());
+		} else {
+			this.keepAliveScheduler =  Executors.newScheduledThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-keep-alive-scheduler"+suffix, true));
+			this.maxAliveScheduler =  Executors.newScheduledThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-max-alive-scheduler"+suffix, true));
+			this.connectionsScheduler =  Executors.newFixedThreadPool(this.config.getPartitionCount(), new CustomThreadFactory("BoneCP-pool-watch-thread"+suffix, true));
+		}
 
 		this.partitionCount = this.config.getPartitionCount();
 		this.closeConnectionWatch = this.config.isCloseConnectionWatch();
@@ -461,25 +636,108 @@ public class BoneCP implements Serializable, Closeable {
 		} else {
 			this.connectionStrategy = new DefaultConnectionStrategy(this);
 		}
+		if (this.config.isCrossPartitionHandoff()){
+			this.connectionWaiters = new ConnectionWaiters(this.config.isIdleConnectionTestInPlace());
+		}
 		boolean queueLIFO = this.config.getServiceOrder() != null && this.config.getServiceOrder().equalsIgnoreCase("LIFO");
+		boolean lockFreeQueue = this.config.getFreeConnectionQueueType() != null && this.config.getFreeConnectionQueueType().equalsIgnoreCase("LOCKFREE");
 		if (this.closeConnectionWatch){
 			logger.warn(THREAD_CLOSE_CONNECTION_WARNING);
+		}
+		if (this.closeConnectionWatch && this.sharedLane == null){
 			this.closeConnectionExecutor =  Executors.newCachedThreadPool(new CustomThreadFactory("BoneCP-connection-watch-thread"+suffix, true));
 
 		}
+		int maxConnections = this.config.getMaxConnectionsPerPartition() * this.config.getPartitionCount();
+		int releaseHelperThreads = this.config.getReleaseHelperThreads();
+		if (releaseHelperThreads > 0 && this.cachedPoolStrategy){
+			logger.warn("releaseHelperThreads is not supported by the CACHED pool strategy, releasing connections on the caller's thread.");
+		} else if (releaseHelperThreads > 0){
+			// every connection fits in here so the application thread never has to wait.
+			this.connectionsPendingRelease = new LinkedBlockingQueue<ConnectionHandle>(maxConnections);
+			this.releaseHelper = Executors.newFixedThreadPool(releaseHelperThreads, new CustomThreadFactory("BoneCP-release-thread-helper-thread"+suffix, true));
+			for (int i=0; i < releaseHelperThreads; i++){
+				this.releaseHelper.execute(new ReleaseHelperThread(this.connectionsPendingRelease));
+			}
+		}
+		this.autoScaling = this.config.getAutoScaleTargetWaitTimeInMs() > 0;
+		if (this.autoScaling && this.sharedLane == null){
+			this.autoScaleScheduler = Executors.newScheduledThreadPool(1, new CustomThreadFactory("BoneCP-autoscaler"+suffix, true));
+		}
+		if (this.config.getAcquireParallelism() > 1){
+			this.connectionCreator = Executors.newFixedThreadPool(this.config.getAcquireParallelism(), new CustomThreadFactory("BoneCP-connection-creator"+suffix, true));
+		}
+		this.idleConnectionTestInPlace = this.config.isIdleConnectionTestInPlace();
+		this.lightweightConnectionTest = this.config.isLightweightConnectionTest();
+		this.connectionTestBypassWindowInMs = this.config.getConnectionTestBypassWindowInMs();
+		this.connectionTestTimeoutInSeconds = (int) Math.min(Integer.MAX_VALUE, (this.config.getConnectionTestTimeoutInMs() + 999) / 1000);
+		if (this.idleConnectionTestInPlace && this.config.getIdleConnectionTestConcurrency() > 1){
+			this.idleConnectionTester = Executors.newFixedThreadPool(this.config.getIdleConnectionTestConcurrency(), new CustomThreadFactory("BoneCP-idle-connection-tester"+suffix, true));
+		}
+		// the rest of minConnectionsPerPartition is opened by the pool watch threads once we're up.
+		int warmUpConnections = (this.config.getMinConnectionsPerPartition() * this.config.getWarmUpPercent() + 99) / 100;
+		int statementReleaseHelperThreads = this.config.getStatementReleaseHelperThreads();
+		if (statementReleaseHelperThreads > 0){
+			// bounded so that a slow driver can't pile up work; statement.close() falls back to closing inline once full.
+			this.statementsPendingRelease = new LinkedBlockingQueue<Statement>(maxConnections * STATEMENT_RELEASE_QUEUE_SIZE_PER_CONNECTION);
+			this.statementReleaseHelper = Executors.newFixedThreadPool(statementReleaseHelperThreads, new CustomThreadFactory("BoneCP-statement-close-helper-thread"+suffix, true));
+			for (int i=0; i < statementReleaseHelperThreads; i++){
+				this.statementReleaseHelper.execute(new StatementReleaseHelperThread(this.statementsPendingRelease));
+			}
+		}
+		if (this.config.getLogStatementsQueueSize() > 0){
+			this.statementLog = new StatementLogQueue(this.config.getLogStatementsQueueSize(), this.config.getLogStatementsOverflowPolicy());
+			this.statementLogWriter = Executors.newSingleThreadExecutor(new CustomThreadFactory("BoneCP-statement-log-writer"+suffix, true));
+			this.statementLogWriter.execute(new StatementLogWriterThread(this.statementLog));
+		}
+		if (this.statisticsEnabled && this.config.getMaxConnectionTags() > 0){
+			this.connectionTags = new ConnectionTagStatistics(this.config.getMaxConnectionTags());
+		}
+		if (this.config.getStatementProfilerSize() > 0){
+			this.statementProfiler = new StatementProfiler(this.config.getStatementProfilerSize(), this.config.getStatementProfilerSampleRate());
+		}
+		this.statementCacheBudget = new StatementCacheBudget(this.config.getStatementsCacheBudget());
+		this.statementsCacheAffinitySearchLimit = this.config.getStatementsCacheSize() > 0 ? this.config.getStatementsCacheAffinitySearchLimit() : 0;
+		if (this.config.isInListBucketingEnabled()){
+			this.inListBucketingMemo = new ConcurrentHashMap<String, InListBucketing>();
+		}
+		int hotStatementCount = Math.min(this.config.getStatementsCacheWarmUpSize(), this.config.getStatementsCacheSize());
+		if (hotStatementCount > 0){
+			this.hotStatements = new HotStatementSet(hotStatementCount);
+			if (this.config.getStatementsCacheWarmUpFile() != null){
+				try {
+					this.hotStatements.load(this.config.getStatementsCacheWarmUpFile());
+				} catch (IOException e) {
+					logger.warn("Could not load the statements to warm up the statement caches with from "+this.config.getStatementsCacheWarmUpFile(), e);
+				}
+			}
+		}
 		for (int p=0; p < this.config.getPartitionCount(); p++){
 
 			ConnectionPartition connectionPartition = new ConnectionPartition(this);
 			this.partitions[p]=connectionPartition;
-			BlockingQueue<ConnectionHandle> connectionHandles = new LinkedBlockingQueue<ConnectionHandle>(this.config.getMaxConnectionsPerPartition());
+			BlockingQueue<ConnectionHandle> connectionHandles;
+			if (lockFreeQueue){
+				connectionHandles = new LockFreeBlockingQueue<ConnectionHandle>(this.config.getMaxConnectionsPerPartition());
+			} else {
+				connectionHandles = new LinkedBlockingQueue<ConnectionHandle>(this.config.getMaxConnectionsPerPartition());
+			}
 
 			this.partitions[p].setFreeConnections(connectionHandles);
 
 			if (!this.config.isLazyInit()){
-				for (int i=0; i < this.config.getMinConnectionsPerPartition(); i++){
-					this.partitions[p].addFreeConnection(new ConnectionHandle(null, this.partitions[p], this, false));
+				if (this.connectionCreator != null){
+					try {
+						addFreeConnectionsInParallel(this.partitions[p], warmUpConnections);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while opening the initial connections");
+					}
+				} else {
+					for (int i=0; i < warmUpConnections; i++){
+						this.partitions[p].addFreeConnection(new ConnectionHandle(null, this.partitions[p], this, false));
+					}
 				}
-
 			}
 
 
@@ -495,16 +753,57 @@ public class BoneCP implements Serializable, Closeable {
 						&& this.config.getIdleMaxAge(TimeUnit.SECONDS) != 0){
 					delayInSeconds = this.config.getIdleMaxAge(TimeUnit.SECONDS);
 				}
-				this.keepAliveScheduler.scheduleAtFixedRate(connectionTester,delayInSeconds, delayInSeconds, TimeUnit.SECONDS);
+				if (this.sharedLane != null){
+					this.sharedLane.scheduleWithFixedDelay(connectionTester, delayInSeconds, delayInSeconds, TimeUnit.SECONDS);
+				} else {
+					this.keepAliveScheduler.scheduleAtFixedRate(connectionTester,delayInSeconds, delayInSeconds, TimeUnit.SECONDS);
+				}
 			}
 
 
 			if (this.config.getMaxConnectionAgeInSeconds() > 0){
 				final Runnable connectionMaxAgeTester = new ConnectionMaxAgeThread(connectionPartition, this, this.config.getMaxConnectionAge(TimeUnit.MILLISECONDS), queueLIFO);
-				this.maxAliveScheduler.scheduleAtFixedRate(connectionMaxAgeTester, this.config.getMaxConnectionAgeInSeconds(), this.config.getMaxConnectionAgeInSeconds(), TimeUnit.SECONDS);
+				if (this.sharedLane != null){
+					this.sharedLane.scheduleWithFixedDelay(connectionMaxAgeTester, this.config.getMaxConnectionAgeInSeconds(), this.config.getMaxConnectionAgeInSeconds(), TimeUnit.SECONDS);
+				} else {
+					this.maxAliveScheduler.scheduleAtFixedRate(connectionMaxAgeTester, this.config.getMaxConnectionAgeInSeconds(), this.config.getMaxConnectionAgeInSeconds(), TimeUnit.SECONDS);
+				}
+			}
+			if (this.autoScaling){
+				PoolAutoScaler autoScaler = new PoolAutoScaler(connectionPartition, this, this.config.getAutoScaleTargetWaitTimeInMs());
+				if (this.sharedLane != null){
+					this.sharedLane.scheduleWithFixedDelay(autoScaler, PoolAutoScaler.RUN_PERIOD_IN_MS, PoolAutoScaler.RUN_PERIOD_IN_MS, TimeUnit.MILLISECONDS);
+				} else {
+					this.autoScaleScheduler.scheduleAtFixedRate(autoScaler, PoolAutoScaler.RUN_PERIOD_IN_MS, PoolAutoScaler.RUN_PERIOD_IN_MS, TimeUnit.MILLISECONDS);
+				}
 			}
 			// watch this partition for low no of threads
-			this.connectionsScheduler.execute(new PoolWatchThread(connectionPartition, this));
+			if (this.sharedLane != null){
+				new PoolWatchThread(connectionPartition, this).runOn(this.sharedLane);
+			} else {
+				this.connectionsScheduler.execute(new PoolWatchThread(connectionPartition, this));
+			}
+			if (!this.config.isLazyInit() && warmUpConnections < this.config.getMinConnectionsPerPartition()){
+				connectionPartition.getPoolWatchThreadSignalQueue().offer(new Object()); // item being pushed is not important.
+			}
+		}
+
+		if (this.statementCacheBudget.getLimit() > 0 && this.config.getStatementsCacheSize() > 0){
+			StatementCacheTrimmer trimmer = new StatementCacheTrimmer(this, this.statementCacheBudget);
+			if (this.sharedLane != null){
+				this.sharedLane.scheduleWithFixedDelay(trimmer, StatementCacheTrimmer.RUN_PERIOD_IN_MS, StatementCacheTrimmer.RUN_PERIOD_IN_MS, TimeUnit.MILLISECONDS);
+			} else {
+				this.keepAliveScheduler.scheduleWithFixedDelay(trimmer, StatementCacheTrimmer.RUN_PERIOD_IN_MS, StatementCacheTrimmer.RUN_PERIOD_IN_MS, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if (this.config.getLeakDetectionThresholdInMs() > 0){
+			this.leakDetector = new LeakDetector(this.config.getLeakDetectionThresholdInMs(), this.config.getLeakDetectionSampleRate());
+			if (this.sharedLane != null){
+				this.sharedLane.scheduleWithFixedDelay(this.leakDetector, this.leakDetector.getRunPeriodInMs(), this.leakDetector.getRunPeriodInMs(), TimeUnit.MILLISECONDS);
+			} else {
+				this.keepAliveScheduler.scheduleWithFixedDelay(this.leakDetector, this.leakDetector.getRunPeriodInMs(), this.leakDetector.getRunPeriodInMs(), TimeUnit.MILLISECONDS);
+			}
 		}
 
 		if (!this.config.isDisableJMX()){
@@ -564,12 +863,81 @@ public class BoneCP implements Serializable, Closeable {
 		return this.connectionStrategy.getConnection();
 	}
 
+	/**
+	 * Returns a free connection, preferably one that already has the given statement in its statement cache
+	 * (see statementsCacheAffinitySearchLimit). Falls back to getConnection() if there is none.
+	 * @param sqlHint statement the application is about to prepare, or null
+	 * @return Connection handle.
+	 * @throws SQLException
+	 */
+	public Connection getConnection(String sqlHint) throws SQLException {
+		if (sqlHint == null || this.statementsCacheAffinitySearchLimit <= 0){
+			return this.connectionStrategy.getConnection();
+		}
+		return this.connectionStrategy.getConnection(sqlHint);
+	}
+
+	/**
+	 * Returns a free connection, counting it under the given tag in the statistics (see 
+	 * StatisticsMBean.getConnectionTags): the number of checkouts, the time waited for the connection and the 
+	 * time until it is closed are kept per tag.
+	 * @param tag name of the part of the application asking for the connection, eg "OrderService"
+	 * @return Connection handle.
+	 * @throws SQLException
+	 */
+	public Connection getTaggedConnection(String tag) throws SQLException {
+		String previousTag = setConnectionTag(tag);
+		try {
+			return this.connectionStrategy.getConnection();
+		} finally {
+			setConnectionTag(previousTag);
+		}
+	}
+
+	/**
+	 * Sets the tag under which the connections checked out by the current thread are counted in the statistics, 
+	 * until set otherwise. Meant for frameworks, eg a filter tagging the connections used by each request with 
+	 * its handler. Applies to all pools.
+	 * @param tag tag, or null to stop tagging
+	 * @return tag that was set before, to put back once done
+	 */
+	public static String setConnectionTag(String tag) {
+		String result = CONNECTION_TAG.get();
+		if (tag == null){
+			CONNECTION_TAG.remove();
+		} else {
+			CONNECTION_TAG.set(tag);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the tag under which the connections checked out by the current thread are counted.
+	 * @return tag, or null
+	 */
+	public static String getConnectionTag() {
+		return CONNECTION_TAG.get();
+	}
 
 	/** Starts off a new thread to monitor this connection attempt.
 	 * @param connectionHandle to monitor
 	 */
 	protected void watchConnection(ConnectionHandle connectionHandle) {
 		String message = captureStackTrace(UNCLOSED_EXCEPTION_MESSAGE);
+		if (this.sharedLane != null){
+			// no thread to block in join(): poll instead.
+			final CloseThreadMonitor monitor = new CloseThreadMonitor(Thread.currentThread(), connectionHandle, message, this.closeConnectionWatchTimeoutInMs);
+			final long pollIntervalInMs = this.closeConnectionWatchTimeoutInMs == 0 ? CLOSE_CONNECTION_WATCH_POLL_INTERVAL_IN_MS 
+					: Math.min(CLOSE_CONNECTION_WATCH_POLL_INTERVAL_IN_MS, this.closeConnectionWatchTimeoutInMs);
+			this.sharedLane.schedule(new Runnable() {
+				public void run() {
+					if (!monitor.check()){
+						BoneCP.this.sharedLane.schedule(this, pollIntervalInMs, TimeUnit.MILLISECONDS);
+					}
+				}
+			}, pollIntervalInMs, TimeUnit.MILLISECONDS);
+			return;
+		}
 		this.closeConnectionExecutor.submit(new CloseThreadMonitor(Thread.currentThread(), connectionHandle, message, this.closeConnectionWatchTimeoutInMs));
 	}
 
@@ -634,7 +1002,15 @@ public class BoneCP implements Serializable, Closeable {
 
 		// hook calls
 		if (handle.getConnectionHook() != null){
-			handle.getConnectionHook().onCheckIn(handle);
+			Thread previousPoolThread = handle.poolThread;
+			if (handle.reuseConnectionHandle){
+				handle.poolThread = Thread.currentThread(); // the handle has been returned but the hook may still use it.
+			}
+			try {
+				handle.getConnectionHook().onCheckIn(handle);
+			} finally {
+				handle.poolThread = previousPoolThread;
+			}
 		}
 
 		// release immediately or place it in a queue so that another thread will eventually close it. If we're shutting down,
@@ -691,8 +1067,12 @@ public class BoneCP implements Serializable, Closeable {
 			connectionHandle.logicallyClosed.set(true);
 			((CachedConnectionStrategy)this.connectionStrategy).tlConnections.set(new AbstractMap.SimpleEntry<ConnectionHandle, Boolean>(connectionHandle, false));
 		} else {
+			if (this.idleConnectionTestInPlace){
+				connectionHandle.freeState.set(ConnectionHandle.FREE_STATE_IDLE);
+			}
 			BlockingQueue<ConnectionHandle> queue = connectionHandle.getOriginatingPartition().getFreeConnections();
-			if (!queue.offer(connectionHandle)){ // this shouldn't fail
+			boolean released = this.connectionWaiters == null ? queue.offer(connectionHandle) : this.connectionWaiters.release(connectionHandle, queue);
+			if (!released){ // this shouldn't fail
 				destroyConnection(connectionHandle);
 			}
 		}
@@ -706,6 +1086,31 @@ public class BoneCP implements Serializable, Closeable {
 	 * @return true if test query worked, false otherwise
 	 */
 	public boolean isConnectionHandleAlive(ConnectionHandle connection) {
+		if (!connection.reuseConnectionHandle){
+			return testConnectionHandle(connection);
+		}
+		// the handle may be sitting in the pool, where it refuses to be used by anyone but the pool.
+		Thread previousPoolThread = connection.poolThread;
+		connection.poolThread = Thread.currentThread();
+		try {
+			return testConnectionHandle(connection);
+		} finally {
+			connection.poolThread = previousPoolThread;
+		}
+	}
+
+	/** Sends a dummy statement to the server, as isConnectionHandleAlive.
+	 * @param connection Connection handle to perform activity on
+	 * @return true if test query worked, false otherwise
+	 */
+	private boolean testConnectionHandle(ConnectionHandle connection) {
+		if (this.connectionTestBypassWindowInMs > 0 && !connection.isPossiblyBroken()
+				&& System.currentTimeMillis() - connection.connectionLastProvenAliveInMs < this.connectionTestBypassWindowInMs){
+			return true; // a query went through a moment ago, no need to ask again.
+		}
+		if (this.lightweightConnectionTest){
+			return isConnectionHandleAliveLightweight(connection);
+		}
 		Statement stmt = null;
 		boolean result = false;
 		try {
@@ -717,6 +1122,9 @@ public class BoneCP implements Serializable, Closeable {
 				rs = connection.getMetaData().getTables( null, null, KEEPALIVEMETADATA, METADATATABLE );
 			} else {
 				stmt = connection.createStatement();
+				if (this.connectionTestTimeoutInSeconds > 0){
+					stmt.setQueryTimeout(this.connectionTestTimeoutInSeconds);
+				}
 				stmt.execute(testStatement);
 			}
 
@@ -732,6 +1140,66 @@ public class BoneCP implements Serializable, Closeable {
 		} finally {
 			connection.setConnectionLastResetInMs(System.currentTimeMillis());
 			result = closeStatement(stmt, result);
+			if (result && this.connectionTestBypassWindowInMs > 0){
+				connection.connectionLastProvenAliveInMs = System.currentTimeMillis();
+			}
+		}
+		return result;
+	}
+
+	/** Connection test used with lightweightConnectionTest: JDBC4 isValid() if no connectionTestStatement is set,
+	 * otherwise the connectionTestStatement run on a statement that is kept open on the connection for next time.
+	 * @param connection Connection handle to perform activity on
+	 * @return true if the test worked, false otherwise
+	 */
+	private boolean isConnectionHandleAliveLightweight(ConnectionHandle connection) {
+		boolean result = false;
+		String testStatement = this.config.getConnectionTestStatement();
+		try {
+			Connection internalConnection = connection.getInternalConnection();
+			if (testStatement == null){
+				if (this.jvmMajorVersion > 5 && !this.isValidUnsupported){
+					try {
+						result = internalConnection.isValid(this.connectionTestTimeoutInSeconds);
+						return result;
+					} catch (AbstractMethodError e) { // pre-JDBC4 driver
+						this.isValidUnsupported = true;
+					} catch (SQLException e) {
+						if (e.getSQLState() == null || !e.getSQLState().startsWith("0A")){ // 0A = feature not supported
+							throw e;
+						}
+						this.isValidUnsupported = true;
+					}
+					logger.info("The JDBC driver does not support Connection.isValid(), testing connections with a metadata request instead.");
+				}
+				ResultSet rs = internalConnection.getMetaData().getTables( null, null, KEEPALIVEMETADATA, METADATATABLE );
+				rs.close();
+			} else {
+				Statement stmt = connection.testStatement;
+				if (stmt == null){
+					stmt = internalConnection.createStatement();
+					if (this.connectionTestTimeoutInSeconds > 0){
+						stmt.setQueryTimeout(this.connectionTestTimeoutInSeconds);
+					}
+					connection.testStatement = stmt;
+				}
+				if (stmt.execute(testStatement)){
+					stmt.getResultSet().close();
+				}
+			}
+			result = true;
+		} catch (SQLException e) {
+			// connection must be broken!
+			result = false;
+		} finally {
+			if (!result && connection.testStatement != null){
+				closeStatement(connection.testStatement, false);
+				connection.testStatement = null;
+			}
+			if (result && this.connectionTestBypassWindowInMs > 0){
+				connection.connectionLastProvenAliveInMs = System.currentTimeMillis();
+			}
+			connection.setConnectionLastResetInMs(System.currentTimeMillis());
 		}
 		return result;
 	}
@@ -84,7 +84,7 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 	private int statementsCacheSize = 0;
 	/** No of statements that can be cached per connection. Deprecated. */
 	private int statementsCachedPerConnection = 0;
-	/** Number of release-connection helper threads to create per partition. */
+	/** Number of release-connection helper threads to create. */
 	private int releaseHelperThreads = 0;
 	/** Number of statement release helper threads to create. */
 	private int statementReleaseHelperThreads = 0;
@@ -161,6 +161,60 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 	private boolean detectUnresolvedTransactions;
 	/** Determines pool operation Recognised strategies are: DEFAULT, CACHED. */
 	private String poolStrategy = "DEFAULT";
+	/** Structure holding the free connections of each partition. Recognised values are: DEFAULT, LOCKFREE. */
+	private String freeConnectionQueueType = "DEFAULT";
+	/** If true, a released connection is handed straight to the longest-waiting thread in any partition. */
+	private boolean crossPartitionHandoff;
+	/** If true, close() returns the same connection handle to the pool rather than a recreated one. */
+	private boolean reuseConnectionHandle;
+	/** If true, connections remember their session state so that resetting them only touches what changed. */
+	private boolean trackSessionState;
+	/** Checkout wait time the autoscaler sizes partitions for, 0 to disable autoscaling. */
+	private long autoScaleTargetWaitTimeInMs = 0;
+	/** Maximum number of connections being opened at the same time. */
+	private int acquireParallelism = 0;
+	/** Percentage of minConnectionsPerPartition to open before the pool constructor returns. */
+	private int warmUpPercent = 100;
+	/** If true, housekeeping tasks run on the process-wide SharedPoolScheduler rather than on threads of this pool. */
+	private boolean sharedScheduler;
+	/** If true, idle connections are tested while they stay in the free queue rather than being taken out of it. */
+	private boolean idleConnectionTestInPlace;
+	/** Maximum number of idle connections tested at the same time with idleConnectionTestInPlace. */
+	private int idleConnectionTestConcurrency = 1;
+	/** If true, connections are tested with JDBC4 isValid() or a test statement kept open on each connection. */
+	private boolean lightweightConnectionTest;
+	/** Connections that completed a query less than this long ago are considered alive without testing them. */
+	private long connectionTestBypassWindowInMs = 0;
+	/** Max time a connection test may take, 0 for no limit. */
+	private long connectionTestTimeoutInMs = 0;
+	/** Statement cache implementation. Recognised values are: DEFAULT, BOUNDED. */
+	private String statementsCacheType = "DEFAULT";
+	/** If true, hand out cached statements in their existing handle. */
+	private boolean reuseStatementHandles;
+	/** Max number of statements cached across all connections of the pool, 0 for no limit. */
+	private int statementsCacheBudget = 0;
+	/** Number of statements to prepare on new connections, 0 to start with an empty statement cache. */
+	private int statementsCacheWarmUpSize = 0;
+	/** File to keep the statements to warm up the statement caches with across restarts, null if none. */
+	private String statementsCacheWarmUpFile;
+	/** Max number of free connections looked at for one that has the statement given to getConnection(sqlHint) cached. */
+	private int statementsCacheAffinitySearchLimit = 0;
+	/** If true, pad IN-lists of parameter markers to bucketed sizes so that they share prepared statements. */
+	private boolean inListBucketingEnabled;
+	/** Max number of statements waiting to be logged on a background thread, 0 to log them on the executing thread. */
+	private int logStatementsQueueSize = 0;
+	/** What to do with statements to log once the log queue is full. Recognised values are: DROP, SAMPLE, BLOCK. */
+	private String logStatementsOverflowPolicy = "DROP";
+	/** Max number of statement fingerprints profiled, 0 to turn statement profiling off. */
+	private int statementProfilerSize = 0;
+	/** Profile one statement execution in this many. */
+	private int statementProfilerSampleRate = 16;
+	/** Max number of connection tags tracked by the statistics. */
+	private int maxConnectionTags = 32;
+	/** Connections held by the application for longer than this are reported as possible leaks, 0 to turn off. */
+	private long leakDetectionThresholdInMs = 0;
+	/** Capture where connections are obtained for one checkout in this many. */
+	private int leakDetectionSampleRate = 1;
 	/** If true, track statements and close them if application forgot to do so. See also: 
 	 * detectUnclosedStatements. */
 	private boolean closeOpenStatements;
@@ -591,7 +645,6 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 	/** {@inheritDoc}
 	 * @see com.jolbox.bonecp.BoneCPConfigMBean#getReleaseHelperThreads()
 	 */
-	@Deprecated
 	public int getReleaseHelperThreads() {
 		return this.releaseHelperThreads;
 	}
@@ -605,17 +658,15 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 	 * 
 	 * When a non-zero value is set, the pool will create threads that will take care of recycling a connection when it is closed (the 
 	 * application dumps the connection into a temporary queue to be processed asychronously to the application via the release helper 
-	 * threads).
+	 * threads). The connection only becomes available to other threads once it has been reset. 
 	 * 
-	 * Useful when your application is doing lots of work on each connection 
-	 * (i.e. perform an SQL query, do lots of non-DB stuff and perform another query), 
-	 * otherwise will probably slow things down.
+	 * Useful when resetting a connection is expensive (eg resetConnectionOnClose, defaultXXX settings, connection hooks or 
+	 * closeOpenStatements on a remote database) and your application cares about the latency of connection.close(). 
+	 * A small number (1 or 2) is usually enough. Not supported by the CACHED pool strategy.
 	 * 
 	 * @param releaseHelperThreads no to release 
 	 */
-	@Deprecated
 	public void setReleaseHelperThreads(int releaseHelperThreads) {
-		logger.warn("releaseHelperThreads has been deprecated -- it tends to slow down your application more.");
 		this.releaseHelperThreads = releaseHelperThreads;
 	}
 
@@ -1108,29 +1159,27 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 	}
 
 	/**
-	 * Returns the statementHelperThreads field. Deprecated.
+	 * Returns the statementHelperThreads field.
 	 * @return statementHelperThreads
 	 */
-	@Deprecated
 	public int getStatementReleaseHelperThreads() {
 		return this.statementReleaseHelperThreads;
 	}
 
 	/**
-	 * Depracated method. Sets number of statement helper threads to create that will handle releasing a statement.
+	 * Sets number of statement helper threads to create that will handle releasing a statement.
 	 *
 	 * When this value is set to zero, the application thread is blocked until the pool and JDBC driver are able to close off the statement. 
 	 * 
 	 * When a non-zero value is set, the pool will create threads that will take care of closing off the statement asychronously to the application via the release helper 
 	 * threads).
 	 * 
-	 * Useful when your application is opening up lots of statements otherwise will probably slow things down.
+	 * Useful when your application is opening up lots of statements that are not cached otherwise will probably slow things down.
+	 * Statements kept in the statement cache are not affected.
 	 * 
 	 * @param statementReleaseHelperThreads no to release 
 	 */	
-	@Deprecated
 	public void setStatementReleaseHelperThreads(int statementReleaseHelperThreads) {
-		logger.warn("statementReleaseHelperThreads has been deprecated -- it tends to slow down your application more.");
 		this.statementReleaseHelperThreads = statementReleaseHelperThreads;
 	}
 
@@ -1570,6 +1619,20 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 
 		this.poolStrategy = this.poolStrategy.toUpperCase();
 
+		if (this.freeConnectionQueueType == null || !(this.freeConnectionQueueType.equalsIgnoreCase("DEFAULT") || this.freeConnectionQueueType.equalsIgnoreCase("LOCKFREE"))){
+			logger.warn("Unrecognised free connection queue type. Allowed values are DEFAULT and LOCKFREE. Setting to DEFAULT.");
+			this.freeConnectionQueueType = "DEFAULT";
+		}
+
+		this.freeConnectionQueueType = this.freeConnectionQueueType.toUpperCase();
+
+		if (this.statementsCacheType == null || !(this.statementsCacheType.equalsIgnoreCase("DEFAULT") || this.statementsCacheType.equalsIgnoreCase("BOUNDED"))){
+			logger.warn("Unrecognised statements cache type. Allowed values are DEFAULT and BOUNDED. Setting to DEFAULT.");
+			this.statementsCacheType = "DEFAULT";
+		}
+
+		this.statementsCacheType = this.statementsCacheType.toUpperCase();
+
 		if ((this.poolAvailabilityThreshold < 0) || (this.poolAvailabilityThreshold > 100)){
 			this.poolAvailabilityThreshold = 20;
 		}
@@ -1624,11 +1687,94 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 			this.statementReleaseHelperThreads = 0;
 		}
 
+		if (this.autoScaleTargetWaitTimeInMs < 0){
+			logger.warn("autoScaleTargetWaitTimeInMs < 0! Setting to 0");
+			this.autoScaleTargetWaitTimeInMs = 0;
+		}
+
+		if (this.acquireParallelism < 0){
+			logger.warn("acquireParallelism < 0! Setting to 0");
+			this.acquireParallelism = 0;
+		}
+
+		if (this.connectionTestBypassWindowInMs < 0){
+			logger.warn("connectionTestBypassWindowInMs < 0! Setting to 0");
+			this.connectionTestBypassWindowInMs = 0;
+		}
+
+		if (this.connectionTestTimeoutInMs < 0){
+			logger.warn("connectionTestTimeoutInMs < 0! Setting to 0");
+			this.connectionTestTimeoutInMs = 0;
+		}
+
+		if (this.idleConnectionTestConcurrency < 1){
+			logger.warn("idleConnectionTestConcurrency < 1! Setting to 1");
+			this.idleConnectionTestConcurrency = 1;
+		}
+
+		if ((this.warmUpPercent < 0) || (this.warmUpPercent > 100)){
+			logger.warn("warmUpPercent not in the range 0-100! Setting to 100");
+			this.warmUpPercent = 100;
+		}
+
 		if (this.statementsCacheSize < 0) {
 			logger.warn("preparedStatementsCacheSize < 0! Setting to 0");
 			this.statementsCacheSize = 0;
 		}
 
+		if (this.statementsCacheBudget < 0) {
+			logger.warn("statementsCacheBudget < 0! Setting to 0");
+			this.statementsCacheBudget = 0;
+		}
+
+		if (this.statementsCacheWarmUpSize < 0) {
+			logger.warn("statementsCacheWarmUpSize < 0! Setting to 0");
+			this.statementsCacheWarmUpSize = 0;
+		}
+
+		if (this.statementsCacheAffinitySearchLimit < 0) {
+			logger.warn("statementsCacheAffinitySearchLimit < 0! Setting to 0");
+			this.statementsCacheAffinitySearchLimit = 0;
+		}
+
+		if (this.logStatementsQueueSize < 0) {
+			logger.warn("logStatementsQueueSize < 0! Setting to 0");
+			this.logStatementsQueueSize = 0;
+		}
+
+		if (this.logStatementsOverflowPolicy == null || !(this.logStatementsOverflowPolicy.equalsIgnoreCase("DROP") 
+				|| this.logStatementsOverflowPolicy.equalsIgnoreCase("SAMPLE") || this.logStatementsOverflowPolicy.equalsIgnoreCase("BLOCK"))){
+			logger.warn("Unrecognised log statements overflow policy. Allowed values are DROP, SAMPLE and BLOCK. Setting to DROP.");
+			this.logStatementsOverflowPolicy = "DROP";
+		}
+
+		this.logStatementsOverflowPolicy = this.logStatementsOverflowPolicy.toUpperCase();
+
+		if (this.statementProfilerSize < 0) {
+			logger.warn("statementProfilerSize < 0! Setting to 0");
+			this.statementProfilerSize = 0;
+		}
+
+		if (this.statementProfilerSampleRate < 1) {
+			logger.warn("statementProfilerSampleRate < 1! Setting to 1");
+			this.statementProfilerSampleRate = 1;
+		}
+
+		if (this.maxConnectionTags < 0) {
+			logger.warn("maxConnectionTags < 0! Setting to 0");
+			this.maxConnectionTags = 0;
+		}
+
+		if (this.leakDetectionThresholdInMs < 0) {
+			logger.warn("leakDetectionThresholdInMs < 0! Setting to 0");
+			this.leakDetectionThresholdInMs = 0;
+		}
+
+		if (this.leakDetectionSampleRate < 1) {
+			logger.warn("leakDetectionSampleRate < 1! Setting to 1");
+			this.leakDetectionSampleRate = 1;
+		}
+
 		if (this.acquireRetryDelayInMs <= 0) {
 			this.acquireRetryDelayInMs = 1000;
 		}
@@ -2008,4 +2154,674 @@ public class BoneCPConfig implements BoneCPConfigMBean, Cloneable, Serializable
 
 
 
-}
\ No newline at end of file
+
+	/**
+	 * Returns the freeConnectionQueueType field.
+	 * @return freeConnectionQueueType
+	 */
+	public String getFreeConnectionQueueType() {
+		return this.freeConnectionQueueType;
+	}
+
+	/**
+	 * Sets the structure used to hold the free connections of each partition. Currently supported 
+	 * values are DEFAULT and LOCKFREE.
+	 * 
+	 * DEFAULT uses a LinkedBlockingQueue, as used in the pool since the very first version. Every 
+	 * getConnection() and close() goes through its locks and every close() allocates a new queue node.
+	 * 
+	 * LOCKFREE uses a bounded array-based queue where obtaining and releasing a connection is a 
+	 * couple of CAS operations with no allocation. Threads only block when the partition has no free 
+	 * connections left. Use this if you have many threads hitting the pool concurrently.
+	 * 
+	 * @param freeConnectionQueueType the freeConnectionQueueType to set
+	 */
+	public void setFreeConnectionQueueType(String freeConnectionQueueType) {
+		this.freeConnectionQueueType = freeConnectionQueueType;
+	}
+
+	/**
+	 * Returns the crossPartitionHandoff field.
+	 * @return crossPartitionHandoff
+	 */
+	public boolean isCrossPartitionHandoff() {
+		return this.crossPartitionHandoff;
+	}
+
+	/**
+	 * Sets the crossPartitionHandoff setting.
+	 * 
+	 * By default, a thread that finds all partitions empty waits on its own partition only, so a 
+	 * connection released into another partition is not handed to it. If set to true, waiting threads 
+	 * are kept in a single pool-wide queue and a released connection goes straight to the thread that 
+	 * has been waiting longest, whatever its partition. Only useful with more than one partition or 
+	 * when the pool is regularly saturated.
+	 * 
+	 * @param crossPartitionHandoff the crossPartitionHandoff to set
+	 */
+	public void setCrossPartitionHandoff(boolean crossPartitionHandoff) {
+		this.crossPartitionHandoff = crossPartitionHandoff;
+	}
+
+	/**
+	 * Returns the reuseConnectionHandle field.
+	 * @return reuseConnectionHandle
+	 */
+	public boolean isReuseConnectionHandle() {
+		return this.reuseConnectionHandle;
+	}
+
+	/**
+	 * Sets the reuseConnectionHandle setting.
+	 * 
+	 * By default, every connection.close() creates a brand new handle wrapping the same database 
+	 * connection so that an application that keeps using a closed connection gets an exception. This
+	 * costs a fair amount of garbage (and re-applies the default connection settings) on every return.
+	 * 
+	 * If set to true, the same handle is placed back in the pool and handed out again. Calling close() 
+	 * again on a connection that has already been returned does nothing and statements obtained from a 
+	 * returned connection refuse to run, but any other call made on a stale reference will go through 
+	 * to whoever holds the connection now. Only enable this if your application never touches a 
+	 * connection after closing it.
+	 * 
+	 * @param reuseConnectionHandle the reuseConnectionHandle to set
+	 */
+	public void setReuseConnectionHandle(boolean reuseConnectionHandle) {
+		this.reuseConnectionHandle = reuseConnectionHandle;
+	}
+
+	/**
+	 * Returns the trackSessionState field.
+	 * @return trackSessionState
+	 */
+	public boolean isTrackSessionState() {
+		return this.trackSessionState;
+	}
+
+	/**
+	 * Sets the trackSessionState setting.
+	 * 
+	 * By default, every connection returned to the pool gets the configured defaultAutoCommit, 
+	 * defaultReadOnly, defaultCatalog and defaultTransactionIsolation applied again and, if 
+	 * resetConnectionOnClose is set, is unconditionally rolled back. With most drivers each of these is a 
+	 * round-trip to the database.
+	 * 
+	 * If set to true, each connection keeps track of the values last set through it and whether any 
+	 * statement ran inside the current transaction. Setters whose value is unchanged are not sent to the 
+	 * driver and a rollback is only issued if statements ran with auto-commit disabled. Do not enable 
+	 * this if your application changes these settings behind the pool's back (eg via SQL such as 
+	 * "SET autocommit=0" or "USE otherdb", or via the raw internal connection).
+	 * 
+	 * @param trackSessionState the trackSessionState to set
+	 */
+	public void setTrackSessionState(boolean trackSessionState) {
+		this.trackSessionState = trackSessionState;
+	}
+
+	/** Returns the checkout wait time (in milliseconds) that the autoscaler sizes each partition for.
+	 * @return autoScaleTargetWaitTimeInMs
+	 */
+	public long getAutoScaleTargetWaitTimeInMs() {
+		return this.autoScaleTargetWaitTimeInMs;
+	}
+
+	/**
+	 * Returns the autoScaleTargetWaitTime with the specified granularity.
+	 * 
+	 * @param timeUnit time granularity
+	 * @return autoScaleTargetWaitTime 
+	 */
+	public long getAutoScaleTargetWaitTime(TimeUnit timeUnit) {
+		return timeUnit.convert(this.autoScaleTargetWaitTimeInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the checkout wait time (in milliseconds) that the autoscaler sizes each partition for. 
+	 * 
+	 * By default (0), a partition grows by acquireIncrement connections whenever its free connections drop below
+	 * poolAvailabilityThreshold and only shrinks through idleMaxAge. When set to a non-zero value, the pool 
+	 * instead keeps moving averages of the checkout rate, hold time and wait time of each partition and 
+	 * sizes the partition (between minConnectionsPerPartition and maxConnectionsPerPartition) so that the 
+	 * average time spent waiting in getConnection stays around this target. Partitions are grown ahead of 
+	 * a rising checkout rate and only shrink once demand has stayed low for a while, by at most 
+	 * acquireIncrement idle connections at a time. poolAvailabilityThreshold is ignored in this mode.
+	 * 
+	 * @param autoScaleTargetWaitTimeInMs the autoScaleTargetWaitTime to set
+	 */
+	public void setAutoScaleTargetWaitTimeInMs(long autoScaleTargetWaitTimeInMs) {
+		setAutoScaleTargetWaitTime(autoScaleTargetWaitTimeInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the checkout wait time that the autoscaler sizes each partition for. See
+	 * {@link #setAutoScaleTargetWaitTimeInMs(long)}.
+	 * 
+	 * @param autoScaleTargetWaitTime the autoScaleTargetWaitTime to set
+	 * @param timeUnit the unit of the autoScaleTargetWaitTime argument
+	 */
+	public void setAutoScaleTargetWaitTime(long autoScaleTargetWaitTime, TimeUnit timeUnit) {
+		this.autoScaleTargetWaitTimeInMs = TimeUnit.MILLISECONDS.convert(autoScaleTargetWaitTime, timeUnit);
+	}
+
+	/** Returns the maximum number of connections being opened at the same time.
+	 * @return acquireParallelism
+	 */
+	public int getAcquireParallelism() {
+		return this.acquireParallelism;
+	}
+
+	/** Sets the maximum number of connections being opened at the same time, across all partitions. 
+	 * 
+	 * By default (0 or 1), connections are opened one after the other, both when the pool starts up and when 
+	 * a partition is topped up. Against a database where establishing a connection takes a while (eg TLS and 
+	 * authentication round trips to a remote host), setting this higher cuts the startup time and the time it 
+	 * takes to refill the pool after a failover roughly by this factor. Keep it within what the database 
+	 * will accept in terms of concurrent logins.
+	 * 
+	 * @param acquireParallelism the acquireParallelism to set
+	 */
+	public void setAcquireParallelism(int acquireParallelism) {
+		this.acquireParallelism = acquireParallelism;
+	}
+
+	/** Returns the percentage of minConnectionsPerPartition opened before the pool constructor returns.
+	 * @return warmUpPercent
+	 */
+	public int getWarmUpPercent() {
+		return this.warmUpPercent;
+	}
+
+	/** Sets the percentage (0-100) of minConnectionsPerPartition that must be open before the pool is handed 
+	 * back to the application. The remaining connections are then opened in the background by the pool 
+	 * watch threads. Default: 100, ie the pool is completely filled before use. Has no effect if lazyInit is set.
+	 * 
+	 * @param warmUpPercent the warmUpPercent to set
+	 */
+	public void setWarmUpPercent(int warmUpPercent) {
+		this.warmUpPercent = warmUpPercent;
+	}
+
+	/** Returns true if this pool's housekeeping runs on the process-wide shared scheduler.
+	 * @return sharedScheduler
+	 */
+	public boolean isSharedScheduler() {
+		return this.sharedScheduler;
+	}
+
+	/** If set to true, this pool does not start its own keep-alive, max-age, pool watch and autoscaler threads
+	 * (nor one thread per checkout with closeConnectionWatch). These tasks instead run on a scheduler shared by 
+	 * every pool in the JVM that has this option set: one timer thread and a fixed number of worker threads 
+	 * (one per CPU, at least two), so the thread count stays flat no matter how many pools are created. Each pool's
+	 * tasks run one at a time and pools take turns, so a busy pool cannot hold up the others. 
+	 * 
+	 * Useful when running many pools in the same JVM (eg one per tenant). Default: false.
+	 * 
+	 * @param sharedScheduler the sharedScheduler to set
+	 */
+	public void setSharedScheduler(boolean sharedScheduler) {
+		this.sharedScheduler = sharedScheduler;
+	}
+
+	/** Returns true if idle connections are tested without being taken out of the free queue.
+	 * @return idleConnectionTestInPlace
+	 */
+	public boolean isIdleConnectionTestInPlace() {
+		return this.idleConnectionTestInPlace;
+	}
+
+	/** If set to true, the idle connection tester (idleConnectionTestPeriod, idleMaxAge) and the max connection 
+	 * age thread leave connections in the free queue while looking at them. A connection being tested is flagged 
+	 * as such; a thread asking for a connection that comes across it simply skips it and takes the next one, and 
+	 * the tester puts it back once the test is over. Otherwise (default: false), each free connection is taken 
+	 * out of the queue for the duration of the test, one every 20ms, and then put back at the end of the queue.
+	 * 
+	 * Useful with large partitions, where a full sweep takes a long time and keeps connections away from 
+	 * the application while it runs.
+	 * 
+	 * @param idleConnectionTestInPlace the idleConnectionTestInPlace to set
+	 */
+	public void setIdleConnectionTestInPlace(boolean idleConnectionTestInPlace) {
+		this.idleConnectionTestInPlace = idleConnectionTestInPlace;
+	}
+
+	/** Returns the maximum number of idle connections tested at the same time.
+	 * @return idleConnectionTestConcurrency
+	 */
+	public int getIdleConnectionTestConcurrency() {
+		return this.idleConnectionTestConcurrency;
+	}
+
+	/** Sets the maximum number of idle connections tested at the same time, across all partitions, when 
+	 * idleConnectionTestInPlace is set. Default: 1, ie each partition's connections are tested one after the 
+	 * other on the housekeeping thread. Has no effect unless idleConnectionTestInPlace is set.
+	 * 
+	 * @param idleConnectionTestConcurrency the idleConnectionTestConcurrency to set
+	 */
+	public void setIdleConnectionTestConcurrency(int idleConnectionTestConcurrency) {
+		this.idleConnectionTestConcurrency = idleConnectionTestConcurrency;
+	}
+
+	/** Returns true if connections are tested with JDBC4 isValid() or a test statement kept open on each connection.
+	 * @return lightweightConnectionTest
+	 */
+	public boolean isLightweightConnectionTest() {
+		return this.lightweightConnectionTest;
+	}
+
+	/** If set to true, testing a connection (idle connection tests, connections released after an error, 
+	 * ConnectionHandle.isConnectionAlive()) costs as little as the driver allows. If no connectionTestStatement
+	 * is set, the JDBC4 Connection.isValid() call is used instead of a metadata query, which most drivers 
+	 * implement as a protocol-level ping (drivers that don't support it fall back to the metadata query). If a 
+	 * connectionTestStatement is set, it is run on a statement created once per connection and kept open
+	 * rather than on a new statement every time. Default: false.
+	 * 
+	 * @param lightweightConnectionTest the lightweightConnectionTest to set
+	 */
+	public void setLightweightConnectionTest(boolean lightweightConnectionTest) {
+		this.lightweightConnectionTest = lightweightConnectionTest;
+	}
+
+	/** Returns the time (in milliseconds) after a successful query during which a connection is not tested.
+	 * @return connectionTestBypassWindowInMs
+	 */
+	public long getConnectionTestBypassWindowInMs() {
+		return this.connectionTestBypassWindowInMs;
+	}
+
+	/**
+	 * Returns the connectionTestBypassWindow with the specified granularity.
+	 * 
+	 * @param timeUnit time granularity
+	 * @return connectionTestBypassWindow 
+	 */
+	public long getConnectionTestBypassWindow(TimeUnit timeUnit) {
+		return timeUnit.convert(this.connectionTestBypassWindowInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the time (in milliseconds) after a query completed successfully on a connection during which the 
+	 * connection is taken to be alive without testing it: a connection the database answered a moment ago
+	 * needs no further proof. Does not apply to connections that have been marked as possibly broken. 
+	 * Default: 0, ie connections are always tested.
+	 * 
+	 * @param connectionTestBypassWindowInMs the connectionTestBypassWindow to set
+	 */
+	public void setConnectionTestBypassWindowInMs(long connectionTestBypassWindowInMs) {
+		setConnectionTestBypassWindow(connectionTestBypassWindowInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the time after a successful query during which a connection is not tested. See
+	 * {@link #setConnectionTestBypassWindowInMs(long)}.
+	 * 
+	 * @param connectionTestBypassWindow the connectionTestBypassWindow to set
+	 * @param timeUnit the unit of the connectionTestBypassWindow argument
+	 */
+	public void setConnectionTestBypassWindow(long connectionTestBypassWindow, TimeUnit timeUnit) {
+		this.connectionTestBypassWindowInMs = TimeUnit.MILLISECONDS.convert(connectionTestBypassWindow, timeUnit);
+	}
+
+	/** Returns the maximum time (in milliseconds) a connection test may take.
+	 * @return connectionTestTimeoutInMs
+	 */
+	public long getConnectionTestTimeoutInMs() {
+		return this.connectionTestTimeoutInMs;
+	}
+
+	/**
+	 * Returns the connectionTestTimeout with the specified granularity.
+	 * 
+	 * @param timeUnit time granularity
+	 * @return connectionTestTimeout 
+	 */
+	public long getConnectionTestTimeout(TimeUnit timeUnit) {
+		return timeUnit.convert(this.connectionTestTimeoutInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the maximum time (in milliseconds) a connection test may take before the connection is considered 
+	 * dead. Passed on to the driver (rounded up to whole seconds) as the isValid() timeout or the query timeout 
+	 * of the connectionTestStatement. Default: 0, ie no limit.
+	 * 
+	 * @param connectionTestTimeoutInMs the connectionTestTimeout to set
+	 */
+	public void setConnectionTestTimeoutInMs(long connectionTestTimeoutInMs) {
+		setConnectionTestTimeout(connectionTestTimeoutInMs, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sets the maximum time a connection test may take. See {@link #setConnectionTestTimeoutInMs(long)}.
+	 * 
+	 * @param connectionTestTimeout the connectionTestTimeout to set
+	 * @param timeUnit the unit of the connectionTestTimeout argument
+	 */
+	public void setConnectionTestTimeout(long connectionTestTimeout, TimeUnit timeUnit) {
+		this.connectionTestTimeoutInMs = TimeUnit.MILLISECONDS.convert(connectionTestTimeout, timeUnit);
+	}
+
+	/**
+	 * Returns the statementsCacheType field.
+	 * @return statementsCacheType
+	 */
+	public String getStatementsCacheType() {
+		return this.statementsCacheType;
+	}
+
+	/**
+	 * Sets the statement cache implementation used when statementsCacheSize is set. Currently supported 
+	 * values are DEFAULT and BOUNDED.
+	 * 
+	 * DEFAULT caches statements until statementsCacheSize is reached and then stops, so statements that 
+	 * are first used after that are never cached.
+	 * 
+	 * BOUNDED keeps the statements that are used the most: once full, a statement that is asked for more 
+	 * often than one in the cache takes its place and the evicted statement is closed. It also takes a lot 
+	 * less memory per connection. It must not be used if the application shares a connection between 
+	 * several threads at the same time.
+	 * 
+	 * @param statementsCacheType the statementsCacheType to set
+	 */
+	public void setStatementsCacheType(String statementsCacheType) {
+		this.statementsCacheType = statementsCacheType;
+	}
+
+	/**
+	 * Returns the reuseStatementHandles field.
+	 * @return reuseStatementHandles
+	 */
+	public boolean isReuseStatementHandles() {
+		return this.reuseStatementHandles;
+	}
+
+	/**
+	 * Sets the reuseStatementHandles setting.
+	 * 
+	 * By default, a statement found in the statement cache is handed out in a brand new handle (so that 
+	 * an application that keeps using a statement after closing it gets an exception). That new handle 
+	 * copies the config settings and allocates its own structures, on every prepareStatement() call.
+	 * 
+	 * If set to true, a cache hit hands out the same handle again, so that it costs no more than a lookup. 
+	 * Calling close() again on a statement that has already been closed does nothing, and a statement 
+	 * obtained from a connection that has since been closed refuses to run until it's handed out again. 
+	 * Once it has been handed out again, though, any call made on a stale reference will go through to 
+	 * the new holder. Only enable this if your application never touches a statement after closing it.
+	 * Has no effect unless statementsCacheSize is set.
+	 * 
+	 * @param reuseStatementHandles the reuseStatementHandles to set
+	 */
+	public void setReuseStatementHandles(boolean reuseStatementHandles) {
+		this.reuseStatementHandles = reuseStatementHandles;
+	}
+
+	/**
+	 * Returns the statementsCacheBudget field.
+	 * @return statementsCacheBudget
+	 */
+	public int getStatementsCacheBudget() {
+		return this.statementsCacheBudget;
+	}
+
+	/**
+	 * Sets the max number of statements cached across all the connections of the pool. 
+	 * 
+	 * statementsCacheSize applies to each statement cache and every connection has two of them (one for 
+	 * prepared statements, one for callable statements), so the server may otherwise be asked to keep up to 
+	 * statementsCacheSize * 2 * maxConnections statements open for this pool. Once the budget is used up, a 
+	 * statement is only cached if it takes the place of a colder statement of the same connection, and with 
+	 * statementsCacheType=BOUNDED the coldest statements of the idle connections are then evicted to make room.
+	 * The budget and the number of statements cached are reported through JMX (see StatisticsMBean). 
+	 * 
+	 * Default: 0 (no limit).
+	 * 
+	 * @param statementsCacheBudget the statementsCacheBudget to set
+	 */
+	public void setStatementsCacheBudget(int statementsCacheBudget) {
+		this.statementsCacheBudget = statementsCacheBudget;
+	}
+
+	/**
+	 * Returns the statementsCacheWarmUpSize field.
+	 * @return statementsCacheWarmUpSize
+	 */
+	public int getStatementsCacheWarmUpSize() {
+		return this.statementsCacheWarmUpSize;
+	}
+
+	/**
+	 * Sets the number of statements prepared on a new connection before it is handed out. 
+	 * 
+	 * The pool keeps count of the statement cache hits of each SQL statement (plain prepareStatement(sql) calls 
+	 * only, sampled one in 16 per connection) and warms up the statement cache of every new connection with the statements hit the most, so that 
+	 * connections opened after a failover or to replace old ones don't all have to prepare them on first use.
+	 * Capped at statementsCacheSize; has no effect unless statementsCacheSize is set.
+	 * 
+	 * Default: 0 (new connections start with an empty statement cache).
+	 * 
+	 * @param statementsCacheWarmUpSize the statementsCacheWarmUpSize to set
+	 */
+	public void setStatementsCacheWarmUpSize(int statementsCacheWarmUpSize) {
+		this.statementsCacheWarmUpSize = statementsCacheWarmUpSize;
+	}
+
+	/**
+	 * Returns the statementsCacheWarmUpFile field.
+	 * @return statementsCacheWarmUpFile
+	 */
+	public String getStatementsCacheWarmUpFile() {
+		return this.statementsCacheWarmUpFile;
+	}
+
+	/**
+	 * Sets a file in which the statements used to warm up the statement caches (see statementsCacheWarmUpSize) 
+	 * are saved on shutdown and from which they are loaded on startup, so that the connections opened on startup 
+	 * are warmed up as well. The file is created if it doesn't exist.
+	 * 
+	 * Default: null (not saved).
+	 * 
+	 * @param statementsCacheWarmUpFile the statementsCacheWarmUpFile to set
+	 */
+	public void setStatementsCacheWarmUpFile(String statementsCacheWarmUpFile) {
+		this.statementsCacheWarmUpFile = statementsCacheWarmUpFile;
+	}
+
+	/**
+	 * Returns the statementsCacheAffinitySearchLimit field.
+	 * @return statementsCacheAffinitySearchLimit
+	 */
+	public int getStatementsCacheAffinitySearchLimit() {
+		return this.statementsCacheAffinitySearchLimit;
+	}
+
+	/**
+	 * Sets the max number of free connections BoneCP.getConnection(sqlHint) looks at for one that already has 
+	 * the given statement in its statement cache, before settling for whichever connection getConnection() 
+	 * would have returned. 
+	 * 
+	 * With many distinct statements and a statement cache that can only hold some of them, this lets each 
+	 * connection specialise in part of the workload, so that hit rates go up without making the caches bigger.
+	 * The search walks the free queues (starting with the partition of the calling thread), so keep it small.
+	 * Only the default pool strategy makes use of the hint. Has no effect unless statementsCacheSize is set.
+	 * 
+	 * Default: 0 (the hint is ignored).
+	 * 
+	 * @param statementsCacheAffinitySearchLimit the statementsCacheAffinitySearchLimit to set
+	 */
+	public void setStatementsCacheAffinitySearchLimit(int statementsCacheAffinitySearchLimit) {
+		this.statementsCacheAffinitySearchLimit = statementsCacheAffinitySearchLimit;
+	}
+
+	/**
+	 * Returns the inListBucketingEnabled field.
+	 * @return inListBucketingEnabled
+	 */
+	public boolean isInListBucketingEnabled() {
+		return this.inListBucketingEnabled;
+	}
+
+	/**
+	 * If set to true, prepareStatement() pads every IN-list made up only of parameter markers, eg 
+	 * "WHERE id IN (?, ?, ?)", to the next power of two (up to 256 markers) by repeating its last marker, and 
+	 * sets the padding markers to the value given for the last parameter of the list. 
+	 * 
+	 * Queries built for lists of any length (as ORM batch fetches do) then map onto a handful of statements, 
+	 * which raises statement cache hit rates and spares the server's plan cache. Parameter indexes are mapped 
+	 * transparently, while logged statements and hooks see the padded statement. Don't pass streams as IN-list 
+	 * parameters (they can't be read more than once). Statements with a backslash inside a literal are left as 
+	 * they are, as it isn't known whether the database treats it as an escape character.
+	 * 
+	 * Default: false.
+	 * 
+	 * @param inListBucketingEnabled the inListBucketingEnabled to set
+	 */
+	public void setInListBucketingEnabled(boolean inListBucketingEnabled) {
+		this.inListBucketingEnabled = inListBucketingEnabled;
+	}
+
+	/**
+	 * Returns the logStatementsQueueSize field.
+	 * @return logStatementsQueueSize
+	 */
+	public int getLogStatementsQueueSize() {
+		return this.logStatementsQueueSize;
+	}
+
+	/**
+	 * If set, statements logged because of logStatementsEnabled are queued up (up to this many) and written to 
+	 * the log by a background thread, in batches, instead of on the thread executing them, so that a slow logging 
+	 * backend doesn't hold up the application. What happens when the queue is full is set by 
+	 * logStatementsOverflowPolicy; statements that could not be logged are counted in the statistics 
+	 * (StatisticsMBean.getStatementsLogDropped). Queued statements are logged on shutdown.
+	 * 
+	 * Default: 0 (statements are logged on the thread executing them).
+	 * 
+	 * @param logStatementsQueueSize the logStatementsQueueSize to set
+	 */
+	public void setLogStatementsQueueSize(int logStatementsQueueSize) {
+		this.logStatementsQueueSize = logStatementsQueueSize;
+	}
+
+	/**
+	 * Returns the logStatementsOverflowPolicy field.
+	 * @return logStatementsOverflowPolicy
+	 */
+	public String getLogStatementsOverflowPolicy() {
+		return this.logStatementsOverflowPolicy;
+	}
+
+	/**
+	 * Sets what happens to a statement to log when the log queue (see logStatementsQueueSize) is full: 
+	 * DROP - the statement isn't logged. 
+	 * SAMPLE - once the queue is half full, only one statement in ten is queued and the others aren't logged.
+	 * BLOCK - the executing thread waits for room in the queue.
+	 * 
+	 * Default: DROP.
+	 * 
+	 * @param logStatementsOverflowPolicy the logStatementsOverflowPolicy to set
+	 */
+	public void setLogStatementsOverflowPolicy(String logStatementsOverflowPolicy) {
+		this.logStatementsOverflowPolicy = logStatementsOverflowPolicy;
+	}
+
+	/**
+	 * Returns the statementProfilerSize field.
+	 * @return statementProfilerSize
+	 */
+	public int getStatementProfilerSize() {
+		return this.statementProfilerSize;
+	}
+
+	/**
+	 * If set, statement executions are profiled per statement, up to this many different statements. Statements 
+	 * are told apart by their fingerprint (the SQL with literals replaced by '?' and whitespace normalised), and 
+	 * for each the number of executions, total, average and max time are kept. The statements with the most 
+	 * total time are listed by StatisticsMBean.getTopStatements. Only some executions are timed, see 
+	 * statementProfilerSampleRate.
+	 * 
+	 * Default: 0 (off).
+	 * 
+	 * @param statementProfilerSize the statementProfilerSize to set
+	 */
+	public void setStatementProfilerSize(int statementProfilerSize) {
+		this.statementProfilerSize = statementProfilerSize;
+	}
+
+	/**
+	 * Returns the statementProfilerSampleRate field.
+	 * @return statementProfilerSampleRate
+	 */
+	public int getStatementProfilerSampleRate() {
+		return this.statementProfilerSampleRate;
+	}
+
+	/**
+	 * Sets how many statement executions the statement profiler (see statementProfilerSize) times per execution 
+	 * recorded: one in this many executions, picked at random, is timed and counts for all of them. Rounded up 
+	 * to a power of two. 
+	 * 
+	 * Default: 16.
+	 * 
+	 * @param statementProfilerSampleRate the statementProfilerSampleRate to set
+	 */
+	public void setStatementProfilerSampleRate(int statementProfilerSampleRate) {
+		this.statementProfilerSampleRate = statementProfilerSampleRate;
+	}
+
+	/**
+	 * Returns the maxConnectionTags field.
+	 * @return maxConnectionTags
+	 */
+	public int getMaxConnectionTags() {
+		return this.maxConnectionTags;
+	}
+
+	/**
+	 * Sets the max number of connection tags (see BoneCP.getTaggedConnection and BoneCP.setConnectionTag) for 
+	 * which statistics are kept when statisticsEnabled is set. Checkouts with further tags are counted together 
+	 * under "(other)".
+	 * 
+	 * Default: 32. 0 to ignore tags.
+	 * 
+	 * @param maxConnectionTags the maxConnectionTags to set
+	 */
+	public void setMaxConnectionTags(int maxConnectionTags) {
+		this.maxConnectionTags = maxConnectionTags;
+	}
+
+	/**
+	 * Returns the leakDetectionThresholdInMs field.
+	 * @return leakDetectionThresholdInMs
+	 */
+	public long getLeakDetectionThresholdInMs() {
+		return this.leakDetectionThresholdInMs;
+	}
+
+	/**
+	 * If set, connections held by the application for longer than this are logged (once each) as possible leaks, 
+	 * with the thread and, if captured (see leakDetectionSampleRate), the place where they were obtained. The 
+	 * current suspects can also be listed through JMX (StatisticsMBean.dumpLeakSuspects). Unlike 
+	 * closeConnectionWatch, this is cheap enough to leave on in production: a single task checks all 
+	 * connections, and stack traces are only turned into text when reported.
+	 * 
+	 * Default: 0 (off).
+	 * 
+	 * @param leakDetectionThresholdInMs the leakDetectionThresholdInMs to set
+	 */
+	public void setLeakDetectionThresholdInMs(long leakDetectionThresholdInMs) {
+		this.leakDetectionThresholdInMs = leakDetectionThresholdInMs;
+	}
+
+	/**
+	 * Returns the leakDetectionSampleRate field.
+	 * @return leakDetectionSampleRate
+	 */
+	public int getLeakDetectionSampleRate() {
+		return this.leakDetectionSampleRate;
+	}
+
+	/**
+	 * Sets how often leak detection (see leakDetectionThresholdInMs) captures where a connection is obtained: 
+	 * once every this many checkouts of each connection. Leaks found on the other checkouts are reported 
+	 * without a stack trace. 
+	 * 
+	 * Default: 1 (every checkout).
+	 * 
+	 * @param leakDetectionSampleRate the leakDetectionSampleRate to set
+	 */
+	public void setLeakDetectionSampleRate(int leakDetectionSampleRate) {
+		this.leakDetectionSampleRate = leakDetectionSampleRate;
+	}
+}
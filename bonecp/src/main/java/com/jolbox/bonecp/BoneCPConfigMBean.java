@@ -106,7 +106,7 @@ public interface BoneCPConfigMBean {
 	int getStatementsCacheSize();
 
 	/**
-	 * Gets number of release-connection helper threads to create per partition.
+	 * Gets number of release-connection helper threads to create.
 	 *
 	 * @return number of threads 
 	 */
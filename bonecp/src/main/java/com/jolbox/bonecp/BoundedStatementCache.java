@@ -0,0 +1,502 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * JDBC statement cache that keeps the statements used the most, evicting (and closing) others when full.
+ *
+ * {@link StatementCache} stops caching once it is full, so statements first seen after that are never cached.
+ * Here a new statement may take the place of a cached one, but only if it has recently been asked for more often
+ * than the one it would replace (TinyLFU admission), so that a stream of one-off statements cannot flush out the
+ * hot ones. How often statements are asked for, including those that are not cached, is tracked in a count-min
+ * sketch of 4-bit counters which is halved every now and then to follow changes in the workload. The cached
+ * statement to give up is picked by a clock sweep that spares the ones with recent hits.
+ *
+ * A connection is only used by one thread at a time so there is no locking here. The one exception is
+ * containsKey(), which the pool calls on the caches of free connections to pick one for a statement: the keys are
+ * therefore held in an AtomicReferenceArray (written on misses and evictions only) so that it reads a consistent
+ * table from any thread. Everything is held in a few
+ * arrays (an open addressing hash table, a byte of clock state per slot and the sketch) rather than in a map
+ * with lock segments and a node per entry: a cache of 100 statements takes about 3KB.
+ *
+ * @author wallacew
+ */
+public class BoundedStatementCache extends AbstractStatementCache {
+	/** Logger class. */
+	private static final Logger logger = LoggerFactory.getLogger(BoundedStatementCache.class);
+	/** Highest clock count of a slot, ie number of sweeps a statement survives without further hits. */
+	private static final byte MAX_CLOCK_COUNT = 3;
+	/** Seeds of the sketch hash functions. */
+	private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+	/** Keys of the hash table, null for empty slots. Readable from other threads, see containsKey(). */
+	private final AtomicReferenceArray<Object> keys;
+	/** Statements of the hash table. */
+	private final StatementHandle[] values;
+	/** Clock count of each slot: raised on a hit, lowered whenever the clock hand passes by. */
+	private final byte[] clockCounts;
+	/** keys.length() - 1. */
+	private final int mask;
+	/** Position of the clock hand. */
+	private int hand;
+	/** Number of cached statements. */
+	private int size;
+	/** How many items to cache. */
+	private final int cacheSize;
+	/** Count-min sketch, 16 counters per long. */
+	private final long[] sketch;
+	/** sketch.length - 1. */
+	private final int sketchMask;
+	/** Number of increments since the sketch was last halved. */
+	private int samples;
+	/** Number of increments after which the sketch is halved. */
+	private final int sampleSize;
+	/** If true, keep statistics. */
+	private final boolean maintainStats;
+	/** Statistics handle. */
+	private final Statistics statistics;
+	/** Pool-wide statement budget, null if none. */
+	private final StatementCacheBudget budget;
+
+	/**
+	 * Creates a statement cache of given size. 
+	 *
+	 * @param size of cache.
+	 * @param maintainStats if true, keep track of statistics.
+	 * @param statistics statistics handle.
+	 */
+	public BoundedStatementCache(int size, boolean maintainStats, Statistics statistics){
+		this(size, maintainStats, statistics, null);
+	}
+
+	/**
+	 * Creates a statement cache of given size that also keeps within the given pool-wide budget. 
+	 *
+	 * @param size of cache.
+	 * @param maintainStats if true, keep track of statistics.
+	 * @param statistics statistics handle.
+	 * @param budget pool-wide statement budget, null if none.
+	 */
+	public BoundedStatementCache(int size, boolean maintainStats, Statistics statistics, StatementCacheBudget budget){
+		this.budget = budget;
+		this.cacheSize = Math.max(1, size);
+		this.maintainStats = maintainStats;
+		this.statistics = statistics;
+		int tableSize = nextPowerOfTwo(this.cacheSize + this.cacheSize / 3 + 1); // keep the load factor below 0.75
+		this.keys = new AtomicReferenceArray<Object>(tableSize);
+		this.values = new StatementHandle[tableSize];
+		this.clockCounts = new byte[tableSize];
+		this.mask = tableSize - 1;
+		this.sketch = new long[nextPowerOfTwo(Math.max(16, this.cacheSize))];
+		this.sketchMask = this.sketch.length - 1;
+		this.sampleSize = 10 * this.cacheSize;
+	}
+
+	/** 
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#get(java.lang.Object)
+	 */
+//	@Override
+	public StatementHandle get(Object key){
+		int hash = spread(key.hashCode());
+		recordAccess(hash);
+		return checkOut(find(key, hash));
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+		return get(sql, resultSetType, resultSetConcurrency, resultSetHoldability, StatementCacheKey.NOT_SET, null, null);
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency) {
+		return get(sql, resultSetType, resultSetConcurrency, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, null, null);
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int autoGeneratedKeys) {
+		return get(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, autoGeneratedKeys, null, null);
+	}
+
+	// @Override
+	public StatementHandle get(String sql, int[] columnIndexes) {
+		return get(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, columnIndexes, null);
+	}
+
+	// @Override
+	public StatementHandle get(String sql, String[] columnNames) {
+		return get(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, null, columnNames);
+	}
+
+	/** Retrieves the statement prepared with the given arguments, matching them against the cached 
+	 * StatementCacheKeys in place rather than creating a key to look up.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type, or NOT_SET
+	 * @param resultSetConcurrency result set concurrency, or NOT_SET
+	 * @param resultSetHoldability result set holdability, or NOT_SET
+	 * @param autoGeneratedKeys auto generated keys flag, or NOT_SET
+	 * @param columnIndexes column indexes, or null
+	 * @param columnNames column names, or null
+	 * @return Statement, or null if not found.
+	 */
+	private StatementHandle get(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, 
+			int autoGeneratedKeys, int[] columnIndexes, String[] columnNames){
+		int keyHash = StatementCacheKey.hashOf(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys, columnIndexes, columnNames);
+		int hash = spread(keyHash);
+		recordAccess(hash);
+		int slot = hash & this.mask;
+		Object slotKey;
+		while ((slotKey = this.keys.get(slot)) != null){
+			if (slotKey.hashCode() == keyHash && slotKey instanceof StatementCacheKey 
+					&& ((StatementCacheKey) slotKey).matches(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys, columnIndexes, columnNames)){
+				return checkOut(slot);
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return checkOut(-1);
+	}
+
+	/** Hands out the statement in the given slot unless it's in use already, and keeps the score.
+	 * @param slot slot found by the lookup, or -1 on a miss
+	 * @return Statement, or null if not found or in use
+	 */
+	private StatementHandle checkOut(int slot){
+		StatementHandle statement = null;
+		if (slot >= 0){
+			if (this.clockCounts[slot] < MAX_CLOCK_COUNT){
+				this.clockCounts[slot]++;
+			}
+			statement = this.values[slot];
+			if (!statement.logicallyClosed.compareAndSet(true, false)){
+				statement = null;
+			}
+		}
+
+		if (this.maintainStats){
+			if (statement != null){
+				this.statistics.incrementCacheHits();
+			} else {
+				this.statistics.incrementCacheMiss();
+			}
+		}
+		return statement;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#size()
+	 */
+	// @Override
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#containsKey(java.lang.Object)
+	 */
+	// @Override
+	public boolean containsKey(Object key){
+		int slot = spread(key.hashCode()) & this.mask;
+		Object slotKey;
+		// probe no further than the table size: another thread may be changing the table under us.
+		for (int i=0; i <= this.mask; i++){
+			slotKey = this.keys.get(slot);
+			if (slotKey == null){
+				break;
+			}
+			if (slotKey.equals(key)){
+				return true;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#clear()
+	 */
+	// @Override
+	public void clear() {
+		int cleared = 0;
+		for (int i=0; i < this.values.length; i++){
+			StatementHandle statement = this.values[i];
+			if (statement != null){
+				try {
+					if (!statement.isClosed()){ 
+						statement.close();
+					}
+				} catch (SQLException e) {
+					// don't log, we might fail if the connection link has died
+				}
+				this.keys.set(i, null);
+				this.values[i] = null;
+				this.clockCounts[i] = 0;
+				cleared++;
+			}
+		}
+		this.size = 0;
+		if (this.budget != null){
+			this.budget.release(cleared);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#checkForProperClosure()
+	 */
+	// @Override
+	public void checkForProperClosure() {
+		for (StatementHandle statement: this.values){
+			if (statement != null && !statement.isClosed()){
+				logger.error("Statement not closed properly in application\n\n"+statement.getOpenStackTrace());
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#putIfAbsent(java.lang.Object, com.jolbox.bonecp.StatementHandle)
+	 */
+	// @Override
+	public void putIfAbsent(Object key, StatementHandle handle) {
+		if (key == null){
+			return;
+		}
+		int hash = spread(key.hashCode());
+		int slot = find(key, hash);
+		if (slot >= 0){
+			StatementHandle cached = this.values[slot];
+			if (cached != handle && cached.internalStatement == handle.internalStatement){
+				// cache hit handed out in a new wrapper: the entry follows the wrapper (see StatementCache).
+				cached.inCache = false;
+				this.values[slot] = handle;
+				handle.inCache = true;
+			}
+			return;
+		}
+
+		if (this.size >= this.cacheSize || (this.budget != null && !this.budget.tryAcquire())){
+			if (this.size == 0){
+				return; // the pool-wide budget is used up and we have nothing to give up.
+			}
+			// the new statement takes over the slot of the evicted one, both here and in the budget.
+			int victim = selectVictim();
+			if (frequency(hash) <= frequency(spread(this.keys.get(victim).hashCode()))){
+				return; // not popular enough to take the place of a cached statement.
+			}
+			StatementHandle evicted = this.values[victim];
+			removeAt(victim);
+			evict(evicted);
+		}
+
+		slot = hash & this.mask;
+		while (this.keys.get(slot) != null){
+			slot = (slot + 1) & this.mask;
+		}
+		this.keys.set(slot, key);
+		this.values[slot] = handle;
+		this.clockCounts[slot] = 0;
+		this.size++;
+		handle.inCache = true;
+		if (this.maintainStats){
+			this.statistics.incrementStatementsCached();
+		}
+	}
+
+	/** Evicts up to count statements, picked by the clock sweep as on a normal eviction, and gives their slots 
+	 * back to the pool-wide budget. Used to make room for the statements of other connections. 
+	 * @param count max number of statements to evict
+	 * @return number of statements evicted
+	 */
+	public int trim(int count){
+		int evicted = 0;
+		while (evicted < count && this.size > 0){
+			int victim = selectVictim();
+			StatementHandle statement = this.values[victim];
+			removeAt(victim);
+			evict(statement);
+			evicted++;
+		}
+		if (this.budget != null){
+			this.budget.release(evicted);
+		}
+		return evicted;
+	}
+
+	/** Takes a statement out of the cache: it is closed off right away if the application isn't using it at the 
+	 * moment, otherwise as soon as the application closes it.
+	 * @param statement evicted statement
+	 */
+	private void evict(StatementHandle statement){
+		statement.inCache = false;
+		if (statement.logicallyClosed.get()){
+			try {
+				statement.closeInternalStatement();
+			} catch (SQLException e) {
+				logger.debug("Error closing off evicted statement", e);
+			}
+		}
+	}
+
+	/** Looks up the slot holding the given key.
+	 * @param key key to look up
+	 * @param hash spread hash of key
+	 * @return slot, or -1 if not found
+	 */
+	private int find(Object key, int hash){
+		int slot = hash & this.mask;
+		Object slotKey;
+		while ((slotKey = this.keys.get(slot)) != null){
+			if (slotKey.equals(key)){
+				return slot;
+			}
+			slot = (slot + 1) & this.mask;
+		}
+		return -1;
+	}
+
+	/** Moves the clock hand on to the first statement without recent hits, wearing down the clock counts of 
+	 * the ones it passes by.
+	 * @return slot of the statement to evict
+	 */
+	private int selectVictim(){
+		for (;;){
+			this.hand = (this.hand + 1) & this.mask;
+			if (this.keys.get(this.hand) != null){
+				if (this.clockCounts[this.hand] == 0){
+					return this.hand;
+				}
+				this.clockCounts[this.hand]--;
+			}
+		}
+	}
+
+	/** Empties the given slot, shifting back later entries of the same probe sequence into the gap.
+	 * @param slot to empty
+	 */
+	private void removeAt(int slot){
+		int gap = slot;
+		int i = slot;
+		for (;;){
+			i = (i + 1) & this.mask;
+			Object key = this.keys.get(i);
+			if (key == null){
+				break;
+			}
+			int home = spread(key.hashCode()) & this.mask;
+			if (((i - home) & this.mask) >= ((i - gap) & this.mask)){ // home slot is not between the gap and i
+				this.keys.set(gap, key);
+				this.values[gap] = this.values[i];
+				this.clockCounts[gap] = this.clockCounts[i];
+				gap = i;
+			}
+		}
+		this.keys.set(gap, null);
+		this.values[gap] = null;
+		this.clockCounts[gap] = 0;
+		this.size--;
+	}
+
+	/** Counts an access to the statement with the given hash in the sketch, halving all counters once enough 
+	 * accesses have been counted.
+	 * @param hash spread hash of the key
+	 */
+	private void recordAccess(int hash){
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i=0; i < 4; i++){
+			added |= incrementAt(sketchIndex(hash, i), start + i);
+		}
+		if (added && ++this.samples >= this.sampleSize){
+			for (int i=0; i < this.sketch.length; i++){
+				this.sketch[i] = (this.sketch[i] >>> 1) & 0x7777777777777777L;
+			}
+			this.samples /= 2;
+		}
+	}
+
+	/** Returns the estimated number of recent accesses to the statement with the given hash.
+	 * @param hash spread hash of the key
+	 * @return estimated frequency, 0 to 15
+	 */
+	private int frequency(int hash){
+		int start = (hash & 3) << 2;
+		int frequency = 15;
+		for (int i=0; i < 4; i++){
+			int count = (int) ((this.sketch[sketchIndex(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/** Increments the given counter unless it's saturated.
+	 * @param i index of the long holding the counter
+	 * @param j counter within the long, 0 to 15
+	 * @return true if incremented
+	 */
+	private boolean incrementAt(int i, int j){
+		int offset = j << 2;
+		long counterMask = 0xfL << offset;
+		if ((this.sketch[i] & counterMask) != counterMask){
+			this.sketch[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	/** Returns the index in the sketch of the depth'th counter of a key.
+	 * @param hash spread hash of the key
+	 * @param depth 0 to 3
+	 * @return index
+	 */
+	private int sketchIndex(int hash, int depth){
+		long h = (hash + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return ((int) h) & this.sketchMask;
+	}
+
+	/** Spreads the bits of a hash code.
+	 * @param hashCode to spread
+	 * @return spread hash
+	 */
+	private static int spread(int hashCode){
+		int h = hashCode * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	/** Returns the smallest power of two >= n (and >= 2).
+	 * @param n value
+	 * @return power of two
+	 */
+	private static int nextPowerOfTwo(int n){
+		return Integer.highestOneBit(Math.max(2, n) - 1) << 1;
+	}
+}
@@ -57,7 +57,7 @@ public class CallableStatementHandle extends PreparedStatementHandle implements
 	 * @param cacheKey key to cache
 	 */
 	public CallableStatementHandle(CallableStatement internalCallableStatement,
-			String sql, ConnectionHandle connectionHandle, String cacheKey, IStatementCache cache) {
+			String sql, ConnectionHandle connectionHandle, Object cacheKey, IStatementCache cache) {
 		super(internalCallableStatement, sql, connectionHandle, cacheKey, cache);
 		this.internalCallableStatement = internalCallableStatement;
 		this.connectionHandle = connectionHandle;
@@ -38,6 +38,10 @@ public class CloseThreadMonitor implements Runnable {
 	private Thread threadToMonitor;
 	/** ms to wait for thread.join() */
 	private long closeConnectionWatchTimeout;
+	/** When the watch started. */
+	private long startTimeInMs = System.currentTimeMillis();
+	/** Lease of the handle being watched (handles may be reused with reuseConnectionHandle). */
+	private int leaseGeneration;
 	/** Logger class. */
 	private static final Logger logger = LoggerFactory.getLogger(CloseThreadMonitor.class);
 
@@ -53,6 +57,7 @@ public class CloseThreadMonitor implements Runnable {
 		this.stackTrace = stackTrace;
 		this.threadToMonitor = threadToMonitor;
 		this.closeConnectionWatchTimeout = closeConnectionWatchTimeout;
+		this.leaseGeneration = connectionHandle.leaseGeneration.get();
 	}
 
 	/** {@inheritDoc}
@@ -77,4 +82,21 @@ public class CloseThreadMonitor implements Runnable {
 		} 
 	}
 
+	/** Non-blocking equivalent of run(), polled periodically when running on the shared scheduler.
+	 * @return true if we're done watching (connection closed, thread gone or closeConnectionWatchTimeout reached), 
+	 * false if we should be called again later
+	 */
+	protected boolean check() {
+		if (this.connectionHandle.isClosed() || this.connectionHandle.leaseGeneration.get() != this.leaseGeneration
+				|| !this.threadToMonitor.equals(this.connectionHandle.getThreadUsingConnection())){
+			return true;
+		}
+		if (this.threadToMonitor.isAlive() 
+				&& (this.closeConnectionWatchTimeout == 0 || System.currentTimeMillis() - this.startTimeInMs < this.closeConnectionWatchTimeout)){
+			return false;
+		}
+		logger.error(this.stackTrace);
+		return true;
+	}
+
 }
\ No newline at end of file
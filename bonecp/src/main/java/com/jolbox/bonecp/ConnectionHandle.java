@@ -39,10 +39,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
@@ -87,6 +89,12 @@ public class ConnectionHandle implements Connection,Serializable{
 	private long connectionLastResetInMs;
 	/** Time when this connection was created. */
 	protected long connectionCreationTimeInMs;
+	/** nanoTime of the last checkout, only maintained when statistics or autoscaling are on. */
+	protected long connectionCheckoutTimeInNanos;
+	/** Statistics of the tag of the current checkout, null if it has none. */
+	protected ConnectionTagStatistics.Tag connectionTag;
+	/** Number of checkouts seen by the leak detector, to sample the ones to capture the stack of. */
+	protected int leakDetectionCheckouts;
 	/** Pool handle. */
 	private BoneCP pool; 
 	/** Config setting. */
@@ -163,6 +171,56 @@ public class ConnectionHandle implements Connection,Serializable{
 	protected boolean closeOpenStatements;
 	/** lock for close */
 	protected ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+	/** Config setting. */
+	protected boolean reuseConnectionHandle;
+	/** Config setting. */
+	protected boolean reuseStatementHandles;
+	/** Hit counts used to warm up the statement caches of new connections, null if not enabled. */
+	private HotStatementSet hotStatements;
+	/** Statement cache hits seen by this connection, used to sample them into hotStatements. */
+	protected int hotStatementHits;
+	/** Outcome of IN-list bucketing by statement (shared by the whole pool), null if inListBucketingEnabled is not set. */
+	private ConcurrentMap<String, InListBucketing> inListBucketingMemo;
+	/** Lease stamp, only maintained if reuseConnectionHandle is set: bumped when the handle is checked out (making it
+	 * odd, ie leased) and again when it goes back to the pool. close() only releases the handle if it can move the stamp
+	 * on from the value it read, so a stale close racing with a new checkout cannot release someone else's lease.
+	 * Statements record it when created so that they refuse to run once the connection they came from has been returned. */
+	protected final AtomicInteger leaseGeneration = new AtomicInteger();
+	/** leaseGeneration as of the last checkout. The handle counts as closed once the stamp has moved on from it. */
+	protected volatile int checkoutGeneration;
+	/** Thread the pool uses this handle from while it is not leased (connection tests, check-in hook), only set if
+	 * reuseConnectionHandle is set. */
+	protected volatile Thread poolThread;
+	/** Free queue state: sitting in the free queue and up for grabs. */
+	protected static final int FREE_STATE_IDLE = 0;
+	/** Free queue state: taken by a borrower. */
+	protected static final int FREE_STATE_IN_USE = 1;
+	/** Free queue state: being tested in place by the connection tester while still in the free queue. */
+	protected static final int FREE_STATE_VALIDATING = 2;
+	/** Free queue state: taken off the free queue by a borrower while being tested; the tester decides what happens next. */
+	protected static final int FREE_STATE_DETACHED = 3;
+	/** Free queue state: destroyed while still in the free queue; whoever takes it off the queue drops it. */
+	protected static final int FREE_STATE_DEAD = 4;
+	/** One of the FREE_STATE_* values. Only maintained if idleConnectionTestInPlace is set. */
+	protected final AtomicInteger freeState = new AtomicInteger(FREE_STATE_IDLE);
+	/** Config setting. */
+	protected long connectionTestBypassWindowInMs;
+	/** Time a query last completed on this connection. Only maintained if connectionTestBypassWindowInMs is set. */
+	protected volatile long connectionLastProvenAliveInMs;
+	/** Statement the connectionTestStatement is run on with lightweightConnectionTest, created on the first test. */
+	protected Statement testStatement;
+	/** Config setting. */
+	protected boolean trackSessionState;
+	/** Last auto-commit mode set on the underlying connection, null if unknown. Only maintained if trackSessionState is set. */
+	protected Boolean autoCommitState;
+	/** Last read-only mode set on the underlying connection, null if unknown. */
+	protected Boolean readOnlyState;
+	/** Last catalog set on the underlying connection, null if unknown. */
+	protected String catalogState;
+	/** Last transaction isolation set on the underlying connection, -1 if unknown. */
+	protected int transactionIsolationState = -1;
+	/** If true, a statement may have run since the last commit/rollback while auto-commit was off. */
+	protected volatile boolean transactionDirty;
 
 	/*
 	 * From: http://publib.boulder.ibm.com/infocenter/db2luw/v8/index.jsp?topic=/com.ibm.db2.udb.doc/core/r0sttmsg.htm
@@ -227,6 +285,12 @@ public class ConnectionHandle implements Connection,Serializable{
 		this.detectUnresolvedTransactions = pool.getConfig().isDetectUnresolvedTransactions();
 		this.detectUnclosedStatements = pool.getConfig().isDetectUnclosedStatements();
 		this.closeOpenStatements = pool.getConfig().isCloseOpenStatements();
+		this.reuseConnectionHandle = pool.getConfig().isReuseConnectionHandle();
+		this.reuseStatementHandles = pool.getConfig().isReuseStatementHandles();
+		this.hotStatements = pool.hotStatements;
+		this.inListBucketingMemo = pool.inListBucketingMemo;
+		this.trackSessionState = pool.getConfig().isTrackSessionState();
+		this.connectionTestBypassWindowInMs = pool.getConfig().getConnectionTestBypassWindowInMs();
 		if (this.closeOpenStatements){
 			trackedStatement = new MapMaker().makeMap();
 		}
@@ -238,8 +302,13 @@ public class ConnectionHandle implements Connection,Serializable{
 		this.logStatementsEnabled = pool.getConfig().isLogStatementsEnabled();
 		int cacheSize = pool.getConfig().getStatementsCacheSize();
 		if ( (cacheSize > 0) && newConnection ) {
-			this.preparedStatementCache = new StatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics());
-			this.callableStatementCache = new StatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics());
+			if ("BOUNDED".equals(pool.getConfig().getStatementsCacheType())){
+				this.preparedStatementCache = new BoundedStatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics(), pool.statementCacheBudget);
+				this.callableStatementCache = new BoundedStatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics(), pool.statementCacheBudget);
+			} else {
+				this.preparedStatementCache = new StatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics(), pool.statementCacheBudget);
+				this.callableStatementCache = new StatementCache(cacheSize, pool.getConfig().isStatisticsEnabled(), pool.getStatistics(), pool.statementCacheBudget);
+			}
 			this.statementCachingEnabled = true;
 		}
 
@@ -258,11 +327,17 @@ public class ConnectionHandle implements Connection,Serializable{
 				this.connection = MemorizeTransactionProxy.memorize(this.connection, this);
 			}
 		}
+		if (recreating && this.trackSessionState){
+			// we don't know the state of the connection yet; recreateConnectionHandle resets it once it has copied it over.
+			return;
+		}
 		if(!newConnection && !connection.getAutoCommit() && !connection.isClosed()){
 			connection.rollback();
 		}
 		if (this.defaultAutoCommit != null){
 			setAutoCommit(this.defaultAutoCommit);
+		} else if (this.trackSessionState){
+			getAutoCommit(); // records the driver's initial mode
 		}
 		if (this.defaultReadOnly != null){
 			setReadOnly(this.defaultReadOnly);
@@ -295,6 +370,19 @@ public class ConnectionHandle implements Connection,Serializable{
 		handle.connectionHook = this.connectionHook;
 		handle.possiblyBroken = this.possiblyBroken;
 		handle.debugHandle = this.debugHandle;
+		handle.addedToPartition = this.addedToPartition;
+		handle.connectionLastProvenAliveInMs = this.connectionLastProvenAliveInMs;
+		handle.testStatement = this.testStatement;
+		handle.hotStatementHits = this.hotStatementHits;
+		handle.leakDetectionCheckouts = this.leakDetectionCheckouts;
+		if (this.trackSessionState){
+			handle.autoCommitState = this.autoCommitState;
+			handle.readOnlyState = this.readOnlyState;
+			handle.catalogState = this.catalogState;
+			handle.transactionIsolationState = this.transactionIsolationState;
+			handle.transactionDirty = this.transactionDirty;
+			handle.resetSessionState();
+		}
 		this.connection = null;
 		
 		return handle;
@@ -464,34 +552,45 @@ public class ConnectionHandle implements Connection,Serializable{
 	 * 
 	 */
 	private void checkClosed() throws SQLException {
-		if (this.logicallyClosed.get()) {
+		if (this.logicallyClosed.get() || (this.reuseConnectionHandle && isLeaseOver())) {
 			throw new SQLException("Connection is closed!", "08003");
 		}
 	}
 
 	/**
-	 * Release the connection back to the pool. 
+	 * Release the connection back to the pool. If release helper threads are configured, the connection
+	 * is handed over to them for cleanup and this call returns immediately.
 	 * 
 	 * @throws SQLException Never really thrown
 	 */
 	public void close() throws SQLException {
-		try {
-
-			if (this.resetConnectionOnClose /*FIXME: && !getAutoCommit() && !isTxResolved() */){
-				/*if (this.autoCommitStackTrace != null){
-						logger.debug(this.autoCommitStackTrace);
-						this.autoCommitStackTrace = null; 
-					} else {
-						logger.debug(DISABLED_AUTO_COMMIT_WARNING);
-					}*/
-				rollback();
-				if (!getAutoCommit()){
-					setAutoCommit(true);
-				}
+		if (this.reuseConnectionHandle){
+			int generation = this.leaseGeneration.get();
+			if ((generation & 1) == 0 || !this.leaseGeneration.compareAndSet(generation, generation + 1)){
+				// already returned; this handle may be sitting in the pool or be in use by someone else by now.
+				logDoubleClose();
+				return;
 			}
-
+		}
+		BlockingQueue<ConnectionHandle> pendingRelease = this.pool.connectionsPendingRelease;
+		try {
 			if (this.logicallyClosed.compareAndSet(false, true)) {
-
+				if (this.pool.leakDetector != null){
+					this.pool.leakDetector.release(this);
+				}
+				if (this.pool.statisticsEnabled || this.pool.autoScaling){
+					long holdTime = System.nanoTime() - this.connectionCheckoutTimeInNanos;
+					if (this.pool.statisticsEnabled){
+						this.pool.statistics.addConnectionHoldTime(holdTime);
+						if (this.connectionTag != null){
+							this.connectionTag.recordRelease(holdTime);
+							this.connectionTag = null;
+						}
+					}
+					if (this.pool.autoScaling){
+						this.originatingPartition.recordRelease(holdTime);
+					}
+				}
 
 				if (this.threadWatch != null){
 					this.threadWatch.interrupt(); // if we returned the connection to the pool, terminate thread watch thread if it's
@@ -500,52 +599,228 @@ public class ConnectionHandle implements Connection,Serializable{
 					this.threadWatch = null;
 				}
 
-				if (this.closeOpenStatements){
-					for (Entry<Statement, String> statementEntry: this.trackedStatement.entrySet()){
-						statementEntry.getKey().close();
-						if (this.detectUnclosedStatements){
-							logger.warn(String.format(UNCLOSED_LOG_ERROR_MESSAGE, statementEntry.getValue()));		
-						}
-					}
-					this.trackedStatement.clear();
-				} 
+				if (this.doubleCloseCheck){
+					this.doubleCloseException = this.pool.captureStackTrace(CLOSED_TWICE_EXCEPTION_MESSAGE);
+				}
 
-				if (!this.connectionTrackingDisabled){
-					pool.getFinalizableRefs().remove(this.connection);
+				if (pendingRelease != null){
+					if (!pendingRelease.offer(this)){ // shouldn't happen, the queue can hold every connection.
+						completeRelease();
+					}
+				} else if (this.resetConnectionOnClose /*FIXME: && !getAutoCommit() && !isTxResolved() */){
+					/*if (this.autoCommitStackTrace != null){
+							logger.debug(this.autoCommitStackTrace);
+							this.autoCommitStackTrace = null; 
+						} else {
+							logger.debug(DISABLED_AUTO_COMMIT_WARNING);
+						}*/
+					// only reset once we own the close: the connection is still ours and can't be picked up by anyone else yet.
+					try {
+						resetOnClose();
+					} catch (SQLException e) {
+						releaseToPool(); // we're logically closed already; the pool revalidates it since it's marked as possibly broken.
+						throw e;
+					}
+					releaseToPool();
+				} else {
+					releaseToPool();
 				}
+			} else {
+				logDoubleClose();
+			}
+		} catch (SQLException e) {
+			throw markPossiblyBroken(e);
+		}
+	}
 
-				ConnectionHandle handle = null;
+	/** Performs the part of close() that was deferred to a release helper thread: resets the connection (if 
+	 * resetConnectionOnClose is set) and places it back in the pool. A failed reset leaves the connection marked 
+	 * as possibly broken so that the pool tests it before handing it out again.
+	 * @throws SQLException on error
+	 */
+	protected void completeRelease() throws SQLException {
+		if (this.resetConnectionOnClose){
+			try {
+				resetOnClose();
+			} catch (SQLException e) {
+				logger.error("Failed to reset connection on close", e);
+			}
+		}
+		try {
+			releaseToPool();
+		} catch (SQLException e) {
+			throw markPossiblyBroken(e);
+		}
+	}
 
-				//recreate can throw a SQLException in constructor on recreation
-				try {
-				    handle = this.recreateConnectionHandle();
-				    this.pool.connectionStrategy.cleanupConnection(this, handle);
-				    this.pool.releaseConnection(handle);				    
-				} catch(SQLException e) {
-				    //check if the connection was already closed by the recreation
-				    if (!isClosed()) {
-				    	this.pool.connectionStrategy.cleanupConnection(this, handle);
-				    	this.pool.releaseConnection(this);
-				    }
-				    throw e;
+	/** Rolls back any pending work and turns auto-commit back on, as configured by resetConnectionOnClose. Talks
+	 * to the internal connection directly since the handle may already be logically closed.
+	 * @throws SQLException on error
+	 */
+	private void resetOnClose() throws SQLException {
+		try {
+			if (!this.trackSessionState || this.transactionDirty){
+				this.connection.rollback();
+				this.txResolved = true;
+				this.transactionDirty = false;
+			}
+			if (this.trackSessionState ? !Boolean.TRUE.equals(this.autoCommitState) : !this.connection.getAutoCommit()){
+				this.connection.setAutoCommit(true);
+				this.txResolved = true;
+				if (this.trackSessionState){
+					this.autoCommitState = true;
 				}
-				
-				
-				if (this.doubleCloseCheck){
-					this.doubleCloseException = this.pool.captureStackTrace(CLOSED_TWICE_EXCEPTION_MESSAGE);
+			}
+		} catch (SQLException e) {
+			throw markPossiblyBroken(e);
+		}
+	}
+
+	/** Closes off any statements the application left open and places the connection back in the pool, either
+	 * as a recreated handle or, if reuseConnectionHandle is set, as this very handle.
+	 * @throws SQLException on error
+	 */
+	private void releaseToPool() throws SQLException {
+		if (this.closeOpenStatements){
+			for (Entry<Statement, String> statementEntry: this.trackedStatement.entrySet()){
+				statementEntry.getKey().close();
+				if (this.detectUnclosedStatements){
+					logger.warn(String.format(UNCLOSED_LOG_ERROR_MESSAGE, statementEntry.getValue()));		
 				}
-			} else {
-				if (this.doubleCloseCheck && this.doubleCloseException != null){
-					String currentLocation = this.pool.captureStackTrace("Last closed trace from thread ["+Thread.currentThread().getName()+"]:\n");
-					logger.error(String.format(LOG_ERROR_MESSAGE, this.doubleCloseException, currentLocation));
+			}
+			this.trackedStatement.clear();
+		} 
+
+		if (this.reuseConnectionHandle){
+			releaseForReuse();
+			return;
+		}
+
+		if (!this.connectionTrackingDisabled){
+			pool.getFinalizableRefs().remove(this.connection);
+		}
+
+		ConnectionHandle handle = null;
+
+		//recreate can throw a SQLException in constructor on recreation
+		try {
+		    handle = this.recreateConnectionHandle();
+		    this.pool.connectionStrategy.cleanupConnection(this, handle);
+		    this.pool.releaseConnection(handle);				    
+		} catch(SQLException e) {
+		    //check if the connection was already closed by the recreation
+		    if (!isClosed()) {
+		    	this.pool.connectionStrategy.cleanupConnection(this, handle);
+		    	this.pool.releaseConnection(this);
+		    }
+		    throw e;
+		}
+	}
+
+	/** With reuseConnectionHandle, tells whether the lease this handle was last checked out with has ended. A stale 
+	 * reference held on to from that lease then sees a closed connection, even though the pool (or the next borrower) 
+	 * carries on using this very handle. A handle that was never leased is open, as a new one would be.
+	 * @return true if the handle has been returned since it was checked out
+	 */
+	private boolean isLeaseOver() {
+		int generation = this.leaseGeneration.get();
+		if (generation == this.checkoutGeneration && (generation & 1) == 1){
+			return false;
+		}
+		return generation != 0 && this.poolThread != Thread.currentThread();
+	}
+
+	/** Logs where the connection was previously closed, if doubleCloseCheck is enabled. */
+	private void logDoubleClose() {
+		if (this.doubleCloseCheck && this.doubleCloseException != null){
+			String currentLocation = this.pool.captureStackTrace("Last closed trace from thread ["+Thread.currentThread().getName()+"]:\n");
+			logger.error(String.format(LOG_ERROR_MESSAGE, this.doubleCloseException, currentLocation));
+		}
+	}
+
+	/** Returns this very handle to the pool instead of a recreated copy. The session is put back to the
+	 * configured defaults here since there's no constructor run to do it. The finalizer tracking entry is left
+	 * in place since it keeps pointing at the right handle.
+	 * @throws SQLException on error
+	 */
+	private void releaseForReuse() throws SQLException {
+		// from the pool's point of view this is now a fresh, open handle (just like a recreated one).
+		this.logicallyClosed.set(false);
+		try {
+			resetSessionState();
+		} finally {
+			if (!isLogicallyClosed()){ // i.e. not destroyed while resetting
+				this.pool.connectionStrategy.cleanupConnection(this, this);
+				this.pool.releaseConnection(this);
+			}
+		}
+	}
+
+	/** Rolls back any open transaction and applies the configured connection defaults, as the constructor does
+	 * for a recreated handle. If trackSessionState is set, only what differs from the recorded state is sent 
+	 * to the driver.
+	 * @throws SQLException on error
+	 */
+	protected void resetSessionState() throws SQLException {
+		try {
+			if (this.trackSessionState){
+				if (this.transactionDirty && !Boolean.TRUE.equals(this.autoCommitState)){
+					this.connection.rollback();
 				}
+				this.transactionDirty = false;
+			} else if (!this.connection.getAutoCommit() && !this.connection.isClosed()){
+				this.connection.rollback();
+			}
+			if (this.defaultAutoCommit != null && !(this.trackSessionState && this.defaultAutoCommit.equals(this.autoCommitState))){
+				this.connection.setAutoCommit(this.defaultAutoCommit);
+				this.autoCommitState = this.defaultAutoCommit;
+			}
+			if (this.defaultReadOnly != null && !(this.trackSessionState && this.defaultReadOnly.equals(this.readOnlyState))){
+				this.connection.setReadOnly(this.defaultReadOnly);
+				this.readOnlyState = this.defaultReadOnly;
+			}
+			if (this.defaultCatalog != null && !(this.trackSessionState && this.defaultCatalog.equals(this.catalogState))){
+				this.connection.setCatalog(this.defaultCatalog);
+				this.catalogState = this.defaultCatalog;
+			}
+			if (this.defaultTransactionIsolationValue != -1 && !(this.trackSessionState && this.defaultTransactionIsolationValue == this.transactionIsolationState)){
+				this.connection.setTransactionIsolation(this.defaultTransactionIsolationValue);
+				this.transactionIsolationState = this.defaultTransactionIsolationValue;
 			}
 		} catch (SQLException e) {
+			forgetSessionState();
 			throw markPossiblyBroken(e);
 		}
+		this.txResolved = this.defaultAutoCommit == null || this.defaultAutoCommit;
+		this.autoCommitStackTrace = null;
+		this.threadUsingConnection = null;
 	}
 
 
+	/** Marks the session state as unknown so that the next reset sends everything to the driver again. */
+	private void forgetSessionState(){
+		this.autoCommitState = null;
+		this.readOnlyState = null;
+		this.catalogState = null;
+		this.transactionIsolationState = -1;
+		this.transactionDirty = true;
+	}
+
+	/** Records that a statement just completed on this connection, ie the database is known to be there. Called by 
+	 * the statement handles. */
+	protected void markQuerySucceeded(){
+		if (this.connectionTestBypassWindowInMs > 0){
+			this.connectionLastProvenAliveInMs = System.currentTimeMillis();
+		}
+	}
+
+	/** Records that a statement is about to run on this connection. Called by the statement handles. */
+	protected void markStatementExecuted(){
+		if (this.trackSessionState && !this.transactionDirty && !Boolean.TRUE.equals(this.autoCommitState)){
+			this.transactionDirty = true;
+		}
+	}
+
 	/**
 	 * Close off the connection.
 	 * 
@@ -554,6 +829,14 @@ public class ConnectionHandle implements Connection,Serializable{
 	protected void internalClose() throws SQLException {
 		try {
 			clearStatementCaches(true);
+			if (this.testStatement != null){
+				try {
+					this.testStatement.close();
+				} catch (SQLException e) {
+					// the connection is going away anyway.
+				}
+				this.testStatement = null;
+			}
 			if (this.connection != null){ // safety!
 				this.connection.close();
 
@@ -573,6 +856,7 @@ public class ConnectionHandle implements Connection,Serializable{
 		try {
 			this.connection.commit();
 			this.txResolved = true;
+			this.transactionDirty = false;
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -786,6 +1070,9 @@ public class ConnectionHandle implements Connection,Serializable{
 		checkClosed();
 		try {
 			result = this.connection.getAutoCommit();
+			if (this.trackSessionState){
+				this.autoCommitState = result;
+			}
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -862,11 +1149,20 @@ public class ConnectionHandle implements Connection,Serializable{
 	}
 
 
-	/** Returns true if this connection has been (logically) closed.
+	/** Returns true if this connection has been (logically) closed. With reuseConnectionHandle, this is also the case
+	 * once the handle has been returned, for anyone but the pool.
 	 * @return the logicallyClosed setting.
 	 */
 	//	@Override
 	public boolean isClosed() {
+		return this.logicallyClosed.get() || (this.reuseConnectionHandle && isLeaseOver());
+	}
+
+	/** Returns true if this handle has been closed as far as the pool is concerned, i.e. destroyed or replaced by a 
+	 * recreated handle. Unlike isClosed(), a handle sitting in the pool with reuseConnectionHandle set is open.
+	 * @return the logicallyClosed setting.
+	 */
+	protected boolean isLogicallyClosed() {
 		return this.logicallyClosed.get();
 	}
 
@@ -894,7 +1190,7 @@ public class ConnectionHandle implements Connection,Serializable{
 
 	public CallableStatement prepareCall(String sql) throws SQLException {
 		CallableStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
 
@@ -911,9 +1207,14 @@ public class ConnectionHandle implements Connection,Serializable{
 			if (result == null){
 				result = new CallableStatementHandle(this.connection.prepareCall(sql),
 						sql, this, cacheKey, this.callableStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new CallableStatementHandle(result.getInternalCallableStatement(),
-						result.sql, this, cacheKey, this.callableStatementCache);
+				CallableStatementHandle cached = result;
+				result = new CallableStatementHandle(cached.getInternalCallableStatement(),
+						cached.sql, this, cacheKey, this.callableStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
 
@@ -937,7 +1238,7 @@ public class ConnectionHandle implements Connection,Serializable{
 
 	public CallableStatement prepareCall(String sql, int resultSetType,	int resultSetConcurrency) throws SQLException {
 		CallableStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
 
@@ -947,16 +1248,23 @@ public class ConnectionHandle implements Connection,Serializable{
 				statStart = System.nanoTime();
 			}
 			if (this.statementCachingEnabled) {
-				cacheKey = this.callableStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency);
-				result = (CallableStatementHandle) this.callableStatementCache.get(cacheKey);
+				result = (CallableStatementHandle) this.callableStatementCache.get(sql, resultSetType, resultSetConcurrency);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.callableStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency);
+				}
 				result = new CallableStatementHandle(this.connection.prepareCall(sql, resultSetType, resultSetConcurrency),
 						sql, this, cacheKey, this.callableStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new CallableStatementHandle(result.getInternalCallableStatement(),
-						result.sql, this, cacheKey, this.callableStatementCache);
+				CallableStatementHandle cached = result;
+				result = new CallableStatementHandle(cached.getInternalCallableStatement(),
+						cached.sql, this, cached.getCacheKey(), this.callableStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
 
@@ -982,7 +1290,7 @@ public class ConnectionHandle implements Connection,Serializable{
 			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
 
 		CallableStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
 
@@ -992,16 +1300,23 @@ public class ConnectionHandle implements Connection,Serializable{
 				statStart = System.nanoTime();
 			}
 			if (this.statementCachingEnabled) {
-				cacheKey = this.callableStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-				result = (CallableStatementHandle) this.callableStatementCache.get(cacheKey);
+				result = (CallableStatementHandle) this.callableStatementCache.get(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.callableStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+				}
 				result = new CallableStatementHandle(this.connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability),
 						sql, this, cacheKey, this.callableStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new CallableStatementHandle(result.getInternalCallableStatement(),
-						result.sql, this, cacheKey, this.callableStatementCache);
+				CallableStatementHandle cached = result;
+				result = new CallableStatementHandle(cached.getInternalCallableStatement(),
+						cached.sql, this, cached.getCacheKey(), this.callableStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
 
@@ -1025,9 +1340,13 @@ public class ConnectionHandle implements Connection,Serializable{
 
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart=0;
@@ -1037,14 +1356,23 @@ public class ConnectionHandle implements Connection,Serializable{
 			if (this.statementCachingEnabled) {
 				cacheKey = sql;
 				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				if (result != null && this.hotStatements != null && (++this.hotStatementHits & (HotStatementSet.SAMPLE_RATE - 1)) == 0){
+					this.hotStatements.record(sql, HotStatementSet.SAMPLE_RATE);
+				}
 			}
 
 			if (result == null){
 				result =  new PreparedStatementHandle(this.connection.prepareStatement(sql), sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(), result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(), cached.sql, this, cacheKey, this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1067,9 +1395,13 @@ public class ConnectionHandle implements Connection,Serializable{
 
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart = 0;
@@ -1077,16 +1409,24 @@ public class ConnectionHandle implements Connection,Serializable{
 				statStart  = System.nanoTime();
 			}
 			if (this.statementCachingEnabled) {
-				cacheKey = this.preparedStatementCache.calculateCacheKey(sql, autoGeneratedKeys);
-				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				result = (PreparedStatementHandle) this.preparedStatementCache.get(sql, autoGeneratedKeys);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.preparedStatementCache.calculateCacheKey(sql, autoGeneratedKeys);
+				}
 				result = new PreparedStatementHandle(this.connection.prepareStatement(sql, autoGeneratedKeys), sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(), result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(), cached.sql, this, cached.getCacheKey(), this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch  && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1111,9 +1451,13 @@ public class ConnectionHandle implements Connection,Serializable{
 	public PreparedStatement prepareStatement(String sql, int[] columnIndexes)
 			throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart=0;
@@ -1122,18 +1466,26 @@ public class ConnectionHandle implements Connection,Serializable{
 			}
 
 			if (this.statementCachingEnabled) {
-				cacheKey = this.preparedStatementCache.calculateCacheKey(sql, columnIndexes);
-				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				result = (PreparedStatementHandle) this.preparedStatementCache.get(sql, columnIndexes);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.preparedStatementCache.calculateCacheKey(sql, columnIndexes);
+				}
 				result = new PreparedStatementHandle(this.connection.prepareStatement(sql, columnIndexes),
 						sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(),
-						result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(),
+						cached.sql, this, cached.getCacheKey(), this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch  && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1158,9 +1510,13 @@ public class ConnectionHandle implements Connection,Serializable{
 	public PreparedStatement prepareStatement(String sql, String[] columnNames)
 			throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart=0;
@@ -1168,18 +1524,26 @@ public class ConnectionHandle implements Connection,Serializable{
 				statStart = System.nanoTime();
 			}
 			if (this.statementCachingEnabled) {
-				cacheKey = this.preparedStatementCache.calculateCacheKey(sql, columnNames);
-				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				result = (PreparedStatementHandle) this.preparedStatementCache.get(sql, columnNames);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.preparedStatementCache.calculateCacheKey(sql, columnNames);
+				}
 				result = new PreparedStatementHandle(this.connection.prepareStatement(sql, columnNames),
 						sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(),
-						result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(),
+						cached.sql, this, cached.getCacheKey(), this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1203,9 +1567,13 @@ public class ConnectionHandle implements Connection,Serializable{
 
 	public PreparedStatement prepareStatement(String sql, int resultSetType,  int resultSetConcurrency) throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart=0;
@@ -1213,18 +1581,26 @@ public class ConnectionHandle implements Connection,Serializable{
 				statStart = System.nanoTime();
 			}
 			if (this.statementCachingEnabled) {
-				cacheKey = this.preparedStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency);
-				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				result = (PreparedStatementHandle) this.preparedStatementCache.get(sql, resultSetType, resultSetConcurrency);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.preparedStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency);
+				}
 				result = new PreparedStatementHandle(this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency),
 						sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(),
-						result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(),
+						cached.sql, this, cached.getCacheKey(), this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1248,9 +1624,13 @@ public class ConnectionHandle implements Connection,Serializable{
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
 			throws SQLException {
 		PreparedStatementHandle result = null;
-		String cacheKey = null;
+		Object cacheKey = null;
 
 		checkClosed();
+		InListBucketing inListBucketing = this.inListBucketingMemo != null ? InListBucketing.rewrite(sql, this.inListBucketingMemo) : null;
+		if (inListBucketing != null){
+			sql = inListBucketing.getSql();
+		}
 
 		try {
 			long statStart=0;
@@ -1259,18 +1639,26 @@ public class ConnectionHandle implements Connection,Serializable{
 			}
 
 			if (this.statementCachingEnabled) {
-				cacheKey = this.preparedStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
-				result = (PreparedStatementHandle) this.preparedStatementCache.get(cacheKey);
+				result = (PreparedStatementHandle) this.preparedStatementCache.get(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
 			}
 
 			if (result == null){
+				if (this.statementCachingEnabled){
+					cacheKey = this.preparedStatementCache.calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+				}
 				result = new PreparedStatementHandle(this.connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability),
 						sql, this, cacheKey, this.preparedStatementCache);
+			} else if (this.reuseStatementHandles){
+				result.reopen(this);
 			} else {
-				result = new PreparedStatementHandle(result.getInternalPreparedStatement(),
-						result.sql, this, cacheKey, this.preparedStatementCache);
+				PreparedStatementHandle cached = result;
+				result = new PreparedStatementHandle(cached.getInternalPreparedStatement(),
+						cached.sql, this, cached.getCacheKey(), this.preparedStatementCache);
+				result.logTemplate = cached.logTemplate;
+				result.copyFingerprint(cached);
 			}
 			result.setLogicallyOpen();
+			result.setInListBucketing(inListBucketing);
 
 			if (this.pool.closeConnectionWatch && this.statementCachingEnabled){ // debugging mode enabled?
 				result.setOpenStackTrace(this.pool.captureStackTrace(STATEMENT_NOT_CLOSED));
@@ -1305,6 +1693,7 @@ public class ConnectionHandle implements Connection,Serializable{
 		try {
 			this.connection.rollback();
 			this.txResolved = true;
+			this.transactionDirty = false;
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -1323,7 +1712,15 @@ public class ConnectionHandle implements Connection,Serializable{
 	public void setAutoCommit(boolean autoCommit) throws SQLException {
 		checkClosed();
 		try {
-			this.connection.setAutoCommit(autoCommit);
+			if (!this.trackSessionState || this.autoCommitState == null || this.autoCommitState != autoCommit){
+				this.connection.setAutoCommit(autoCommit);
+				if (this.trackSessionState){
+					this.autoCommitState = autoCommit;
+					if (autoCommit){
+						this.transactionDirty = false; // switching auto-commit on commits the current transaction.
+					}
+				}
+			}
 			this.txResolved = autoCommit;
 			if (this.detectUnresolvedTransactions && !autoCommit){
 				this.autoCommitStackTrace = this.pool.captureStackTrace(SET_AUTO_COMMIT_FALSE_WAS_CALLED_MESSAGE);
@@ -1336,7 +1733,12 @@ public class ConnectionHandle implements Connection,Serializable{
 	public void setCatalog(String catalog) throws SQLException {
 		checkClosed();
 		try {
-			this.connection.setCatalog(catalog);
+			if (!this.trackSessionState || this.catalogState == null || !this.catalogState.equals(catalog)){
+				this.connection.setCatalog(catalog);
+				if (this.trackSessionState){
+					this.catalogState = catalog;
+				}
+			}
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -1355,7 +1757,12 @@ public class ConnectionHandle implements Connection,Serializable{
 	public void setReadOnly(boolean readOnly) throws SQLException {
 		checkClosed();
 		try {
-			this.connection.setReadOnly(readOnly);
+			if (!this.trackSessionState || this.readOnlyState == null || this.readOnlyState != readOnly){
+				this.connection.setReadOnly(readOnly);
+				if (this.trackSessionState){
+					this.readOnlyState = readOnly;
+				}
+			}
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -1365,6 +1772,7 @@ public class ConnectionHandle implements Connection,Serializable{
 		checkClosed();
 		Savepoint result = null;
 		try {
+			markStatementExecuted();
 			result = this.connection.setSavepoint();
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
@@ -1376,6 +1784,7 @@ public class ConnectionHandle implements Connection,Serializable{
 		checkClosed();
 		Savepoint result = null;
 		try {
+			markStatementExecuted();
 			result = this.connection.setSavepoint(name);
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
@@ -1386,7 +1795,12 @@ public class ConnectionHandle implements Connection,Serializable{
 	public void setTransactionIsolation(int level) throws SQLException {
 		checkClosed();
 		try {
-			this.connection.setTransactionIsolation(level);
+			if (!this.trackSessionState || this.transactionIsolationState != level){
+				this.connection.setTransactionIsolation(level);
+				if (this.trackSessionState){
+					this.transactionIsolationState = level;
+				}
+			}
 		} catch (SQLException e) {
 			throw markPossiblyBroken(e);
 		}
@@ -1480,12 +1894,57 @@ public class ConnectionHandle implements Connection,Serializable{
 		this.originatingPartition = originatingPartition;
 	}
 
+	/** Called by a borrower on a connection it took off the free queue when idleConnectionTestInPlace is set.
+	 * @return true if the connection is now the caller's, false if it must be skipped (it is being 
+	 * tested, in which case the tester takes care of it, or it has already been destroyed)
+	 */
+	protected boolean claimFromFreeQueue() {
+		while (true){
+			int state = this.freeState.get();
+			if (state == FREE_STATE_IDLE){
+				if (this.freeState.compareAndSet(FREE_STATE_IDLE, FREE_STATE_IN_USE)){
+					return true;
+				}
+			} else if (state == FREE_STATE_VALIDATING){
+				if (this.freeState.compareAndSet(FREE_STATE_VALIDATING, FREE_STATE_DETACHED)){
+					return false;
+				}
+			} else {
+				return false;
+			}
+		}
+	}
+
+	/** Marks this free connection as being tested in place, unless a borrower got to it first.
+	 * @return true if the caller may now test the connection
+	 */
+	protected boolean beginValidation() {
+		return this.freeState.compareAndSet(FREE_STATE_IDLE, FREE_STATE_VALIDATING);
+	}
+
+	/** Ends a test started with beginValidation.
+	 * @param keep true if the connection passed and goes back to being free, false if it is to be destroyed
+	 * @return true if a borrower took the connection off the free queue during the test, in which case the 
+	 * caller has to put it back in the partition (or destroy it)
+	 */
+	protected boolean endValidation(boolean keep) {
+		int newState = keep ? FREE_STATE_IDLE : FREE_STATE_DEAD;
+		if (this.freeState.compareAndSet(FREE_STATE_VALIDATING, newState)){
+			return false;
+		}
+		this.freeState.set(newState); // detached: nobody else is looking at it anymore.
+		return true;
+	}
+
 	/**
 	 * Renews this connection, i.e. Sets this connection to be logically open
 	 * (although it was never really physically closed)
 	 */
 	protected void renewConnection() {
 		this.logicallyClosed.set(false);
+		if (this.reuseConnectionHandle){
+			this.checkoutGeneration = this.leaseGeneration.incrementAndGet();
+		}
 		this.threadUsingConnection = Thread.currentThread();
 		if (this.doubleCloseCheck){
 			this.doubleCloseException = null;
@@ -1512,6 +1971,73 @@ public class ConnectionHandle implements Connection,Serializable{
 		}
 	}
 
+	/** Returns the number of statements held in the statement caches. Only a hint unless called by whoever 
+	 * holds this connection.
+	 * @return number of cached statements
+	 */
+	protected int getCachedStatementCount() {
+		if (!this.statementCachingEnabled){
+			return 0;
+		}
+		return this.preparedStatementCache.size() + this.callableStatementCache.size();
+	}
+
+	/** Returns true if the given statement is in the prepared statement cache. Only a hint unless called by 
+	 * whoever holds this connection.
+	 * @param sql statement
+	 * @return true if cached
+	 */
+	protected boolean hasCachedStatement(String sql) {
+		if (this.inListBucketingMemo != null){
+			InListBucketing inListBucketing = InListBucketing.rewrite(sql, this.inListBucketingMemo);
+			if (inListBucketing != null){
+				sql = inListBucketing.getSql();
+			}
+		}
+		return this.statementCachingEnabled && this.preparedStatementCache.containsKey(sql);
+	}
+
+	/** Evicts up to count statements from the statement caches, if they are of the evicting kind. Must only be 
+	 * called by whoever holds this connection.
+	 * @param count max number of statements to evict
+	 * @return number of statements evicted
+	 */
+	protected int trimStatementCaches(int count) {
+		int evicted = 0;
+		if (this.statementCachingEnabled){
+			if (this.preparedStatementCache instanceof BoundedStatementCache){
+				evicted = ((BoundedStatementCache) this.preparedStatementCache).trim(count);
+			}
+			if (evicted < count && this.callableStatementCache instanceof BoundedStatementCache){
+				evicted += ((BoundedStatementCache) this.callableStatementCache).trim(count - evicted);
+			}
+		}
+		return evicted;
+	}
+
+	/** Prepares the given statements and leaves them in the statement cache so that they are found there right 
+	 * from the first use of this connection. Called before the connection is handed out.
+	 * @param sqls statements to prepare
+	 * @return number of statements prepared
+	 */
+	protected int warmUpStatementCache(List<String> sqls) {
+		int prepared = 0;
+		if (this.statementCachingEnabled){
+			for (String sql: sqls){
+				try {
+					new PreparedStatementHandle(this.connection.prepareStatement(sql), sql, this, sql, this.preparedStatementCache).close();
+					prepared++;
+				} catch (SQLException e) {
+					logger.debug("Could not prepare statement while warming up the statement cache: "+sql, e);
+					if (e.getSQLState() != null && e.getSQLState().startsWith("08")){
+						break; // connection exception, no point in going on.
+					}
+				}
+			}
+		}
+		return prepared;
+	}
+
 	/** Returns a debug handle as previously set by an application
 	 * @return DebugHandle
 	 */
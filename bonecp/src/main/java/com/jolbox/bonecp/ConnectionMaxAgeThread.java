@@ -18,6 +18,8 @@
 package com.jolbox.bonecp;
 
 
+import java.util.concurrent.BlockingQueue;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +59,10 @@ public class ConnectionMaxAgeThread implements Runnable {
 
 	/** Invoked periodically. */
 	public void run() {
+		if (this.pool.idleConnectionTestInPlace){
+			expireInPlace();
+			return;
+		}
 		ConnectionHandle connection = null;
 		long tmp;
 		long nextCheckInMs = this.maxAgeInMs;
@@ -86,7 +92,8 @@ public class ConnectionMaxAgeThread implements Runnable {
 					
 					if (this.lifoMode){
 						// we can't put it back normally or it will end up in front again.
-						if (!(connection.getOriginatingPartition().getFreeConnections().offer(connection))){
+						BlockingQueue<ConnectionHandle> queue = connection.getOriginatingPartition().getFreeConnections();
+						if (!(this.pool.connectionWaiters == null ? queue.offer(connection) : this.pool.connectionWaiters.release(connection, queue))){
 							closeConnection(connection);
 						}
 					} else {
@@ -105,17 +112,37 @@ public class ConnectionMaxAgeThread implements Runnable {
 	}
 
 
+	/** Closes off the expired free connections without taking the others out of the free queue 
+	 * (idleConnectionTestInPlace).
+	 */
+	private void expireInPlace() {
+		long currentTime = System.currentTimeMillis();
+		for (ConnectionHandle connection: this.partition.getFreeConnections()){
+			try {
+				if (connection.isExpired(currentTime) && connection.beginValidation()){
+					if (!connection.endValidation(false)){
+						this.partition.getFreeConnections().remove(connection); // if this fails, whoever polls it next drops it.
+					}
+					closeConnection(connection);
+				}
+			} catch (Throwable e) {
+				logger.error("Connection max age thread exception.", e);
+			}
+		}
+	}
+
+
 	/** Closes off this connection
 	 * @param connection to close
 	 */
 	protected void closeConnection(ConnectionHandle connection) {
 		if (connection != null) {
-			if (connection.isClosed()) {
+			if (connection.isLogicallyClosed()) {
 				return;
 			}
 			try {
 				connection.lockForClose();
-				if (connection.isClosed()) {
+				if (connection.isLogicallyClosed()) {
 					return;
 				}
 				ConnectionPartition partition = connection.getOriginatingPartition();
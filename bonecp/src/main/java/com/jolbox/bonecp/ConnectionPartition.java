@@ -23,6 +23,7 @@ import java.sql.SQLException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 
@@ -74,9 +75,63 @@ public class ConnectionPartition implements Serializable{
 	private String poolName;
 	/** Handle to the pool. */
 	protected BoneCP pool;
+	/** Number of connections the autoscaler wants this partition to have. Only used if autoscaling is enabled. */
+	protected volatile int autoScaleTarget;
+	/** Number of checkouts so far (maintained only if autoscaling is enabled). */
+	private final AtomicLong checkouts = new AtomicLong();
+	/** Total time spent waiting for a connection in getConnection, in nanoseconds. */
+	private final AtomicLong cumulativeWaitTimeInNanos = new AtomicLong();
+	/** Number of connections returned so far (maintained only if autoscaling is enabled). */
+	private final AtomicLong releases = new AtomicLong();
+	/** Total time the application held on to connections, in nanoseconds. */
+	private final AtomicLong cumulativeHoldTimeInNanos = new AtomicLong();
 
 
 
+	/** Records a checkout for the autoscaler.
+	 * @param waitTimeInNanos time the application waited in getConnection
+	 */
+	protected void recordCheckout(long waitTimeInNanos) {
+		this.checkouts.incrementAndGet();
+		this.cumulativeWaitTimeInNanos.addAndGet(waitTimeInNanos);
+	}
+
+	/** Records a connection being returned, for the autoscaler.
+	 * @param holdTimeInNanos time the application held on to the connection
+	 */
+	protected void recordRelease(long holdTimeInNanos) {
+		this.releases.incrementAndGet();
+		this.cumulativeHoldTimeInNanos.addAndGet(holdTimeInNanos);
+	}
+
+	/** Returns the number of checkouts recorded so far.
+	 * @return checkouts
+	 */
+	protected long getCheckouts() {
+		return this.checkouts.get();
+	}
+
+	/** Returns the total time spent waiting in getConnection, in nanoseconds.
+	 * @return wait time
+	 */
+	protected long getCumulativeWaitTimeInNanos() {
+		return this.cumulativeWaitTimeInNanos.get();
+	}
+
+	/** Returns the number of connection returns recorded so far.
+	 * @return releases
+	 */
+	protected long getReleases() {
+		return this.releases.get();
+	}
+
+	/** Returns the total time connections were held by the application, in nanoseconds.
+	 * @return hold time
+	 */
+	protected long getCumulativeHoldTimeInNanos() {
+		return this.cumulativeHoldTimeInNanos.get();
+	}
+
 	/** Returns a handle to the poolWatchThreadSignalQueue
 	 * @return the poolWatchThreadSignal
 	 */
@@ -84,6 +139,13 @@ public class ConnectionPartition implements Serializable{
 		return this.poolWatchThreadSignalQueue;
 	}
 
+	/** Replaces the poolWatchThreadSignalQueue.
+	 * @param poolWatchThreadSignalQueue queue to use
+	 */
+	protected void setPoolWatchThreadSignalQueue(BlockingQueue<Object> poolWatchThreadSignalQueue) {
+		this.poolWatchThreadSignalQueue = poolWatchThreadSignalQueue;
+	}
+
 	/** Updates leased connections statistics
 	 * @param increment value to add/subtract
 	 */
@@ -106,6 +168,9 @@ public class ConnectionPartition implements Serializable{
 	 * @throws SQLException on error
 	 */
 	protected void addFreeConnection(ConnectionHandle connectionHandle) throws SQLException{
+		if (this.pool.hotStatements != null){
+			connectionHandle.warmUpStatementCache(this.pool.hotStatements.getHotStatements());
+		}
 		connectionHandle.setOriginatingPartition(this);
 		connectionHandle.setAddedToPartition();
 		// assume success to avoid racing where we insert an item in a queue and having that item immediately
@@ -117,7 +182,8 @@ public class ConnectionPartition implements Serializable{
 		
 		// the instant the following line is executed, consumers can start making use of this 
 		// connection.
-		if (!this.freeConnections.offer(connectionHandle)){
+		boolean added = this.pool.connectionWaiters == null ? this.freeConnections.offer(connectionHandle) : this.pool.connectionWaiters.release(connectionHandle, this.freeConnections);
+		if (!added){
 			// we failed. rollback.
 			updateCreatedConnections(-1); // compensate our createdConnection count.
 			
@@ -199,6 +265,7 @@ public class ConnectionPartition implements Serializable{
 		this.minConnections = config.getMinConnectionsPerPartition();
 		this.maxConnections = config.getMaxConnectionsPerPartition();
 		this.acquireIncrement = config.getAcquireIncrement();
+		this.autoScaleTarget = this.minConnections;
 		this.url = config.getJdbcUrl();
 		this.username = config.getUsername();
 		this.password = config.getPassword();
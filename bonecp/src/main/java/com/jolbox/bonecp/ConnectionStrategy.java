@@ -31,6 +31,14 @@ public interface ConnectionStrategy {
 	 * @throws SQLException on error
 	 */
 	Connection getConnection() throws SQLException;
+
+	/** Obtains a connection using the configured strategy, preferring one that has the given statement in its 
+	 * statement cache if the strategy supports it.
+	 * @param sqlHint statement about to be prepared, or null
+	 * @return Connection
+	 * @throws SQLException on error
+	 */
+	Connection getConnection(String sqlHint) throws SQLException;
 	
 	/** Obtains a connection using the configured strategy without blocking.
 	 * @return Connection
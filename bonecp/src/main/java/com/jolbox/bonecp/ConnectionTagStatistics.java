@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checkout statistics per connection tag, the tag being a name given by the application to the part of it
+ * asking for a connection (see BoneCP.getTaggedConnection and BoneCP.setConnectionTag).
+ *
+ * For each tag, the number of checkouts, the time waited for a connection and the time connections were held
+ * (from checkout until the application closes them) are kept. At most maxTags tags are tracked; checkouts with
+ * further tags are counted under OTHER_TAG.
+ *
+ * @author wallacew
+ *
+ */
+public class ConnectionTagStatistics implements Serializable {
+	/** uid */
+	private static final long serialVersionUID = -1519630547298403187L;
+	/** Tag under which checkouts are counted once maxTags tags are tracked. */
+	public static final String OTHER_TAG = "(other)";
+	/** Max number of tags tracked. */
+	private final int maxTags;
+	/** Statistics of each tag. */
+	private final ConcurrentMap<String, Tag> tags = new ConcurrentHashMap<String, Tag>();
+
+	/** Checkout statistics of one tag. */
+	public static class Tag implements Serializable {
+		/** uid */
+		private static final long serialVersionUID = 5217784123370316208L;
+		/** Tag. */
+		private final String name;
+		/** Number of checkouts. */
+		private final AtomicLong checkouts = new AtomicLong();
+		/** Total time connections were held, in ns. */
+		private final AtomicLong totalHoldTime = new AtomicLong();
+		/** Time waited for a connection. */
+		private final LatencyHistogram waitTime = new LatencyHistogram(1);
+		/** Time connections were held. */
+		private final LatencyHistogram holdTime = new LatencyHistogram(1);
+
+		/** Constructor.
+		 * @param name tag
+		 */
+		protected Tag(String name){
+			this.name = name;
+		}
+
+		/** Records a checkout.
+		 * @param waitTime time waited for the connection, in ns
+		 */
+		protected void recordCheckout(long waitTime){
+			this.checkouts.incrementAndGet();
+			this.waitTime.record(waitTime);
+		}
+
+		/** Records a connection being given back.
+		 * @param holdTime time the connection was held, in ns
+		 */
+		protected void recordRelease(long holdTime){
+			this.totalHoldTime.addAndGet(holdTime);
+			this.holdTime.record(holdTime);
+		}
+
+		/** Returns the tag.
+		 * @return tag
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/** Returns the number of checkouts.
+		 * @return checkouts
+		 */
+		public long getCheckouts() {
+			return this.checkouts.get();
+		}
+
+		/** Returns the total time connections were held.
+		 * @return time in ns
+		 */
+		public long getTotalHoldTime() {
+			return this.totalHoldTime.get();
+		}
+
+		/** Returns the distribution of the time waited for a connection.
+		 * @return histogram (ns)
+		 */
+		public LatencyHistogram getWaitTime() {
+			return this.waitTime;
+		}
+
+		/** Returns the distribution of the time connections were held.
+		 * @return histogram (ns)
+		 */
+		public LatencyHistogram getHoldTime() {
+			return this.holdTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ENGLISH, "%s: checkouts=%d held=%.1fms hold p50=%.3fms p99=%.3fms max=%.3fms wait p50=%.3fms p99=%.3fms max=%.3fms",
+					this.name, getCheckouts(), getTotalHoldTime() / 1000000.0, 
+					this.holdTime.getPercentile(50) / 1000000.0, this.holdTime.getPercentile(99) / 1000000.0, this.holdTime.getMax() / 1000000.0, 
+					this.waitTime.getPercentile(50) / 1000000.0, this.waitTime.getPercentile(99) / 1000000.0, this.waitTime.getMax() / 1000000.0);
+		}
+	}
+
+	/** Constructor.
+	 * @param maxTags max number of tags to track
+	 */
+	public ConnectionTagStatistics(int maxTags){
+		this.maxTags = maxTags;
+	}
+
+	/** Records a checkout.
+	 * @param tag tag of the checkout, or null
+	 * @param waitTime time waited for the connection, in ns
+	 * @return statistics to record the release in, null if the checkout had no tag
+	 */
+	public Tag recordCheckout(String tag, long waitTime){
+		if (tag == null){
+			return null;
+		}
+		Tag result = this.tags.get(tag);
+		if (result == null && this.tags.size() >= this.maxTags){
+			tag = OTHER_TAG;
+			result = this.tags.get(OTHER_TAG); // there once the table has filled up, don't build one to throw away.
+		}
+		if (result == null){
+			Tag newTag = new Tag(tag);
+			result = this.tags.putIfAbsent(tag, newTag);
+			if (result == null){
+				result = newTag;
+			}
+		}
+		result.recordCheckout(waitTime);
+		return result;
+	}
+
+	/** Returns the statistics of the tags tracked, most total hold time first.
+	 * @return tags
+	 */
+	public List<Tag> getTags(){
+		List<Tag> result = new ArrayList<Tag>(this.tags.values());
+		Collections.sort(result, new Comparator<Tag>() {
+			public int compare(Tag o1, Tag o2) {
+				long total1 = o1.getTotalHoldTime();
+				long total2 = o2.getTotalHoldTime();
+				return total1 > total2 ? -1 : (total1 == total2 ? 0 : 1);
+			}
+		});
+		return result;
+	}
+
+	/** Returns a line per tag, most total hold time first.
+	 * @return report
+	 */
+	public String[] getReport(){
+		List<Tag> ranked = getTags();
+		String[] result = new String[ranked.size()];
+		for (int i=0; i < result.length; i++){
+			result[i] = ranked.get(i).toString();
+		}
+		return result;
+	}
+
+	/** Forgets all tags. */
+	public void reset(){
+		this.tags.clear();
+	}
+}
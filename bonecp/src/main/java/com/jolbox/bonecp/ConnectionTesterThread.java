@@ -17,6 +17,11 @@
 package com.jolbox.bonecp;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -63,6 +68,10 @@ public class ConnectionTesterThread implements Runnable {
 
 	/** Invoked periodically. */
 	public void run() {
+		if (this.pool.idleConnectionTestInPlace){
+			testInPlace();
+			return;
+		}
 		ConnectionHandle connection = null;
 		long tmp;
 		try {
@@ -120,7 +129,8 @@ public class ConnectionTesterThread implements Runnable {
 						
 						if (this.lifoMode){
 							// we can't put it back normally or it will end up in front again.
-							if (!(connection.getOriginatingPartition().getFreeConnections().offer(connection))){
+							BlockingQueue<ConnectionHandle> queue = connection.getOriginatingPartition().getFreeConnections();
+							if (!(this.pool.connectionWaiters == null ? queue.offer(connection) : this.pool.connectionWaiters.release(connection, queue))){
 								closeConnection(connection);
 							}
 						} else {
@@ -140,17 +150,88 @@ public class ConnectionTesterThread implements Runnable {
 	}
 
 
+	/** Tests the free connections while leaving them in the free queue (idleConnectionTestInPlace). Each connection
+	 * due for a test is flagged as being tested so that a thread asking for a connection skips it rather than
+	 * waiting for us; only the connections that fail are taken out of the queue. Connections are tested up to 
+	 * idleConnectionTestConcurrency at a time rather than one every 20ms.
+	 */
+	private void testInPlace() {
+		try {
+			long currentTimeInMs = System.currentTimeMillis();
+			List<ConnectionHandle> toTest = new ArrayList<ConnectionHandle>();
+			for (ConnectionHandle connection: this.partition.getFreeConnections()){
+				// idle for too long (or marked as broken)?
+				boolean expired = connection.isPossiblyBroken() || 
+						((this.idleMaxAgeInMs > 0) && (currentTimeInMs-connection.getConnectionLastUsedInMs() > this.idleMaxAgeInMs));
+				// time to send a new keep-alive test statement?
+				boolean testDue = this.idleConnectionTestPeriodInMs > 0 && (currentTimeInMs-connection.getConnectionLastUsedInMs() > this.idleConnectionTestPeriodInMs) &&
+						(currentTimeInMs-connection.getConnectionLastResetInMs() >= this.idleConnectionTestPeriodInMs);
+				if ((expired || testDue) && connection.beginValidation()){
+					if (expired){
+						endTest(connection, false);
+					} else {
+						toTest.add(connection);
+					}
+				}
+			}
+
+			ExecutorService tester = this.pool.idleConnectionTester;
+			if (tester == null){
+				for (ConnectionHandle connection: toTest){
+					endTest(connection, this.pool.isConnectionHandleAlive(connection));
+				}
+			} else {
+				List<Future<?>> tests = new ArrayList<Future<?>>(toTest.size());
+				for (final ConnectionHandle connection: toTest){
+					tests.add(tester.submit(new Runnable() {
+						public void run() {
+							endTest(connection, ConnectionTesterThread.this.pool.isConnectionHandleAlive(connection));
+						}
+					}));
+				}
+				for (Future<?> test: tests){
+					test.get(); // don't start the next sweep before this one is over.
+				}
+			}
+		} catch (Throwable e) {
+			logger.error("Connection tester thread interrupted", e);
+		}
+	}
+
+	/** Ends the in-place test of a connection: puts it back in circulation or closes it off.
+	 * @param connection connection tested
+	 * @param alive true if the connection passed
+	 */
+	protected void endTest(ConnectionHandle connection, boolean alive) {
+		boolean detached = connection.endValidation(alive);
+		if (alive){
+			if (detached){ // a borrower took it off the queue while we were testing it, it's up to us to put it back.
+				try {
+					this.pool.putConnectionBackInPartition(connection);
+				} catch (SQLException e) {
+					logger.error("Error returning a tested connection to the pool", e);
+				}
+			}
+		} else {
+			if (!detached){
+				this.partition.getFreeConnections().remove(connection); // if this fails, whoever polls it next drops it.
+			}
+			closeConnection(connection);
+		}
+	}
+
+
 	/** Closes off this connection
 	 * @param connection to close
 	 */
 	protected void closeConnection(ConnectionHandle connection) {
 		if (connection != null) {
-			if (connection.isClosed()) {
+			if (connection.isLogicallyClosed()) {
 				return;
 			}
 			try {
 				connection.lockForClose();
-				if (connection.isClosed()) {
+				if (connection.isLogicallyClosed()) {
 					return;
 				}
 				ConnectionPartition partition = connection.getOriginatingPartition();
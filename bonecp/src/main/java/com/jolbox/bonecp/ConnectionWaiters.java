@@ -0,0 +1,190 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool-wide registry of threads waiting for a connection.
+ *
+ * Without this, a thread that finds every partition empty waits on its own partition's queue only, so a
+ * connection released into any other partition is never handed to it. Here, a released connection goes
+ * straight to the longest-waiting borrower regardless of partition and only ends up in the free queue
+ * when nobody is waiting.
+ *
+ * @author wallacew
+ */
+public class ConnectionWaiters implements Serializable {
+	/** uid */
+	private static final long serialVersionUID = 4306178461291564717L;
+	/** Marks a waiter that gave up (timed out or interrupted). */
+	private static final Object CANCELLED = new Object();
+	/** Waiting borrowers, longest-waiting first. */
+	private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+	/** Number of entries in the waiters queue (avoids walking the queue on every release). */
+	private final AtomicInteger queued = new AtomicInteger();
+	/** If true (idleConnectionTestInPlace), connections are claimed before being handed off since the tester may 
+	 * be looking at them. */
+	private final boolean claimOnHandOff;
+
+	/** Default constructor. */
+	public ConnectionWaiters(){
+		this(false);
+	}
+
+	/** Constructor.
+	 * @param claimOnHandOff true if idle connections are tested in place, see ConnectionHandle#claimFromFreeQueue()
+	 */
+	public ConnectionWaiters(boolean claimOnHandOff){
+		this.claimOnHandOff = claimOnHandOff;
+	}
+
+	/** A borrower parked waiting for a connection. The reference holds the handed-off connection or CANCELLED. */
+	protected static class Waiter extends AtomicReference<Object> {
+		/** uid */
+		private static final long serialVersionUID = -1427960473419001377L;
+		/** Thread to wake up. */
+		final Thread thread = Thread.currentThread();
+	}
+
+	/** Registers the calling thread as waiting for a connection. The caller should poll the partitions once
+	 * more after registering (a connection released just before registration will not have been handed to it)
+	 * and then either {@link #cancel(Waiter)} or {@link #await(Waiter, long)}.
+	 * @return waiter handle
+	 */
+	protected Waiter register(){
+		Waiter waiter = new Waiter();
+		this.waiters.offer(waiter);
+		this.queued.incrementAndGet();
+		return waiter;
+	}
+
+	/** Withdraws a waiter.
+	 * @param waiter to cancel
+	 * @return a connection that was handed off to this waiter before it could be cancelled, or null. The caller
+	 * owns this connection and must release it.
+	 */
+	protected ConnectionHandle cancel(Waiter waiter){
+		if (waiter.compareAndSet(null, CANCELLED)){
+			if (this.waiters.remove(waiter)){
+				this.queued.decrementAndGet();
+			}
+			return null;
+		}
+		return (ConnectionHandle) waiter.get();
+	}
+
+	/** Parks until a connection is handed to this waiter or the timeout expires.
+	 * @param waiter as returned by register()
+	 * @param timeoutInMs max time to wait, Long.MAX_VALUE to wait forever.
+	 * @return a connection or null on timeout.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	protected ConnectionHandle await(Waiter waiter, long timeoutInMs) throws InterruptedException{
+		boolean timed = timeoutInMs != Long.MAX_VALUE;
+		long deadline = timed ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMs) : 0;
+		while (true){
+			Object result = waiter.get();
+			if (result != null){
+				return (ConnectionHandle) result;
+			}
+			if (Thread.interrupted()){
+				ConnectionHandle handle = cancel(waiter);
+				if (handle == null){
+					throw new InterruptedException();
+				}
+				Thread.currentThread().interrupt(); // we got one anyway, preserve the interrupt status.
+				return handle;
+			}
+			if (timed){
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0){
+					return cancel(waiter);
+				}
+				LockSupport.parkNanos(this, remaining);
+			} else {
+				LockSupport.park(this);
+			}
+		}
+	}
+
+	/** Hands the connection to the longest-waiting borrower, if any.
+	 * @param connectionHandle to hand off
+	 * @return true if a waiter took it. With claimOnHandOff, also true if the in-place tester turned out
+	 * to be looking at the connection and now owns it.
+	 */
+	protected boolean handOff(ConnectionHandle connectionHandle){
+		Waiter waiter;
+		if (this.claimOnHandOff){
+			if (this.queued.get() == 0){
+				return false;
+			}
+			if (!connectionHandle.claimFromFreeQueue()){
+				return true; // being tested in place, the tester takes care of it.
+			}
+		}
+		while (this.queued.get() > 0 && (waiter = this.waiters.poll()) != null){
+			this.queued.decrementAndGet();
+			if (waiter.compareAndSet(null, connectionHandle)){
+				LockSupport.unpark(waiter.thread);
+				return true;
+			}
+			// else this waiter gave up in the meantime, try the next one.
+		}
+		if (this.claimOnHandOff){
+			connectionHandle.freeState.set(ConnectionHandle.FREE_STATE_IDLE);
+		}
+		return false;
+	}
+
+	/** Hands the connection to a waiting borrower or, if there is none, places it in the given free queue.
+	 * @param connectionHandle to release
+	 * @param freeConnections queue of the originating partition
+	 * @return false if the connection could be neither handed off nor queued.
+	 */
+	protected boolean release(ConnectionHandle connectionHandle, BlockingQueue<ConnectionHandle> freeConnections){
+		if (handOff(connectionHandle)){
+			return true;
+		}
+		if (!freeConnections.offer(connectionHandle)){
+			return false;
+		}
+		// A borrower may have registered after we looked and polled the partitions before our offer
+		// landed; don't leave it waiting while a connection sits in the queue.
+		ConnectionHandle handle;
+		while (this.queued.get() > 0 && (handle = freeConnections.poll()) != null){
+			if (!handOff(handle)){
+				freeConnections.offer(handle); // we just took it out so there's room for it.
+			}
+		}
+		return true;
+	}
+
+	/** Returns the number of threads currently waiting for a connection.
+	 * @return waiting threads
+	 */
+	protected int getWaitingCount(){
+		return this.queued.get();
+	}
+}
@@ -18,8 +18,10 @@ package com.jolbox.bonecp;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /** The normal getConnection() strategy class in use. Attempts to get a connection from 
@@ -43,7 +45,7 @@ public class DefaultConnectionStrategy extends AbstractConnectionStrategy {
     int partition = (int) (Thread.currentThread().getId() % this.pool.partitionCount);
     ConnectionPartition connectionPartition = this.pool.partitions[partition];
     
-    result = connectionPartition.getFreeConnections().poll();
+    result = poll(connectionPartition.getFreeConnections());
 
     if (result == null) {
       // we ran out of space on this partition, pick another free one
@@ -51,7 +53,7 @@ public class DefaultConnectionStrategy extends AbstractConnectionStrategy {
         if (i == partition) {
           continue; // we already determined it's not here
         }
-        result = this.pool.partitions[i].getFreeConnections().poll(); // try our luck with this partition
+        result = poll(this.pool.partitions[i].getFreeConnections()); // try our luck with this partition
        
         if (result != null) {
           connectionPartition = this.pool.partitions[i]; // we found it here
@@ -68,24 +70,84 @@ public class DefaultConnectionStrategy extends AbstractConnectionStrategy {
 
   }
 
+	/** Looks at up to statementsCacheAffinitySearchLimit free connections, starting with the partition of the 
+	 * calling thread, for one that has the given statement in its statement cache.
+	 * @param sqlHint statement about to be prepared
+	 * @return a connection, or null if none was found within the search limit
+	 */
+	@Override
+	protected ConnectionHandle pollConnection(String sqlHint){
+		int searchLimit = this.pool.statementsCacheAffinitySearchLimit;
+		int partition = (int) (Thread.currentThread().getId() % this.pool.partitionCount);
+		for (int i=0; i < this.pool.partitionCount && searchLimit > 0; i++){
+			ConnectionPartition connectionPartition = this.pool.partitions[(partition + i) % this.pool.partitionCount];
+			BlockingQueue<ConnectionHandle> queue = connectionPartition.getFreeConnections();
+			Iterator<ConnectionHandle> it = queue.iterator();
+			while (searchLimit > 0 && it.hasNext()){
+				ConnectionHandle candidate = it.next();
+				searchLimit--;
+				if (candidate.hasCachedStatement(sqlHint) && queue.remove(candidate)
+						&& (!this.pool.idleConnectionTestInPlace || candidate.claimFromFreeQueue())){
+					if (!connectionPartition.isUnableToCreateMoreTransactions()){
+						this.pool.maybeSignalForMoreConnections(connectionPartition);
+					}
+					return candidate;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** Takes a connection off the given free queue, skipping over the ones being tested in place.
+	 * @param queue free queue of a partition
+	 * @return a connection, or null if none is free
+	 */
+	private ConnectionHandle poll(BlockingQueue<ConnectionHandle> queue) {
+		ConnectionHandle result = queue.poll();
+		if (this.pool.idleConnectionTestInPlace){
+			while (result != null && !result.claimFromFreeQueue()){
+				result = queue.poll();
+			}
+		}
+		return result;
+	}
+
+	/** Takes a connection off the given free queue, waiting up to the given time for one to become free and 
+	 * skipping over the ones being tested in place.
+	 * @param queue free queue of a partition
+	 * @param timeoutInMs max time to wait
+	 * @return a connection, or null on timeout
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private ConnectionHandle poll(BlockingQueue<ConnectionHandle> queue, long timeoutInMs) throws InterruptedException {
+		ConnectionHandle result = queue.poll(timeoutInMs, TimeUnit.MILLISECONDS);
+		if (this.pool.idleConnectionTestInPlace){
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMs);
+			while (result != null && !result.claimFromFreeQueue()){
+				result = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+			}
+		}
+		return result;
+	}
+
 	@Override
 	protected Connection getConnectionInternal() throws SQLException {
 		
 		ConnectionHandle result = pollConnection();
 		
+		if (result == null && this.pool.connectionWaiters != null){
+			return waitForHandoff();
+		}
+
 		// we still didn't find an empty one, wait forever (or as per config) until our partition is free
 		if (result == null) {
 			int partition = (int) (Thread.currentThread().getId() % this.pool.partitionCount);
 			ConnectionPartition connectionPartition = this.pool.partitions[partition];
 
 			try {
-				result = connectionPartition.getFreeConnections().poll(this.pool.connectionTimeoutInMs, TimeUnit.MILLISECONDS);
+				result = poll(connectionPartition.getFreeConnections(), this.pool.connectionTimeoutInMs);
 				if (result == null){
-					if (this.pool.nullOnConnectionTimeout){
-						return null;
-					}
-					// 08001 = The application requester is unable to establish the connection.
-					throw new SQLException("Timed out waiting for a free available connection.", "08001");
+					return timedOut();
 				}
 			}
 			catch (InterruptedException e) {
@@ -98,7 +160,52 @@ public class DefaultConnectionStrategy extends AbstractConnectionStrategy {
 		
 		return result;
 	}
+
+	/** Waits (forever or as per config) for a connection released into any partition.
+	 * @return connection, or null on timeout if nullOnConnectionTimeout is set
+	 * @throws SQLException on timeout or interruption
+	 */
+	protected ConnectionHandle waitForHandoff() throws SQLException {
+		ConnectionWaiters waiters = this.pool.connectionWaiters;
+		ConnectionWaiters.Waiter waiter = waiters.register();
+		try {
+			// look again now that any release will see us waiting.
+			ConnectionHandle result = pollConnection();
+			if (result != null){
+				ConnectionHandle extra = waiters.cancel(waiter);
+				if (extra != null){
+					this.pool.putConnectionBackInPartition(extra); // someone handed us one as well, pass it on
+				}
+			} else {
+				result = waiters.await(waiter, this.pool.connectionTimeoutInMs);
+			}
+			if (result == null){
+				return timedOut();
+			}
+			return result;
+		} catch (InterruptedException e) {
+			if (this.pool.nullOnConnectionTimeout){
+				return null;
+			}
+			throw PoolUtil.generateSQLException(e.getMessage(), e);
+		}
+	}
 	
+	/** Handles a connection request that timed out.
+	 * @return null if nullOnConnectionTimeout is set
+	 * @throws SQLException otherwise
+	 */
+	private ConnectionHandle timedOut() throws SQLException {
+		if (this.pool.statisticsEnabled){
+			this.pool.statistics.incrementConnectionTimeouts();
+		}
+		if (this.pool.nullOnConnectionTimeout){
+			return null;
+		}
+		// 08001 = The application requester is unable to establish the connection.
+		throw new SQLException("Timed out waiting for a free available connection.", "08001");
+	}
+
 	/** Closes off all connections in all partitions. */
 	public void terminateAllConnections(){
 		this.terminationLock.lock();
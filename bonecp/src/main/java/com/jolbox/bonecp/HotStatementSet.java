@@ -0,0 +1,240 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frequency-ranked set of the SQL statements most often found in the statement caches of a pool, used to warm up
+ * the statement cache of new connections before they are handed out.
+ *
+ * One in SAMPLE_RATE cache hits of a plain prepareStatement(sql) on each connection is counted, with a weight of
+ * SAMPLE_RATE, so that a hit doesn't cost a trip to this pool-wide map. Up to TRACKED_PER_STATEMENT times as many
+ * statements as are handed out for warming up are tracked; once that many are, a new statement is turned away
+ * and after enough of them have been, all counts are halved and the statements whose count drops to zero make
+ * room for new ones. Statements that stop being used thus fade out of the set.
+ *
+ * The set can be saved to a file (one statement per line, most used first) and loaded back on the next start.
+ *
+ * @author wallacew
+ *
+ */
+public class HotStatementSet {
+	/** Cache hits are sampled one in this many per connection. Must be a power of two. */
+	protected static final int SAMPLE_RATE = 16;
+	/** Number of statements tracked for each one handed out. */
+	protected static final int TRACKED_PER_STATEMENT = 4;
+	/** Charset of the saved file. */
+	private static final String CHARSET = "UTF-8";
+	/** Number of statements handed out for warming up. */
+	private final int size;
+	/** Max number of statements tracked. */
+	private final int capacity;
+	/** Hit count of each tracked statement. */
+	private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+	/** Statements turned away since the counts were last halved. */
+	private final AtomicInteger turnedAway = new AtomicInteger();
+	/** Set while the counts are being halved. */
+	private final AtomicBoolean aging = new AtomicBoolean();
+
+	/** Creates an empty set.
+	 * @param size number of statements to hand out for warming up
+	 */
+	public HotStatementSet(int size){
+		this.size = size;
+		this.capacity = Math.max(16, size * TRACKED_PER_STATEMENT);
+	}
+
+	/** Counts a cache hit on the given statement.
+	 * @param sql statement
+	 */
+	public void record(String sql){
+		record(sql, 1);
+	}
+
+	/** Counts cache hits on the given statement.
+	 * @param sql statement
+	 * @param hits number of hits this stands for
+	 */
+	public void record(String sql, long hits){
+		AtomicLong count = this.counts.get(sql);
+		if (count != null){
+			count.addAndGet(hits);
+		} else if (this.counts.size() < this.capacity){
+			count = this.counts.putIfAbsent(sql, new AtomicLong(hits));
+			if (count != null){
+				count.addAndGet(hits);
+			}
+		} else if (this.turnedAway.incrementAndGet() >= this.capacity){
+			age();
+		}
+	}
+
+	/** Halves all counts, dropping the statements that are down to zero. */
+	protected void age(){
+		if (this.aging.compareAndSet(false, true)){
+			try {
+				this.turnedAway.set(0);
+				Iterator<AtomicLong> it = this.counts.values().iterator();
+				while (it.hasNext()){
+					AtomicLong count = it.next();
+					long value;
+					do {
+						value = count.get();
+					} while (!count.compareAndSet(value, value >> 1));
+					if ((value >> 1) == 0){
+						it.remove();
+					}
+				}
+			} finally {
+				this.aging.set(false);
+			}
+		}
+	}
+
+	/** Returns the statements with the most hits, most used first.
+	 * @return up to size statements
+	 */
+	public List<String> getHotStatements(){
+		List<Map.Entry<String, Long>> ranked = rank();
+		List<String> result = new ArrayList<String>(Math.min(this.size, ranked.size()));
+		for (int i=0; i < ranked.size() && i < this.size; i++){
+			result.add(ranked.get(i).getKey());
+		}
+		return result;
+	}
+
+	/** Returns the number of statements tracked.
+	 * @return number of statements
+	 */
+	public int getTrackedCount(){
+		return this.counts.size();
+	}
+
+	/** Takes a snapshot of the counts, highest first.
+	 * @return statements and their counts
+	 */
+	private List<Map.Entry<String, Long>> rank(){
+		List<Map.Entry<String, Long>> ranked = new ArrayList<Map.Entry<String, Long>>(this.counts.size());
+		for (Map.Entry<String, AtomicLong> entry: this.counts.entrySet()){
+			ranked.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), entry.getValue().get()));
+		}
+		Collections.sort(ranked, new Comparator<Map.Entry<String, Long>>() {
+			public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		return ranked;
+	}
+
+	/** Writes the tracked statements and their counts to the given file, most used first.
+	 * @param fileName file to write
+	 * @throws IOException on error
+	 */
+	public void save(String fileName) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), CHARSET));
+		try {
+			for (Map.Entry<String, Long> entry: rank()){
+				writer.write(entry.getValue() + "\t" + escape(entry.getKey()));
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/** Adds the statements saved in the given file, if it exists.
+	 * @param fileName file to read
+	 * @throws IOException on error
+	 */
+	public void load(String fileName) throws IOException{
+		if (!new File(fileName).exists()){
+			return;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), CHARSET));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null && this.counts.size() < this.capacity){
+				int tab = line.indexOf('\t');
+				if (tab > 0){
+					try {
+						this.counts.putIfAbsent(unescape(line.substring(tab + 1)), new AtomicLong(Long.parseLong(line.substring(0, tab))));
+					} catch (NumberFormatException e) {
+						// not one of ours, skip it.
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** Escapes line breaks (and backslashes) so that a statement fits on one line.
+	 * @param sql statement
+	 * @return escaped statement
+	 */
+	protected static String escape(String sql){
+		StringBuilder sb = new StringBuilder(sql.length());
+		for (int i=0; i < sql.length(); i++){
+			char c = sql.charAt(i);
+			switch (c){
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			default: sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Reverses escape().
+	 * @param line escaped statement
+	 * @return statement
+	 */
+	protected static String unescape(String line){
+		StringBuilder sb = new StringBuilder(line.length());
+		for (int i=0; i < line.length(); i++){
+			char c = line.charAt(i);
+			if (c == '\\' && i + 1 < line.length()){
+				char next = line.charAt(++i);
+				sb.append(next == 'n' ? '\n' : (next == 'r' ? '\r' : next));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -28,10 +28,10 @@ public interface IStatementCache {
 	/**
 	 * Retrieves the cached statement identified by the given key
 	 *
-	 * @param sql SQL statement
+	 * @param key the SQL statement itself, or a {@link StatementCacheKey} 
 	 * @return Statement, or null if not found.
 	 */
-	StatementHandle get(String sql);
+	StatementHandle get(Object key);
 
 	/**
 	 * Returns size of the cache.  
@@ -40,6 +40,16 @@ public interface IStatementCache {
 	 */
 	int size();
 
+	/**
+	 * Returns true if a statement is cached under the given key, without counting it as a use. Unlike the 
+	 * other methods, it may be called from a thread other than the one using the connection, in which case 
+	 * the answer is only a hint.
+	 *
+	 * @param key the SQL statement itself, or a {@link StatementCacheKey} 
+	 * @return true if cached
+	 */
+	boolean containsKey(Object key);
+
 	/**
 	 * Clears the cache
 	 *
@@ -102,21 +112,21 @@ public interface IStatementCache {
 	 * @param columnNames an array of column names indicating the columns that should be returned from the inserted row or rows
 	 * @return cache key
 	 */
-	String calculateCacheKey(String sql, String[] columnNames);
+	StatementCacheKey calculateCacheKey(String sql, String[] columnNames);
 
 	/** Returns a cache key.
 	 * @param sql SQL Statement
 	 * @param columnIndexes an array of column indexes indicating the columns that should be returned from the inserted row or rows
 	 * @return cache key
 	 */
-	String calculateCacheKey(String sql, int[] columnIndexes);
+	StatementCacheKey calculateCacheKey(String sql, int[] columnIndexes);
 
 	/** Returns a cache key.
 	 * @param sql SQL Statement
 	 * @param autoGeneratedKeys
 	 * @return cache key.
 	 */
-	String calculateCacheKey(String sql, int autoGeneratedKeys);
+	StatementCacheKey calculateCacheKey(String sql, int autoGeneratedKeys);
 
 	/** Returns a cache key.
 	 * @param sql SQL Statement
@@ -124,7 +134,7 @@ public interface IStatementCache {
 	 * @param resultSetConcurrency a concurrency type; one of ResultSet.CONCUR_READ_ONLY or ResultSet.CONCUR_UPDATABLE
 	 * @return cache key.
 	 */
-	String calculateCacheKey(String sql, int resultSetType,
+	StatementCacheKey calculateCacheKey(String sql, int resultSetType,
 			int resultSetConcurrency);
 
 	/** Returns a cache key.
@@ -134,7 +144,7 @@ public interface IStatementCache {
 	 * @param resultSetHoldability a ResultSet holdability constant; one of ResultSet.HOLD_CURSORS_OVER_COMMIT or ResultSet.CLOSE_CURSORS_AT_COMMIT
 	 * @return cache key.
 	 */
-	String calculateCacheKey(String sql, int resultSetType,
+	StatementCacheKey calculateCacheKey(String sql, int resultSetType,
 			int resultSetConcurrency, int resultSetHoldability);
 
 	
@@ -145,10 +155,10 @@ public interface IStatementCache {
 
 	/**
 	 * Wrapper for map putIfAbsent.
-	 * @param cacheKey
+	 * @param cacheKey the SQL statement itself, or a {@link StatementCacheKey}
 	 * @param statementHandle
 	 */
-	void putIfAbsent(String cacheKey, StatementHandle statementHandle);
+	void putIfAbsent(Object cacheKey, StatementHandle statementHandle);
 
 
 }
\ No newline at end of file
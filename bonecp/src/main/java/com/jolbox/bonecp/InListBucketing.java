@@ -0,0 +1,251 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rewrites the IN-lists of a statement so that lists of similar length share one prepared statement.
+ *
+ * A query such as "WHERE id IN (?,?,?)" is a different statement, and thus a different statement cache entry
+ * and server-side prepare, for every list length. Each IN-list made up only of parameter markers is padded up
+ * to the next power of two (1, 2, 4, 8... up to MAX_BUCKET_SIZE) by repeating its last marker, and the value
+ * given for the last parameter of the list is then also given to the padding markers. Repeating a value does
+ * not change the outcome of IN or NOT IN. Lists are written out as "(?, ?, ...)" whatever their original
+ * spacing, so that padded and unpadded lists of a bucket come out the same. Lists longer than MAX_BUCKET_SIZE
+ * are left alone. So are statements with a backslash inside a literal or quoted identifier, since whether it escapes
+ * the next quote depends on the database (it does in MySQL, not in standard SQL).
+ *
+ * The outcome only depends on the statement, so {@link #rewrite(String, ConcurrentMap)} keeps it in a pool-wide
+ * memo: a statement seen before costs a map lookup rather than a scan and a new string.
+ *
+ * Parameter indexes as seen by the application are mapped onto those of the rewritten statement via
+ * {@link #getIndex(int)} and {@link #getLastIndex(int)}. Streams given for the last parameter of a padded list
+ * can only be read once, so they should not be used for IN-list parameters.
+ *
+ * @author wallacew
+ *
+ */
+public class InListBucketing {
+	/** Longest IN-list that is padded. */
+	protected static final int MAX_BUCKET_SIZE = 256;
+	/** Number of statements a memo holds before it's emptied and starts afresh. */
+	protected static final int MAX_MEMO_SIZE = 1024;
+	/** Stands in for statements without anything to rewrite in a memo. */
+	private static final InListBucketing UNCHANGED = new InListBucketing(null, null, null, 0);
+	/** Rewritten statement. */
+	private final String sql;
+	/** Index in the rewritten statement of each parameter of the original statement (1-based). */
+	private final int[] indexes;
+	/** Number of padding markers following each parameter of the original statement (1-based). */
+	private final int[] padding;
+	/** Total number of padding markers added. */
+	private final int totalPadding;
+
+	/** Constructor.
+	 * @param sql rewritten statement
+	 * @param indexes index of each original parameter in the rewritten statement
+	 * @param padding number of padding markers following each original parameter
+	 * @param totalPadding total number of padding markers
+	 */
+	private InListBucketing(String sql, int[] indexes, int[] padding, int totalPadding){
+		this.sql = sql;
+		this.indexes = indexes;
+		this.padding = padding;
+		this.totalPadding = totalPadding;
+	}
+
+	/** Pads the IN-lists of the given statement to their bucket size, or looks up how it was done before.
+	 * @param sql statement
+	 * @param memo outcome of earlier calls, by statement
+	 * @return the rewritten statement, or null if it has no IN-list that needs padding
+	 */
+	public static InListBucketing rewrite(String sql, ConcurrentMap<String, InListBucketing> memo){
+		InListBucketing result = memo.get(sql);
+		if (result == null){
+			result = rewrite(sql);
+			if (result == null){
+				result = UNCHANGED;
+			}
+			if (memo.size() >= MAX_MEMO_SIZE){
+				memo.clear(); // too many one-off statements, forget them all rather than keep track of what's used.
+			}
+			memo.put(sql, result);
+		}
+		return result == UNCHANGED ? null : result;
+	}
+
+	/** Pads the IN-lists of the given statement to their bucket size.
+	 * @param sql statement
+	 * @return the rewritten statement, or null if it has no IN-list that needs padding
+	 */
+	public static InListBucketing rewrite(String sql){
+		int length = sql.length();
+		int parameters = 0;
+		StringBuilder rewritten = null;
+		int copied = 0; // chars of sql copied to rewritten so far
+		int[] padding = null; // padding per parameter, grown as needed
+
+		int i = 0;
+		while (i < length){
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"'){ // literal or quoted identifier
+				int end = sql.indexOf(c, i + 1);
+				int backslash = sql.indexOf('\\', i + 1);
+				if (backslash >= 0 && (end < 0 || backslash < end)){
+					return null; // can't tell where it ends without knowing the database.
+				}
+				i = end < 0 ? length : end + 1;
+			} else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-'){
+				int end = sql.indexOf('\n', i + 2);
+				i = end < 0 ? length : end + 1;
+			} else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*'){
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if (c == '?'){
+				parameters++;
+				i++;
+			} else if ((c == 'i' || c == 'I') && i + 1 < length && (sql.charAt(i + 1) == 'n' || sql.charAt(i + 1) == 'N')
+					&& (i == 0 || !Character.isJavaIdentifierPart(sql.charAt(i - 1)))
+					&& (i + 2 == length || !Character.isJavaIdentifierPart(sql.charAt(i + 2)))){
+				// IN keyword: look for a list made up only of parameter markers.
+				int pos = skipWhitespace(sql, i + 2);
+				int openParen = pos;
+				int count = 0;
+				if (pos < length && sql.charAt(pos) == '('){
+					pos++;
+					while (true){
+						pos = skipWhitespace(sql, pos);
+						if (pos >= length || sql.charAt(pos) != '?'){
+							count = 0;
+							break;
+						}
+						count++;
+						pos++;
+						pos = skipWhitespace(sql, pos);
+						if (pos < length && sql.charAt(pos) == ','){
+							pos++;
+						} else {
+							if (pos >= length || sql.charAt(pos) != ')'){
+								count = 0;
+							}
+							break;
+						}
+					}
+				}
+				if (count == 0){
+					i += 2; // not a plain IN-list, its markers (if any) are counted as we go.
+					continue;
+				}
+				parameters += count;
+				int bucket = Integer.highestOneBit(count);
+				if (bucket < count){
+					bucket <<= 1;
+				}
+				if (bucket <= MAX_BUCKET_SIZE){
+					// write out the list in one form so that lists of the same bucket end up as the same statement.
+					if (rewritten == null){
+						rewritten = new StringBuilder(length + bucket * 3);
+					}
+					rewritten.append(sql, copied, openParen).append("(?");
+					for (int j = 1; j < bucket; j++){
+						rewritten.append(", ?");
+					}
+					rewritten.append(')');
+					copied = pos + 1;
+				}
+				if (bucket > count && bucket <= MAX_BUCKET_SIZE){
+					if (padding == null || padding.length <= parameters){
+						int[] grown = new int[Math.max(parameters + 1, padding == null ? 16 : padding.length * 2)];
+						if (padding != null){
+							System.arraycopy(padding, 0, grown, 0, padding.length);
+						}
+						padding = grown;
+					}
+					padding[parameters] = bucket - count;
+				}
+				i = pos + 1;
+			} else {
+				i++;
+			}
+		}
+
+		if (rewritten == null){
+			return null;
+		}
+		rewritten.append(sql, copied, length);
+		if (padding == null && rewritten.length() == length && rewritten.toString().equals(sql)){
+			return null; // already in shape.
+		}
+
+		int[] indexes = new int[parameters + 1];
+		int[] paddingByParameter = new int[parameters + 1];
+		int shift = 0;
+		for (int p = 1; p <= parameters; p++){
+			indexes[p] = p + shift;
+			if (padding != null && p < padding.length){
+				paddingByParameter[p] = padding[p];
+				shift += padding[p];
+			}
+		}
+		return new InListBucketing(rewritten.toString(), indexes, paddingByParameter, shift);
+	}
+
+	/** Returns the position of the first non-whitespace char at or after the given position.
+	 * @param sql statement
+	 * @param pos position to start from
+	 * @return position
+	 */
+	private static int skipWhitespace(String sql, int pos){
+		while (pos < sql.length() && Character.isWhitespace(sql.charAt(pos))){
+			pos++;
+		}
+		return pos;
+	}
+
+	/** Returns the rewritten statement.
+	 * @return statement with its IN-lists padded
+	 */
+	public String getSql(){
+		return this.sql;
+	}
+
+	/** Returns the index in the rewritten statement of the given parameter of the original statement.
+	 * @param parameterIndex index in the original statement
+	 * @return index in the rewritten statement
+	 */
+	public int getIndex(int parameterIndex){
+		if (parameterIndex >= 1 && parameterIndex < this.indexes.length){
+			return this.indexes[parameterIndex];
+		}
+		// out of range: shift it along so that the driver complains about it as it would have.
+		return parameterIndex < 1 ? parameterIndex : parameterIndex + this.totalPadding;
+	}
+
+	/** Returns the last index in the rewritten statement taking the value of the given parameter, which is
+	 * getIndex(parameterIndex) unless the parameter is the last one of a padded IN-list.
+	 * @param parameterIndex index in the original statement
+	 * @return last index in the rewritten statement
+	 */
+	public int getLastIndex(int parameterIndex){
+		int index = getIndex(parameterIndex);
+		if (parameterIndex >= 1 && parameterIndex < this.padding.length){
+			index += this.padding[parameterIndex];
+		}
+		return index;
+	}
+}
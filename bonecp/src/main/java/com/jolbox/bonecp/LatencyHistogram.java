@@ -0,0 +1,159 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size histogram of durations (in nanoseconds) from which percentiles can be read.
+ *
+ * Buckets grow exponentially: every power of two is split into SUB_BUCKETS buckets of equal width, so a
+ * percentile is never more than 1/SUB_BUCKETS (12.5%) above the actual value, over the full range of a long, in
+ * a few KB. Like {@link StripedCounter}, the buckets are striped by thread so that concurrent updates don't
+ * contend. The exact max is kept aside.
+ *
+ * @author wallacew
+ *
+ */
+public class LatencyHistogram implements Serializable {
+	/** uid */
+	private static final long serialVersionUID = -3284791470237160128L;
+	/** Bits used to split each power of two. */
+	private static final int SUB_BUCKET_BITS = 3;
+	/** Buckets per power of two. */
+	protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** Number of buckets: values below SUB_BUCKETS get one each, every power of two above that gets SUB_BUCKETS. */
+	protected static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	/** Default number of copies of the buckets. */
+	protected static final int STRIPES = StripedCounter.stripes(4);
+	/** Distance between stripes: the buckets plus a cache line. */
+	private static final int STRIPE_SIZE = BUCKETS + StripedCounter.PADDING;
+	/** Number of copies of the buckets (a power of two). */
+	private final int stripes;
+	/** Counts, stripes copies of BUCKETS buckets. */
+	private final AtomicLongArray counts;
+	/** Largest value recorded. */
+	private final AtomicLong max = new AtomicLong();
+
+	/** Creates a histogram striped for the number of processors. */
+	public LatencyHistogram(){
+		this(STRIPES);
+	}
+
+	/** Creates a histogram with the given number of stripes, eg 1 for a histogram that is rarely updated 
+	 * concurrently and of which there are many.
+	 * @param stripes number of copies of the buckets (rounded down to a power of two)
+	 */
+	public LatencyHistogram(int stripes){
+		this.stripes = Integer.highestOneBit(Math.max(1, stripes));
+		this.counts = new AtomicLongArray(this.stripes * STRIPE_SIZE);
+	}
+
+	/** Returns the bucket a value falls in.
+	 * @param value value (negative values count as 0)
+	 * @return bucket index
+	 */
+	protected static int bucket(long value){
+		if (value < SUB_BUCKETS){
+			return value < 0 ? 0 : (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	/** Returns the highest value that falls in the given bucket.
+	 * @param bucket bucket index
+	 * @return highest value of the bucket
+	 */
+	protected static long highestValue(int bucket){
+		if (bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long lowest = ((long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/** Records a value.
+	 * @param value duration in nanoseconds
+	 */
+	public void record(long value){
+		this.counts.incrementAndGet(StripedCounter.stripe(this.stripes) * STRIPE_SIZE + bucket(value));
+		long currentMax = this.max.get();
+		while (value > currentMax && !this.max.compareAndSet(currentMax, value)){
+			currentMax = this.max.get();
+		}
+	}
+
+	/** Returns the number of values recorded.
+	 * @return count
+	 */
+	public long getCount(){
+		long result = 0;
+		for (int i=0; i < this.stripes * STRIPE_SIZE; i++){
+			result += this.counts.get(i);
+		}
+		return result;
+	}
+
+	/** Returns the largest value recorded.
+	 * @return max, 0 if nothing was recorded
+	 */
+	public long getMax(){
+		return this.max.get();
+	}
+
+	/** Returns the value below which the given percentage of the values recorded fall.
+	 * @param percentile eg 99.9
+	 * @return value (at most the max), 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile){
+		long[] merged = new long[BUCKETS];
+		long total = 0;
+		for (int s=0; s < this.stripes; s++){
+			for (int b=0; b < BUCKETS; b++){
+				long count = this.counts.get(s * STRIPE_SIZE + b);
+				merged[b] += count;
+				total += count;
+			}
+		}
+		if (total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+		long seen = 0;
+		for (int b=0; b < BUCKETS; b++){
+			seen += merged[b];
+			if (seen >= rank){
+				return Math.min(highestValue(b), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/** Forgets all values recorded. */
+	public void reset(){
+		for (int i=0; i < this.stripes * STRIPE_SIZE; i++){
+			this.counts.set(i, 0);
+		}
+		this.max.set(0);
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Reports connections held for longer than a threshold, a cheaper alternative to closeConnectionWatch that can
+ * be left on in production.
+ *
+ * Every checkout is noted (connection, thread and time) and forgotten again when the connection is closed. The
+ * connections are only weakly referenced: one that the application drops without closing it can still be garbage
+ * collected (and its connection reclaimed by the pool, if connection tracking is on), taking its lease along. A
+ * single task, run periodically on the pool's scheduler, logs the connections held for longer than the threshold,
+ * once each. Where they were obtained is captured as a bare Throwable, whose frames the JVM only turns into
+ * StackTraceElements (and we into text) when the leak is reported; with sampleRate above 1 only one checkout in
+ * that many per connection is captured at all.
+ *
+ * The current suspects, longest held first, can be listed through JMX (StatisticsMBean.dumpLeakSuspects).
+ *
+ * @author wallacew
+ *
+ */
+public class LeakDetector implements Runnable {
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(LeakDetector.class);
+	/** Shortest period between checks. */
+	private static final long MIN_RUN_PERIOD_IN_MS = 100;
+	/** Longest period between checks. */
+	private static final long MAX_RUN_PERIOD_IN_MS = 5000;
+	/** Connections held for longer than this are reported. */
+	private final long thresholdInMs;
+	/** One checkout in this many (per connection) has its stack captured. */
+	private final int sampleRate;
+	/** Connections checked out, weakly referenced (and compared by identity). */
+	private final ConcurrentMap<ConnectionHandle, Lease> leases = new MapMaker().weakKeys().makeMap();
+
+	/** A checkout. */
+	protected static class Lease {
+		/** Time of the checkout. */
+		protected final long checkoutTimeInMs;
+		/** Thread that checked the connection out. */
+		protected final String threadName;
+		/** Where the connection was checked out, null if not sampled. */
+		protected final Throwable trace;
+		/** Set once reported in the log. */
+		protected volatile boolean reported;
+
+		/** Constructor.
+		 * @param checkoutTimeInMs time of the checkout
+		 * @param threadName thread that checked the connection out
+		 * @param trace where the connection was checked out, or null
+		 */
+		protected Lease(long checkoutTimeInMs, String threadName, Throwable trace){
+			this.checkoutTimeInMs = checkoutTimeInMs;
+			this.threadName = threadName;
+			this.trace = trace;
+		}
+
+		/** Describes the lease.
+		 * @param now current time
+		 * @return description, with the stack trace if captured
+		 */
+		protected String describe(long now){
+			StringBuilder sb = new StringBuilder();
+			sb.append("Connection held for ").append(now - this.checkoutTimeInMs).append(" ms, obtained by thread [").append(this.threadName).append("]");
+			if (this.trace == null){
+				sb.append(" (stack trace not sampled)");
+			} else {
+				sb.append(" at:");
+				StackTraceElement[] frames = this.trace.getStackTrace();
+				for (int i=0; i < frames.length; i++){
+					sb.append("\r\n ").append(frames[i]);
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	/** Constructor.
+	 * @param thresholdInMs report connections held for longer than this
+	 * @param sampleRate capture the stack of one checkout in this many (per connection)
+	 */
+	public LeakDetector(long thresholdInMs, int sampleRate){
+		this.thresholdInMs = thresholdInMs;
+		this.sampleRate = Math.max(1, sampleRate);
+	}
+
+	/** Returns how often the detector should run.
+	 * @return period in ms
+	 */
+	public long getRunPeriodInMs(){
+		return Math.max(MIN_RUN_PERIOD_IN_MS, Math.min(MAX_RUN_PERIOD_IN_MS, this.thresholdInMs / 4));
+	}
+
+	/** Notes a checkout. Called by the thread checking the connection out.
+	 * @param connection connection checked out
+	 */
+	public void checkout(ConnectionHandle connection){
+		Throwable trace = connection.leakDetectionCheckouts++ % this.sampleRate == 0 ? new Throwable() : null;
+		this.leases.put(connection, new Lease(System.currentTimeMillis(), Thread.currentThread().getName(), trace));
+	}
+
+	/** Forgets a checkout.
+	 * @param connection connection closed by the application
+	 */
+	public void release(ConnectionHandle connection){
+		Lease lease = this.leases.remove(connection);
+		if (lease != null && lease.reported){
+			logger.info("Connection reported as possibly leaked was eventually closed after " + (System.currentTimeMillis() - lease.checkoutTimeInMs) + " ms");
+		}
+	}
+
+	/** Invoked periodically: logs the connections held for too long, once each. */
+	public void run() {
+		try {
+			long now = System.currentTimeMillis();
+			for (Lease lease: this.leases.values()){
+				if (!lease.reported && now - lease.checkoutTimeInMs > this.thresholdInMs){
+					lease.reported = true;
+					logger.warn("Possible connection leak. " + lease.describe(now));
+				}
+			}
+		} catch (Throwable t) {
+			logger.error("Error checking for connection leaks", t);
+		}
+	}
+
+	/** Returns the connections held for longer than the threshold, longest held first.
+	 * @return one entry per connection, with where it was obtained if known
+	 */
+	public String[] getSuspects(){
+		long now = System.currentTimeMillis();
+		List<Lease> suspects = new ArrayList<Lease>();
+		for (Lease lease: this.leases.values()){
+			if (now - lease.checkoutTimeInMs > this.thresholdInMs){
+				suspects.add(lease);
+			}
+		}
+		Collections.sort(suspects, new Comparator<Lease>() {
+			public int compare(Lease o1, Lease o2) {
+				return o1.checkoutTimeInMs < o2.checkoutTimeInMs ? -1 : (o1.checkoutTimeInMs == o2.checkoutTimeInMs ? 0 : 1);
+			}
+		});
+		String[] result = new String[suspects.size()];
+		for (int i=0; i < result.length; i++){
+			result[i] = suspects.get(i).describe(now);
+		}
+		return result;
+	}
+
+	/** Returns the number of connections checked out.
+	 * @return number of leases tracked
+	 */
+	public int getLeaseCount(){
+		return this.leases.size();
+	}
+}
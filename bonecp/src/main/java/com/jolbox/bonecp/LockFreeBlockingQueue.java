@@ -0,0 +1,394 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, array-backed blocking queue used to hold the free connections of a partition.
+ *
+ * offer() and poll() are lock-free (each slot carries a sequence number that producers and consumers
+ * claim via CAS on the head/tail counters) and never allocate, unlike LinkedBlockingQueue which takes a
+ * global lock and creates a new node for every insertion. Threads only park when the queue is empty; a
+ * producer only touches the lock if it sees that some consumer is actually waiting.
+ *
+ * remove(Object) doesn't move anything around: it swaps the element for a tombstone, which poll() skips when
+ * it gets to it. To leave room for tombstones the backing array holds at least twice the capacity; once it is
+ * full of them, remove(Object) fails until they have been polled away. The iterator walks the queue in place
+ * (weakly consistent, no copy) and supports removal the same way.
+ *
+ * @author wallacew
+ * @param <E> element type
+ */
+public class LockFreeBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, Serializable {
+	/** uid */
+	private static final long serialVersionUID = -3307264950464425410L;
+	/** Placeholder for an element taken out by remove(Object). */
+	private static final Object TOMBSTONE = new Object();
+	/** Elements (or TOMBSTONE). */
+	private final AtomicReferenceArray<Object> items;
+	/** Sequence number of each slot (a slot is writable when seq == tail, readable when seq == head+1). */
+	private final AtomicLongArray sequences;
+	/** Mask to map a position onto a slot (capacity of the backing array is always a power of 2). */
+	private final int mask;
+	/** Max number of elements this queue will accept. */
+	private final int capacity;
+	/** Number of tombstones in the queue. */
+	private final AtomicInteger tombstones = new AtomicInteger();
+	/** Next position to write to. */
+	private final AtomicLong tail = new AtomicLong();
+	/** Next position to read from. */
+	private final AtomicLong head = new AtomicLong();
+	/** Number of consumers parked (or about to park) waiting for an element. */
+	private final AtomicInteger waiters = new AtomicInteger();
+	/** Only taken by consumers when the queue is empty. */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** Signalled whenever an element is added while someone is waiting. */
+	private final Condition notEmpty = this.lock.newCondition();
+
+	/** Creates a queue that will hold up to the given number of elements.
+	 * @param capacity max number of elements.
+	 */
+	public LockFreeBlockingQueue(int capacity) {
+		if (capacity < 1){
+			throw new IllegalArgumentException("Capacity must be >= 1");
+		}
+		int slots = 1;
+		while (slots < 2 * capacity){ // room for as many tombstones as elements
+			slots <<= 1;
+		}
+		this.capacity = capacity;
+		this.mask = slots - 1;
+		this.items = new AtomicReferenceArray<Object>(slots);
+		this.sequences = new AtomicLongArray(slots);
+		for (int i=0; i < slots; i++){
+			this.sequences.set(i, i);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.Queue#offer(java.lang.Object)
+	 */
+	public boolean offer(E e) {
+		if (e == null){
+			throw new NullPointerException();
+		}
+		long pos;
+		while (true){
+			pos = this.tail.get();
+			long used = pos - this.head.get();
+			if (used > this.mask || used - this.tombstones.get() >= this.capacity){
+				return false; // full. head is read after tail so this never reports full when there is space.
+			}
+			int slot = (int) pos & this.mask;
+			long diff = this.sequences.get(slot) - pos;
+			if (diff == 0){
+				if (this.tail.compareAndSet(pos, pos + 1)){
+					this.items.set(slot, e);
+					this.sequences.set(slot, pos + 1); // publish
+					break;
+				}
+			} else if (diff < 0){
+				// the consumer that took the previous occupant of this slot hasn't released it yet; it's
+				// mid-way through poll() so just spin.
+				Thread.yield();
+			}
+			// else another producer beat us to it, try again.
+		}
+
+		if (this.waiters.get() > 0){
+			signalNotEmpty();
+		}
+		return true;
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.Queue#poll()
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long pos;
+		while (true){
+			pos = this.head.get();
+			int slot = (int) pos & this.mask;
+			long diff = this.sequences.get(slot) - (pos + 1);
+			if (diff == 0){
+				if (this.head.compareAndSet(pos, pos + 1)){
+					// getAndSet, not get then set: remove(Object) may be swapping in a tombstone right now.
+					Object result = this.items.getAndSet(slot, null);
+					this.sequences.set(slot, pos + this.mask + 1); // make the slot writable for the next lap
+					if (result != TOMBSTONE){
+						return (E) result;
+					}
+					this.tombstones.decrementAndGet(); // removed earlier, move on to the next one.
+				}
+			} else if (diff < 0){
+				return null; // empty
+			}
+			// else another consumer beat us to it, try again.
+		}
+	}
+
+	/** Returns the element at the given position if it is still in the queue.
+	 * @param pos position
+	 * @return element, or null if it has been polled or removed
+	 */
+	@SuppressWarnings("unchecked")
+	private E elementAt(long pos) {
+		int slot = (int) pos & this.mask;
+		Object result = this.items.get(slot);
+		// the sequence tells whether the element read belongs to this lap and hasn't been polled since.
+		if (result == null || result == TOMBSTONE || this.sequences.get(slot) != pos + 1){
+			return null;
+		}
+		return (E) result;
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.Queue#peek()
+	 */
+	public E peek() {
+		for (long pos = this.head.get(), end = this.tail.get(); pos < end; pos++){
+			E result = elementAt(pos);
+			if (result != null){
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		E result = poll();
+		if (result != null){
+			return result;
+		}
+		long nanos = unit.toNanos(timeout);
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		this.waiters.incrementAndGet();
+		try {
+			// We must poll again after registering as a waiter: any producer that inserts from now on
+			// will see waiters > 0 and signal us.
+			while ((result = poll()) == null){
+				if (nanos <= 0){
+					return null;
+				}
+				nanos = this.notEmpty.awaitNanos(nanos);
+			}
+		} finally {
+			this.waiters.decrementAndGet();
+			lock.unlock();
+		}
+		return result;
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#take()
+	 */
+	public E take() throws InterruptedException {
+		E result = poll();
+		if (result != null){
+			return result;
+		}
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+		this.waiters.incrementAndGet();
+		try {
+			while ((result = poll()) == null){
+				this.notEmpty.await();
+			}
+		} finally {
+			this.waiters.decrementAndGet();
+			lock.unlock();
+		}
+		return result;
+	}
+
+	/** Wakes up one consumer waiting for an element. */
+	private void signalNotEmpty() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			this.notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+	 */
+	public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+		// The pool never holds more connections than the queue capacity so a full queue
+		// here means something went wrong. Don't bother waiting.
+		return offer(e);
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+	 */
+	public void put(E e) throws InterruptedException {
+		while (!offer(e)){
+			if (Thread.interrupted()){
+				throw new InterruptedException();
+			}
+			Thread.yield();
+		}
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+	 */
+	public int remainingCapacity() {
+		return this.capacity - size();
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		while (true){
+			long before = this.head.get();
+			long currentTail = this.tail.get();
+			if (this.head.get() == before){
+				long size = currentTail - before - this.tombstones.get();
+				return (int) Math.max(0, Math.min(size, this.capacity));
+			}
+		}
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.AbstractCollection#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+	 */
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/** {@inheritDoc}
+	 * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+	 */
+	public int drainTo(Collection<? super E> c, int maxElements) {
+		if (c == this){
+			throw new IllegalArgumentException();
+		}
+		int count = 0;
+		E e;
+		while (count < maxElements && (e = poll()) != null){
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	/** Takes the given element out of the queue by swapping it for a tombstone.
+	 * @param o element to remove
+	 * @return true if it was found and removed, false if not (or if there are too many tombstones already)
+	 */
+	@Override
+	public boolean remove(Object o) {
+		if (o == null){
+			return false;
+		}
+		if (this.tombstones.incrementAndGet() > this.mask + 1 - this.capacity){
+			this.tombstones.decrementAndGet(); // no room left for another tombstone.
+			return false;
+		}
+		for (long pos = this.head.get(), end = this.tail.get(); pos < end; pos++){
+			E e = elementAt(pos);
+			if (e != null && o.equals(e) && this.items.compareAndSet((int) pos & this.mask, e, TOMBSTONE)){
+				return true;
+			}
+		}
+		this.tombstones.decrementAndGet();
+		return false;
+	}
+
+	/** Returns a weakly consistent iterator over the elements in the queue, which walks the queue in place.
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			/** Next position to look at. */
+			private long pos = LockFreeBlockingQueue.this.head.get();
+			/** Position after the last one to look at. */
+			private final long end = LockFreeBlockingQueue.this.tail.get();
+			/** Next element to return. */
+			private E next = advance();
+			/** Last element returned. */
+			private E last;
+
+			/** Moves on to the next element still in the queue.
+			 * @return element, or null if there are no more
+			 */
+			private E advance() {
+				while (this.pos < this.end){
+					E e = elementAt(this.pos++);
+					if (e != null){
+						return e;
+					}
+				}
+				return null;
+			}
+
+			public boolean hasNext() {
+				return this.next != null;
+			}
+
+			public E next() {
+				if (this.next == null){
+					throw new NoSuchElementException();
+				}
+				this.last = this.next;
+				this.next = advance();
+				return this.last;
+			}
+
+			public void remove() {
+				if (this.last == null){
+					throw new IllegalStateException();
+				}
+				LockFreeBlockingQueue.this.remove(this.last);
+				this.last = null;
+			}
+		};
+	}
+}
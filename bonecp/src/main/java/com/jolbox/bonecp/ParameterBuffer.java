@@ -0,0 +1,425 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Parameters of a statement as captured for logging and hooks.
+ *
+ * Parameters set by index are kept in arrays indexed by parameter position: a type tag, the bits of a primitive
+ * value and an object reference for everything else, so that setInt(), setLong() and friends store their values
+ * without boxing them. Parameters set by name (callable statements) go to a regular map. The buffer is reused
+ * for every execution of its statement: clear() merely starts a new generation, so it costs the same however
+ * many parameters were set, and values are only boxed when the buffer is read through its Map view (ie when a
+ * statement is actually logged or a hook looks at the parameters). Entries come out in parameter order.
+ *
+ * Not thread-safe, like the statement it belongs to.
+ *
+ * @author wallacew
+ *
+ */
+public class ParameterBuffer extends AbstractMap<Object, Object> {
+	/** Slot holds an object. */
+	private static final byte OBJECT = 1;
+	/** Slot holds an int. */
+	private static final byte INT = 2;
+	/** Slot holds a long. */
+	private static final byte LONG = 3;
+	/** Slot holds a short. */
+	private static final byte SHORT = 4;
+	/** Slot holds a byte. */
+	private static final byte BYTE = 5;
+	/** Slot holds a boolean. */
+	private static final byte BOOLEAN = 6;
+	/** Slot holds a float. */
+	private static final byte FLOAT = 7;
+	/** Slot holds a double. */
+	private static final byte DOUBLE = 8;
+	/** Number of slots allocated on first use. */
+	private static final int INITIAL_CAPACITY = 8;
+
+	/** Type tag of each slot. */
+	private byte[] types;
+	/** Primitive value of each slot. */
+	private long[] primitives;
+	/** Object value of each slot. */
+	private Object[] objects;
+	/** Generation in which each slot was last set; a slot only counts if it was set in the current one. */
+	private int[] generations;
+	/** Current generation. */
+	private int generation = 1;
+	/** Highest index set in the current generation. */
+	private int highest;
+	/** Number of slots set in the current generation. */
+	private int count;
+	/** Highest index holding an object reference, in whatever generation. */
+	private int highestObject;
+	/** Parameters set by name (or by an index out of range), created on first use. */
+	private Map<Object, Object> named;
+	/** Map view. */
+	private Set<Map.Entry<Object, Object>> entrySet;
+
+	/** Records an int parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setInt(int index, int value){
+		setPrimitive(index, INT, value);
+	}
+
+	/** Records a long parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setLong(int index, long value){
+		setPrimitive(index, LONG, value);
+	}
+
+	/** Records a short parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setShort(int index, short value){
+		setPrimitive(index, SHORT, value);
+	}
+
+	/** Records a byte parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setByte(int index, byte value){
+		setPrimitive(index, BYTE, value);
+	}
+
+	/** Records a boolean parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setBoolean(int index, boolean value){
+		setPrimitive(index, BOOLEAN, value ? 1 : 0);
+	}
+
+	/** Records a float parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setFloat(int index, float value){
+		setPrimitive(index, FLOAT, Float.floatToRawIntBits(value));
+	}
+
+	/** Records a double parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setDouble(int index, double value){
+		setPrimitive(index, DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	/** Records any other parameter.
+	 * @param index parameter index
+	 * @param value value
+	 */
+	public void setObject(int index, Object value){
+		if (index < 1){
+			putNamed(index, value);
+			return;
+		}
+		int slot = claim(index);
+		this.types[slot] = OBJECT;
+		this.objects[slot] = value;
+		if (slot > this.highestObject){
+			this.highestObject = slot;
+		}
+	}
+
+	/** Stores a primitive value.
+	 * @param index parameter index
+	 * @param type type tag
+	 * @param bits value
+	 */
+	private void setPrimitive(int index, byte type, long bits){
+		if (index < 1){
+			putNamed(index, box(type, bits));
+			return;
+		}
+		int slot = claim(index);
+		this.types[slot] = type;
+		this.primitives[slot] = bits;
+		if (slot <= this.highestObject){
+			this.objects[slot] = null;
+		}
+	}
+
+	/** Makes room for the given slot and marks it as set in the current generation.
+	 * @param index parameter index
+	 * @return slot
+	 */
+	private int claim(int index){
+		if (this.types == null || index >= this.types.length){
+			grow(index);
+		}
+		if (this.generations[index] != this.generation){
+			this.generations[index] = this.generation;
+			this.count++;
+			if (index > this.highest){
+				this.highest = index;
+			}
+		}
+		return index;
+	}
+
+	/** Grows the arrays to hold the given index.
+	 * @param index parameter index
+	 */
+	private void grow(int index){
+		int capacity = this.types == null ? INITIAL_CAPACITY : this.types.length;
+		while (capacity <= index){
+			capacity <<= 1;
+		}
+		byte[] newTypes = new byte[capacity];
+		long[] newPrimitives = new long[capacity];
+		Object[] newObjects = new Object[capacity];
+		int[] newGenerations = new int[capacity];
+		if (this.types != null){
+			System.arraycopy(this.types, 0, newTypes, 0, this.types.length);
+			System.arraycopy(this.primitives, 0, newPrimitives, 0, this.primitives.length);
+			System.arraycopy(this.objects, 0, newObjects, 0, this.objects.length);
+			System.arraycopy(this.generations, 0, newGenerations, 0, this.generations.length);
+		}
+		this.types = newTypes;
+		this.primitives = newPrimitives;
+		this.objects = newObjects;
+		this.generations = newGenerations;
+	}
+
+	/** Stores a parameter by key.
+	 * @param key parameter name (or index)
+	 * @param value value
+	 * @return previous value
+	 */
+	private Object putNamed(Object key, Object value){
+		if (this.named == null){
+			this.named = new TreeMap<Object, Object>();
+		}
+		return this.named.put(key, value);
+	}
+
+	/** Returns true if the given index was set in the current generation.
+	 * @param index parameter index
+	 * @return true if set
+	 */
+	private boolean isSet(int index){
+		return index >= 1 && index <= this.highest && this.generations[index] == this.generation;
+	}
+
+	/** Boxes a value.
+	 * @param type type tag
+	 * @param bits primitive value
+	 * @return boxed value
+	 */
+	private static Object box(byte type, long bits){
+		switch (type){
+		case INT: return Integer.valueOf((int) bits);
+		case LONG: return Long.valueOf(bits);
+		case SHORT: return Short.valueOf((short) bits);
+		case BYTE: return Byte.valueOf((byte) bits);
+		case BOOLEAN: return Boolean.valueOf(bits != 0);
+		case FLOAT: return Float.valueOf(Float.intBitsToFloat((int) bits));
+		case DOUBLE: return Double.valueOf(Double.longBitsToDouble(bits));
+		default: throw new IllegalStateException("Unknown parameter type " + type);
+		}
+	}
+
+	/** Returns the value of the given slot, boxing it if need be.
+	 * @param index parameter index (must be set)
+	 * @return value
+	 */
+	private Object valueAt(int index){
+		return this.types[index] == OBJECT ? this.objects[index] : box(this.types[index], this.primitives[index]);
+	}
+
+	/** Forgets all parameters. Objects set in earlier generations stay referenced until their slot is
+	 * reused or {@link #release()} is called.
+	 */
+	@Override
+	public void clear(){
+		if (++this.generation == 0){ // wrapped around: old generations could come back to life.
+			if (this.generations != null){
+				Arrays.fill(this.generations, 0);
+			}
+			this.generation = 1;
+		}
+		this.highest = 0;
+		this.count = 0;
+		if (this.named != null && !this.named.isEmpty()){
+			this.named.clear();
+		}
+	}
+
+	/** Forgets all parameters and lets go of the objects that were set. */
+	public void release(){
+		clear();
+		if (this.highestObject > 0){
+			Arrays.fill(this.objects, 1, this.highestObject + 1, null);
+			this.highestObject = 0;
+		}
+	}
+
+	@Override
+	public Object get(Object key){
+		if (key instanceof Integer){
+			int index = (Integer) key;
+			if (isSet(index)){
+				return valueAt(index);
+			}
+		}
+		return this.named == null ? null : this.named.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		if (key instanceof Integer && isSet((Integer) key)){
+			return true;
+		}
+		return this.named != null && this.named.containsKey(key);
+	}
+
+	@Override
+	public Object put(Object key, Object value){
+		if (key instanceof Integer && ((Integer) key) >= 1){
+			int index = (Integer) key;
+			Object previous = isSet(index) ? valueAt(index) : null;
+			setObject(index, value);
+			return previous;
+		}
+		return putNamed(key, value);
+	}
+
+	@Override
+	public Object remove(Object key){
+		if (key instanceof Integer && isSet((Integer) key)){
+			int index = (Integer) key;
+			Object previous = valueAt(index);
+			unset(index);
+			return previous;
+		}
+		return this.named == null ? null : this.named.remove(key);
+	}
+
+	/** Marks a slot as not set.
+	 * @param index parameter index
+	 */
+	private void unset(int index){
+		this.generations[index] = 0;
+		this.count--;
+	}
+
+	@Override
+	public int size(){
+		return this.count + (this.named == null ? 0 : this.named.size());
+	}
+
+	@Override
+	public Set<Map.Entry<Object, Object>> entrySet(){
+		if (this.entrySet == null){
+			this.entrySet = new AbstractSet<Map.Entry<Object, Object>>() {
+				@Override
+				public Iterator<Map.Entry<Object, Object>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return ParameterBuffer.this.size();
+				}
+
+				@Override
+				public void clear() {
+					ParameterBuffer.this.clear();
+				}
+			};
+		}
+		return this.entrySet;
+	}
+
+	/** Walks the parameters set by index in order, then those set by name. */
+	private class EntryIterator implements Iterator<Map.Entry<Object, Object>> {
+		/** Next index to look at. */
+		private int next = 1;
+		/** Index last returned, 0 if none. */
+		private int last;
+		/** Iterator over the named parameters, once the indexed ones are done. */
+		private Iterator<Map.Entry<Object, Object>> namedIterator;
+
+		/** Moves next to the following slot that is set.
+		 * @return true if there is one
+		 */
+		private boolean seek(){
+			while (this.next <= ParameterBuffer.this.highest){
+				if (isSet(this.next)){
+					return true;
+				}
+				this.next++;
+			}
+			return false;
+		}
+
+		public boolean hasNext() {
+			if (seek()){
+				return true;
+			}
+			if (this.namedIterator == null){
+				if (ParameterBuffer.this.named == null){
+					return false;
+				}
+				this.namedIterator = ParameterBuffer.this.named.entrySet().iterator();
+			}
+			return this.namedIterator.hasNext();
+		}
+
+		public Map.Entry<Object, Object> next() {
+			if (!hasNext()){
+				throw new NoSuchElementException();
+			}
+			if (this.namedIterator == null){
+				this.last = this.next++;
+				return new AbstractMap.SimpleEntry<Object, Object>(Integer.valueOf(this.last), valueAt(this.last));
+			}
+			this.last = 0;
+			return this.namedIterator.next();
+		}
+
+		public void remove() {
+			if (this.namedIterator != null && this.last == 0){
+				this.namedIterator.remove();
+			} else if (this.last > 0 && isSet(this.last)){
+				unset(this.last);
+				this.last = 0;
+			} else {
+				throw new IllegalStateException();
+			}
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically resizes a partition based on demand rather than on a fixed occupancy threshold.
+ * 
+ * Each run samples the checkouts, hold times and wait times recorded by the partition since the previous
+ * run and folds them into moving averages. By Little's law, the number of connections in use is on average
+ * checkout rate * hold time; the partition is sized at that load plus a square-root safety margin 
+ * (load + headroom * sqrt(load)) where the headroom factor is nudged up while the observed wait time is above
+ * the configured target and slowly back down while it is well below it.
+ * 
+ * To get ahead of bursts, the rate used is a fast-moving average plus the amount by which it currently
+ * exceeds a slow-moving one (i.e. the trend is extrapolated). Growing happens straight away, via the 
+ * partition's PoolWatchThread. Shrinking only happens once the desired size has stayed well below the current
+ * size for SHRINK_DELAY_RUNS consecutive runs and then only by acquireIncrement idle connections per run.
+ * 
+ * @author wallacew
+ *
+ */
+public class PoolAutoScaler implements Runnable {
+	/** How often the autoscaler runs. */
+	protected static final long RUN_PERIOD_IN_MS = 1000;
+	/** Weight of a new sample in the fast-moving averages. */
+	private static final double FAST_ALPHA = 0.5;
+	/** Weight of a new sample in the slow-moving checkout rate. */
+	private static final double SLOW_ALPHA = 0.05;
+	/** Initial square-root staffing factor. */
+	private static final double INITIAL_HEADROOM = 1.0;
+	/** Bounds for the square-root staffing factor. */
+	private static final double MIN_HEADROOM = 0.5;
+	/** Bounds for the square-root staffing factor. */
+	private static final double MAX_HEADROOM = 10.0;
+	/** Number of consecutive runs the partition must look oversized before it's shrunk. */
+	protected static final int SHRINK_DELAY_RUNS = 30;
+	/** Fraction of the partition that must be surplus before shrinking is considered. */
+	private static final double SHRINK_DEAD_BAND = 0.1;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(PoolAutoScaler.class);
+	/** Partition being sized. */
+	private ConnectionPartition partition;
+	/** Pool handle. */
+	private BoneCP pool;
+	/** Target wait time in nanoseconds. */
+	private double targetWaitTimeInNanos;
+	/** Time of the previous run. */
+	private long lastRunInNanos;
+	/** Counters as seen on the previous run. */
+	private long lastCheckouts;
+	/** Counters as seen on the previous run. */
+	private long lastWaitTimeInNanos;
+	/** Counters as seen on the previous run. */
+	private long lastReleases;
+	/** Counters as seen on the previous run. */
+	private long lastHoldTimeInNanos;
+	/** Moving averages. Rates are per nanosecond. */
+	protected double fastRate;
+	/** Moving averages. */
+	protected double slowRate;
+	/** Moving averages. */
+	protected double holdTimeInNanos;
+	/** Moving averages. */
+	protected double waitTimeInNanos;
+	/** Current square-root staffing factor. */
+	protected double headroom = INITIAL_HEADROOM;
+	/** Number of consecutive runs the partition looked oversized. */
+	protected int oversizedRuns;
+
+	/** Autoscaler constructor.
+	 * @param partition partition to size
+	 * @param pool pool handle
+	 * @param targetWaitTimeInMs checkout wait time to aim for
+	 */
+	public PoolAutoScaler(ConnectionPartition partition, BoneCP pool, long targetWaitTimeInMs) {
+		this.partition = partition;
+		this.pool = pool;
+		this.targetWaitTimeInNanos = targetWaitTimeInMs * 1000000.0;
+		this.lastRunInNanos = System.nanoTime();
+	}
+
+	public void run() {
+		long now = System.nanoTime();
+		try {
+			adjust(now - this.lastRunInNanos);
+		} catch (Exception e) {
+			logger.error("Error while resizing partition", e); // keep running.
+		}
+		this.lastRunInNanos = now;
+	}
+
+	/** Samples the partition counters and resizes the partition.
+	 * @param elapsedNanos time since the previous sample
+	 */
+	protected void adjust(long elapsedNanos) {
+		if (elapsedNanos <= 0 || this.pool.poolShuttingDown){
+			return;
+		}
+		long checkouts = this.partition.getCheckouts();
+		long waitTime = this.partition.getCumulativeWaitTimeInNanos();
+		long releases = this.partition.getReleases();
+		long holdTime = this.partition.getCumulativeHoldTimeInNanos();
+
+		double rate = (double)(checkouts - this.lastCheckouts) / elapsedNanos;
+		this.fastRate = ewma(this.fastRate, rate, FAST_ALPHA);
+		this.slowRate = ewma(this.slowRate, rate, SLOW_ALPHA);
+		if (releases > this.lastReleases){
+			this.holdTimeInNanos = ewma(this.holdTimeInNanos, (double)(holdTime - this.lastHoldTimeInNanos) / (releases - this.lastReleases), FAST_ALPHA);
+		}
+		if (checkouts > this.lastCheckouts){
+			this.waitTimeInNanos = ewma(this.waitTimeInNanos, (double)(waitTime - this.lastWaitTimeInNanos) / (checkouts - this.lastCheckouts), FAST_ALPHA);
+		} else {
+			this.waitTimeInNanos = ewma(this.waitTimeInNanos, 0, FAST_ALPHA);
+		}
+		this.lastCheckouts = checkouts;
+		this.lastWaitTimeInNanos = waitTime;
+		this.lastReleases = releases;
+		this.lastHoldTimeInNanos = holdTime;
+
+		if (this.waitTimeInNanos > this.targetWaitTimeInNanos){
+			this.headroom = Math.min(MAX_HEADROOM, this.headroom * 1.25);
+		} else if (this.waitTimeInNanos < this.targetWaitTimeInNanos / 2){
+			this.headroom = Math.max(MIN_HEADROOM, this.headroom * 0.98);
+		}
+
+		int desired = desiredSize();
+		int created = this.partition.getCreatedConnections();
+		if (desired >= created){
+			this.oversizedRuns = 0;
+			this.partition.autoScaleTarget = desired;
+			if (desired > created){
+				this.partition.getPoolWatchThreadSignalQueue().offer(new Object()); // item being pushed is not important.
+			}
+		} else if (created - desired > Math.max(1, created * SHRINK_DEAD_BAND)){
+			if (++this.oversizedRuns >= SHRINK_DELAY_RUNS){
+				int target = Math.max(desired, created - this.partition.getAcquireIncrement());
+				this.partition.autoScaleTarget = target;
+				shrink(created - target);
+			} else {
+				// not for long enough yet: keep what we have.
+				this.partition.autoScaleTarget = Math.max(desired, Math.min(created, this.partition.autoScaleTarget));
+			}
+		} else {
+			// within the dead band: keep what we have and start counting afresh.
+			this.oversizedRuns = 0;
+			this.partition.autoScaleTarget = Math.max(desired, Math.min(created, this.partition.autoScaleTarget));
+		}
+	}
+
+	/** Returns the number of connections the partition should have given the current averages.
+	 * @return desired partition size
+	 */
+	protected int desiredSize() {
+		double predictedRate = this.fastRate + Math.max(0, this.fastRate - this.slowRate);
+		double load = predictedRate * this.holdTimeInNanos;
+		int desired = (int) Math.ceil(load + this.headroom * Math.sqrt(load));
+		return Math.max(this.partition.getMinConnections(), Math.min(this.partition.getMaxConnections(), desired));
+	}
+
+	/** Closes off up to the given number of idle connections.
+	 * @param count number of connections to remove
+	 */
+	private void shrink(int count) {
+		for (int i=0; i < count; i++){
+			ConnectionHandle connection = this.partition.getFreeConnections().poll();
+			if (connection == null){
+				break; // everything else is in use after all.
+			}
+			if (this.pool.idleConnectionTestInPlace && !connection.claimFromFreeQueue()){
+				continue; // being tested (the tester takes care of it) or already closed off.
+			}
+			this.pool.destroyConnection(connection);
+		}
+	}
+
+	/** Exponentially-weighted moving average step.
+	 * @param average current average
+	 * @param sample new sample
+	 * @param alpha weight of the new sample
+	 * @return new average
+	 */
+	private static double ewma(double average, double sample, double alpha) {
+		return average + alpha * (sample - average);
+	}
+}
@@ -24,8 +24,6 @@ import java.sql.Clob;
 import java.sql.Ref;
 import java.sql.SQLException;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 /** A bunch of generic routines used internally by the pool.
@@ -44,35 +42,13 @@ public class PoolUtil {
 	 * @return returns printable statement 
 	 */
 	public static String fillLogParams(String sql, Map<Object, Object> logParams) {
-		StringBuilder result = new StringBuilder();
-		Map<Object, Object> tmpLogParam = (logParams == null ? new HashMap<Object, Object>() : logParams);
-
-		Iterator<Object> it = tmpLogParam.values().iterator();
-		boolean inQuote = false;
-		boolean inQuote2 = false;
-		char[] sqlChar = sql != null ? sql.toCharArray() : new char[]{};
-
-		for (int i=0; i < sqlChar.length; i++){
-			if (sqlChar[i] == '\''){
-				inQuote = !inQuote;
-			}
-			if (sqlChar[i] == '"'){
-				inQuote2 = !inQuote2;
-			}
-
-			if (sqlChar[i] == '?' && !(inQuote || inQuote2)){
-				if (it.hasNext()){
-					result.append(prettyPrint(it.next()));
-				} else {
-					result.append('?');
-				}
-			} else {
-				result.append(sqlChar[i]);
-			}
+		if (sql == null){
+			return "";
 		}
-
-
-		return result.toString();
+		if (logParams == null || logParams.isEmpty()){
+			return sql; // nothing to fill in.
+		}
+		return new SqlTemplate(sql).render(logParams);
 	}
 
 	/** Helper method
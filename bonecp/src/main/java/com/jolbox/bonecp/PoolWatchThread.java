@@ -16,6 +16,10 @@
 
 package com.jolbox.bonecp;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +41,16 @@ public class PoolWatchThread implements Runnable {
 	protected boolean lazyInit;
 	/** Occupancy% threshold. */
 	private int poolAvailabilityThreshold;
+	/** If true, the partition is sized by its PoolAutoScaler rather than by poolAvailabilityThreshold. */
+	private boolean autoScaling;
+	/** Shared scheduler lane we're running on, null if running as a thread of our own. */
+	private SharedPoolScheduler.Lane lane;
+	/** Runs check() on the lane. */
+	private final Runnable checkTask = new Runnable() {
+		public void run() {
+			check();
+		}
+	};
 	/** Logger handle. */
 	private static final Logger logger = LoggerFactory.getLogger(PoolWatchThread.class);
 
@@ -51,6 +65,7 @@ public class PoolWatchThread implements Runnable {
 		this.lazyInit = this.pool.getConfig().isLazyInit();
 		this.acquireRetryDelayInMs = this.pool.getConfig().getAcquireRetryDelayInMs();
 		this.poolAvailabilityThreshold = this.pool.getConfig().getPoolAvailabilityThreshold();
+		this.autoScaling = this.pool.getConfig().getAutoScaleTargetWaitTimeInMs() > 0;
 	}
 
 
@@ -67,8 +82,7 @@ public class PoolWatchThread implements Runnable {
 
 				maxNewConnections = this.partition.getMaxConnections()-this.partition.getCreatedConnections();
 				// loop for spurious interrupt
-				while (maxNewConnections == 0
-				        || (this.partition.getAvailableConnections() *100/this.partition.getMaxConnections() > this.poolAvailabilityThreshold)){
+				while (maxNewConnections == 0 || !needsMoreConnections()){
 					if (maxNewConnections == 0){
 						this.partition.setUnableToCreateMoreTransactions(true);
 					}
@@ -83,7 +97,7 @@ public class PoolWatchThread implements Runnable {
 
 				if (maxNewConnections > 0 
 						&& !this.pool.poolShuttingDown){
-					fillConnections(Math.min(maxNewConnections, this.partition.getAcquireIncrement()));
+					fillConnections(Math.min(maxNewConnections, connectionsToAdd()));
 					// for the case where we have killed off all our connections due to network/db error
 					if (this.partition.getCreatedConnections() < this.partition.getMinConnections()){
 						fillConnections(this.partition.getMinConnections() - this.partition.getCreatedConnections() );
@@ -104,12 +118,77 @@ public class PoolWatchThread implements Runnable {
 
 
 
+	/** Makes this watcher run on the given shared scheduler lane instead of as a thread of its own: from now on,
+	 * every signal sent to the partition schedules a (non-blocking) check() on the lane.
+	 * @param sharedLane lane to run on
+	 */
+	protected void runOn(SharedPoolScheduler.Lane sharedLane) {
+		this.lane = sharedLane;
+		BlockingQueue<Object> previous = this.partition.getPoolWatchThreadSignalQueue();
+		this.partition.setPoolWatchThreadSignalQueue(new SignalQueue(sharedLane, this.checkTask));
+		if (!this.lazyInit || !previous.isEmpty()){
+			sharedLane.execute(this.checkTask);
+		}
+	}
+
+	/** Non-blocking equivalent of one iteration of run(), used on the shared scheduler: tops up the partition 
+	 * if it needs more connections. */
+	protected void check() {
+		this.partition.getPoolWatchThreadSignalQueue().clear();
+		if (this.pool.poolShuttingDown){
+			return;
+		}
+		int maxNewConnections = this.partition.getMaxConnections()-this.partition.getCreatedConnections();
+		if (maxNewConnections <= 0){
+			this.partition.setUnableToCreateMoreTransactions(true);
+			return;
+		}
+		if (this.partition.getCreatedConnections() >= this.partition.getMinConnections() && !needsMoreConnections()){
+			return;
+		}
+		try {
+			if (fillConnections(Math.min(maxNewConnections, connectionsToAdd())) 
+					&& this.partition.getCreatedConnections() < this.partition.getMinConnections()){
+				fillConnections(this.partition.getMinConnections() - this.partition.getCreatedConnections());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // pool shutting down.
+		}
+	}
+
+	/** Returns true if the partition should be grown.
+	 * @return true to add more connections
+	 */
+	private boolean needsMoreConnections() {
+		if (this.autoScaling){
+			// the autoscaler sets the size; still react straight away if we've run dry in the meantime.
+			return this.partition.getCreatedConnections() < this.partition.autoScaleTarget || this.partition.getAvailableConnections() == 0;
+		}
+		return this.partition.getAvailableConnections() *100/this.partition.getMaxConnections() <= this.poolAvailabilityThreshold;
+	}
+
+	/** Returns the number of connections to add when growing the partition.
+	 * @return connections to add (before capping at maxConnectionsPerPartition)
+	 */
+	private int connectionsToAdd() {
+		if (this.autoScaling){
+			int shortfall = this.partition.autoScaleTarget - this.partition.getCreatedConnections();
+			return Math.max(shortfall, this.partition.getAvailableConnections() == 0 ? this.partition.getAcquireIncrement() : 0);
+		}
+		return this.partition.getAcquireIncrement();
+	}
+
 	/** Adds new connections to the partition.
 	 * @param connectionsToCreate number of connections to create
+	 * @return false if we failed to create a connection
 	 * @throws InterruptedException 
 	 */
-	private void fillConnections(int connectionsToCreate) throws InterruptedException  {
+	private boolean fillConnections(int connectionsToCreate) throws InterruptedException  {
 		try {
+			if (this.pool.connectionCreator != null && connectionsToCreate > 1){
+				this.pool.addFreeConnectionsInParallel(this.partition, connectionsToCreate);
+				return true;
+			}
 			for (int i=0; i < connectionsToCreate; i++){
 			//	boolean dbDown = this.pool.getDbIsDown().get();
 				if (this.pool.poolShuttingDown){
@@ -117,11 +196,49 @@ public class PoolWatchThread implements Runnable {
 				}
 				this.partition.addFreeConnection(new ConnectionHandle(null, this.partition, this.pool, false));
 			}
+		} catch (InterruptedException e) {
+			throw e;
 		} catch (Exception e) {
 			logger.error("Error in trying to obtain a connection. Retrying in "+this.acquireRetryDelayInMs+"ms", e);
-			Thread.sleep(this.acquireRetryDelayInMs);
+			if (this.lane != null){
+				// don't hold up a shared worker.
+				this.lane.schedule(this.checkTask, this.acquireRetryDelayInMs, TimeUnit.MILLISECONDS);
+			} else {
+				Thread.sleep(this.acquireRetryDelayInMs);
+			}
+			return false;
 		}
+		return true;
+	}
 
+	/** Signal queue installed on the partition when running on the shared scheduler: a signal schedules a 
+	 * check on the lane (signals sent while one is already pending are merged, as with the blocking thread). */
+	protected static class SignalQueue extends ArrayBlockingQueue<Object> {
+		/** uid */
+		private static final long serialVersionUID = 3412706547339478539L;
+		/** Lane to run the check on. */
+		private transient SharedPoolScheduler.Lane lane;
+		/** The check. */
+		private transient Runnable checkTask;
+
+		/** Constructor.
+		 * @param lane lane to run the check on
+		 * @param checkTask the check
+		 */
+		protected SignalQueue(SharedPoolScheduler.Lane lane, Runnable checkTask) {
+			super(1);
+			this.lane = lane;
+			this.checkTask = checkTask;
+		}
+
+		@Override
+		public boolean offer(Object e) {
+			boolean result = super.offer(e);
+			if (result){
+				this.lane.execute(this.checkTask);
+			}
+			return result;
+		}
 	}
 
 }
@@ -54,6 +54,10 @@ public class PreparedStatementHandle extends StatementHandle implements
 	private PreparedStatement internalPreparedStatement;
 	/** Class logger. */
 	protected static final Logger logger = LoggerFactory.getLogger(PreparedStatementHandle.class);
+	/** Where the parameters go if the IN-lists of the statement have been padded, null otherwise. */
+	private InListBucketing inListBucketing;
+	/** The statement parsed for logging, null until first logged. Handed on to the handles of a cached statement. */
+	protected SqlTemplate logTemplate;
 
 
 	/**
@@ -69,7 +73,7 @@ public class PreparedStatementHandle extends StatementHandle implements
 	 * @param cacheKey 
 	 */
 	public PreparedStatementHandle(PreparedStatement internalPreparedStatement,
-			String sql, ConnectionHandle connectionHandle, String cacheKey, IStatementCache cache) {
+			String sql, ConnectionHandle connectionHandle, Object cacheKey, IStatementCache cache) {
 		super(internalPreparedStatement, sql, cache, connectionHandle, cacheKey, connectionHandle.isLogStatementsEnabled());
 		this.internalPreparedStatement = internalPreparedStatement;
 		this.connectionHandle = connectionHandle;
@@ -128,8 +132,8 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public boolean execute() throws SQLException {
 		checkClosed();
 		try {
-			if (this.logStatementsEnabled){
-				logger.debug(PoolUtil.fillLogParams(this.sql, this.logParams));
+			if (this.logStatementsEnabled && logger.isDebugEnabled()){
+				logStatement(getLogTemplate());
 			}
 			long queryStartTime = queryTimerStart();
 
@@ -164,8 +168,8 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public ResultSet executeQuery() throws SQLException {
 		checkClosed();
 		try {
-			if (this.logStatementsEnabled){
-				logger.debug(PoolUtil.fillLogParams(this.sql, this.logParams));
+			if (this.logStatementsEnabled && logger.isDebugEnabled()){
+				logStatement(getLogTemplate());
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -195,8 +199,8 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public int executeUpdate() throws SQLException {
 		checkClosed();
 		try {
-			if (this.logStatementsEnabled){
-				logger.debug(PoolUtil.fillLogParams(this.sql, this.logParams));
+			if (this.logStatementsEnabled && logger.isDebugEnabled()){
+				logStatement(getLogTemplate());
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -260,9 +264,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setArray(int parameterIndex, Array x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setArray(parameterIndex, x);
-			if (this.logStatementsEnabled) {
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setArray(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -276,9 +282,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBinaryStream(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBinaryStream(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -291,9 +299,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBinaryStream(parameterIndex, x, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBinaryStream(index, x, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -306,9 +316,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBlob(parameterIndex, inputStream);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, inputStream);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBlob(index, inputStream);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, inputStream);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -321,9 +333,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setAsciiStream(parameterIndex, x, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setAsciiStream(index, x, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -335,9 +349,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setClob(int parameterIndex, Reader reader) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setClob(parameterIndex, reader);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setClob(index, reader);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -349,9 +365,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setRowId(int parameterIndex, RowId x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setRowId(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setRowId(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -364,9 +382,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setSQLXML(parameterIndex, xmlObject);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, xmlObject);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setSQLXML(index, xmlObject);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, xmlObject);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -379,9 +399,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setClob(parameterIndex, reader, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setClob(index, reader, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 
 		} catch (SQLException e) {
@@ -395,9 +417,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNCharacterStream(parameterIndex, value);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, value);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNCharacterStream(index, value);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, value);
+				}
 			}
 
 		} catch (SQLException e) {
@@ -411,9 +435,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 			long length) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNCharacterStream(parameterIndex, value, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, value);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNCharacterStream(index, value, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, value);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -425,9 +451,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setNClob(int parameterIndex, NClob value) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNClob(parameterIndex, value);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, value);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNClob(index, value);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, value);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -439,9 +467,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setNClob(int parameterIndex, Reader reader) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNClob(parameterIndex, reader);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNClob(index, reader);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -454,9 +484,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNClob(parameterIndex, reader, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNClob(index, reader, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -469,9 +501,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNString(parameterIndex, value);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, value);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNString(index, value);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, value);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -484,9 +518,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setAsciiStream(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setAsciiStream(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -498,9 +534,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 			long length) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setCharacterStream(parameterIndex, reader, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setCharacterStream(index, reader, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -513,9 +551,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBlob(parameterIndex, inputStream, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, inputStream);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBlob(index, inputStream, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, inputStream);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -528,9 +568,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setCharacterStream(parameterIndex, reader);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setCharacterStream(index, reader);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -552,9 +594,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setAsciiStream(parameterIndex, x, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setAsciiStream(index, x, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -573,9 +617,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBigDecimal(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBigDecimal(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -596,9 +642,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBinaryStream(parameterIndex, x, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBinaryStream(index, x, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -616,9 +664,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setBlob(int parameterIndex, Blob x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBlob(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBlob(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -637,9 +687,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBoolean(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBoolean(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setBoolean(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -657,9 +709,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setByte(int parameterIndex, byte x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setByte(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setByte(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setByte(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -677,9 +731,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setBytes(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setBytes(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -700,10 +756,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setCharacterStream(parameterIndex,
-					reader, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, reader);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setCharacterStream(index, reader, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, reader);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -722,9 +779,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setClob(int parameterIndex, Clob x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setClob(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setClob(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -743,9 +802,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setDate(int parameterIndex, Date x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setDate(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setDate(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -765,9 +826,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setDate(parameterIndex, x, cal);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, PoolUtil.safePrint(x, ", cal=", cal));
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setDate(index, x, cal);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, PoolUtil.safePrint(x, ", cal=", cal));
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -785,9 +848,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setDouble(int parameterIndex, double x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setDouble(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setDouble(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setDouble(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -805,9 +870,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setFloat(int parameterIndex, float x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setFloat(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setFloat(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setFloat(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -825,9 +892,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setInt(int parameterIndex, int x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setInt(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setInt(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setInt(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -845,9 +914,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setLong(int parameterIndex, long x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setLong(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setLong(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setLong(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -865,9 +936,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNull(parameterIndex, sqlType);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, "[SQL NULL of type "+sqlType+"]");
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNull(index, sqlType);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, "[SQL NULL of type "+sqlType+"]");
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -886,9 +959,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setNull(parameterIndex, sqlType, typeName);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, PoolUtil.safePrint("[SQL NULL of type ", sqlType, ", type = ", typeName, "]"));
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setNull(index, sqlType, typeName);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, PoolUtil.safePrint("[SQL NULL of type ", sqlType, ", type = ", typeName, "]"));
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -906,9 +981,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setObject(int parameterIndex, Object x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setObject(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setObject(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -927,9 +1004,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setObject(parameterIndex, x, targetSqlType);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setObject(index, x, targetSqlType);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -949,9 +1028,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 			int scaleOrLength) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setObject(index, x, targetSqlType, scaleOrLength);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -969,9 +1050,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setRef(int parameterIndex, Ref x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setRef(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setRef(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -990,9 +1073,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setShort(int parameterIndex, short x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setShort(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setShort(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setShort(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1010,9 +1095,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setString(int parameterIndex, String x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setString(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setString(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1030,9 +1117,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setTime(int parameterIndex, Time x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setTime(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setTime(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1052,9 +1141,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setTime(parameterIndex, x, cal);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, PoolUtil.safePrint(x, ", cal=", cal));
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setTime(index, x, cal);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, PoolUtil.safePrint(x, ", cal=", cal));
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1073,9 +1164,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setTimestamp(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setTimestamp(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1095,9 +1188,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setTimestamp(parameterIndex, x, cal);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, PoolUtil.safePrint(x, ", cal=", cal));
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setTimestamp(index, x, cal);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, PoolUtil.safePrint(x, ", cal=", cal));
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1115,9 +1210,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	public void setURL(int parameterIndex, URL x) throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setURL(parameterIndex, x);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setURL(index, x);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1138,9 +1235,11 @@ public class PreparedStatementHandle extends StatementHandle implements
 	throws SQLException {
 		checkClosed();
 		try {
-			this.internalPreparedStatement.setUnicodeStream(parameterIndex, x, length);
-			if (this.logStatementsEnabled){
-				this.logParams.put(parameterIndex, x);
+			for (int index = mappedIndex(parameterIndex), last = lastMappedIndex(parameterIndex); index <= last; index++){
+				this.internalPreparedStatement.setUnicodeStream(index, x, length);
+				if (this.logStatementsEnabled){
+					this.logParams.setObject(index, x);
+				}
 			}
 		} catch (SQLException e) {
 			throw this.connectionHandle.markPossiblyBroken(e);
@@ -1150,6 +1249,51 @@ public class PreparedStatementHandle extends StatementHandle implements
 
 
 
+	/** Returns the statement parsed for logging, parsing it on first use.
+	 * @return template
+	 */
+	protected SqlTemplate getLogTemplate() {
+		if (this.logTemplate == null){
+			this.logTemplate = new SqlTemplate(this.sql == null ? "" : this.sql);
+		}
+		return this.logTemplate;
+	}
+
+	/** Logs this statement together with its parameters.
+	 * @param template this statement, parsed for logging
+	 */
+	protected void logStatement(SqlTemplate template) {
+		if (this.statementLog != null){
+			this.statementLog.add(logger, template, null, this.logParams, this.connectionHandle);
+		} else {
+			logger.debug(template.render(this.logParams));
+		}
+	}
+
+	/** Sets the parameter mapping of the statement the application asked for, if its IN-lists have been padded.
+	 * @param inListBucketing mapping, null if the statement was prepared as is
+	 */
+	protected void setInListBucketing(InListBucketing inListBucketing) {
+		this.inListBucketing = inListBucketing;
+	}
+
+	/** Returns the index of the given parameter in the statement actually prepared.
+	 * @param parameterIndex index as given by the application
+	 * @return index in the prepared statement
+	 */
+	private int mappedIndex(int parameterIndex) {
+		return this.inListBucketing == null ? parameterIndex : this.inListBucketing.getIndex(parameterIndex);
+	}
+
+	/** Returns the last index taking the value of the given parameter in the statement actually prepared.
+	 * @param parameterIndex index as given by the application
+	 * @return last index in the prepared statement
+	 */
+	private int lastMappedIndex(int parameterIndex) {
+		return this.inListBucketing == null ? parameterIndex : this.inListBucketing.getLastIndex(parameterIndex);
+	}
+
+
 	/** Returns the wrapped internal statement.
 	 * @return the internalPreparedStatement that this wrapper is using.
 	 */
@@ -0,0 +1,80 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.sql.SQLException;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes connections closed by the application off the pending-release queue, resets them and places them
+ * back in their partition so that the application thread doesn't have to wait for this.
+ * @author wallacew
+ *
+ */
+public class ReleaseHelperThread implements Runnable {
+	/** Connections waiting to be released. */
+	private BlockingQueue<ConnectionHandle> queue;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(ReleaseHelperThread.class);
+
+	/** Helper thread constructor.
+	 * @param queue connections waiting to be released.
+	 */
+	public ReleaseHelperThread(BlockingQueue<ConnectionHandle> queue) {
+		this.queue = queue;
+	}
+
+	public void run() {
+		while (true){
+			ConnectionHandle connection;
+			try {
+				connection = this.queue.take();
+			} catch (InterruptedException e) {
+				return; // pool is shutting down.
+			}
+			try {
+				connection.completeRelease();
+			} catch (SQLException e) {
+				logger.error("Error releasing connection", e);
+			} catch (Throwable t) {
+				// a driver or a connection hook blew up before the connection made it back to the pool. Keep going,
+				// nobody else is left to release the connections queued up behind this one.
+				logger.error("Error releasing connection, closing it off", t);
+				destroy(connection);
+			}
+		}
+	}
+
+	/** Closes off a connection that could not be released and takes it off the pool's books.
+	 * @param connection to close
+	 */
+	private void destroy(ConnectionHandle connection) {
+		try {
+			connection.internalClose();
+		} catch (Throwable t) {
+			logger.error("Error in attempting to close connection", t);
+		}
+		try {
+			connection.getPool().postDestroyConnection(connection);
+		} catch (Throwable t) {
+			logger.error("Error in attempting to destroy connection", t);
+		}
+	}
+}
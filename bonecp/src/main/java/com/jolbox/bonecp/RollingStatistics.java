@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters over the last few minutes, kept in a ring of one-second slices.
+ *
+ * Each slice is tagged with the second it holds. The first thread to add to a slice in a new second claims it by
+ * a compareAndSet on the tag and clears it; nothing is ever locked. A window is the sum of the slices of the
+ * seconds it covers, the current (incomplete) second excluded, so that the numbers don't drop at the start of
+ * every second. Numbers are approximate: counts added by another thread while a slice is being claimed may be lost.
+ *
+ * All threads add to the slice of the current second, so like {@link StripedCounter} each slice is split into
+ * STRIPES cache lines and every thread adds to the counters of its own stripe. That takes STRIPES * 64 bytes per
+ * second held, ie up to about 150KB.
+ *
+ * Unlike the cumulative statistics these are never reset, so that any number of monitoring tools can read them.
+ *
+ * @author wallacew
+ *
+ */
+public class RollingStatistics implements Serializable {
+	/** uid */
+	private static final long serialVersionUID = 6329806713092817745L;
+	/** Connections requested. */
+	public static final int CONNECTIONS_REQUESTED = 0;
+	/** Time waited for connections, in ns. */
+	public static final int CONNECTION_WAIT_TIME = 1;
+	/** Connection requests that timed out. */
+	public static final int CONNECTION_TIMEOUTS = 2;
+	/** Statements executed. */
+	public static final int STATEMENTS_EXECUTED = 3;
+	/** Time spent executing statements, in ns. */
+	public static final int STATEMENT_EXECUTE_TIME = 4;
+	/** Statement cache hits. */
+	public static final int CACHE_HITS = 5;
+	/** Statement cache misses. */
+	public static final int CACHE_MISS = 6;
+	/** Longs per stripe: the counters above, padded to a cache line. */
+	private static final int STRIPE_SIZE = StripedCounter.PADDING;
+	/** Number of stripes per slice, a power of two. */
+	protected static final int STRIPES = StripedCounter.stripes(8);
+	/** Longs per slice. */
+	private static final int SLICE_SIZE = STRIPES * STRIPE_SIZE;
+	/** Longest window, in seconds. */
+	protected static final int MAX_WINDOW_IN_SECONDS = 300;
+	/** Number of slices: the longest window plus the current second. */
+	private static final int SLICES = MAX_WINDOW_IN_SECONDS + 1;
+	/** Counters, SLICE_SIZE per slice. */
+	private final AtomicLongArray counters = new AtomicLongArray(SLICES * SLICE_SIZE);
+	/** Second held by each slice. */
+	private final AtomicLongArray seconds = new AtomicLongArray(SLICES);
+
+	/** Creates a ring with no slice in use. */
+	public RollingStatistics(){
+		for (int i=0; i < SLICES; i++){
+			this.seconds.set(i, Long.MIN_VALUE);
+		}
+	}
+
+	/** Returns the current second.
+	 * @return seconds since an arbitrary origin
+	 */
+	protected long now(){
+		return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+	}
+
+	/** Adds to a counter of the current second.
+	 * @param counter eg CONNECTIONS_REQUESTED
+	 * @param delta amount to add
+	 */
+	public void add(int counter, long delta){
+		add(counter, delta, now());
+	}
+
+	/** Adds to a counter of the given second.
+	 * @param counter eg CONNECTIONS_REQUESTED
+	 * @param delta amount to add
+	 * @param second second to add to
+	 */
+	protected void add(int counter, long delta, long second){
+		int slice = (int) ((second % SLICES + SLICES) % SLICES);
+		long held = this.seconds.get(slice);
+		if (held != second){
+			if (held < second && this.seconds.compareAndSet(slice, held, second)){
+				for (int i=0; i < SLICE_SIZE; i++){
+					this.counters.set(slice * SLICE_SIZE + i, 0);
+				}
+			} else if (this.seconds.get(slice) != second){
+				return; // too late for this slice.
+			}
+		}
+		this.counters.addAndGet(slice * SLICE_SIZE + StripedCounter.stripe(STRIPES) * STRIPE_SIZE + counter, delta);
+	}
+
+	/** Returns the sum of a counter over the last few seconds, the current one excluded.
+	 * @param counter eg CONNECTIONS_REQUESTED
+	 * @param windowInSeconds window, at most MAX_WINDOW_IN_SECONDS
+	 * @return sum
+	 */
+	public long getSum(int counter, int windowInSeconds){
+		return getSum(counter, windowInSeconds, now());
+	}
+
+	/** Returns the sum of a counter over the seconds before the given one.
+	 * @param counter eg CONNECTIONS_REQUESTED
+	 * @param windowInSeconds window, at most MAX_WINDOW_IN_SECONDS
+	 * @param second current second
+	 * @return sum
+	 */
+	protected long getSum(int counter, int windowInSeconds, long second){
+		long result = 0;
+		long oldest = second - Math.min(windowInSeconds, MAX_WINDOW_IN_SECONDS);
+		for (int slice=0; slice < SLICES; slice++){
+			long held = this.seconds.get(slice);
+			if (held >= oldest && held < second){
+				for (int stripe=0; stripe < STRIPES; stripe++){
+					result += this.counters.get(slice * SLICE_SIZE + stripe * STRIPE_SIZE + counter);
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Returns the rate of a counter over the last few seconds.
+	 * @param counter eg CONNECTIONS_REQUESTED
+	 * @param windowInSeconds window
+	 * @return average per second
+	 */
+	public double getRate(int counter, int windowInSeconds){
+		return getSum(counter, windowInSeconds) / (double) windowInSeconds;
+	}
+
+	/** Returns the ratio of two counters over the last few seconds, eg the average time per statement.
+	 * @param counter numerator, eg STATEMENT_EXECUTE_TIME
+	 * @param perCounter denominator, eg STATEMENTS_EXECUTED
+	 * @param windowInSeconds window
+	 * @return ratio, 0 if the denominator is 0
+	 */
+	public double getRatio(int counter, int perCounter, int windowInSeconds){
+		long second = now();
+		long divisor = getSum(perCounter, windowInSeconds, second);
+		return divisor == 0 ? 0 : getSum(counter, windowInSeconds, second) / (double) divisor;
+	}
+}
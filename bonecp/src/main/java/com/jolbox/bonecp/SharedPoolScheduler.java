@@ -0,0 +1,356 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide scheduler shared by every pool that has sharedScheduler set.
+ *
+ * Instead of each pool starting its own keep-alive, max-age and pool watch threads (plus one thread per
+ * checkout with closeConnectionWatch), a single timer thread keeps all delayed and periodic tasks in a hashed
+ * timing wheel and hands the ones that are due to a small fixed set of worker threads. The number of threads
+ * therefore stays the same however many pools are created.
+ *
+ * Each pool gets its own {@link Lane}. A lane never runs more than one task at a time and lanes with work
+ * pending are served round-robin: after running one task, a busy lane goes to the back of the line. A pool
+ * with a slow database (or a lot of connections to test) thus cannot hold up the housekeeping of other pools.
+ *
+ * The scheduler is started when the first lane is opened and stopped when the last one is shut down.
+ *
+ * @author wallacew
+ *
+ */
+public class SharedPoolScheduler {
+	/** Resolution of the timer. */
+	protected static final long TICK_IN_MS = 100;
+	/** Number of buckets in the wheel (a power of two). */
+	private static final int WHEEL_SIZE = 512;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(SharedPoolScheduler.class);
+	/** Running instance, null if no pool is using it. */
+	private static SharedPoolScheduler instance;
+	/** Number of lanes open on the running instance. */
+	private static int openLanes;
+	/** The wheel. Only touched by the timer thread. */
+	private final List<LinkedList<Timeout>> wheel = new ArrayList<LinkedList<Timeout>>(WHEEL_SIZE);
+	/** Timeouts waiting to be placed on the wheel by the timer thread. */
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	/** Runs the tasks that are due. */
+	private final ExecutorService workers;
+	/** Timer thread. */
+	private final Thread timer;
+	/** Set on shutdown. */
+	private volatile boolean stopped;
+
+	/** Starts the timer and worker threads. */
+	private SharedPoolScheduler() {
+		for (int i=0; i < WHEEL_SIZE; i++){
+			this.wheel.add(new LinkedList<Timeout>());
+		}
+		int workerThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		this.workers = Executors.newFixedThreadPool(workerThreads, new CustomThreadFactory("BoneCP-shared-scheduler-worker", true));
+		this.timer = new CustomThreadFactory("BoneCP-shared-scheduler-timer", true).newThread(new Runnable() {
+			public void run() {
+				runTimer();
+			}
+		});
+		this.timer.start();
+	}
+
+	/** Opens a new lane, starting the shared scheduler if this is the first one.
+	 * @param name name of the lane (for logging)
+	 * @return a new lane
+	 */
+	public static synchronized Lane newLane(String name) {
+		if (instance == null){
+			instance = new SharedPoolScheduler();
+		}
+		openLanes++;
+		return instance.new Lane(name);
+	}
+
+	/** Returns the number of lanes currently open.
+	 * @return open lanes
+	 */
+	protected static synchronized int getOpenLanes() {
+		return openLanes;
+	}
+
+	/** Called when a lane is shut down; stops the scheduler once nobody uses it anymore. */
+	private static synchronized void laneClosed() {
+		if (--openLanes == 0){
+			instance.stopped = true;
+			instance.timer.interrupt();
+			instance.workers.shutdownNow();
+			instance = null;
+		}
+	}
+
+	/** Timer loop: once per tick, places new timeouts on the wheel and fires the ones in the current bucket. */
+	private void runTimer() {
+		long tickInNanos = TimeUnit.MILLISECONDS.toNanos(TICK_IN_MS);
+		long startTime = System.nanoTime();
+		long tick = 0;
+		while (!this.stopped){
+			long sleepTimeInMs = TimeUnit.NANOSECONDS.toMillis(startTime + (tick + 1) * tickInNanos - System.nanoTime());
+			if (sleepTimeInMs > 0){
+				try {
+					Thread.sleep(sleepTimeInMs);
+				} catch (InterruptedException e) {
+					continue; // stopped (or spurious): the loop condition will tell.
+				}
+			}
+			Timeout timeout;
+			while ((timeout = this.pendingTimeouts.poll()) != null){
+				long ticks = Math.max(tick, (timeout.deadline - startTime) / tickInNanos);
+				timeout.remainingRounds = (ticks - tick) / WHEEL_SIZE;
+				this.wheel.get((int) (ticks & (WHEEL_SIZE - 1))).add(timeout);
+			}
+			Iterator<Timeout> bucket = this.wheel.get((int) (tick & (WHEEL_SIZE - 1))).iterator();
+			while (bucket.hasNext()){
+				timeout = bucket.next();
+				if (timeout.cancelled){
+					bucket.remove();
+				} else if (timeout.remainingRounds <= 0){
+					bucket.remove();
+					timeout.lane.submit(timeout);
+				} else {
+					timeout.remainingRounds--;
+				}
+			}
+			tick++;
+		}
+	}
+
+	/** A delayed or periodic task. */
+	public class Timeout implements Runnable {
+		/** Lane to run on. */
+		private final Lane lane;
+		/** What to run. */
+		private final Runnable task;
+		/** Delay between the end of one run and the start of the next, 0 if not periodic. */
+		private final long delayInNanos;
+		/** When the task is next due (nanoTime). */
+		private volatile long deadline;
+		/** Number of further turns of the wheel before the task is due. Only touched by the timer thread. */
+		private long remainingRounds;
+		/** Set on cancellation. */
+		private volatile boolean cancelled;
+
+		/** Creates a timeout.
+		 * @param lane lane to run on
+		 * @param task what to run
+		 * @param initialDelayInNanos delay before the first run
+		 * @param delayInNanos delay between runs, 0 for a one-off task
+		 */
+		private Timeout(Lane lane, Runnable task, long initialDelayInNanos, long delayInNanos) {
+			this.lane = lane;
+			this.task = task;
+			this.delayInNanos = delayInNanos;
+			this.deadline = System.nanoTime() + initialDelayInNanos;
+		}
+
+		/** Stops this task from running again. */
+		public void cancel() {
+			this.cancelled = true;
+			this.lane.timeouts.remove(this);
+		}
+
+		/** Runs the task and, if periodic, schedules the next run. */
+		public void run() {
+			if (this.cancelled){
+				return;
+			}
+			try {
+				this.task.run();
+			} finally {
+				if (this.delayInNanos > 0 && !this.cancelled && !this.lane.shutdown){
+					this.deadline = System.nanoTime() + this.delayInNanos;
+					SharedPoolScheduler.this.pendingTimeouts.offer(this);
+				} else {
+					this.lane.timeouts.remove(this);
+				}
+			}
+		}
+	}
+
+	/** A pool's share of the scheduler. Tasks submitted to the same lane run one at a time. */
+	public class Lane implements Runnable {
+		/** Name for logging. */
+		private final String name;
+		/** Tasks that are due. */
+		private final Queue<Runnable> ready = new ConcurrentLinkedQueue<Runnable>();
+		/** True while this lane is waiting for (or holding) a worker. */
+		private final AtomicBoolean dispatched = new AtomicBoolean();
+		/** Outstanding timeouts, for cancellation on shutdown. */
+		private final ConcurrentHashMap<Timeout, Boolean> timeouts = new ConcurrentHashMap<Timeout, Boolean>();
+		/** Set on shutdown. */
+		private volatile boolean shutdown;
+		/** Worker thread currently running a task of this lane. Guarded by this. */
+		private Thread runner;
+
+		/** Creates a lane.
+		 * @param name name for logging
+		 */
+		private Lane(String name) {
+			this.name = name;
+		}
+
+		/** Runs the given task on this lane as soon as possible.
+		 * @param task task to run
+		 */
+		public void execute(Runnable task) {
+			submit(task);
+		}
+
+		/** Runs the given task on this lane once, after the given delay.
+		 * @param task task to run
+		 * @param delay delay
+		 * @param unit unit of delay
+		 * @return handle to cancel the task
+		 */
+		public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+			return addTimeout(new Timeout(this, task, unit.toNanos(delay), 0));
+		}
+
+		/** Runs the given task on this lane periodically, the first time after initialDelay and then delay
+		 * after the end of each run.
+		 * @param task task to run
+		 * @param initialDelay delay before the first run
+		 * @param delay delay between the end of one run and the start of the next
+		 * @param unit unit of initialDelay and delay
+		 * @return handle to cancel the task
+		 */
+		public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+			return addTimeout(new Timeout(this, task, unit.toNanos(initialDelay), Math.max(1, unit.toNanos(delay))));
+		}
+
+		/** Cancels every task of this lane and interrupts the one running, if any. */
+		public void shutdown() {
+			if (this.shutdown){
+				return;
+			}
+			this.shutdown = true;
+			for (Timeout timeout: this.timeouts.keySet()){
+				timeout.cancel();
+			}
+			this.ready.clear();
+			synchronized (this) {
+				if (this.runner != null){
+					this.runner.interrupt();
+				}
+			}
+			laneClosed();
+		}
+
+		/** Waits for the task running at the time of shutdown (if any) to finish.
+		 * @param timeout max time to wait
+		 * @param unit unit of timeout
+		 * @return true if no task of this lane is running anymore
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			while (isRunning()){
+				if (System.nanoTime() >= deadline){
+					return false;
+				}
+				Thread.sleep(10);
+			}
+			return true;
+		}
+
+		/** Returns true while a task of this lane is running.
+		 * @return true if busy
+		 */
+		private synchronized boolean isRunning() {
+			return this.runner != null;
+		}
+
+		/** Registers a timeout with this lane and hands it to the timer.
+		 * @param timeout to add
+		 * @return timeout
+		 */
+		private Timeout addTimeout(Timeout timeout) {
+			if (!this.shutdown){
+				this.timeouts.put(timeout, Boolean.TRUE);
+				SharedPoolScheduler.this.pendingTimeouts.offer(timeout);
+			}
+			return timeout;
+		}
+
+		/** Queues a task that is due and makes sure a worker will get to it.
+		 * @param task task to run
+		 */
+		private void submit(Runnable task) {
+			if (this.shutdown){
+				return;
+			}
+			this.ready.offer(task);
+			dispatch();
+		}
+
+		/** Puts this lane in line for a worker unless it's already there. */
+		private void dispatch() {
+			if (!this.shutdown && this.dispatched.compareAndSet(false, true)){
+				if (SharedPoolScheduler.this.stopped){
+					this.dispatched.set(false);
+					return;
+				}
+				SharedPoolScheduler.this.workers.execute(this);
+			}
+		}
+
+		/** Runs one task and goes to the back of the line if there's more to do. */
+		public void run() {
+			Runnable task = this.ready.poll();
+			if (task != null && !this.shutdown){
+				synchronized (this) {
+					this.runner = Thread.currentThread();
+				}
+				try {
+					task.run();
+				} catch (Throwable t) {
+					logger.error("Error in scheduled task of "+this.name, t);
+				} finally {
+					synchronized (this) {
+						this.runner = null;
+						Thread.interrupted(); // an interrupt from our shutdown must not leak into another lane's task.
+					}
+				}
+			}
+			this.dispatched.set(false);
+			if (!this.ready.isEmpty()){
+				dispatch();
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A statement split up, once, into the literal text around its parameter markers, so that logging an execution
+ * only costs the appending of the segments and the parameters instead of a scan of the whole statement.
+ *
+ * Markers within single or double quotes are left alone, just like {@link PoolUtil#fillLogParams(String, Map)}
+ * does (which is built on this class).
+ *
+ * @author wallacew
+ *
+ */
+public class SqlTemplate {
+	/** Literal text between the markers: one more segment than there are markers. */
+	private final String[] segments;
+	/** Length of the statement. */
+	private final int length;
+
+	/** Parses the given statement.
+	 * @param sql statement
+	 */
+	public SqlTemplate(String sql){
+		List<String> parts = new ArrayList<String>();
+		boolean inQuote = false;
+		boolean inQuote2 = false;
+		int start = 0;
+		for (int i=0; i < sql.length(); i++){
+			char c = sql.charAt(i);
+			if (c == '\''){
+				inQuote = !inQuote;
+			}
+			if (c == '"'){
+				inQuote2 = !inQuote2;
+			}
+			if (c == '?' && !(inQuote || inQuote2)){
+				parts.add(sql.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(sql.substring(start));
+		this.segments = parts.toArray(new String[parts.size()]);
+		this.length = sql.length();
+	}
+
+	/** Returns the number of parameter markers in the statement.
+	 * @return number of markers
+	 */
+	public int getParameterCount(){
+		return this.segments.length - 1;
+	}
+
+	/** Returns the statement with its markers replaced by the given parameters, in order. Markers for which
+	 * there is no parameter are left as is.
+	 * @param logParams parameters, may be null
+	 * @return printable statement
+	 */
+	public String render(Map<Object, Object> logParams){
+		StringBuilder result = new StringBuilder(this.length + 16 * this.segments.length);
+		render(result, logParams == null ? null : logParams.values().iterator());
+		return result.toString();
+	}
+
+	/** Appends the statement with its markers replaced by the given parameters, in order.
+	 * @param result where to append to
+	 * @param params parameters, may be null
+	 */
+	public void render(StringBuilder result, Iterator<Object> params){
+		result.append(this.segments[0]);
+		for (int i=1; i < this.segments.length; i++){
+			if (params != null && params.hasNext()){
+				result.append(PoolUtil.prettyPrint(params.next()));
+			} else {
+				result.append('?');
+			}
+			result.append(this.segments[i]);
+		}
+	}
+}
@@ -29,17 +29,22 @@ import com.google.common.collect.MapMaker;
  *
  * @author wallacew
  */
-public class StatementCache implements IStatementCache {
+public class StatementCache extends AbstractStatementCache {
 	/** Logger class. */
 	private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
 	/** The cache of our statements. */
-	private ConcurrentMap<String, StatementHandle> cache;
+	private ConcurrentMap<Object, StatementHandle> cache;
 	/** How many items to cache. */
 	private int cacheSize;
 	/** If true, keep statistics. */
 	private final boolean maintainStats;
 	/** Statistics handle. */
 	private final Statistics statistics;
+	/** Pool-wide statement budget, null if none. */
+	private final StatementCacheBudget budget;
+	/** Key to look up statements prepared with more than just the SQL. Reused since only the connection that 
+	 * owns this cache looks statements up in it, so that a cache hit doesn't allocate anything. */
+	private final LookupKey lookupKey = new LookupKey();
 	
 	/**
 	 * Creates a statement cache of given size. 
@@ -49,6 +54,19 @@ public class StatementCache implements IStatementCache {
 	 * @param statistics statistics handle.
 	 */
 	public StatementCache(int size, boolean maintainStats, Statistics statistics){
+		this(size, maintainStats, statistics, null);
+	}
+
+	/**
+	 * Creates a statement cache of given size that also keeps within the given pool-wide budget. 
+	 *
+	 * @param size of cache.
+	 * @param maintainStats if true, keep track of statistics.
+	 * @param statistics statistics handle.
+	 * @param budget pool-wide statement budget, null if none.
+	 */
+	public StatementCache(int size, boolean maintainStats, Statistics statistics, StatementCacheBudget budget){
+		this.budget = budget;
 		this.maintainStats = maintainStats;
 		this.statistics = statistics;
 		this.cache = new MapMaker()
@@ -58,105 +76,13 @@ public class StatementCache implements IStatementCache {
 		this.cacheSize = size;
 	}
 
-	/** Simply appends the given parameters and returns it to obtain a cache key
-	 * @param sql
-	 * @param resultSetConcurrency
-	 * @param resultSetHoldability
-	 * @param resultSetType
-	 * @return cache key to use
-	 */
-	public String calculateCacheKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability){
-		StringBuilder tmp = calculateCacheKeyInternal(sql, resultSetType,
-				resultSetConcurrency);
-
-		tmp.append(", H:");
-		tmp.append(resultSetHoldability);
-
-		return tmp.toString();
-	}
-
-	/** Cache key calculation.
-	 * @param sql string
-	 * @param resultSetType
-	 * @param resultSetConcurrency
-	 * @return cache key
-	 */
-	public String calculateCacheKey(String sql, int resultSetType, int resultSetConcurrency){
-		StringBuilder tmp = calculateCacheKeyInternal(sql, resultSetType,
-				resultSetConcurrency);
-
-		return tmp.toString();
-	}
-
-	/** Cache key calculation.
-	 * @param sql
-	 * @param resultSetType
-	 * @param resultSetConcurrency
-	 * @return cache key
-	 */
-	private StringBuilder calculateCacheKeyInternal(String sql,
-			int resultSetType, int resultSetConcurrency) {
-		StringBuilder tmp = new StringBuilder(sql.length()+20);
-		tmp.append(sql);
-
-		tmp.append(", T");
-		tmp.append(resultSetType);
-		tmp.append(", C");
-		tmp.append(resultSetConcurrency);
-		return tmp;
-	}
-
-
-	/** Alternate version of autoGeneratedKeys.
-	 * @param sql
-	 * @param autoGeneratedKeys
-	 * @return cache key to use.
-	 */
-	public String calculateCacheKey(String sql, int autoGeneratedKeys) {
-		StringBuilder tmp = new StringBuilder(sql.length()+4);
-		tmp.append(sql);
-		tmp.append(autoGeneratedKeys);
-		return tmp.toString();
-	}
-
-	/** Calculate a cache key.
-	 * @param sql to use
-	 * @param columnIndexes to use
-	 * @return cache key to use.
-	 */
-	public String calculateCacheKey(String sql, int[] columnIndexes) {
-		StringBuilder tmp = new StringBuilder(sql.length()+4);
-		tmp.append(sql);
-		for (int i=0; i < columnIndexes.length; i++){
-			tmp.append(columnIndexes[i]);
-			tmp.append("CI,");
-		}
-		return tmp.toString();
-	}
-
-	/** Calculate a cache key.
-	 * @param sql to use
-	 * @param columnNames to use
-	 * @return cache key to use.
-	 */
-	public String calculateCacheKey(String sql, String[] columnNames) {
-		StringBuilder tmp = new StringBuilder(sql.length()+4);
-		tmp.append(sql);
-		for (int i=0; i < columnNames.length; i++){
-			tmp.append(columnNames[i]);
-			tmp.append("CN,");
-		}
-		return tmp.toString();
-
-	}
-
 	/** 
 	 * {@inheritDoc}
 	 *
-	 * @see com.jolbox.bonecp.IStatementCache#get(java.lang.String)
+	 * @see com.jolbox.bonecp.IStatementCache#get(java.lang.Object)
 	 */
 //	@Override
-	public StatementHandle get(String key){
+	public StatementHandle get(Object key){
 		StatementHandle statement = this.cache.get(key);
 		
 		if (statement != null && !statement.logicallyClosed.compareAndSet(true, false)){
@@ -173,36 +99,33 @@ public class StatementCache implements IStatementCache {
 		return statement;
 	}
 
+
+
 	// @Override
 	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
-		return get(calculateCacheKey(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+		return get(this.lookupKey.set(sql, resultSetType, resultSetConcurrency, resultSetHoldability, StatementCacheKey.NOT_SET, null, null));
 	}
 
-
 	// @Override
 	public StatementHandle get(String sql, int resultSetType, int resultSetConcurrency) {
-		return get(calculateCacheKey(sql, resultSetType, resultSetConcurrency));
+		return get(this.lookupKey.set(sql, resultSetType, resultSetConcurrency, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, null, null));
 	}
 
 	// @Override
 	public StatementHandle get(String sql, int autoGeneratedKeys) {
-		return get(calculateCacheKey(sql, autoGeneratedKeys));
+		return get(this.lookupKey.set(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, autoGeneratedKeys, null, null));
 	}
 
-
 	// @Override
 	public StatementHandle get(String sql, int[] columnIndexes) {
-		return get(calculateCacheKey(sql, columnIndexes));
+		return get(this.lookupKey.set(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, columnIndexes, null));
 	}
 
-
 	// @Override
 	public StatementHandle get(String sql, String[] columnNames) {
-		return get(calculateCacheKey(sql, columnNames));
+		return get(this.lookupKey.set(sql, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, StatementCacheKey.NOT_SET, null, columnNames));
 	}
 
-
-
 	/**
 	 * {@inheritDoc}
 	 *
@@ -213,6 +136,16 @@ public class StatementCache implements IStatementCache {
 		return this.cache.size();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see com.jolbox.bonecp.IStatementCache#containsKey(java.lang.Object)
+	 */
+	// @Override
+	public boolean containsKey(Object key){
+		return this.cache.containsKey(key);
+	}
+
 
 
 	/**
@@ -222,7 +155,9 @@ public class StatementCache implements IStatementCache {
 	 */
 	// @Override
 	public void clear() {
+		int cleared = 0;
 		for (StatementHandle statement: this.cache.values()){
+			cleared++;
 			try {
 				if (!statement.isClosed()){ 
 					statement.close();
@@ -233,6 +168,9 @@ public class StatementCache implements IStatementCache {
 			}
 		}
 		this.cache.clear();
+		if (this.budget != null){
+			this.budget.release(cleared);
+		}
 	}
 
 	// @Override
@@ -245,16 +183,85 @@ public class StatementCache implements IStatementCache {
 	}
 
 //	@Override
-	public void putIfAbsent(String key, StatementHandle handle) {
-		if (this.cache.size() <  this.cacheSize && key != null){ // perhaps use LRU in future?? Worth the overhead? Hmm....
-			if (this.cache.putIfAbsent(key, handle) == null){
-				handle.inCache = true;
-				if (this.maintainStats){
-					this.statistics.incrementStatementsCached();
+	public void putIfAbsent(Object key, StatementHandle handle) {
+		if (key == null){
+			return;
+		}
+		StatementHandle cached = this.cache.get(key);
+		if (cached == null){
+			if (this.cache.size() <  this.cacheSize && (this.budget == null || this.budget.tryAcquire())){ // once full, stay full. See BoundedStatementCache for an evicting cache.
+				if (this.cache.putIfAbsent(key, handle) == null){
+					handle.inCache = true;
+					if (this.maintainStats){
+						this.statistics.incrementStatementsCached();
+					}
+				} else if (this.budget != null){
+					this.budget.release(1);
 				}
 			}
+		} else if (cached.internalStatement == handle.internalStatement && this.cache.replace(key, cached, handle)){
+			// cache hit handed out in a new wrapper: the entry follows the wrapper so that closing it returns the
+			// statement to the cache instead of closing it off.
+			cached.inCache = false;
+			handle.inCache = true;
 		}
-
 	}
 
+	/** Stands in for the StatementCacheKey that would be created from the arguments of a prepareStatement/prepareCall
+	 * call, matching the cached keys in place (see {@link StatementCacheKey#matches}). Only ever used to look 
+	 * statements up, never stored in the cache.
+	 */
+	private static final class LookupKey {
+		/** SQL statement. */
+		private String sql;
+		/** Result set type, or NOT_SET. */
+		private int resultSetType;
+		/** Result set concurrency, or NOT_SET. */
+		private int resultSetConcurrency;
+		/** Result set holdability, or NOT_SET. */
+		private int resultSetHoldability;
+		/** Auto generated keys flag, or NOT_SET. */
+		private int autoGeneratedKeys;
+		/** Column indexes, or null. */
+		private int[] columnIndexes;
+		/** Column names, or null. */
+		private String[] columnNames;
+		/** Hash of the matching StatementCacheKey. */
+		private int hash;
+
+		/** Points this key at the given arguments.
+		 * @param sql SQL statement
+		 * @param resultSetType result set type, or NOT_SET
+		 * @param resultSetConcurrency result set concurrency, or NOT_SET
+		 * @param resultSetHoldability result set holdability, or NOT_SET
+		 * @param autoGeneratedKeys auto generated keys flag, or NOT_SET
+		 * @param columnIndexes column indexes, or null
+		 * @param columnNames column names, or null
+		 * @return this key
+		 */
+		LookupKey set(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, 
+				int autoGeneratedKeys, int[] columnIndexes, String[] columnNames){
+			this.sql = sql;
+			this.resultSetType = resultSetType;
+			this.resultSetConcurrency = resultSetConcurrency;
+			this.resultSetHoldability = resultSetHoldability;
+			this.autoGeneratedKeys = autoGeneratedKeys;
+			this.columnIndexes = columnIndexes;
+			this.columnNames = columnNames;
+			this.hash = StatementCacheKey.hashOf(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys, columnIndexes, columnNames);
+			return this;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof StatementCacheKey && obj.hashCode() == this.hash 
+			&& ((StatementCacheKey) obj).matches(this.sql, this.resultSetType, this.resultSetConcurrency, 
+					this.resultSetHoldability, this.autoGeneratedKeys, this.columnIndexes, this.columnNames);
+		}
+	}
 }
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool-wide limit on the number of statements held in the statement caches of all connections.
+ *
+ * statementsCacheSize applies to each cache, and every connection has two (prepared and callable statements),
+ * so without a budget a pool may keep up to statementsCacheSize * 2 * connections statements open on the
+ * server. Every statement cache of the pool takes a slot here before caching a statement and gives it back
+ * when the statement leaves the cache. Once all slots are taken, a statement only gets cached if it can take
+ * the place of a colder statement of the same connection; the {@link StatementCacheTrimmer} then frees up
+ * slots by evicting the coldest statements of the idle connections.
+ *
+ * A budget of 0 means no limit, in which case the number of statements cached is still counted.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementCacheBudget {
+	/** Max number of statements cached, 0 for no limit. */
+	private final int limit;
+	/** Number of statements currently cached. */
+	private final AtomicInteger usage = new AtomicInteger();
+	/** Number of times a statement was denied a slot because the budget was used up. */
+	private final AtomicLong denials = new AtomicLong();
+	/** Number of statements evicted to keep within the budget. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** Creates a budget.
+	 * @param limit max number of statements cached across the pool, 0 for no limit
+	 */
+	public StatementCacheBudget(int limit){
+		this.limit = Math.max(0, limit);
+	}
+
+	/** Takes a slot for a statement about to be cached.
+	 * @return true if the statement may be cached, false if the budget is used up
+	 */
+	public boolean tryAcquire(){
+		if (this.limit == 0){
+			this.usage.incrementAndGet();
+			return true;
+		}
+		for (;;){
+			int current = this.usage.get();
+			if (current >= this.limit){
+				this.denials.incrementAndGet();
+				return false;
+			}
+			if (this.usage.compareAndSet(current, current + 1)){
+				return true;
+			}
+		}
+	}
+
+	/** Gives back the slots of statements that have left their cache.
+	 * @param count number of statements
+	 */
+	public void release(int count){
+		if (count > 0){
+			this.usage.addAndGet(-count);
+		}
+	}
+
+	/** Records statements evicted to keep within the budget.
+	 * @param count number of statements
+	 */
+	protected void recordEvictions(int count){
+		this.evictions.addAndGet(count);
+	}
+
+	/** Returns the max number of statements cached across the pool.
+	 * @return limit, 0 if there is none
+	 */
+	public int getLimit(){
+		return this.limit;
+	}
+
+	/** Returns the number of statements currently cached across the pool.
+	 * @return number of statements
+	 */
+	public int getUsage(){
+		return this.usage.get();
+	}
+
+	/** Returns the number of times a statement was denied a slot because the budget was used up.
+	 * @return denials
+	 */
+	public long getDenials(){
+		return this.denials.get();
+	}
+
+	/** Returns the number of statements evicted to keep within the budget.
+	 * @return evictions
+	 */
+	public long getEvictions(){
+		return this.evictions.get();
+	}
+
+	/** Resets the denial and eviction counters. */
+	protected void resetStats(){
+		this.denials.set(0);
+		this.evictions.set(0);
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.Arrays;
+
+
+/**
+ * Statement cache key for statements prepared with more than just the SQL (statements prepared with the SQL 
+ * alone simply use the SQL string as their key).
+ *
+ * The key holds on to the SQL string rather than copying it and its hash is worked out once, when the key is
+ * created. The caches can also match a key against the arguments of a prepareStatement/prepareCall call
+ * directly (see {@link #hashOf} and {@link #matches}), so looking up a statement doesn't even need a key to 
+ * be created.
+ *
+ * @author wallacew
+ */
+public final class StatementCacheKey {
+	/** Value of the int fields not given in the call. */
+	public static final int NOT_SET = -1;
+	/** SQL statement. */
+	private final String sql;
+	/** Result set type, or NOT_SET. */
+	private final int resultSetType;
+	/** Result set concurrency, or NOT_SET. */
+	private final int resultSetConcurrency;
+	/** Result set holdability, or NOT_SET. */
+	private final int resultSetHoldability;
+	/** Auto generated keys flag, or NOT_SET. */
+	private final int autoGeneratedKeys;
+	/** Column indexes, or null. */
+	private final int[] columnIndexes;
+	/** Column names, or null. */
+	private final String[] columnNames;
+	/** Precomputed hash. */
+	private final int hash;
+
+	/** Key of a statement prepared with the given result set type, concurrency and holdability.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type
+	 * @param resultSetConcurrency result set concurrency
+	 * @param resultSetHoldability result set holdability
+	 */
+	public StatementCacheKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) {
+		this(sql, resultSetType, resultSetConcurrency, resultSetHoldability, NOT_SET, null, null);
+	}
+
+	/** Key of a statement prepared with the given result set type and concurrency.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type
+	 * @param resultSetConcurrency result set concurrency
+	 */
+	public StatementCacheKey(String sql, int resultSetType, int resultSetConcurrency) {
+		this(sql, resultSetType, resultSetConcurrency, NOT_SET, NOT_SET, null, null);
+	}
+
+	/** Key of a statement prepared with the given auto generated keys flag.
+	 * @param sql SQL statement
+	 * @param autoGeneratedKeys auto generated keys flag
+	 */
+	public StatementCacheKey(String sql, int autoGeneratedKeys) {
+		this(sql, NOT_SET, NOT_SET, NOT_SET, autoGeneratedKeys, null, null);
+	}
+
+	/** Key of a statement prepared with the given column indexes.
+	 * @param sql SQL statement
+	 * @param columnIndexes column indexes (copied)
+	 */
+	public StatementCacheKey(String sql, int[] columnIndexes) {
+		this(sql, NOT_SET, NOT_SET, NOT_SET, NOT_SET, columnIndexes.clone(), null);
+	}
+
+	/** Key of a statement prepared with the given column names.
+	 * @param sql SQL statement
+	 * @param columnNames column names (copied)
+	 */
+	public StatementCacheKey(String sql, String[] columnNames) {
+		this(sql, NOT_SET, NOT_SET, NOT_SET, NOT_SET, null, columnNames.clone());
+	}
+
+	/** Sets all fields.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type, or NOT_SET
+	 * @param resultSetConcurrency result set concurrency, or NOT_SET
+	 * @param resultSetHoldability result set holdability, or NOT_SET
+	 * @param autoGeneratedKeys auto generated keys flag, or NOT_SET
+	 * @param columnIndexes column indexes, or null
+	 * @param columnNames column names, or null
+	 */
+	private StatementCacheKey(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, 
+			int autoGeneratedKeys, int[] columnIndexes, String[] columnNames) {
+		this.sql = sql;
+		this.resultSetType = resultSetType;
+		this.resultSetConcurrency = resultSetConcurrency;
+		this.resultSetHoldability = resultSetHoldability;
+		this.autoGeneratedKeys = autoGeneratedKeys;
+		this.columnIndexes = columnIndexes;
+		this.columnNames = columnNames;
+		this.hash = hashOf(sql, resultSetType, resultSetConcurrency, resultSetHoldability, autoGeneratedKeys, columnIndexes, columnNames);
+	}
+
+	/** Returns the hash code of the key that would be created from the given arguments. Use NOT_SET (-1) and
+	 * null for the arguments not given in the call.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type
+	 * @param resultSetConcurrency result set concurrency
+	 * @param resultSetHoldability result set holdability
+	 * @param autoGeneratedKeys auto generated keys flag
+	 * @param columnIndexes column indexes
+	 * @param columnNames column names
+	 * @return hash code
+	 */
+	public static int hashOf(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, 
+			int autoGeneratedKeys, int[] columnIndexes, String[] columnNames){
+		int result = sql.hashCode();
+		result = 31 * result + resultSetType;
+		result = 31 * result + resultSetConcurrency;
+		result = 31 * result + resultSetHoldability;
+		result = 31 * result + autoGeneratedKeys;
+		result = 31 * result + Arrays.hashCode(columnIndexes);
+		result = 31 * result + Arrays.hashCode(columnNames);
+		return result;
+	}
+
+	/** Returns true if this key is the one that would be created from the given arguments, without creating it.
+	 * @param sql SQL statement
+	 * @param resultSetType result set type
+	 * @param resultSetConcurrency result set concurrency
+	 * @param resultSetHoldability result set holdability
+	 * @param autoGeneratedKeys auto generated keys flag
+	 * @param columnIndexes column indexes
+	 * @param columnNames column names
+	 * @return true on a match
+	 */
+	public boolean matches(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability, 
+			int autoGeneratedKeys, int[] columnIndexes, String[] columnNames){
+		return this.resultSetType == resultSetType
+		&& this.resultSetConcurrency == resultSetConcurrency
+		&& this.resultSetHoldability == resultSetHoldability
+		&& this.autoGeneratedKeys == autoGeneratedKeys
+		&& Arrays.equals(this.columnIndexes, columnIndexes)
+		&& Arrays.equals(this.columnNames, columnNames)
+		&& this.sql.equals(sql);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj){
+			return true;
+		}
+		if (!(obj instanceof StatementCacheKey)){
+			return false;
+		}
+		StatementCacheKey other = (StatementCacheKey) obj;
+		return this.hash == other.hash && matches(other.sql, other.resultSetType, other.resultSetConcurrency, 
+				other.resultSetHoldability, other.autoGeneratedKeys, other.columnIndexes, other.columnNames);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(this.sql);
+		if (this.resultSetType != NOT_SET){
+			result.append(", T").append(this.resultSetType).append(", C").append(this.resultSetConcurrency);
+		}
+		if (this.resultSetHoldability != NOT_SET){
+			result.append(", H:").append(this.resultSetHoldability);
+		}
+		if (this.autoGeneratedKeys != NOT_SET){
+			result.append(", K").append(this.autoGeneratedKeys);
+		}
+		if (this.columnIndexes != null){
+			result.append(", CI").append(Arrays.toString(this.columnIndexes));
+		}
+		if (this.columnNames != null){
+			result.append(", CN").append(Arrays.toString(this.columnNames));
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,149 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically evicts the coldest statements of the pool when the statement cache budget runs out.
+ *
+ * A statement cache can only be touched by whoever holds its connection, so a cache that is denied a slot
+ * can only make room among its own statements. If some statement caches were denied a slot since the
+ * previous run, this task frees up one slot per denial (but no more than MAX_HEADROOM_PERCENT of the budget)
+ * by evicting statements from the free connections, which it takes out of circulation one at a time while
+ * doing so. The connections that have been idle the longest are trimmed first, and each of them gives
+ * up at most half of its statements per round (picked by its cache's clock sweep, ie the ones without recent
+ * hits) so that the connections in use can cache their hot statements again.
+ *
+ * Only the BOUNDED statement cache evicts; with the DEFAULT cache the budget merely stops further caching.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementCacheTrimmer implements Runnable {
+	/** How often the trimmer runs. */
+	protected static final long RUN_PERIOD_IN_MS = 1000;
+	/** Max percentage of the budget freed up in one run. */
+	protected static final int MAX_HEADROOM_PERCENT = 25;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(StatementCacheTrimmer.class);
+	/** Pool handle. */
+	private BoneCP pool;
+	/** Budget being enforced. */
+	private StatementCacheBudget budget;
+	/** Denials as seen on the previous run. */
+	private long lastDenials;
+
+	/** Constructor.
+	 * @param pool pool handle
+	 * @param budget budget to enforce
+	 */
+	protected StatementCacheTrimmer(BoneCP pool, StatementCacheBudget budget){
+		this.pool = pool;
+		this.budget = budget;
+	}
+
+	/** Invoked periodically. */
+	public void run() {
+		try {
+			long denials = this.budget.getDenials();
+			if (denials == this.lastDenials){
+				return; // nobody is short of room.
+			}
+			int headroom = (int) Math.min(denials - this.lastDenials, Math.max(1, this.budget.getLimit() * MAX_HEADROOM_PERCENT / 100));
+			this.lastDenials = denials;
+			int excess = this.budget.getUsage() - (this.budget.getLimit() - headroom);
+			if (excess <= 0){
+				return;
+			}
+
+			List<ConnectionHandle> idleConnections = new ArrayList<ConnectionHandle>();
+			for (ConnectionPartition partition: this.pool.partitions){
+				for (ConnectionHandle connection: partition.getFreeConnections()){
+					if (connection.getCachedStatementCount() > 0){
+						idleConnections.add(connection);
+					}
+				}
+			}
+			Collections.sort(idleConnections, new Comparator<ConnectionHandle>() {
+				public int compare(ConnectionHandle o1, ConnectionHandle o2) {
+					long lastUsed1 = o1.getConnectionLastUsedInMs();
+					long lastUsed2 = o2.getConnectionLastUsedInMs();
+					return lastUsed1 < lastUsed2 ? -1 : (lastUsed1 == lastUsed2 ? 0 : 1);
+				}
+			});
+
+			int evicted = 0;
+			boolean progress = true;
+			while (evicted < excess && progress){
+				progress = false;
+				for (ConnectionHandle connection: idleConnections){
+					if (evicted >= excess){
+						break;
+					}
+					int count = Math.min(excess - evicted, Math.max(1, connection.getCachedStatementCount() / 2));
+					int trimmed = trim(connection, count);
+					if (trimmed > 0){
+						evicted += trimmed;
+						progress = true;
+					}
+				}
+			}
+			this.budget.recordEvictions(evicted);
+			logger.debug("Evicted "+evicted+" statements to keep within the statement cache budget");
+		} catch (Throwable t) {
+			logger.error("Error trimming the statement caches", t);
+		}
+	}
+
+	/** Evicts statements of a free connection, provided it can be taken out of circulation meanwhile.
+	 * @param connection connection to trim
+	 * @param count max number of statements to evict
+	 * @return number of statements evicted
+	 * @throws SQLException on error returning the connection to the pool
+	 */
+	protected int trim(ConnectionHandle connection, int count) throws SQLException {
+		if (this.pool.idleConnectionTestInPlace){
+			if (!connection.beginValidation()){
+				return 0;
+			}
+			int evicted = connection.trimStatementCaches(count);
+			if (connection.endValidation(true)){ // a borrower took it off the queue meanwhile, it's up to us to put it back.
+				this.pool.putConnectionBackInPartition(connection);
+			}
+			return evicted;
+		}
+
+		// taking it off the free queue is what makes it ours (every queue type supports removing a given connection);
+		// whoever else got to it first, be it a borrower or the connection tester, keeps it.
+		if (!connection.getOriginatingPartition().getFreeConnections().remove(connection)){
+			return 0; // handed out meanwhile.
+		}
+		try {
+			return connection.trimStatementCaches(count);
+		} finally {
+			this.pool.putConnectionBackInPartition(connection);
+		}
+	}
+}
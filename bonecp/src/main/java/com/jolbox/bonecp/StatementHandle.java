@@ -20,8 +20,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -47,8 +46,10 @@ public class StatementHandle implements Statement{
 	protected IStatementCache cache;
 	/** Handle to the connection holding this statement. */
 	protected ConnectionHandle connectionHandle;
+	/** connectionHandle.leaseGeneration at the time this statement was handed out. */
+	protected int leaseGeneration;
 	/** The key to use in the cache. */
-	private String cacheKey ;
+	private Object cacheKey ;
 	/** If enabled, log all statements being executed. */
 	protected boolean logStatementsEnabled;
 	/** If true, this statement is in the cache. */
@@ -67,9 +68,25 @@ public class StatementHandle implements Statement{
 	private boolean statisticsEnabled;
 	/** Statistics handle. */
 	private Statistics statistics;
+	/** Queue of the statement release helper threads, null to close statements right away. */
+	private BlockingQueue<Statement> statementsPendingRelease;
+	/** Config setting. */
+	private boolean reuseStatementHandles;
+	/** Statements waiting to be logged on a background thread, null to log them on the caller's thread. */
+	protected StatementLogQueue statementLog;
+	/** Per-statement profile of the pool, null if profiling is off. */
+	private StatementProfiler statementProfiler;
+	/** Random number (xorshift) picking the executions to profile. */
+	private int profileSeed;
+	/** True if the current execution is to be profiled. */
+	private boolean profiling;
+	/** Last statement fingerprinted, by reference. */
+	protected String fingerprintedSql;
+	/** Its fingerprint. */
+	protected String fingerprint;
 	
 	/** For logging purposes - stores parameters to be used for execution. */
-	protected Map<Object, Object> logParams = new TreeMap<Object, Object>();
+	protected ParameterBuffer logParams = new ParameterBuffer();
  
      /** for logging of addBatch. */
  	protected StringBuilder batchSQL = new StringBuilder(); 
@@ -86,18 +103,24 @@ public class StatementHandle implements Statement{
 	 * @param logStatementsEnabled set to true to log statements. 
 	 */
 	public StatementHandle(Statement internalStatement, String sql, IStatementCache cache, 
-						   ConnectionHandle connectionHandle, String cacheKey, 
+						   ConnectionHandle connectionHandle, Object cacheKey, 
 						   boolean logStatementsEnabled) {
 		this.sql = sql;
 		this.internalStatement = internalStatement;
 		this.cache = cache;
 		this.cacheKey = cacheKey; 
 		this.connectionHandle = connectionHandle;
+		this.leaseGeneration = connectionHandle.leaseGeneration.get();
 		this.logStatementsEnabled = logStatementsEnabled;
 		BoneCPConfig config = connectionHandle.getPool().getConfig();
 		this.connectionHook = config.getConnectionHook();
 		this.statistics = connectionHandle.getPool().getStatistics();
 		this.statisticsEnabled = config.isStatisticsEnabled();
+		this.statementsPendingRelease = connectionHandle.getPool().statementsPendingRelease;
+		this.reuseStatementHandles = config.isReuseStatementHandles();
+		this.statementLog = connectionHandle.getPool().statementLog;
+		this.statementProfiler = connectionHandle.getPool().statementProfiler;
+		this.profileSeed = System.identityHashCode(this) | 1;
 
 		try{
 			
@@ -128,17 +151,29 @@ public class StatementHandle implements Statement{
 
 	
 	public void close() throws SQLException {
+		if (this.reuseStatementHandles && this.logicallyClosed.get()){
+			return; // closed twice: this handle might have been handed out again in the meantime.
+		}
 		this.connectionHandle.untrackStatement(this);
 		this.logicallyClosed.set(true);
 		if (this.logStatementsEnabled){
-			this.logParams.clear();
+			this.logParams.release();
 			this.batchSQL = new StringBuilder();
 		}
-		if (this.cache == null || !this.inCache){ // no cache = throw it away right now
-			this.internalStatement.close();
+		if (this.cache == null || !this.inCache){ // no cache = throw it away right now (or have a helper thread do it)
+			closeInternalStatement();
 		}
 	
 	}
+
+	/** Closes off the underlying statement, or hands it over to the statement release helper threads to do so.
+	 * @throws SQLException on error
+	 */
+	protected void closeInternalStatement() throws SQLException {
+		if (this.statementsPendingRelease == null || !this.statementsPendingRelease.offer(this.internalStatement)){
+			this.internalStatement.close();
+		}
+	}
 		
 
 	/**
@@ -173,6 +208,9 @@ public class StatementHandle implements Statement{
 		if (this.logicallyClosed.get()) {
 			throw new SQLException("Statement is closed");
 		}
+		if (this.leaseGeneration != this.connectionHandle.leaseGeneration.get()){
+			throw new SQLException("Statement belongs to a connection that has already been closed");
+		}
 	}
 
 
@@ -245,7 +283,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try {
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long timer = queryTimerStart();
 			if (this.connectionHook != null){
@@ -272,6 +310,7 @@ public class StatementHandle implements Statement{
 	 * @param queryStartTime time when query was started.
 	 */
 	protected void queryTimerEnd(String sql, long queryStartTime) {
+		this.connectionHandle.markQuerySucceeded();
 		if ((this.queryExecuteTimeLimit != 0) 
 				&& (this.connectionHook != null)){
 			long timeElapsed = (System.nanoTime() - queryStartTime);
@@ -287,6 +326,34 @@ public class StatementHandle implements Statement{
 			
 		}
 
+		if (this.profiling && sql != null && sql.length() > 0){
+			if (sql != this.fingerprintedSql){
+				this.fingerprint = StatementProfiler.fingerprint(sql);
+				this.fingerprintedSql = sql;
+			}
+			this.statementProfiler.record(this.fingerprint, System.nanoTime() - queryStartTime);
+		}
+	}
+	
+	/** Takes over the fingerprint worked out by the handle that wrapped the same statement before, so that a cached
+	 * statement handed out in a new handle isn't fingerprinted all over again.
+	 * @param cached previous handle of the statement
+	 */
+	protected void copyFingerprint(StatementHandle cached){
+		this.fingerprintedSql = cached.fingerprintedSql;
+		this.fingerprint = cached.fingerprint;
+	}
+
+	/** Decides whether the next execution is to be profiled, one in sampleRate at random.
+	 * @return true to profile it
+	 */
+	private boolean sampleExecution() {
+		int seed = this.profileSeed;
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		this.profileSeed = seed;
+		return (seed & (this.statementProfiler.getSampleRate() - 1)) == 0;
 	}
 	
 
@@ -302,7 +369,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled  && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 
 			long queryStartTime = queryTimerStart();
@@ -329,7 +396,9 @@ public class StatementHandle implements Statement{
 	 * @return Start time
 	 */
 	protected long queryTimerStart() {
-		return this.statisticsEnabled || ((this.queryExecuteTimeLimit != 0) && (this.connectionHook != null)) ? System.nanoTime() : Long.MAX_VALUE;
+		this.connectionHandle.markStatementExecuted();
+		this.profiling = this.statementProfiler != null && sampleExecution();
+		return this.statisticsEnabled || this.profiling || ((this.queryExecuteTimeLimit != 0) && (this.connectionHook != null)) ? System.nanoTime() : Long.MAX_VALUE;
 	}
 
 	/**
@@ -344,7 +413,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 
 			long queryStartTime = queryTimerStart();
@@ -381,7 +450,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -413,7 +482,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(this.batchSQL.toString(), this.logParams));
+				logStatement(this.batchSQL.toString());
 			}
 			long queryStartTime = queryTimerStart();
 			String query = "";
@@ -455,7 +524,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -488,7 +557,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -521,7 +590,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -554,7 +623,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams), columnIndexes);
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -587,7 +656,7 @@ public class StatementHandle implements Statement{
 		checkClosed();
 		try{
 			if (this.logStatementsEnabled && logger.isDebugEnabled()){
-				logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+				logStatement(sql);
 			}
 			long queryStartTime = queryTimerStart();
 			if (this.connectionHook != null){
@@ -1104,6 +1173,17 @@ public class StatementHandle implements Statement{
 
 
 
+	/** Logs the given statement together with its parameters. 
+	 * @param sql statement to log
+	 */
+	protected void logStatement(String sql) {
+		if (this.statementLog != null){
+			this.statementLog.add(logger, null, sql, this.logParams, this.connectionHandle);
+		} else {
+			logger.debug(PoolUtil.fillLogParams(sql, this.logParams));
+		}
+	}
+
 	/**
 	 * Marks this statement as being "open"
 	 *
@@ -1112,6 +1192,15 @@ public class StatementHandle implements Statement{
 		this.logicallyClosed.set(false);
 	}
 
+	/** Hands this (cached) statement out again on the given connection, instead of wrapping the underlying 
+	 * statement in a new handle. See {@link BoneCPConfig#setReuseStatementHandles(boolean)}.
+	 * @param connectionHandle connection handle the statement is handed out on
+	 */
+	protected void reopen(ConnectionHandle connectionHandle) {
+		this.connectionHandle = connectionHandle;
+		this.leaseGeneration = connectionHandle.leaseGeneration.get();
+	}
+
 
 	@Override
 	public String toString(){
@@ -1149,6 +1238,13 @@ public class StatementHandle implements Statement{
 	public void setInternalStatement(Statement internalStatement) {
 		this.internalStatement = internalStatement;
 	}
+
+	/** Returns the key this statement was cached under (or would have been, had there been room).
+	 * @return the cacheKey, null if statement caching is disabled
+	 */
+	public Object getCacheKey() {
+		return this.cacheKey;
+	}
 	
 	/** Sets a debugHandle, an object that is not used by the connection pool at all but may be set by an application to track
 	 * this particular connection handle for any purpose it deems fit.
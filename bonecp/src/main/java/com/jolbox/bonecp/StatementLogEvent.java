@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+
+/**
+ * A statement waiting in the {@link StatementLogQueue} to be logged: a reference to its SQL and a copy of its
+ * parameters, taken at the time it was executed. Formatting is left to the {@link StatementLogWriterThread}.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementLogEvent {
+	/** Logger to log to. */
+	protected final Logger logger;
+	/** Statement parsed for logging, null if sql has to be parsed. */
+	private final SqlTemplate template;
+	/** Statement, if there is no template. */
+	private final String sql;
+	/** Parameters in order, null if there are none. */
+	private final Object[] params;
+	/** Time the statement was executed. */
+	protected final long timestamp;
+	/** Identifies the connection the statement was executed on. */
+	protected final int connectionId;
+
+	/** Constructor.
+	 * @param logger logger to log to
+	 * @param template statement parsed for logging, or null
+	 * @param sql statement, if there is no template
+	 * @param params parameters in order, or null
+	 * @param connectionId identifies the connection
+	 */
+	public StatementLogEvent(Logger logger, SqlTemplate template, String sql, Object[] params, int connectionId){
+		this.logger = logger;
+		this.template = template;
+		this.sql = sql;
+		this.params = params;
+		this.timestamp = System.currentTimeMillis();
+		this.connectionId = connectionId;
+	}
+
+	/** Appends the statement with its parameters filled in.
+	 * @param sb where to append to
+	 */
+	public void render(StringBuilder sb){
+		if (this.template != null){
+			this.template.render(sb, this.params == null ? null : Arrays.asList(this.params).iterator());
+		} else if (this.params == null){
+			sb.append(this.sql);
+		} else {
+			new SqlTemplate(this.sql == null ? "" : this.sql).render(sb, Arrays.asList(this.params).iterator());
+		}
+	}
+}
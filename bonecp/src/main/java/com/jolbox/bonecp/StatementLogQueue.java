@@ -0,0 +1,141 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Bounded queue of statements waiting to be logged by the {@link StatementLogWriterThread}, so that statement
+ * logging doesn't hold up the application threads on the logging backend.
+ *
+ * What happens when the writer falls behind and the queue fills up depends on the overflow policy:
+ * DROP discards the statement, SAMPLE starts keeping only one statement in SAMPLE_RATE once the queue is half
+ * full (and discards the rest), and BLOCK makes the executing thread wait for room. Once the pool is shutting down
+ * the writer is gone, so statements are discarded whatever the policy and nobody waits for room any longer.
+ * Statements discarded are counted, see {@link Statistics#getStatementsLogDropped()}.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementLogQueue {
+	/** Discard statements once the queue is full. */
+	public static final String DROP = "DROP";
+	/** Log one statement in SAMPLE_RATE once the queue is half full. */
+	public static final String SAMPLE = "SAMPLE";
+	/** Wait for room once the queue is full. */
+	public static final String BLOCK = "BLOCK";
+	/** One statement in this many is logged when sampling. */
+	protected static final int SAMPLE_RATE = 10;
+	/** How long a blocked thread waits for room before checking whether the queue has been closed. */
+	protected static final long BLOCK_TIMEOUT_IN_MS = 100;
+	/** Statements waiting to be logged. */
+	private final BlockingQueue<StatementLogEvent> queue;
+	/** If true, sample once the queue is half full. */
+	private final boolean sample;
+	/** If true, wait for room once the queue is full. */
+	private final boolean block;
+	/** Queue size from which sampling kicks in. */
+	private final int sampleThreshold;
+	/** Statements seen while sampling. */
+	private final AtomicLong sampled = new AtomicLong();
+	/** Statements discarded. */
+	private final AtomicLong dropped = new AtomicLong();
+	/** Set once the pool is shutting down. */
+	private volatile boolean closed;
+
+	/** Creates a queue.
+	 * @param size max number of statements waiting to be logged
+	 * @param overflowPolicy one of DROP, SAMPLE or BLOCK (anything else is taken as DROP)
+	 */
+	public StatementLogQueue(int size, String overflowPolicy){
+		this.queue = new ArrayBlockingQueue<StatementLogEvent>(size);
+		this.sample = SAMPLE.equalsIgnoreCase(overflowPolicy);
+		this.block = BLOCK.equalsIgnoreCase(overflowPolicy);
+		this.sampleThreshold = Math.max(1, size / 2);
+	}
+
+	/** Queues a statement for logging.
+	 * @param logger logger to log it to
+	 * @param template statement parsed for logging, or null to parse sql if need be
+	 * @param sql statement, if there is no template
+	 * @param logParams parameters of the statement (copied)
+	 * @param connectionHandle connection the statement is executed on
+	 */
+	public void add(Logger logger, SqlTemplate template, String sql, ParameterBuffer logParams, ConnectionHandle connectionHandle){
+		if (this.closed){
+			this.dropped.incrementAndGet();
+			return;
+		}
+		if (this.sample && this.queue.size() >= this.sampleThreshold
+				&& this.sampled.incrementAndGet() % SAMPLE_RATE != 0){
+			this.dropped.incrementAndGet();
+			return;
+		}
+		if (!this.block && this.queue.remainingCapacity() == 0){
+			this.dropped.incrementAndGet(); // don't bother copying the parameters.
+			return;
+		}
+
+		StatementLogEvent event = new StatementLogEvent(logger, template, sql, 
+				logParams == null || logParams.isEmpty() ? null : logParams.values().toArray(),
+				System.identityHashCode(connectionHandle));
+		if (this.block){
+			try {
+				while (!this.queue.offer(event, BLOCK_TIMEOUT_IN_MS, TimeUnit.MILLISECONDS)){
+					if (this.closed){ // the writer has stopped, there won't be any room.
+						this.dropped.incrementAndGet();
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.dropped.incrementAndGet();
+			}
+		} else if (!this.queue.offer(event)){
+			this.dropped.incrementAndGet();
+		}
+	}
+
+	/** Stops taking statements in, releasing any thread waiting for room. Called as the pool shuts down. */
+	protected void close(){
+		this.closed = true;
+	}
+
+	/** Returns the queue the writer takes the statements from.
+	 * @return queue
+	 */
+	protected BlockingQueue<StatementLogEvent> getQueue(){
+		return this.queue;
+	}
+
+	/** Returns the number of statements discarded because the queue was full.
+	 * @return number of statements
+	 */
+	public long getDropped(){
+		return this.dropped.get();
+	}
+
+	/** Resets the count of statements discarded. */
+	protected void resetStats(){
+		this.dropped.set(0);
+	}
+}
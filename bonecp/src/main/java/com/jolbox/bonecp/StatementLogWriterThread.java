@@ -0,0 +1,99 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the statements queued in a {@link StatementLogQueue}. Statements are taken off the queue in batches of up
+ * to BATCH_SIZE, and each run of statements bound for the same logger goes out as a single (multi-line) log
+ * entry, each line giving the statement, the connection it ran on and how long it waited in the queue.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementLogWriterThread implements Runnable {
+	/** Max number of statements taken off the queue at a time. */
+	protected static final int BATCH_SIZE = 256;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(StatementLogWriterThread.class);
+	/** Line separator. */
+	private static final String NEWLINE = System.getProperty("line.separator");
+	/** Statements waiting to be logged. */
+	private BlockingQueue<StatementLogEvent> queue;
+
+	/** Constructor.
+	 * @param statementLog statements waiting to be logged
+	 */
+	public StatementLogWriterThread(StatementLogQueue statementLog) {
+		this.queue = statementLog.getQueue();
+	}
+
+	public void run() {
+		List<StatementLogEvent> batch = new ArrayList<StatementLogEvent>(BATCH_SIZE);
+		while (true){
+			try {
+				batch.add(this.queue.take());
+			} catch (InterruptedException e) {
+				// pool is shutting down: log what's left and go.
+				while (this.queue.drainTo(batch, BATCH_SIZE) > 0){
+					write(batch);
+					batch.clear();
+				}
+				return;
+			}
+			this.queue.drainTo(batch, BATCH_SIZE - 1);
+			write(batch);
+			batch.clear();
+		}
+	}
+
+	/** Logs a batch of statements.
+	 * @param batch statements
+	 */
+	protected void write(List<StatementLogEvent> batch){
+		try {
+			long now = System.currentTimeMillis();
+			StringBuilder sb = new StringBuilder();
+			Logger target = null;
+			for (StatementLogEvent event: batch){
+				if (event.logger != target){
+					if (sb.length() > 0){
+						target.debug(sb.toString());
+						sb.setLength(0);
+					}
+					target = event.logger;
+				} else {
+					sb.append(NEWLINE);
+				}
+				event.render(sb);
+				sb.append(" [connection ").append(Integer.toHexString(event.connectionId))
+				.append(", queued ").append(now - event.timestamp).append("ms]");
+			}
+			if (sb.length() > 0){
+				target.debug(sb.toString());
+			}
+		} catch (Throwable t) {
+			logger.error("Error logging statements", t);
+		}
+	}
+}
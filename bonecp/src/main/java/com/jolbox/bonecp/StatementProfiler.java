@@ -0,0 +1,315 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * Per-statement execution profile of a pool.
+ *
+ * Statements are grouped by fingerprint: the SQL with its literals replaced by '?', comments dropped, whitespace
+ * normalised and lists of markers such as IN (?, ?, ?) folded into one. Only one execution in sampleRate is timed
+ * and recorded (statement handles pick them, see StatementHandle), counting for sampleRate executions, so that
+ * most executions pay for nothing more than a random number.
+ *
+ * At most maxStatements fingerprints are tracked; once that many are, the quarter with the least total time is
+ * dropped to make room for new ones.
+ *
+ * @author wallacew
+ *
+ */
+public class StatementProfiler {
+	/** Number of histogram buckets: the n-th counts times below 2^n microseconds. */
+	protected static final int HISTOGRAM_BUCKETS = 32;
+	/** A list of two or more markers. */
+	private static final Pattern MARKER_LIST = Pattern.compile("\\?(?: ?, ?\\?)+");
+	/** Max number of fingerprints tracked. */
+	private final int maxStatements;
+	/** One execution in this many is recorded (a power of two). */
+	private final int sampleRate;
+	/** Profile of each fingerprint. */
+	private final ConcurrentMap<String, Profile> profiles = new ConcurrentHashMap<String, Profile>();
+	/** Set while making room for new fingerprints. */
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	/** Execution profile of one fingerprint. */
+	protected static class Profile {
+		/** Fingerprint. */
+		private final String fingerprint;
+		/** Executions (estimated). */
+		private final AtomicLong count = new AtomicLong();
+		/** Total execution time (estimated), in ns. */
+		private final AtomicLong totalTime = new AtomicLong();
+		/** Longest execution time recorded, in ns. */
+		private final AtomicLong maxTime = new AtomicLong();
+		/** Executions recorded, by log2 of their time in microseconds. */
+		private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+		/** Constructor.
+		 * @param fingerprint fingerprint
+		 */
+		protected Profile(String fingerprint){
+			this.fingerprint = fingerprint;
+		}
+
+		/** Records an execution.
+		 * @param time execution time in ns
+		 * @param weight number of executions it stands for
+		 */
+		protected void record(long time, int weight){
+			this.count.addAndGet(weight);
+			this.totalTime.addAndGet(time * weight);
+			long max = this.maxTime.get();
+			while (time > max && !this.maxTime.compareAndSet(max, time)){
+				max = this.maxTime.get();
+			}
+			this.histogram.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(time / 1000)));
+		}
+
+		/** Returns the fingerprint.
+		 * @return fingerprint
+		 */
+		public String getFingerprint() {
+			return this.fingerprint;
+		}
+
+		/** Returns the number of executions.
+		 * @return executions (estimated)
+		 */
+		public long getCount() {
+			return this.count.get();
+		}
+
+		/** Returns the total execution time.
+		 * @return time in ns (estimated)
+		 */
+		public long getTotalTime() {
+			return this.totalTime.get();
+		}
+
+		/** Returns the longest execution time recorded.
+		 * @return time in ns
+		 */
+		public long getMaxTime() {
+			return this.maxTime.get();
+		}
+
+		/** Returns an upper bound of the given percentile of the execution time.
+		 * @param percentile eg 99
+		 * @return time in ns, 0 if nothing was recorded
+		 */
+		public long getPercentile(double percentile){
+			long total = 0;
+			for (int i=0; i < HISTOGRAM_BUCKETS; i++){
+				total += this.histogram.get(i);
+			}
+			long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+			long seen = 0;
+			for (int i=0; i < HISTOGRAM_BUCKETS && total > 0; i++){
+				seen += this.histogram.get(i);
+				if (seen >= rank){
+					return Math.min(getMaxTime(), ((1L << i) - 1) * 1000 + 999);
+				}
+			}
+			return getMaxTime();
+		}
+
+		@Override
+		public String toString() {
+			long count = getCount();
+			return String.format(Locale.ENGLISH, "total=%.1fms count=%d avg=%.3fms p50<=%.3fms p99<=%.3fms max=%.3fms %s", 
+					getTotalTime() / 1000000.0, count, count == 0 ? 0 : getTotalTime() / (1000000.0 * count), 
+							getPercentile(50) / 1000000.0, getPercentile(99) / 1000000.0, getMaxTime() / 1000000.0, this.fingerprint);
+		}
+	}
+
+	/** Constructor.
+	 * @param maxStatements max number of fingerprints to track
+	 * @param sampleRate record one execution in this many (rounded up to a power of two)
+	 */
+	public StatementProfiler(int maxStatements, int sampleRate){
+		this.maxStatements = maxStatements;
+		int rate = 1;
+		while (rate < sampleRate){
+			rate <<= 1;
+		}
+		this.sampleRate = rate;
+	}
+
+	/** Returns the sample rate.
+	 * @return one execution in this many is recorded
+	 */
+	public int getSampleRate() {
+		return this.sampleRate;
+	}
+
+	/** Records an execution.
+	 * @param fingerprint fingerprint of the statement, see fingerprint()
+	 * @param time execution time in ns
+	 */
+	public void record(String fingerprint, long time){
+		Profile profile = this.profiles.get(fingerprint);
+		if (profile == null){
+			if (this.profiles.size() >= this.maxStatements){
+				evict();
+			}
+			Profile newProfile = new Profile(fingerprint);
+			profile = this.profiles.putIfAbsent(fingerprint, newProfile);
+			if (profile == null){
+				profile = newProfile;
+			}
+		}
+		profile.record(time, this.sampleRate);
+	}
+
+	/** Drops the quarter of the fingerprints with the least total time. */
+	protected void evict(){
+		if (this.evicting.compareAndSet(false, true)){
+			try {
+				List<Profile> ranked = getProfiles();
+				for (int i=ranked.size() - 1; i >= 0 && i >= ranked.size() - Math.max(1, ranked.size() / 4); i--){
+					this.profiles.remove(ranked.get(i).getFingerprint());
+				}
+			} finally {
+				this.evicting.set(false);
+			}
+		}
+	}
+
+	/** Returns the profiles, most total time first.
+	 * @return profiles
+	 */
+	public List<Profile> getProfiles(){
+		List<Profile> result = new ArrayList<Profile>(this.profiles.values());
+		Collections.sort(result, new Comparator<Profile>() {
+			public int compare(Profile o1, Profile o2) {
+				long total1 = o1.getTotalTime();
+				long total2 = o2.getTotalTime();
+				return total1 > total2 ? -1 : (total1 == total2 ? 0 : 1);
+			}
+		});
+		return result;
+	}
+
+	/** Returns a line per fingerprint with the most total time, most first.
+	 * @param count max number of lines
+	 * @return report
+	 */
+	public String[] getTopStatements(int count){
+		List<Profile> ranked = getProfiles();
+		String[] result = new String[Math.max(0, Math.min(count, ranked.size()))];
+		for (int i=0; i < result.length; i++){
+			result[i] = ranked.get(i).toString();
+		}
+		return result;
+	}
+
+	/** Forgets all fingerprints. */
+	public void reset(){
+		this.profiles.clear();
+	}
+
+	/** Returns the fingerprint of a statement: literals replaced by '?', comments dropped, whitespace 
+	 * normalised and lists of markers folded into one. 
+	 * @param sql statement
+	 * @return fingerprint
+	 */
+	public static String fingerprint(String sql){
+		if (sql == null){
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(sql.length());
+		boolean space = false;
+		int length = sql.length();
+		int i = 0;
+		while (i < length){
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)){
+				space = true;
+				i++;
+				continue;
+			}
+			if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-'){
+				while (i < length && sql.charAt(i) != '\n'){
+					i++;
+				}
+				space = true;
+				continue;
+			}
+			if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*'){
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+				space = true;
+				continue;
+			}
+			if (space && sb.length() > 0){
+				sb.append(' ');
+			}
+			space = false;
+			if (c == '\'' ){
+				i++;
+				while (i < length){ // '' is an escaped quote: the literal goes on.
+					if (sql.charAt(i++) == '\''){
+						if (i < length && sql.charAt(i) == '\''){
+							i++;
+						} else {
+							break;
+						}
+					}
+				}
+				sb.append('?');
+			} else if (c == '"'){
+				int end = sql.indexOf('"', i + 1);
+				end = end < 0 ? length : end + 1;
+				sb.append(sql, i, end);
+				i = end;
+			} else if (Character.isDigit(c) && !isPartOfIdentifier(sb)){
+				while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.' 
+						|| ((sql.charAt(i) == '+' || sql.charAt(i) == '-') && (sql.charAt(i - 1) == 'e' || sql.charAt(i - 1) == 'E')))){
+					i++;
+				}
+				sb.append('?');
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return MARKER_LIST.matcher(sb).replaceAll("?");
+	}
+
+	/** Returns true if the next character would continue an identifier (eg the 1 of table1).
+	 * @param sb fingerprint so far
+	 * @return true if the last character is part of a word
+	 */
+	private static boolean isPartOfIdentifier(StringBuilder sb){
+		if (sb.length() == 0){
+			return false;
+		}
+		char last = sb.charAt(sb.length() - 1);
+		return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Closes off statements that the application closed (and that are not kept in a statement cache) so that
+ * the application thread doesn't have to wait for the driver.
+ * @author wallacew
+ *
+ */
+public class StatementReleaseHelperThread implements Runnable {
+	/** Statements waiting to be closed. */
+	private BlockingQueue<Statement> queue;
+	/** Logger handle. */
+	private static final Logger logger = LoggerFactory.getLogger(StatementReleaseHelperThread.class);
+
+	/** Helper thread constructor.
+	 * @param queue statements waiting to be closed.
+	 */
+	public StatementReleaseHelperThread(BlockingQueue<Statement> queue) {
+		this.queue = queue;
+	}
+
+	public void run() {
+		while (true){
+			Statement statement;
+			try {
+				statement = this.queue.take();
+			} catch (InterruptedException e) {
+				return; // pool is shutting down.
+			}
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				// the connection may well have been closed in the meantime; nobody is around to care.
+				logger.debug("Error closing statement", e);
+			} catch (Throwable t) {
+				// keep going, nobody else is left to close the statements queued up behind this one.
+				logger.error("Error closing statement", t);
+			}
+		}
+	}
+}
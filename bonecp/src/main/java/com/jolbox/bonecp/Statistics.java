@@ -16,7 +16,6 @@
 package com.jolbox.bonecp;
 
 import java.io.Serializable;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Statistics class.
@@ -29,23 +28,35 @@ public class Statistics implements StatisticsMBean, Serializable{
 	 */
 	private static final long serialVersionUID = -5819368300823149669L;
 	/** No of cache hits. */
-	private final AtomicLong cacheHits = new AtomicLong(0);
+	private final StripedCounter cacheHits = new StripedCounter();
 	/** No of cache misses. */
-	private final AtomicLong cacheMiss = new AtomicLong(0);
+	private final StripedCounter cacheMiss = new StripedCounter();
 	/** No of statements cached. */
-	private final AtomicLong statementsCached = new AtomicLong(0);
+	private final StripedCounter statementsCached = new StripedCounter();
 	/** Connections obtained. */
-	private final AtomicLong connectionsRequested = new AtomicLong(0);
+	private final StripedCounter connectionsRequested = new StripedCounter();
 	/** Time taken to give a connection to the application. */  
-	private final AtomicLong cumulativeConnectionWaitTime = new AtomicLong(0);
+	private final StripedCounter cumulativeConnectionWaitTime = new StripedCounter();
 	/** Time taken to execute statements. */  
-	private final AtomicLong cumulativeStatementExecuteTime = new AtomicLong(0);
+	private final StripedCounter cumulativeStatementExecuteTime = new StripedCounter();
 	/** Time taken to prepare statements (or obtain from cache). */  
-	private final AtomicLong cumulativeStatementPrepareTime = new AtomicLong(0);
+	private final StripedCounter cumulativeStatementPrepareTime = new StripedCounter();
 	/** Number of statements that have been executed. */
-	private final AtomicLong statementsExecuted = new AtomicLong(0);
+	private final StripedCounter statementsExecuted = new StripedCounter();
 	/** Number of statements that have been prepared. */
-	private final AtomicLong statementsPrepared = new AtomicLong(0);
+	private final StripedCounter statementsPrepared = new StripedCounter();
+	/** Number of connection requests that timed out. */
+	private final StripedCounter connectionTimeouts = new StripedCounter();
+	/** Distribution of the time taken to give a connection to the application. */
+	private final LatencyHistogram connectionWaitTime = new LatencyHistogram();
+	/** Distribution of the time connections are held by the application. */
+	private final LatencyHistogram connectionHoldTime = new LatencyHistogram();
+	/** Distribution of the time taken to prepare statements. */
+	private final LatencyHistogram statementPrepareTime = new LatencyHistogram();
+	/** Distribution of the time taken to execute statements. */
+	private final LatencyHistogram statementExecuteTime = new LatencyHistogram();
+	/** The same numbers over the last few minutes. Never reset. */
+	private final RollingStatistics rolling = new RollingStatistics();
 	
 	/** Pool handle. */
 	private BoneCP pool;
@@ -61,15 +72,32 @@ public class Statistics implements StatisticsMBean, Serializable{
 	 * @see com.jolbox.bonecp.StatisticsMBean#resetStats()
 	 */
 	public void resetStats(){
-		this.cacheHits.set(0);
-		this.cacheMiss.set(0);
-		this.statementsCached.set(0);
-		this.connectionsRequested.set(0);
-		this.cumulativeConnectionWaitTime.set(0);
-		this.cumulativeStatementExecuteTime.set(0);
-		this.cumulativeStatementPrepareTime.set(0);
-		this.statementsExecuted.set(0);
-		this.statementsPrepared.set(0);
+		this.cacheHits.reset();
+		this.cacheMiss.reset();
+		this.statementsCached.reset();
+		this.connectionsRequested.reset();
+		this.cumulativeConnectionWaitTime.reset();
+		this.cumulativeStatementExecuteTime.reset();
+		this.cumulativeStatementPrepareTime.reset();
+		this.statementsExecuted.reset();
+		this.statementsPrepared.reset();
+		this.connectionTimeouts.reset();
+		this.connectionWaitTime.reset();
+		this.connectionHoldTime.reset();
+		this.statementPrepareTime.reset();
+		this.statementExecuteTime.reset();
+		if (this.pool.statementCacheBudget != null){
+			this.pool.statementCacheBudget.resetStats();
+		}
+		if (this.pool.statementLog != null){
+			this.pool.statementLog.resetStats();
+		}
+		if (this.pool.statementProfiler != null){
+			this.pool.statementProfiler.reset();
+		}
+		if (this.pool.connectionTags != null){
+			this.pool.connectionTags.reset();
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -155,33 +183,37 @@ public class Statistics implements StatisticsMBean, Serializable{
 	 * @param increment
 	 */
 	protected void addCumulativeConnectionWaitTime(long increment) {
-		this.cumulativeConnectionWaitTime.addAndGet(increment);
+		this.cumulativeConnectionWaitTime.add(increment);
+		this.connectionWaitTime.record(increment);
+		this.rolling.add(RollingStatistics.CONNECTION_WAIT_TIME, increment);
 	}
 
 	/** Adds statements executed.
 	 */
 	protected void incrementStatementsExecuted() {
-		this.statementsExecuted.incrementAndGet();
+		this.statementsExecuted.increment();
+		this.rolling.add(RollingStatistics.STATEMENTS_EXECUTED, 1);
 	}
 	
 	/** Adds statements executed.
 	 */
 	protected void incrementStatementsPrepared() {
-		this.statementsPrepared.incrementAndGet();
+		this.statementsPrepared.increment();
 	}
 	
 	/**
 	 * Accessor method.
 	 */
 	protected void incrementStatementsCached() {
-		this.statementsCached.incrementAndGet();
+		this.statementsCached.increment();
 	}
 
 	/**
 	 * Accessor method.
 	 */
 	protected void incrementCacheMiss() {
-		this.cacheMiss.incrementAndGet();
+		this.cacheMiss.increment();
+		this.rolling.add(RollingStatistics.CACHE_MISS, 1);
 	}
 
 
@@ -189,14 +221,31 @@ public class Statistics implements StatisticsMBean, Serializable{
 	 * Accessor method.
 	 */
 	protected void incrementCacheHits() {
-		this.cacheHits.incrementAndGet();
+		this.cacheHits.increment();
+		this.rolling.add(RollingStatistics.CACHE_HITS, 1);
 	}
 
 	/**
 	 * Accessor method.
 	 */
 	protected void incrementConnectionsRequested() {
-		this.connectionsRequested.incrementAndGet();
+		this.connectionsRequested.increment();
+		this.rolling.add(RollingStatistics.CONNECTIONS_REQUESTED, 1);
+	}
+
+	/**
+	 * Accessor method.
+	 */
+	protected void incrementConnectionTimeouts() {
+		this.connectionTimeouts.increment();
+		this.rolling.add(RollingStatistics.CONNECTION_TIMEOUTS, 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionTimeouts()
+	 */
+	public long getConnectionTimeouts() {
+		return this.connectionTimeouts.get();
 	}
 
 	/* (non-Javadoc)
@@ -220,12 +269,21 @@ public class Statistics implements StatisticsMBean, Serializable{
 		return this.cumulativeStatementExecuteTime.get() / 1000000;
 	}
 
+	/** Records the time a connection was held by the application.
+	 * @param time in nanoseconds
+	 */
+	protected void addConnectionHoldTime(long time) {
+		this.connectionHoldTime.record(time);
+	}
+
 	/**
 	 * Accessor method
 	 * @param time
 	 */
 	protected void addStatementExecuteTime(long time) {
-		this.cumulativeStatementExecuteTime.addAndGet(time);
+		this.cumulativeStatementExecuteTime.add(time);
+		this.statementExecuteTime.record(time);
+		this.rolling.add(RollingStatistics.STATEMENT_EXECUTE_TIME, time);
 	}
 	
 	/**
@@ -233,7 +291,8 @@ public class Statistics implements StatisticsMBean, Serializable{
 	 * @param time
 	 */
 	protected void addStatementPrepareTime(long time) {
-		this.cumulativeStatementPrepareTime.addAndGet(time);
+		this.cumulativeStatementPrepareTime.add(time);
+		this.statementPrepareTime.record(time);
 	}
 
 	/* (non-Javadoc)
@@ -249,5 +308,337 @@ public class Statistics implements StatisticsMBean, Serializable{
 	public long getStatementsPrepared() {
 		return this.statementsPrepared.get();
 	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementsCacheBudget()
+	 */
+	public int getStatementsCacheBudget() {
+		return this.pool.statementCacheBudget == null ? 0 : this.pool.statementCacheBudget.getLimit();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementsCachedInPool()
+	 */
+	public int getStatementsCachedInPool() {
+		return this.pool.statementCacheBudget == null ? 0 : this.pool.statementCacheBudget.getUsage();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementsCacheBudgetDenials()
+	 */
+	public long getStatementsCacheBudgetDenials() {
+		return this.pool.statementCacheBudget == null ? 0 : this.pool.statementCacheBudget.getDenials();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementsCacheBudgetEvictions()
+	 */
+	public long getStatementsCacheBudgetEvictions() {
+		return this.pool.statementCacheBudget == null ? 0 : this.pool.statementCacheBudget.getEvictions();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementsLogDropped()
+	 */
+	public long getStatementsLogDropped() {
+		return this.pool.statementLog == null ? 0 : this.pool.statementLog.getDropped();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getTopStatements(int)
+	 */
+	public String[] getTopStatements(int count) {
+		return this.pool.statementProfiler == null ? new String[0] : this.pool.statementProfiler.getTopStatements(count);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionTags()
+	 */
+	public String[] getConnectionTags() {
+		return this.pool.connectionTags == null ? new String[0] : this.pool.connectionTags.getReport();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#dumpLeakSuspects()
+	 */
+	public String[] dumpLeakSuspects() {
+		return this.pool.leakDetector == null ? new String[0] : this.pool.leakDetector.getSuspects();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeP50()
+	 */
+	public double getConnectionWaitTimeP50() {
+		return this.connectionWaitTime.getPercentile(50) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeP90()
+	 */
+	public double getConnectionWaitTimeP90() {
+		return this.connectionWaitTime.getPercentile(90) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeP99()
+	 */
+	public double getConnectionWaitTimeP99() {
+		return this.connectionWaitTime.getPercentile(99) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeP999()
+	 */
+	public double getConnectionWaitTimeP999() {
+		return this.connectionWaitTime.getPercentile(99.9) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeMax()
+	 */
+	public double getConnectionWaitTimeMax() {
+		return this.connectionWaitTime.getMax() / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionHoldTimeP50()
+	 */
+	public double getConnectionHoldTimeP50() {
+		return this.connectionHoldTime.getPercentile(50) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionHoldTimeP90()
+	 */
+	public double getConnectionHoldTimeP90() {
+		return this.connectionHoldTime.getPercentile(90) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionHoldTimeP99()
+	 */
+	public double getConnectionHoldTimeP99() {
+		return this.connectionHoldTime.getPercentile(99) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionHoldTimeP999()
+	 */
+	public double getConnectionHoldTimeP999() {
+		return this.connectionHoldTime.getPercentile(99.9) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionHoldTimeMax()
+	 */
+	public double getConnectionHoldTimeMax() {
+		return this.connectionHoldTime.getMax() / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementPrepareTimeP50()
+	 */
+	public double getStatementPrepareTimeP50() {
+		return this.statementPrepareTime.getPercentile(50) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementPrepareTimeP90()
+	 */
+	public double getStatementPrepareTimeP90() {
+		return this.statementPrepareTime.getPercentile(90) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementPrepareTimeP99()
+	 */
+	public double getStatementPrepareTimeP99() {
+		return this.statementPrepareTime.getPercentile(99) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementPrepareTimeP999()
+	 */
+	public double getStatementPrepareTimeP999() {
+		return this.statementPrepareTime.getPercentile(99.9) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementPrepareTimeMax()
+	 */
+	public double getStatementPrepareTimeMax() {
+		return this.statementPrepareTime.getMax() / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeP50()
+	 */
+	public double getStatementExecuteTimeP50() {
+		return this.statementExecuteTime.getPercentile(50) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeP90()
+	 */
+	public double getStatementExecuteTimeP90() {
+		return this.statementExecuteTime.getPercentile(90) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeP99()
+	 */
+	public double getStatementExecuteTimeP99() {
+		return this.statementExecuteTime.getPercentile(99) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeP999()
+	 */
+	public double getStatementExecuteTimeP999() {
+		return this.statementExecuteTime.getPercentile(99.9) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeMax()
+	 */
+	public double getStatementExecuteTimeMax() {
+		return this.statementExecuteTime.getMax() / 1000000.0;
+	}
+
+	/** Returns the cache hit ratio over the last few seconds.
+	 * @param windowInSeconds window
+	 * @return hit ratio
+	 */
+	private double getCacheHitRatio(int windowInSeconds) {
+		long hits = this.rolling.getSum(RollingStatistics.CACHE_HITS, windowInSeconds);
+		long total = hits + this.rolling.getSum(RollingStatistics.CACHE_MISS, windowInSeconds);
+		return total == 0 ? 0 : hits / (1.0*total);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionRequestRate10s()
+	 */
+	public double getConnectionRequestRate10s() {
+		return this.rolling.getRate(RollingStatistics.CONNECTIONS_REQUESTED, 10);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeAvg10s()
+	 */
+	public double getConnectionWaitTimeAvg10s() {
+		return this.rolling.getRatio(RollingStatistics.CONNECTION_WAIT_TIME, RollingStatistics.CONNECTIONS_REQUESTED, 10) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionTimeouts10s()
+	 */
+	public long getConnectionTimeouts10s() {
+		return this.rolling.getSum(RollingStatistics.CONNECTION_TIMEOUTS, 10);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteRate10s()
+	 */
+	public double getStatementExecuteRate10s() {
+		return this.rolling.getRate(RollingStatistics.STATEMENTS_EXECUTED, 10);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeAvg10s()
+	 */
+	public double getStatementExecuteTimeAvg10s() {
+		return this.rolling.getRatio(RollingStatistics.STATEMENT_EXECUTE_TIME, RollingStatistics.STATEMENTS_EXECUTED, 10) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getCacheHitRatio10s()
+	 */
+	public double getCacheHitRatio10s() {
+		return getCacheHitRatio(10);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionRequestRate1m()
+	 */
+	public double getConnectionRequestRate1m() {
+		return this.rolling.getRate(RollingStatistics.CONNECTIONS_REQUESTED, 60);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeAvg1m()
+	 */
+	public double getConnectionWaitTimeAvg1m() {
+		return this.rolling.getRatio(RollingStatistics.CONNECTION_WAIT_TIME, RollingStatistics.CONNECTIONS_REQUESTED, 60) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionTimeouts1m()
+	 */
+	public long getConnectionTimeouts1m() {
+		return this.rolling.getSum(RollingStatistics.CONNECTION_TIMEOUTS, 60);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteRate1m()
+	 */
+	public double getStatementExecuteRate1m() {
+		return this.rolling.getRate(RollingStatistics.STATEMENTS_EXECUTED, 60);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeAvg1m()
+	 */
+	public double getStatementExecuteTimeAvg1m() {
+		return this.rolling.getRatio(RollingStatistics.STATEMENT_EXECUTE_TIME, RollingStatistics.STATEMENTS_EXECUTED, 60) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getCacheHitRatio1m()
+	 */
+	public double getCacheHitRatio1m() {
+		return getCacheHitRatio(60);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionRequestRate5m()
+	 */
+	public double getConnectionRequestRate5m() {
+		return this.rolling.getRate(RollingStatistics.CONNECTIONS_REQUESTED, 300);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionWaitTimeAvg5m()
+	 */
+	public double getConnectionWaitTimeAvg5m() {
+		return this.rolling.getRatio(RollingStatistics.CONNECTION_WAIT_TIME, RollingStatistics.CONNECTIONS_REQUESTED, 300) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getConnectionTimeouts5m()
+	 */
+	public long getConnectionTimeouts5m() {
+		return this.rolling.getSum(RollingStatistics.CONNECTION_TIMEOUTS, 300);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteRate5m()
+	 */
+	public double getStatementExecuteRate5m() {
+		return this.rolling.getRate(RollingStatistics.STATEMENTS_EXECUTED, 300);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getStatementExecuteTimeAvg5m()
+	 */
+	public double getStatementExecuteTimeAvg5m() {
+		return this.rolling.getRatio(RollingStatistics.STATEMENT_EXECUTE_TIME, RollingStatistics.STATEMENTS_EXECUTED, 300) / 1000000.0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.jolbox.bonecp.StatisticsMBean#getCacheHitRatio5m()
+	 */
+	public double getCacheHitRatio5m() {
+		return getCacheHitRatio(300);
+	}
 	
 }
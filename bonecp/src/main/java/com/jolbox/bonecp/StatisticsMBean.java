@@ -121,6 +121,252 @@ public interface StatisticsMBean {
 	 * @return number of statements. 
 	 */
 	long getStatementsExecuted();
+
+	/** Returns the max number of statements cached across all connections (statementsCacheBudget).
+	 * @return statement budget, 0 if there is no limit
+	 */
+	int getStatementsCacheBudget();
+
+	/** Returns the number of statements currently held in the statement caches of all connections.
+	 * @return number of statements
+	 */
+	int getStatementsCachedInPool();
+
+	/** Returns the number of times a statement cache was denied room for a new statement because the 
+	 * statement budget was used up.
+	 * @return number of denials
+	 */
+	long getStatementsCacheBudgetDenials();
+
+	/** Returns the number of statements evicted from idle connections to keep within the statement budget.
+	 * @return number of statements
+	 */
+	long getStatementsCacheBudgetEvictions();
+
+	/** Returns the number of statements that were not logged because the statement log queue was full 
+	 * (see logStatementsQueueSize).
+	 * @return number of statements
+	 */
+	long getStatementsLogDropped();
+
+	/** Returns the statements with the most total execution time, most first, one line each with the number of 
+	 * executions, total, average, p50, p99 and max time (see statementProfilerSize). 
+	 * @param count max number of statements
+	 * @return report, empty if statement profiling is off
+	 */
+	String[] getTopStatements(int count);
+
+	/** Returns one line per connection tag (see BoneCP.getTaggedConnection) with the number of checkouts, the 
+	 * total, p50, p99 and max time connections were held and the p50, p99 and max time waited for one, most 
+	 * total hold time first. 
+	 * @return report
+	 */
+	String[] getConnectionTags();
+
+	/** Lists the connections held for longer than leakDetectionThresholdInMs, longest held first, with the 
+	 * thread that obtained each and where (if captured). 
+	 * @return one entry per connection, empty if leak detection is off
+	 */
+	String[] dumpLeakSuspects();
+
+	/** Returns the median of the time taken to obtain a connection.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeP50();
+
+	/** Returns the 90th percentile of the time taken to obtain a connection.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeP90();
+
+	/** Returns the 99th percentile of the time taken to obtain a connection.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeP99();
+
+	/** Returns the 99.9th percentile of the time taken to obtain a connection.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeP999();
+
+	/** Returns the longest time taken to obtain a connection.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeMax();
+
+	/** Returns the median of the time connections were held by the application.
+	 * @return time in ms
+	 */
+	double getConnectionHoldTimeP50();
+
+	/** Returns the 90th percentile of the time connections were held by the application.
+	 * @return time in ms
+	 */
+	double getConnectionHoldTimeP90();
+
+	/** Returns the 99th percentile of the time connections were held by the application.
+	 * @return time in ms
+	 */
+	double getConnectionHoldTimeP99();
+
+	/** Returns the 99.9th percentile of the time connections were held by the application.
+	 * @return time in ms
+	 */
+	double getConnectionHoldTimeP999();
+
+	/** Returns the longest time connections were held by the application.
+	 * @return time in ms
+	 */
+	double getConnectionHoldTimeMax();
+
+	/** Returns the median of the time taken to prepare a statement.
+	 * @return time in ms
+	 */
+	double getStatementPrepareTimeP50();
+
+	/** Returns the 90th percentile of the time taken to prepare a statement.
+	 * @return time in ms
+	 */
+	double getStatementPrepareTimeP90();
+
+	/** Returns the 99th percentile of the time taken to prepare a statement.
+	 * @return time in ms
+	 */
+	double getStatementPrepareTimeP99();
+
+	/** Returns the 99.9th percentile of the time taken to prepare a statement.
+	 * @return time in ms
+	 */
+	double getStatementPrepareTimeP999();
+
+	/** Returns the longest time taken to prepare a statement.
+	 * @return time in ms
+	 */
+	double getStatementPrepareTimeMax();
+
+	/** Returns the median of the time taken to execute a statement.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeP50();
+
+	/** Returns the 90th percentile of the time taken to execute a statement.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeP90();
+
+	/** Returns the 99th percentile of the time taken to execute a statement.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeP99();
+
+	/** Returns the 99.9th percentile of the time taken to execute a statement.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeP999();
+
+	/** Returns the longest time taken to execute a statement.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeMax();
+
+	/* The figures below cover the last few seconds or minutes (up to the last full second) and are not
+	 * affected by resetStats().
+	 */
+
+	/** Returns the number of connection requests that timed out.
+	 * @return number of timeouts
+	 */
+	long getConnectionTimeouts();
+
+	/** Returns the number of connections requested per second over the last 10 seconds.
+	 * @return connections per second
+	 */
+	double getConnectionRequestRate10s();
+
+	/** Returns the average time taken to obtain a connection over the last 10 seconds.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeAvg10s();
+
+	/** Returns the number of connection requests that timed out over the last 10 seconds.
+	 * @return number of timeouts
+	 */
+	long getConnectionTimeouts10s();
+
+	/** Returns the number of statements executed per second over the last 10 seconds.
+	 * @return statements per second
+	 */
+	double getStatementExecuteRate10s();
+
+	/** Returns the average time taken to execute a statement over the last 10 seconds.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeAvg10s();
+
+	/** Returns the statement cache hit ratio over the last 10 seconds.
+	 * @return hit ratio
+	 */
+	double getCacheHitRatio10s();
+
+	/** Returns the number of connections requested per second over the last minute.
+	 * @return connections per second
+	 */
+	double getConnectionRequestRate1m();
+
+	/** Returns the average time taken to obtain a connection over the last minute.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeAvg1m();
+
+	/** Returns the number of connection requests that timed out over the last minute.
+	 * @return number of timeouts
+	 */
+	long getConnectionTimeouts1m();
+
+	/** Returns the number of statements executed per second over the last minute.
+	 * @return statements per second
+	 */
+	double getStatementExecuteRate1m();
+
+	/** Returns the average time taken to execute a statement over the last minute.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeAvg1m();
+
+	/** Returns the statement cache hit ratio over the last minute.
+	 * @return hit ratio
+	 */
+	double getCacheHitRatio1m();
+
+	/** Returns the number of connections requested per second over the last 5 minutes.
+	 * @return connections per second
+	 */
+	double getConnectionRequestRate5m();
+
+	/** Returns the average time taken to obtain a connection over the last 5 minutes.
+	 * @return time in ms
+	 */
+	double getConnectionWaitTimeAvg5m();
+
+	/** Returns the number of connection requests that timed out over the last 5 minutes.
+	 * @return number of timeouts
+	 */
+	long getConnectionTimeouts5m();
+
+	/** Returns the number of statements executed per second over the last 5 minutes.
+	 * @return statements per second
+	 */
+	double getStatementExecuteRate5m();
+
+	/** Returns the average time taken to execute a statement over the last 5 minutes.
+	 * @return time in ms
+	 */
+	double getStatementExecuteTimeAvg5m();
+
+	/** Returns the statement cache hit ratio over the last 5 minutes.
+	 * @return hit ratio
+	 */
+	double getCacheHitRatio5m();
 	
 	
 
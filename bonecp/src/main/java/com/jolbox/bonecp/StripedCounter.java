@@ -0,0 +1,92 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package com.jolbox.bonecp;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells, each on its own cache line, so that threads updating it at the same time
+ * mostly touch different cells instead of all fighting over (and bouncing around) a single AtomicLong. Threads
+ * pick their cell by thread id. Reading the counter sums up the cells, so reads cost more than updates, which is
+ * the right trade-off for statistics that are updated on every checkout and read by a monitoring tool now and then.
+ *
+ * @author wallacew
+ *
+ */
+public class StripedCounter implements Serializable {
+	/** uid */
+	private static final long serialVersionUID = 2387591352108431717L;
+	/** Number of cells: a power of two, about twice the number of processors (capped). */
+	protected static final int STRIPES = stripes(64);
+	/** Longs per cache line: cells are this far apart. */
+	protected static final int PADDING = 8;
+	/** Cells, PADDING apart. */
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/** Returns the number of stripes to use, a power of two.
+	 * @param max upper limit
+	 * @return about twice the number of processors, at most max
+	 */
+	protected static int stripes(int max){
+		int wanted = Math.min(max, 2 * Runtime.getRuntime().availableProcessors());
+		int result = 1;
+		while (result < wanted){
+			result <<= 1;
+		}
+		return result;
+	}
+
+	/** Returns the stripe the calling thread should use.
+	 * @param stripes number of stripes (a power of two)
+	 * @return stripe index
+	 */
+	protected static int stripe(int stripes){
+		long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+		return (int) (id >>> 32) & (stripes - 1);
+	}
+
+	/** Adds to the counter.
+	 * @param delta amount to add
+	 */
+	public void add(long delta){
+		this.cells.addAndGet(stripe(STRIPES) * PADDING, delta);
+	}
+
+	/** Adds one to the counter. */
+	public void increment(){
+		add(1);
+	}
+
+	/** Returns the value of the counter. Not an atomic snapshot while it is being updated.
+	 * @return sum of the cells
+	 */
+	public long get(){
+		long result = 0;
+		for (int i=0; i < STRIPES; i++){
+			result += this.cells.get(i * PADDING);
+		}
+		return result;
+	}
+
+	/** Sets the counter back to zero. */
+	public void reset(){
+		for (int i=0; i < STRIPES; i++){
+			this.cells.set(i * PADDING, 0);
+		}
+	}
+}
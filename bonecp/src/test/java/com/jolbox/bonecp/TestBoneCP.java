@@ -40,6 +40,7 @@ import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -518,6 +519,28 @@ public class TestBoneCP {
 		verify(mockPartition, mockConnectionHandles, mockConnection);
 	}
 
+	/**
+	 * Test method for {@link com.jolbox.bonecp.BoneCP#getConnection(String)}.
+	 * @throws SQLException 
+	 */
+	@Test
+	public void testGetConnectionWithSqlHint() throws SQLException {
+		testClass.statementsCacheAffinitySearchLimit = 5;
+		ConnectionHandle mockOtherConnection = EasyMock.createNiceMock(ConnectionHandle.class);
+		expect(mockPartition.isUnableToCreateMoreTransactions()).andReturn(true).once();
+		expect(mockPartition.getFreeConnections()).andReturn(mockConnectionHandles).anyTimes();
+		expect(mockConnectionHandles.iterator()).andReturn(Arrays.asList(mockOtherConnection, mockConnection).iterator()).once();
+		expect(mockOtherConnection.hasCachedStatement("SELECT 1")).andReturn(false).once();
+		expect(mockConnection.hasCachedStatement("SELECT 1")).andReturn(true).once();
+		expect(mockConnectionHandles.remove(mockConnection)).andReturn(true).once();
+		mockConnection.renewConnection();
+		expectLastCall().once();
+
+		replay(mockPartition, mockConnectionHandles, mockConnection, mockOtherConnection);
+		assertEquals(mockConnection, testClass.getConnection("SELECT 1"));
+		verify(mockPartition, mockConnectionHandles, mockConnection, mockOtherConnection);
+	}
+
 	/**
 	 * Test method for {@link com.jolbox.bonecp.BoneCP#getConnection()}.
 	 * @throws SQLException 
@@ -1168,6 +1191,65 @@ public class TestBoneCP {
 		verify(mockConfig, mockConnection, mockResultSet,mockDatabaseMetadata);
 	}
 	
+	/**
+	 * A connection a query went through on a moment ago is not tested again.
+	 * @throws SQLException 
+	 */
+	@Test
+	public void testIsConnectionHandleAliveWithinBypassWindow() throws SQLException {
+		reset(mockConfig, mockConnection);
+		mockConnection.connectionLastProvenAliveInMs = System.currentTimeMillis();
+		testClass.connectionTestBypassWindowInMs = 60000;
+		replay(mockConfig, mockConnection);
+		assertTrue(testClass.isConnectionHandleAlive(mockConnection));
+		verify(mockConfig, mockConnection);
+
+		// ...unless it was marked as possibly broken.
+		reset(mockConfig, mockConnection);
+		expect(mockConnection.isPossiblyBroken()).andReturn(true).anyTimes();
+		expect(mockConfig.getConnectionTestStatement()).andReturn(null).once();
+		expect(mockConnection.getMetaData()).andThrow(new SQLException()).once();
+		replay(mockConfig, mockConnection);
+		assertFalse(testClass.isConnectionHandleAlive(mockConnection));
+		verify(mockConfig, mockConnection);
+	}
+
+	/**
+	 * With lightweightConnectionTest, the test statement is created once per connection and dropped on failure.
+	 * @throws SQLException 
+	 */
+	@Test
+	public void testIsConnectionHandleAliveLightweight() throws SQLException {
+		Connection mockRawConnection = EasyMock.createNiceMock(Connection.class);
+		Statement mockStatement = EasyMock.createNiceMock(Statement.class);
+		reset(mockConfig, mockConnection);
+		testClass.lightweightConnectionTest = true;
+		mockConnection.testStatement = null;
+		expect(mockConfig.getConnectionTestStatement()).andReturn("whatever").anyTimes();
+		expect(mockConnection.getInternalConnection()).andReturn(mockRawConnection).anyTimes();
+		expect(mockRawConnection.createStatement()).andReturn(mockStatement).once();
+		expect(mockStatement.execute("whatever")).andReturn(false).times(2);
+		expect(mockStatement.execute("whatever")).andThrow(new SQLException()).once();
+		mockStatement.close();
+		expectLastCall().once();
+		replay(mockConfig, mockConnection, mockRawConnection, mockStatement);
+		assertTrue(testClass.isConnectionHandleAlive(mockConnection));
+		assertTrue(testClass.isConnectionHandleAlive(mockConnection));
+		assertFalse(testClass.isConnectionHandleAlive(mockConnection));
+		assertNull(mockConnection.testStatement);
+		verify(mockConfig, mockConnection, mockRawConnection, mockStatement);
+
+		// no test statement: JDBC4 isValid()
+		reset(mockConfig, mockConnection, mockRawConnection);
+		testClass.jvmMajorVersion = 6;
+		expect(mockConfig.getConnectionTestStatement()).andReturn(null).anyTimes();
+		expect(mockConnection.getInternalConnection()).andReturn(mockRawConnection).anyTimes();
+		expect(mockRawConnection.isValid(0)).andReturn(true).once();
+		replay(mockConfig, mockConnection, mockRawConnection);
+		assertTrue(testClass.isConnectionHandleAlive(mockConnection));
+		verify(mockConfig, mockConnection, mockRawConnection);
+	}
+
 	/**
 	 * Test method for com.jolbox.bonecp.BoneCP isConnectionHandleAlive.
 	 * @throws SQLException 
@@ -223,7 +223,56 @@ public class TestBoneCPConfig {
 		config.setClientInfo(clientInfoProperties );
 		
 		config.setExternalAuth(true);
+		config.setCrossPartitionHandoff(true);
+		config.setAutoScaleTargetWaitTime(2, TimeUnit.SECONDS);
+		config.setAcquireParallelism(4);
+		config.setWarmUpPercent(50);
+		config.setSharedScheduler(true);
+		config.setIdleConnectionTestInPlace(true);
+		config.setIdleConnectionTestConcurrency(3);
+		config.setLightweightConnectionTest(true);
+		config.setConnectionTestBypassWindow(2, TimeUnit.SECONDS);
+		config.setConnectionTestTimeoutInMs(3000);
+		config.setStatementsCacheType("BOUNDED");
+		config.setReuseStatementHandles(true);
+		config.setStatementsCacheBudget(500);
+		config.setStatementsCacheWarmUpSize(20);
+		config.setStatementsCacheWarmUpFile("hot.sql");
+		config.setStatementsCacheAffinitySearchLimit(8);
+		config.setInListBucketingEnabled(true);
+		config.setLogStatementsQueueSize(1000);
+		config.setLogStatementsOverflowPolicy("sample");
+		config.setStatementProfilerSize(100);
+		config.setStatementProfilerSampleRate(8);
+		config.setMaxConnectionTags(5);
+		config.setLeakDetectionThresholdInMs(60000);
+		config.setLeakDetectionSampleRate(10);
 		assertEquals(clientInfoProperties, config.getClientInfo());
+		assertEquals(true, config.isCrossPartitionHandoff());
+		assertEquals(2000, config.getAutoScaleTargetWaitTimeInMs());
+		assertEquals(2, config.getAutoScaleTargetWaitTime(TimeUnit.SECONDS));
+		assertEquals(4, config.getAcquireParallelism());
+		assertEquals(50, config.getWarmUpPercent());
+		assertTrue(config.isSharedScheduler());
+		assertTrue(config.isIdleConnectionTestInPlace());
+		assertEquals(3, config.getIdleConnectionTestConcurrency());
+		assertTrue(config.isLightweightConnectionTest());
+		assertEquals(2000, config.getConnectionTestBypassWindowInMs());
+		assertEquals(3, config.getConnectionTestTimeout(TimeUnit.SECONDS));
+		assertEquals("BOUNDED", config.getStatementsCacheType());
+		assertTrue(config.isReuseStatementHandles());
+		assertEquals(500, config.getStatementsCacheBudget());
+		assertEquals(20, config.getStatementsCacheWarmUpSize());
+		assertEquals("hot.sql", config.getStatementsCacheWarmUpFile());
+		assertEquals(8, config.getStatementsCacheAffinitySearchLimit());
+		assertTrue(config.isInListBucketingEnabled());
+		assertEquals(1000, config.getLogStatementsQueueSize());
+		assertEquals("sample", config.getLogStatementsOverflowPolicy());
+		assertEquals(100, config.getStatementProfilerSize());
+		assertEquals(8, config.getStatementProfilerSampleRate());
+		assertEquals(5, config.getMaxConnectionTags());
+		assertEquals(60000, config.getLeakDetectionThresholdInMs());
+		assertEquals(10, config.getLeakDetectionSampleRate());
 		assertEquals(true, config.isExternalAuth());
 		assertEquals("abc", config.getInitSQL());
 		assertEquals(hook, config.getConnectionHook());
@@ -279,7 +328,25 @@ public class TestBoneCPConfig {
 		config.setStatementReleaseHelperThreads(-50);
 		config.setConnectionTimeoutInMs(0);
 		config.setServiceOrder("something non-sensical");
+		config.setFreeConnectionQueueType("something non-sensical");
 		config.setAcquireRetryDelayInMs(-1);
+		config.setAutoScaleTargetWaitTimeInMs(-1);
+		config.setAcquireParallelism(-1);
+		config.setWarmUpPercent(101);
+		config.setIdleConnectionTestConcurrency(0);
+		config.setConnectionTestBypassWindowInMs(-1);
+		config.setConnectionTestTimeoutInMs(-1);
+		config.setStatementsCacheType(null);
+		config.setStatementsCacheBudget(-1);
+		config.setStatementsCacheWarmUpSize(-1);
+		config.setStatementsCacheAffinitySearchLimit(-1);
+		config.setLogStatementsQueueSize(-1);
+		config.setLogStatementsOverflowPolicy("WHATEVER");
+		config.setStatementProfilerSize(-1);
+		config.setStatementProfilerSampleRate(0);
+		config.setMaxConnectionTags(-1);
+		config.setLeakDetectionThresholdInMs(-1);
+		config.setLeakDetectionSampleRate(0);
 		
 		config.setReleaseHelperThreads(-1);
 		config.sanitize();
@@ -287,6 +354,24 @@ public class TestBoneCPConfig {
 		assertEquals(1000, config.getAcquireRetryDelay(TimeUnit.MILLISECONDS));
 		assertEquals(1000, config.getAcquireRetryDelayInMs());
 		assertEquals("FIFO", config.getServiceOrder());
+		assertEquals("DEFAULT", config.getFreeConnectionQueueType());
+		assertEquals(0, config.getAutoScaleTargetWaitTimeInMs());
+		assertEquals(0, config.getAcquireParallelism());
+		assertEquals(100, config.getWarmUpPercent());
+		assertEquals(1, config.getIdleConnectionTestConcurrency());
+		assertEquals(0, config.getConnectionTestBypassWindowInMs());
+		assertEquals(0, config.getConnectionTestTimeoutInMs());
+		assertEquals("DEFAULT", config.getStatementsCacheType());
+		assertEquals(0, config.getStatementsCacheBudget());
+		assertEquals(0, config.getStatementsCacheWarmUpSize());
+		assertEquals(0, config.getStatementsCacheAffinitySearchLimit());
+		assertEquals(0, config.getLogStatementsQueueSize());
+		assertEquals("DROP", config.getLogStatementsOverflowPolicy());
+		assertEquals(0, config.getStatementProfilerSize());
+		assertEquals(1, config.getStatementProfilerSampleRate());
+		assertEquals(0, config.getMaxConnectionTags());
+		assertEquals(0, config.getLeakDetectionThresholdInMs());
+		assertEquals(1, config.getLeakDetectionSampleRate());
 		assertEquals(0, config.getConnectionTimeoutInMs());
 		assertNotNull(config.toString());
 		assertEquals(0, config.getStatementReleaseHelperThreads());
@@ -0,0 +1,246 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the evicting statement cache.
+ * @author wallacew
+ *
+ */
+public class TestBoundedStatementCache {
+	/** Mock handle. */
+	private ConnectionHandle mockConnection;
+	/** Mock handle. */
+	private BoneCP mockPool;
+
+	/** Mock setup. */
+	@Before
+	public void before(){
+		this.mockConnection = createNiceMock(ConnectionHandle.class);
+		this.mockPool = createNiceMock(BoneCP.class);
+		expect(this.mockConnection.getPool()).andReturn(this.mockPool).anyTimes();
+		expect(this.mockPool.getConfig()).andReturn(new BoneCPConfig()).anyTimes();
+		replay(this.mockConnection, this.mockPool);
+	}
+
+	/** Looks up the given key and, on a miss, prepares a new statement like ConnectionHandle does.
+	 * @param cache cache to use
+	 * @param key sql
+	 * @param internalStatement statement to "prepare" on a miss
+	 * @return statement handle
+	 */
+	private StatementHandle prepare(IStatementCache cache, String key, Statement internalStatement){
+		StatementHandle result = cache.get(key);
+		if (result == null){
+			result = new StatementHandle(internalStatement, key, cache, this.mockConnection, key, false);
+		}
+		result.setLogicallyOpen();
+		return result;
+	}
+
+	/** Once full, a new statement only gets in if it's used more than the one it replaces, which is then closed.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testEviction() throws SQLException{
+		BoundedStatementCache testClass = new BoundedStatementCache(2, false, null);
+		Statement hot = createMock(Statement.class);
+		Statement cold = createMock(Statement.class);
+		Statement firstNew = createNiceMock(Statement.class);
+		Statement secondNew = createMock(Statement.class);
+		replay(hot, cold, secondNew);
+
+		for (int i=0; i < 5; i++){
+			prepare(testClass, "hot", hot).close();
+		}
+		prepare(testClass, "cold", cold).close();
+		assertEquals(2, testClass.size());
+
+		// seen as often as the cold statement: not admitted, closed off on close.
+		firstNew.close();
+		expectLastCall().once();
+		replay(firstNew);
+		StatementHandle statement = prepare(testClass, "new", firstNew);
+		assertFalse(statement.inCache);
+		statement.close();
+		verify(firstNew);
+
+		// now more popular than the cold statement: takes its place.
+		reset(cold);
+		cold.close();
+		expectLastCall().once();
+		replay(cold);
+		statement = prepare(testClass, "new", secondNew);
+		assertTrue(statement.inCache);
+		verify(cold);
+		statement.close();
+
+		assertEquals(2, testClass.size());
+		assertNull(testClass.get("cold"));
+		assertNotNull(testClass.get("hot"));
+		assertNotNull(testClass.get("new"));
+		verify(hot, secondNew);
+	}
+
+	/** A statement evicted while the application is using it is closed when the application is done with it.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testEvictionWhileInUse() throws SQLException{
+		BoundedStatementCache testClass = new BoundedStatementCache(1, false, null);
+		Statement inUse = createMock(Statement.class);
+		replay(inUse);
+		StatementHandle statement = prepare(testClass, "inUse", inUse);
+
+		testClass.get("other");
+		prepare(testClass, "other", createNiceMock(Statement.class));
+		assertFalse(statement.inCache);
+		verify(inUse);
+
+		reset(inUse);
+		inUse.close();
+		expectLastCall().once();
+		replay(inUse);
+		statement.close();
+		verify(inUse);
+	}
+
+	/** A cache hit handed out in a new wrapper goes back to the cache when that wrapper is closed.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testCacheHitInNewWrapper() throws SQLException{
+		BoundedStatementCache testClass = new BoundedStatementCache(5, false, null);
+		Statement internal = createMock(Statement.class);
+		replay(internal);
+		prepare(testClass, "test", internal).close();
+
+		StatementHandle cached = testClass.get("test");
+		StatementHandle wrapper = new StatementHandle(cached.getInternalStatement(), "test", testClass, this.mockConnection, "test", false);
+		assertTrue(wrapper.inCache);
+		assertFalse(cached.inCache);
+		wrapper.close();
+		assertSame(wrapper, testClass.get("test"));
+		verify(internal);
+	}
+
+	/** Statements prepared with more than the SQL are found by their arguments.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testCompositeKeys() throws SQLException{
+		BoundedStatementCache testClass = new BoundedStatementCache(5, false, null);
+		String sql = "SELECT 1";
+		new StatementHandle(createNiceMock(Statement.class), sql, testClass, this.mockConnection, testClass.calculateCacheKey(sql, 1, 2), false).close();
+		new StatementHandle(createNiceMock(Statement.class), sql, testClass, this.mockConnection, testClass.calculateCacheKey(sql, new int[]{1}), false).close();
+		assertEquals(2, testClass.size());
+
+		assertNull(testClass.get(sql));
+		assertNull(testClass.get(sql, 1, 3));
+		assertNull(testClass.get(sql, 1, 2, 1));
+		assertNull(testClass.get(sql, new String[]{"1"}));
+		assertNotNull(testClass.get(sql, 1, 2));
+		assertNotNull(testClass.get(sql, new int[]{1}));
+	}
+
+	/** Lookups, removal and clear with a full table.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testManyStatements() throws SQLException{
+		BoundedStatementCache testClass = new BoundedStatementCache(50, false, null);
+		for (int round=0; round < 3; round++){
+			for (int i=0; i < 200; i++){
+				prepare(testClass, "test"+i, createNiceMock(Statement.class)).close();
+			}
+		}
+		assertEquals(50, testClass.size());
+		int found = 0;
+		for (int i=0; i < 200; i++){
+			if (testClass.get("test"+i) != null){
+				found++;
+			}
+		}
+		assertEquals(50, found);
+		testClass.clear();
+		assertEquals(0, testClass.size());
+		assertNull(testClass.get("test1"));
+	}
+
+	/** containsKey may be called from another thread while the owner keeps caching and evicting statements.
+	 * @throws Exception
+	 */
+	@Test
+	public void testContainsKeyFromAnotherThread() throws Exception{
+		final BoundedStatementCache testClass = new BoundedStatementCache(8, false, null);
+		final Statement hot = createNiceMock(Statement.class);
+		replay(hot);
+		for (int i=0; i < 10; i++){
+			prepare(testClass, "hot", hot).close();
+		}
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicInteger seen = new AtomicInteger();
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread reader = new Thread(){
+			@Override
+			public void run() {
+				try {
+					while (!done.get()){
+						if (testClass.containsKey("hot")){
+							seen.incrementAndGet();
+						}
+						testClass.containsKey("test"+seen.get());
+					}
+				} catch (Throwable t) {
+					failure.set(t);
+				}
+			}
+		};
+		reader.start();
+		for (int i=0; i < 20000; i++){
+			prepare(testClass, "hot", hot).close();
+			prepare(testClass, "test"+i, createNiceMock(Statement.class)).close();
+		}
+		done.set(true);
+		reader.join();
+
+		assertNull(failure.get());
+		assertTrue(seen.get() > 0);
+		assertTrue(testClass.containsKey("hot"));
+	}
+}
@@ -25,6 +25,8 @@ import org.junit.Test;
 import org.slf4j.Logger;
 
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 /** Test for CloseThreadMonitor class
@@ -104,4 +106,25 @@ public class TestCloseThreadMonitor {
 		verify(mockConnection, mockLogger);
 	}
 
+	/** Tests the non-blocking variant used with the shared scheduler.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testCheck() throws InterruptedException{
+		Thread deadThread = new Thread();
+		deadThread.start();
+		deadThread.join();
+		
+		expect(mockConnection.isClosed()).andReturn(false).anyTimes();
+		expect(mockConnection.getThreadUsingConnection()).andReturn(Thread.currentThread()).once().andReturn(deadThread).once();
+		mockLogger.error((String)anyObject());
+		expectLastCall().once();
+		replay(mockConnection, mockLogger);
+		// still in use by a live thread: keep watching.
+		assertFalse(new CloseThreadMonitor(Thread.currentThread(), mockConnection, "fakeexception", 0).check());
+		// thread went away without closing the connection.
+		assertTrue(new CloseThreadMonitor(deadThread, mockConnection, "fakeexception", 0).check());
+		verify(mockConnection, mockLogger);
+	}
+
 }
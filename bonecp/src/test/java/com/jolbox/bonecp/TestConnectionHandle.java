@@ -30,6 +30,7 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.lang.ref.Reference;
@@ -163,6 +164,11 @@ public class TestConnectionHandle {
 		skipTests.add("recreateConnectionHandle");
 		skipTests.add("fillConnectionFields");
 		skipTests.add("createConnectionHandle");
+		skipTests.add("releaseForReuse");
+		skipTests.add("resetSessionState");
+		skipTests.add("completeRelease");
+		skipTests.add("resetOnClose");
+		skipTests.add("releaseToPool");
 		if (CommonTestUtils.jvmMajorVersion < 7){
 			skipTests.add("getNetworkTimeout");
 			skipTests.add("setNetworkTimeout");
@@ -931,6 +937,24 @@ public class TestConnectionHandle {
 
 	}
 
+	/** With reuseStatementHandles set, a cache hit hands out the cached handle itself.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testPrepareStatementReuseStatementHandles() throws SQLException{
+		PreparedStatementHandle cachedStatement = createNiceMock(PreparedStatementHandle.class);
+		expect(this.mockPreparedStatementCache.get((String)anyObject())).andReturn(cachedStatement).once();
+		cachedStatement.reopen(this.testClass);
+		expectLastCall().once();
+		replay(cachedStatement, this.mockPreparedStatementCache);
+
+		this.testClass.renewConnection();
+		this.testClass.reuseStatementHandles = true;
+		assertSame(cachedStatement, this.testClass.prepareStatement("test"));
+		verify(cachedStatement, this.mockPreparedStatementCache);
+		this.testClass.reuseStatementHandles = false;
+	}
+
 	/** Mock setup.
 	 * @param cache 
 	 * @param returnVal 
@@ -1161,4 +1185,111 @@ public class TestConnectionHandle {
 		assertNotNull(this.testClass.getAutoCommitStackTrace());
 	}
 
+
+	/** With trackSessionState, unchanged settings are not sent to the driver again.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testTrackSessionStateSkipsUnchangedSetters() throws SQLException{
+		Connection mockConnection = EasyMock.createStrictMock(Connection.class);
+		this.testClass.setInternalConnection(mockConnection);
+		this.testClass.trackSessionState = true;
+		mockConnection.setAutoCommit(false);
+		mockConnection.setReadOnly(true);
+		mockConnection.setCatalog("foo");
+		mockConnection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		mockConnection.setAutoCommit(true);
+		replay(mockConnection);
+
+		this.testClass.setAutoCommit(false);
+		this.testClass.setAutoCommit(false);
+		this.testClass.setReadOnly(true);
+		this.testClass.setReadOnly(true);
+		this.testClass.setCatalog("foo");
+		this.testClass.setCatalog("foo");
+		this.testClass.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		this.testClass.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+		this.testClass.setAutoCommit(true);
+		verify(mockConnection);
+	}
+
+	/** With trackSessionState, a reset only rolls back if a statement ran inside a transaction and only
+	 * restores the settings the application changed.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testTrackSessionStateReset() throws SQLException, NoSuchFieldException, IllegalAccessException{
+		Connection mockConnection = EasyMock.createStrictMock(Connection.class);
+		this.testClass.setInternalConnection(mockConnection);
+		this.testClass.trackSessionState = true;
+		this.testClass.autoCommitState = true;
+		this.testClass.catalogState = "foo";
+		Field field = ConnectionHandle.class.getDeclaredField("defaultAutoCommit");
+		field.setAccessible(true);
+		field.set(this.testClass, true);
+		field = ConnectionHandle.class.getDeclaredField("defaultCatalog");
+		field.setAccessible(true);
+		field.set(this.testClass, "foo");
+		replay(mockConnection);
+
+		// nothing changed: no round-trips at all
+		this.testClass.markStatementExecuted();
+		this.testClass.resetSessionState();
+		verify(mockConnection);
+
+		// auto-commit off but no statement ran: restore auto-commit only
+		reset(mockConnection);
+		mockConnection.setAutoCommit(false);
+		mockConnection.setAutoCommit(true);
+		replay(mockConnection);
+		this.testClass.setAutoCommit(false);
+		this.testClass.resetSessionState();
+		verify(mockConnection);
+
+		// statement ran inside a transaction: roll back
+		reset(mockConnection);
+		mockConnection.setAutoCommit(false);
+		mockConnection.rollback();
+		mockConnection.setAutoCommit(true);
+		replay(mockConnection);
+		this.testClass.setAutoCommit(false);
+		this.testClass.markStatementExecuted();
+		assertTrue(this.testClass.transactionDirty);
+		this.testClass.resetSessionState();
+		assertFalse(this.testClass.transactionDirty);
+		verify(mockConnection);
+
+		// committed by the application: nothing to roll back
+		reset(mockConnection);
+		mockConnection.setAutoCommit(false);
+		mockConnection.commit();
+		mockConnection.setAutoCommit(true);
+		replay(mockConnection);
+		this.testClass.setAutoCommit(false);
+		this.testClass.markStatementExecuted();
+		this.testClass.commit();
+		this.testClass.resetSessionState();
+		verify(mockConnection);
+	}
+
+	/** Free queue states used by idleConnectionTestInPlace. */
+	@Test
+	public void testFreeStateForInPlaceTesting(){
+		// borrower first: the tester keeps its hands off.
+		assertTrue(this.testClass.claimFromFreeQueue());
+		assertFalse(this.testClass.beginValidation());
+		this.testClass.freeState.set(ConnectionHandle.FREE_STATE_IDLE);
+
+		// tester first: the borrower skips it, the tester finds out it has to put it back.
+		assertTrue(this.testClass.beginValidation());
+		assertFalse(this.testClass.claimFromFreeQueue());
+		assertTrue(this.testClass.endValidation(true));
+		assertEquals(ConnectionHandle.FREE_STATE_IDLE, this.testClass.freeState.get());
+
+		// tested undisturbed and failed: anyone polling it later drops it.
+		assertTrue(this.testClass.beginValidation());
+		assertFalse(this.testClass.endValidation(false));
+		assertFalse(this.testClass.claimFromFreeQueue());
+		assertFalse(this.testClass.beginValidation());
+	}
 }
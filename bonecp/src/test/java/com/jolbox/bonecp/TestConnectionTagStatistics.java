@@ -0,0 +1,81 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/** Tests for the checkout statistics per connection tag.
+ * @author wallacew
+ *
+ */
+public class TestConnectionTagStatistics {
+
+	/** Checkouts and releases are counted per tag, most total hold time first. */
+	@Test
+	public void testRecord(){
+		ConnectionTagStatistics testClass = new ConnectionTagStatistics(10);
+		assertNull(testClass.recordCheckout(null, 1000));
+
+		ConnectionTagStatistics.Tag orders = testClass.recordCheckout("orders", 1000);
+		orders.recordRelease(5000000);
+		assertSame(orders, testClass.recordCheckout("orders", 3000));
+		orders.recordRelease(7000000);
+		testClass.recordCheckout("reports", 2000).recordRelease(20000000);
+
+		List<ConnectionTagStatistics.Tag> tags = testClass.getTags();
+		assertEquals("reports", tags.get(0).getName());
+		assertEquals(2, orders.getCheckouts());
+		assertEquals(12000000, orders.getTotalHoldTime());
+		assertEquals(7000000, orders.getHoldTime().getMax());
+		assertEquals(3000, orders.getWaitTime().getMax());
+		assertTrue(testClass.getReport()[1].startsWith("orders: checkouts=2 held=12.0ms"));
+
+		testClass.reset();
+		assertEquals(0, testClass.getReport().length);
+	}
+
+	/** Once maxTags tags are tracked, further tags are counted together. */
+	@Test
+	public void testMaxTags(){
+		ConnectionTagStatistics testClass = new ConnectionTagStatistics(2);
+		testClass.recordCheckout("a", 0);
+		testClass.recordCheckout("b", 0);
+		ConnectionTagStatistics.Tag other = testClass.recordCheckout("c", 0);
+		assertEquals(ConnectionTagStatistics.OTHER_TAG, other.getName());
+		assertSame(other, testClass.recordCheckout("d", 0));
+		assertEquals(2, other.getCheckouts());
+		assertEquals("a", testClass.recordCheckout("a", 0).getName());
+		assertEquals(3, testClass.getTags().size());
+	}
+
+	/** The thread's tag can be set and put back. */
+	@Test
+	public void testThreadTag(){
+		assertNull(BoneCP.setConnectionTag("outer"));
+		assertEquals("outer", BoneCP.setConnectionTag("inner"));
+		assertEquals("inner", BoneCP.getConnectionTag());
+		assertEquals("inner", BoneCP.setConnectionTag("outer"));
+		assertEquals("outer", BoneCP.setConnectionTag(null));
+		assertNull(BoneCP.getConnectionTag());
+	}
+}
@@ -22,6 +22,8 @@ import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.makeThreadSafe;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import java.lang.reflect.Field;
 import java.sql.SQLException;
@@ -380,7 +382,7 @@ public class TestConnectionThreadTester {
 	@Test
 	public void testCloseConnection() {
 		this.testClass = new ConnectionTesterThread(mockConnectionPartition, mockPool, 123, 123, false);
-		expect(mockConnection.isClosed()).andReturn(false);
+		expect(mockConnection.isLogicallyClosed()).andReturn(false);
 		ConnectionPartition mockPartition = EasyMock.createNiceMock(ConnectionPartition.class);
 		BlockingQueue<Object> mockQueue = EasyMock.createNiceMock(BlockingQueue.class);
 		expect(mockConnection.getOriginatingPartition()).andReturn(mockPartition);
@@ -401,7 +403,7 @@ public class TestConnectionThreadTester {
 	@Test
 	public void testCloseConnectionWithException() throws SQLException {
 		this.testClass = new ConnectionTesterThread(mockConnectionPartition, mockPool, 123, 123, false);
-		expect(mockConnection.isClosed()).andReturn(false);
+		expect(mockConnection.isLogicallyClosed()).andReturn(false);
 		mockConnection.internalClose();
 		expectLastCall().andThrow(new SQLException());
 			ConnectionPartition mockPartition = EasyMock.createNiceMock(ConnectionPartition.class);
@@ -426,7 +428,7 @@ public class TestConnectionThreadTester {
 	@Test
 	public void testCloseConnectionWithExceptionInLogger() throws SQLException, NoSuchFieldException, SecurityException, IllegalAccessException {
 		this.testClass = new ConnectionTesterThread(mockConnectionPartition, mockPool, 123, 123, false);
-		expect(mockConnection.isClosed()).andReturn(false);
+		expect(mockConnection.isLogicallyClosed()).andReturn(false);
 		ConnectionPartition mockPartition = EasyMock.createNiceMock(ConnectionPartition.class);
 		BlockingQueue<Object> mockQueue = EasyMock.createNiceMock(BlockingQueue.class);
 		expect(mockConnection.getOriginatingPartition()).andReturn(mockPartition);
@@ -456,10 +458,54 @@ public class TestConnectionThreadTester {
 		this.testClass = new ConnectionTesterThread(mockConnectionPartition, mockPool, 123, 123, false);
 		this.testClass.closeConnection(null);
 	
-		expect(mockConnection.isClosed()).andReturn(true);
+		expect(mockConnection.isLogicallyClosed()).andReturn(true);
 		replay(mockConnection);
 		this.testClass.closeConnection(mockConnection);
 		
 		
 	}
+	/** With idleConnectionTestInPlace, connections are tested without being taken out of the queue. One that is
+	 * broken is removed and closed, one that a borrower came across during the test is put back by the tester
+	 * and one that a borrower already took is left alone.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testInPlace() throws SQLException {
+		ConnectionHandle brokenConnection = createNiceMock(ConnectionHandle.class);
+		ConnectionHandle detachedConnection = createNiceMock(ConnectionHandle.class);
+		ConnectionHandle borrowedConnection = createNiceMock(ConnectionHandle.class);
+		BlockingQueue<ConnectionHandle> fakeFreeConnections = new LinkedBlockingQueue<ConnectionHandle>(100);
+		fakeFreeConnections.add(brokenConnection);
+		fakeFreeConnections.add(detachedConnection);
+		fakeFreeConnections.add(borrowedConnection);
+		mockPool.idleConnectionTestInPlace = true;
+		expect(mockConnectionPartition.getFreeConnections()).andReturn(fakeFreeConnections).anyTimes();
+		long idleSince = System.currentTimeMillis() - 1000;
+
+		expect(brokenConnection.isPossiblyBroken()).andReturn(true).anyTimes();
+		expect(brokenConnection.beginValidation()).andReturn(true);
+		expect(brokenConnection.endValidation(false)).andReturn(false);
+		brokenConnection.internalClose();
+		mockPool.postDestroyConnection(brokenConnection);
+		expectLastCall().once();
+
+		expect(detachedConnection.getConnectionLastUsedInMs()).andReturn(idleSince).anyTimes();
+		expect(detachedConnection.getConnectionLastResetInMs()).andReturn(idleSince).anyTimes();
+		expect(detachedConnection.beginValidation()).andReturn(true);
+		expect(mockPool.isConnectionHandleAlive(detachedConnection)).andReturn(true);
+		expect(detachedConnection.endValidation(true)).andReturn(true);
+		mockPool.putConnectionBackInPartition(detachedConnection);
+		expectLastCall().once();
+
+		expect(borrowedConnection.getConnectionLastUsedInMs()).andReturn(idleSince).anyTimes();
+		expect(borrowedConnection.getConnectionLastResetInMs()).andReturn(idleSince).anyTimes();
+		expect(borrowedConnection.beginValidation()).andReturn(false);
+
+		replay(mockPool, mockConnectionPartition, brokenConnection, detachedConnection, borrowedConnection);
+		this.testClass = new ConnectionTesterThread(mockConnectionPartition, mockPool, 0, 100, false);
+		this.testClass.run();
+		verify(mockPool, brokenConnection, detachedConnection, borrowedConnection);
+		assertEquals(2, fakeFreeConnections.size());
+		assertFalse(fakeFreeConnections.contains(brokenConnection));
+	}
 }
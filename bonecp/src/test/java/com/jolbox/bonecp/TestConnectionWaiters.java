@@ -0,0 +1,164 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the pool-wide waiter registry.
+ * @author wallacew
+ *
+ */
+public class TestConnectionWaiters {
+	/** Class under test. */
+	private ConnectionWaiters waiters;
+	/** Free queue of some partition. */
+	private BlockingQueue<ConnectionHandle> queue;
+	/** Mock handle. */
+	private ConnectionHandle mockConnection;
+	/** Mock handle. */
+	private ConnectionHandle mockConnection2;
+
+	/** Reset everything. */
+	@Before
+	public void before(){
+		this.waiters = new ConnectionWaiters();
+		this.queue = new LinkedBlockingQueue<ConnectionHandle>(2);
+		this.mockConnection = createNiceMock(ConnectionHandle.class);
+		this.mockConnection2 = createNiceMock(ConnectionHandle.class);
+	}
+
+	/** With nobody waiting, a released connection goes to the free queue. */
+	@Test
+	public void testReleaseWithoutWaiters(){
+		assertFalse(this.waiters.handOff(this.mockConnection));
+		assertTrue(this.waiters.release(this.mockConnection, this.queue));
+		assertSame(this.mockConnection, this.queue.poll());
+
+		this.queue = new LinkedBlockingQueue<ConnectionHandle>(1);
+		this.queue.offer(this.mockConnection2);
+		assertFalse(this.waiters.release(this.mockConnection, this.queue)); // queue full
+	}
+
+	/** Released connections go to waiters, longest-waiting first, and skip the queue.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testHandOffInOrder() throws InterruptedException{
+		ConnectionWaiters.Waiter first = this.waiters.register();
+		ConnectionWaiters.Waiter second = this.waiters.register();
+		assertEquals(2, this.waiters.getWaitingCount());
+
+		assertTrue(this.waiters.release(this.mockConnection, this.queue));
+		assertTrue(this.waiters.release(this.mockConnection2, this.queue));
+		assertTrue(this.queue.isEmpty());
+		assertEquals(0, this.waiters.getWaitingCount());
+
+		assertSame(this.mockConnection, this.waiters.await(first, 0));
+		assertSame(this.mockConnection2, this.waiters.await(second, 0));
+	}
+
+	/** A waiter that times out is skipped by later releases.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testTimeout() throws InterruptedException{
+		ConnectionWaiters.Waiter waiter = this.waiters.register();
+		assertNull(this.waiters.await(waiter, 10));
+		assertEquals(0, this.waiters.getWaitingCount());
+
+		assertTrue(this.waiters.release(this.mockConnection, this.queue));
+		assertSame(this.mockConnection, this.queue.poll());
+	}
+
+	/** Cancelling after a hand-off returns the connection to the caller. */
+	@Test
+	public void testCancel(){
+		ConnectionWaiters.Waiter waiter = this.waiters.register();
+		assertNull(this.waiters.cancel(waiter));
+		assertFalse(this.waiters.handOff(this.mockConnection));
+
+		waiter = this.waiters.register();
+		assertTrue(this.waiters.handOff(this.mockConnection));
+		assertSame(this.mockConnection, this.waiters.cancel(waiter));
+	}
+
+	/** Interrupting a waiter.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testInterrupted() throws InterruptedException{
+		ConnectionWaiters.Waiter waiter = this.waiters.register();
+		Thread.currentThread().interrupt();
+		try{
+			this.waiters.await(waiter, Long.MAX_VALUE);
+			fail("Should have thrown an exception");
+		} catch (InterruptedException e){
+			// expected
+		}
+		assertEquals(0, this.waiters.getWaitingCount());
+
+		// if we were handed something before noticing the interrupt, keep it.
+		waiter = this.waiters.register();
+		this.waiters.handOff(this.mockConnection);
+		Thread.currentThread().interrupt();
+		assertSame(this.mockConnection, this.waiters.await(waiter, Long.MAX_VALUE));
+		assertTrue(Thread.interrupted());
+	}
+
+	/** A parked thread is woken up by a release from another thread.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testParkedWaiterWakesUp() throws InterruptedException{
+		final AtomicReference<ConnectionHandle> result = new AtomicReference<ConnectionHandle>();
+		final CountDownLatch registered = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(){
+			@Override
+			public void run() {
+				try {
+					ConnectionWaiters.Waiter waiter = TestConnectionWaiters.this.waiters.register();
+					registered.countDown();
+					result.set(TestConnectionWaiters.this.waiters.await(waiter, Long.MAX_VALUE));
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+				done.countDown();
+			}
+		};
+		t.start();
+		assertTrue(registered.await(5, TimeUnit.SECONDS));
+		assertTrue(this.waiters.release(this.mockConnection, this.queue));
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertSame(this.mockConnection, result.get());
+		assertTrue(this.queue.isEmpty());
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/** Tests for the set of statements used to warm up statement caches.
+ * @author wallacew
+ *
+ */
+public class TestHotStatementSet {
+
+	/** Statements come out most used first, up to the given size. */
+	@Test
+	public void testRanking(){
+		HotStatementSet testClass = new HotStatementSet(2);
+		for (int i=0; i < 5; i++){
+			testClass.record("SELECT 1");
+		}
+		testClass.record("SELECT 2");
+		for (int i=0; i < 3; i++){
+			testClass.record("SELECT 3");
+		}
+		assertEquals(Arrays.asList("SELECT 1", "SELECT 3"), testClass.getHotStatements());
+	}
+
+	/** A sampled hit counts for as many hits as it stands for. */
+	@Test
+	public void testWeightedRecord(){
+		HotStatementSet testClass = new HotStatementSet(2);
+		testClass.record("SELECT 1", HotStatementSet.SAMPLE_RATE);
+		for (int i=0; i < HotStatementSet.SAMPLE_RATE - 1; i++){
+			testClass.record("SELECT 2");
+		}
+		testClass.record("SELECT 3", 1);
+		assertEquals(Arrays.asList("SELECT 1", "SELECT 2"), testClass.getHotStatements());
+	}
+
+	/** Once full, statements that are no longer used make room for new ones. */
+	@Test
+	public void testAging(){
+		HotStatementSet testClass = new HotStatementSet(1);
+		int capacity = 16;
+		for (int i=0; i < capacity; i++){
+			testClass.record("SELECT "+i);
+		}
+		assertEquals(capacity, testClass.getTrackedCount());
+		for (int i=0; i < capacity; i++){
+			testClass.record("SELECT new");
+		}
+		assertEquals(0, testClass.getTrackedCount());
+		for (int i=0; i < 3; i++){
+			testClass.record("SELECT new");
+		}
+		assertEquals(Arrays.asList("SELECT new"), testClass.getHotStatements());
+	}
+
+	/** Statements survive a save and load, line breaks included.
+	 * @throws IOException
+	 */
+	@Test
+	public void testSaveLoad() throws IOException{
+		File file = File.createTempFile("bonecp", ".sql");
+		try {
+			HotStatementSet testClass = new HotStatementSet(3);
+			testClass.record("SELECT 1");
+			testClass.record("SELECT\n2 FROM \"a\\b\"\r\n");
+			testClass.record("SELECT\n2 FROM \"a\\b\"\r\n");
+			testClass.save(file.getAbsolutePath());
+
+			HotStatementSet loaded = new HotStatementSet(3);
+			loaded.load(file.getAbsolutePath());
+			assertEquals(testClass.getHotStatements(), loaded.getHotStatements());
+			assertEquals("SELECT\n2 FROM \"a\\b\"\r\n", loaded.getHotStatements().get(0));
+
+			assertTrue(file.delete());
+			loaded = new HotStatementSet(3);
+			loaded.load(file.getAbsolutePath()); // no file yet: nothing to load
+			assertEquals(0, loaded.getTrackedCount());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+
+/** Tests for the padding of IN-lists.
+ * @author wallacew
+ *
+ */
+public class TestInListBucketing {
+
+	/** Lists are padded to the next power of two and parameters are mapped accordingly. */
+	@Test
+	public void testRewrite(){
+		InListBucketing testClass = InListBucketing.rewrite("SELECT * FROM t WHERE a = ? AND id IN (?,?,?) AND b NOT IN(?, ?) AND c in ( ? , ?,? ,?,? ) AND d = ?");
+		assertEquals("SELECT * FROM t WHERE a = ? AND id IN (?, ?, ?, ?) AND b NOT IN(?, ?) AND c in (?, ?, ?, ?, ?, ?, ?, ?) AND d = ?", testClass.getSql());
+		assertEquals(1, testClass.getIndex(1));
+		assertEquals(1, testClass.getLastIndex(1));
+		assertEquals(3, testClass.getIndex(3));
+		assertEquals(4, testClass.getIndex(4));
+		assertEquals(5, testClass.getLastIndex(4)); // last of the first list takes the padding too
+		assertEquals(6, testClass.getIndex(5));
+		assertEquals(7, testClass.getIndex(6));
+		assertEquals(8, testClass.getIndex(7));
+		assertEquals(12, testClass.getIndex(11));
+		assertEquals(15, testClass.getLastIndex(11));
+		assertEquals(16, testClass.getIndex(12));
+		assertEquals(16, testClass.getLastIndex(12));
+		assertEquals(17, testClass.getIndex(13)); // out of range, shifted along
+	}
+
+	/** Lists already at a bucket size are written out in the same form as padded ones. */
+	@Test
+	public void testSameStatementPerBucket(){
+		InListBucketing testClass = InListBucketing.rewrite("SELECT * FROM t WHERE id IN (?,?,?,?)");
+		assertEquals(InListBucketing.rewrite("SELECT * FROM t WHERE id IN (?,?,?)").getSql(), testClass.getSql());
+		assertEquals(4, testClass.getIndex(4));
+		assertEquals(4, testClass.getLastIndex(4));
+	}
+
+	/** Statements without a list to pad are left alone. */
+	@Test
+	public void testNothingToPad(){
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE id = ?"));
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE id IN (?) OR id IN (?, ?, ?, ?)"));
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE id IN (?, 1, ?) OR id IN (SELECT x FROM u WHERE y = ?)"));
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE name = 'a IN (?,?,?)' AND \"x IN (?,?,?)\" = ? -- IN (?,?,?)"));
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE pin (?,?,?) /* IN (?,?,?) */"));
+
+		StringBuilder sb = new StringBuilder("SELECT * FROM t WHERE id IN (?");
+		for (int i=1; i < InListBucketing.MAX_BUCKET_SIZE + 1; i++){
+			sb.append(",?");
+		}
+		assertNull(InListBucketing.rewrite(sb.append(")").toString()));
+	}
+
+	/** Markers in literals and comments are counted out, those of other lists in. */
+	@Test
+	public void testMarkersOutsideLists(){
+		InListBucketing testClass = InListBucketing.rewrite("SELECT '?' FROM t /* ? */ WHERE a IN (?, 1) AND id IN (?, ?, ?)");
+		assertEquals("SELECT '?' FROM t /* ? */ WHERE a IN (?, 1) AND id IN (?, ?, ?, ?)", testClass.getSql());
+		assertEquals(4, testClass.getIndex(4));
+		assertEquals(5, testClass.getLastIndex(4));
+	}
+
+	/** A backslash in a literal may or may not escape the next quote, so such statements are left alone. */
+	@Test
+	public void testBackslashInLiteral(){
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE name = 'it\\'s' AND id IN (?, ?, ?)"));
+		assertNull(InListBucketing.rewrite("SELECT * FROM t WHERE name = 'C:\\' AND id IN (?, ?, ?) AND b = 'IN (?, ?, ?)'"));
+		assertNotNull(InListBucketing.rewrite("SELECT * FROM t WHERE name = 'it''s' AND id IN (?, ?, ?)"));
+	}
+
+	/** The memo hands back the same outcome for a statement seen before, including "nothing to do". */
+	@Test
+	public void testMemo(){
+		ConcurrentMap<String, InListBucketing> memo = new ConcurrentHashMap<String, InListBucketing>();
+		String sql = "SELECT * FROM t WHERE id IN (?, ?, ?)";
+		InListBucketing testClass = InListBucketing.rewrite(sql, memo);
+		assertEquals("SELECT * FROM t WHERE id IN (?, ?, ?, ?)", testClass.getSql());
+		assertSame(testClass, InListBucketing.rewrite(sql, memo));
+		assertNull(InListBucketing.rewrite("SELECT 1", memo));
+		assertNull(InListBucketing.rewrite("SELECT 1", memo));
+		assertEquals(2, memo.size());
+
+		for (int i=0; i < InListBucketing.MAX_MEMO_SIZE; i++){
+			InListBucketing.rewrite("SELECT "+i, memo);
+		}
+		assertTrue(memo.size() <= InListBucketing.MAX_MEMO_SIZE);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the latency histogram and the striped counter it builds on.
+ * @author wallacew
+ *
+ */
+public class TestLatencyHistogram {
+
+	/** Every value falls in a bucket whose range contains it, and buckets follow each other. */
+	@Test
+	public void testBuckets(){
+		long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE};
+		for (long value: values){
+			int bucket = LatencyHistogram.bucket(value);
+			assertTrue(bucket < LatencyHistogram.BUCKETS);
+			assertTrue(value <= LatencyHistogram.highestValue(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+		assertEquals(0, LatencyHistogram.bucket(-5));
+	}
+
+	/** Percentiles are within a bucket width of the actual value and never above the max. */
+	@Test
+	public void testPercentiles(){
+		LatencyHistogram testClass = new LatencyHistogram();
+		assertEquals(0, testClass.getPercentile(99));
+		for (int i=1; i <= 1000; i++){
+			testClass.record(i * 1000L);
+		}
+		assertEquals(1000, testClass.getCount());
+		assertEquals(1000000, testClass.getMax());
+		assertEquals(500000, testClass.getPercentile(50), 500000 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(990000, testClass.getPercentile(99), 990000 / LatencyHistogram.SUB_BUCKETS);
+		assertEquals(1000000, testClass.getPercentile(99.99));
+		assertEquals(1000000, testClass.getPercentile(100));
+
+		testClass.reset();
+		assertEquals(0, testClass.getCount());
+		assertEquals(0, testClass.getMax());
+	}
+
+	/** Concurrent updates of a striped counter all count.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testStripedCounter() throws InterruptedException{
+		final StripedCounter testClass = new StripedCounter();
+		Thread[] threads = new Thread[8];
+		for (int i=0; i < threads.length; i++){
+			threads[i] = new Thread(){
+				@Override
+				public void run(){
+					for (int j=0; j < 10000; j++){
+						testClass.increment();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread: threads){
+			thread.join();
+		}
+		assertEquals(80000, testClass.get());
+		testClass.add(-80000);
+		assertEquals(0, testClass.get());
+	}
+}
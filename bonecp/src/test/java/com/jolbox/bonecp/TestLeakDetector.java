@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the leak detector.
+ * @author wallacew
+ *
+ */
+public class TestLeakDetector {
+
+	/** Connections held past the threshold are suspects, longest held first, until closed.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testSuspects() throws InterruptedException{
+		LeakDetector testClass = new LeakDetector(50, 2);
+		ConnectionHandle first = createNiceMock(ConnectionHandle.class);
+		ConnectionHandle second = createNiceMock(ConnectionHandle.class);
+		ConnectionHandle third = createNiceMock(ConnectionHandle.class);
+		second.leakDetectionCheckouts = 1; // not sampled
+		testClass.checkout(first);
+		Thread.sleep(10);
+		testClass.checkout(second);
+		assertEquals(0, testClass.getSuspects().length);
+
+		Thread.sleep(100);
+		testClass.checkout(third);
+		testClass.run();
+		String[] suspects = testClass.getSuspects();
+		assertEquals(2, suspects.length);
+		assertTrue(suspects[0].contains("testSuspects"));
+		assertTrue(suspects[1].contains("not sampled"));
+
+		testClass.release(first);
+		testClass.release(first);
+		assertEquals(1, testClass.getSuspects().length);
+		assertEquals(2, testClass.getLeaseCount());
+	}
+
+	/** The detector runs often enough for the threshold, within bounds. */
+	@Test
+	public void testRunPeriod(){
+		assertEquals(100, new LeakDetector(10, 1).getRunPeriodInMs());
+		assertEquals(2500, new LeakDetector(10000, 1).getRunPeriodInMs());
+		assertEquals(5000, new LeakDetector(600000, 1).getRunPeriodInMs());
+	}
+}
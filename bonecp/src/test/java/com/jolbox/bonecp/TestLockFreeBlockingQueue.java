@@ -0,0 +1,278 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/** Tests for the lock-free free connection queue.
+ * @author wallacew
+ *
+ */
+public class TestLockFreeBlockingQueue {
+
+	/** Basic offer/poll semantics including the capacity bound. */
+	@Test
+	public void testOfferPoll(){
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(3);
+		assertTrue(queue.isEmpty());
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+		assertEquals(3, queue.remainingCapacity());
+
+		assertTrue(queue.offer(1));
+		assertTrue(queue.offer(2));
+		assertTrue(queue.offer(3));
+		assertFalse(queue.offer(4)); // full, even though the backing array has 8 slots
+		assertEquals(3, queue.size());
+		assertEquals(0, queue.remainingCapacity());
+		assertEquals(Integer.valueOf(1), queue.peek());
+
+		assertEquals(Integer.valueOf(1), queue.poll());
+		assertTrue(queue.offer(4));
+		assertEquals(Integer.valueOf(2), queue.poll());
+		assertEquals(Integer.valueOf(3), queue.poll());
+		assertEquals(Integer.valueOf(4), queue.poll());
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	/** Wrap around the ring many times. */
+	@Test
+	public void testWrapAround(){
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(2);
+		for (int i=0; i < 1000; i++){
+			assertTrue(queue.offer(i));
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertEquals(0, queue.size());
+	}
+
+	/** Nulls are not allowed. */
+	@Test
+	public void testOfferNull(){
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(2);
+		try{
+			queue.offer(null);
+			fail("Should have thrown an exception");
+		} catch (NullPointerException e){
+			// expected
+		}
+	}
+
+	/** Invalid capacity. */
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidCapacity(){
+		new LockFreeBlockingQueue<Integer>(0);
+	}
+
+	/** Drain + iterate.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testDrainToAndIterator() throws InterruptedException{
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(5);
+		queue.put(1);
+		queue.offer(2, 1, TimeUnit.SECONDS);
+		queue.offer(3);
+
+		Iterator<Integer> it = queue.iterator();
+		assertEquals(Integer.valueOf(1), it.next());
+		assertEquals(Integer.valueOf(2), it.next());
+		assertEquals(Integer.valueOf(3), it.next());
+		assertFalse(it.hasNext());
+		assertEquals(3, queue.size());
+
+		List<Integer> list = new ArrayList<Integer>();
+		assertEquals(1, queue.drainTo(list, 1));
+		assertEquals(2, queue.drainTo(list));
+		assertEquals(3, list.size());
+		assertTrue(queue.isEmpty());
+	}
+
+	/** Removed elements are skipped by poll, peek and the iterator, and don't count towards the size. */
+	@Test
+	public void testRemove(){
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(3);
+		queue.offer(1);
+		queue.offer(2);
+		queue.offer(3);
+		assertTrue(queue.remove(1));
+		assertFalse(queue.remove(1));
+		assertFalse(queue.remove(4));
+		assertEquals(2, queue.size());
+		assertEquals(Integer.valueOf(2), queue.peek());
+		assertTrue(queue.offer(4)); // the tombstone doesn't take up room
+
+		Iterator<Integer> it = queue.iterator();
+		assertEquals(Integer.valueOf(2), it.next());
+		it.remove();
+		assertEquals(Integer.valueOf(3), it.next());
+		assertEquals(Integer.valueOf(4), it.next());
+		assertFalse(it.hasNext());
+
+		assertEquals(Integer.valueOf(3), queue.poll());
+		assertEquals(Integer.valueOf(4), queue.poll());
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+
+		// wrap around with removals in the mix.
+		for (int i=0; i < 1000; i++){
+			assertTrue(queue.offer(i));
+			assertTrue(queue.offer(-i - 1));
+			assertTrue(queue.remove(i));
+			assertEquals(Integer.valueOf(-i - 1), queue.poll());
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/** An element being removed while consumers poll is taken out exactly once.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentRemove() throws InterruptedException{
+		final int elements = 8;
+		final LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(elements);
+		for (int i=0; i < elements; i++){
+			queue.offer(i);
+		}
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(4);
+		for (int t=0; t < 4; t++){
+			final boolean remover = t == 0;
+			new Thread(){
+				@Override
+				public void run() {
+					for (int i=0; i < 20000; i++){
+						Integer item = remover ? Integer.valueOf(i % elements) : queue.poll();
+						if (remover && !queue.remove(item)){
+							continue; // someone else has it right now.
+						}
+						if (item != null && !queue.offer(item)){
+							failures.incrementAndGet();
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		assertEquals(0, failures.get());
+		assertEquals(elements, queue.size());
+		boolean[] seen = new boolean[elements];
+		Integer item;
+		while ((item = queue.poll()) != null){
+			assertFalse(seen[item]);
+			seen[item] = true;
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	/** Blocking poll should time out on an empty queue.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testPollTimeout() throws InterruptedException{
+		LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(2);
+		assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+	}
+
+	/** A parked consumer is woken up by a producer.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testTakeWakesUp() throws InterruptedException{
+		final LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(2);
+		final AtomicInteger result = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread t = new Thread(){
+			@Override
+			public void run() {
+				try {
+					result.set(queue.take());
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+				done.countDown();
+			}
+		};
+		t.start();
+		Thread.sleep(50);
+		queue.offer(42);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(42, result.get());
+	}
+
+	/** Many producers and consumers shuffling a fixed set of elements (like connections
+	 * in a partition) must never lose or duplicate anything.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentShuffle() throws InterruptedException{
+		final int elements = 16;
+		final int threads = 8;
+		final int iterations = 20000;
+		final LockFreeBlockingQueue<Integer> queue = new LockFreeBlockingQueue<Integer>(elements);
+		for (int i=0; i < elements; i++){
+			queue.offer(i);
+		}
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t=0; t < threads; t++){
+			new Thread(){
+				@Override
+				public void run() {
+					try {
+						for (int i=0; i < iterations; i++){
+							Integer item = queue.poll(5, TimeUnit.SECONDS);
+							if (item == null || !queue.offer(item)){
+								failures.incrementAndGet();
+							}
+						}
+					} catch (InterruptedException e) {
+						failures.incrementAndGet();
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		assertEquals(0, failures.get());
+		assertEquals(elements, queue.size());
+
+		boolean[] seen = new boolean[elements];
+		Integer item;
+		while ((item = queue.poll()) != null){
+			assertFalse(seen[item]);
+			seen[item] = true;
+		}
+		for (boolean b: seen){
+			assertTrue(b);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+/** Tests for the parameter capture buffer.
+ * @author wallacew
+ *
+ */
+public class TestParameterBuffer {
+
+	/** Values come back as set, boxed, in parameter order. */
+	@Test
+	public void testSetGet(){
+		ParameterBuffer testClass = new ParameterBuffer();
+		testClass.setObject(3, "abc");
+		testClass.setInt(1, 42);
+		testClass.setLong(20, Long.MAX_VALUE);
+		testClass.setDouble(2, 1.5d);
+		testClass.setBoolean(4, true);
+		testClass.setFloat(5, 2.5f);
+		testClass.setShort(6, (short) 7);
+		testClass.setByte(7, (byte) 8);
+
+		assertEquals(8, testClass.size());
+		assertEquals(Integer.valueOf(42), testClass.get(1));
+		assertEquals(Double.valueOf(1.5d), testClass.get(2));
+		assertEquals(Long.valueOf(Long.MAX_VALUE), testClass.get(20));
+		assertEquals(Boolean.TRUE, testClass.get(4));
+		assertEquals(Float.valueOf(2.5f), testClass.get(5));
+		assertEquals(Short.valueOf((short) 7), testClass.get(6));
+		assertEquals(Byte.valueOf((byte) 8), testClass.get(7));
+		assertNull(testClass.get(8));
+		assertEquals(Arrays.<Object>asList(42, 1.5d, "abc", true, 2.5f, (short) 7, (byte) 8, Long.MAX_VALUE),
+				new ArrayList<Object>(testClass.values()));
+		assertEquals("ID=42 AND X=1.5 AND Y='abc'", PoolUtil.fillLogParams("ID=? AND X=? AND Y=?", testClass));
+	}
+
+	/** Clearing forgets everything, and the slots can be set again. */
+	@Test
+	public void testClear(){
+		ParameterBuffer testClass = new ParameterBuffer();
+		testClass.setInt(1, 1);
+		testClass.setObject(2, "x");
+		testClass.put("name", "y");
+		testClass.clear();
+		assertTrue(testClass.isEmpty());
+		assertFalse(testClass.containsKey(1));
+		assertNull(testClass.get("name"));
+		assertFalse(testClass.entrySet().iterator().hasNext());
+
+		testClass.setObject(2, "z");
+		assertEquals(1, testClass.size());
+		assertEquals("z", testClass.get(2));
+		testClass.release();
+		assertTrue(testClass.isEmpty());
+	}
+
+	/** Parameters set by name come after those set by index; the Map view can be written to. */
+	@Test
+	public void testMapView(){
+		ParameterBuffer testClass = new ParameterBuffer();
+		assertNull(testClass.put(2, "a"));
+		assertEquals("a", testClass.put(2, "b"));
+		testClass.put("b", 2);
+		testClass.put("a", 1);
+		testClass.setInt(1, 0);
+
+		Iterator<Map.Entry<Object, Object>> it = testClass.entrySet().iterator();
+		assertEquals(1, it.next().getKey());
+		assertEquals(2, it.next().getKey());
+		it.remove();
+		assertEquals("a", it.next().getKey());
+		assertEquals("b", it.next().getKey());
+		assertFalse(it.hasNext());
+		assertEquals(3, testClass.size());
+		assertEquals(Integer.valueOf(0), testClass.remove(1));
+		assertEquals(2, testClass.size());
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the partition autoscaler.
+ * @author wallacew
+ *
+ */
+public class TestPoolAutoScaler {
+	/** One second. */
+	private static final long SECOND = 1000000000L;
+	/** Mock handle. */
+	private ConnectionPartition mockPartition;
+	/** Mock handle. */
+	private BoneCP mockPool;
+	/** Signal queue of the partition. */
+	private BlockingQueue<Object> signalQueue;
+	/** Free connections of the partition. */
+	private BlockingQueue<ConnectionHandle> freeConnections;
+	/** Class under test. */
+	private PoolAutoScaler testClass;
+
+	/** Reset everything. */
+	@Before
+	public void before(){
+		this.mockPartition = createNiceMock(ConnectionPartition.class);
+		this.mockPool = createNiceMock(BoneCP.class);
+		this.signalQueue = new LinkedBlockingQueue<Object>();
+		this.freeConnections = new LinkedBlockingQueue<ConnectionHandle>();
+		this.testClass = new PoolAutoScaler(this.mockPartition, this.mockPool, 10);
+	}
+
+	/** Sets up the partition to report the given state.
+	 * @param created connections in the partition
+	 * @param checkouts cumulative checkouts
+	 * @param waitTime cumulative wait time
+	 * @param holdTime cumulative hold time
+	 */
+	private void partitionState(int created, long checkouts, long waitTime, long holdTime){
+		reset(this.mockPartition);
+		expect(this.mockPartition.getCreatedConnections()).andReturn(created).anyTimes();
+		expect(this.mockPartition.getMinConnections()).andReturn(2).anyTimes();
+		expect(this.mockPartition.getMaxConnections()).andReturn(50).anyTimes();
+		expect(this.mockPartition.getAcquireIncrement()).andReturn(3).anyTimes();
+		expect(this.mockPartition.getCheckouts()).andReturn(checkouts).anyTimes();
+		expect(this.mockPartition.getCumulativeWaitTimeInNanos()).andReturn(waitTime).anyTimes();
+		expect(this.mockPartition.getReleases()).andReturn(checkouts).anyTimes();
+		expect(this.mockPartition.getCumulativeHoldTimeInNanos()).andReturn(holdTime).anyTimes();
+		expect(this.mockPartition.getPoolWatchThreadSignalQueue()).andReturn(this.signalQueue).anyTimes();
+		expect(this.mockPartition.getFreeConnections()).andReturn(this.freeConnections).anyTimes();
+		replay(this.mockPartition);
+	}
+
+	/** Under load the target is raised to cover rate * hold time and the watch thread is woken up. */
+	@Test
+	public void testGrowsWithDemand(){
+		// 1000 checkouts/sec each held for 10ms: ~10 connections busy on average.
+		partitionState(2, 1000, 0, 1000 * 10000000L);
+		this.testClass.adjust(SECOND);
+		assertTrue(this.mockPartition.autoScaleTarget >= 10);
+		assertFalse(this.signalQueue.isEmpty());
+
+		// no demand at all: never below the configured minimum.
+		this.testClass = new PoolAutoScaler(this.mockPartition, this.mockPool, 10);
+		partitionState(2, 0, 0, 0);
+		this.testClass.adjust(SECOND);
+		assertEquals(2, this.mockPartition.autoScaleTarget);
+	}
+
+	/** The safety margin widens while checkouts wait longer than the target and narrows while they don't. */
+	@Test
+	public void testHeadroomFollowsWaitTime(){
+		double initial = this.testClass.headroom;
+		// 100 checkouts each waiting 50ms, against a 10ms target.
+		partitionState(50, 100, 100 * 50000000L, 100 * 1000000L);
+		this.testClass.adjust(SECOND);
+		assertTrue(this.testClass.headroom > initial);
+
+		double raised = this.testClass.headroom;
+		partitionState(50, 200, 100 * 50000000L, 200 * 1000000L); // no further waiting
+		for (int i=0; i < 40; i++){
+			this.testClass.adjust(SECOND);
+		}
+		assertTrue(this.testClass.headroom < raised);
+	}
+
+	/** An oversized partition is only shrunk after it stayed oversized for a while, and then gradually. */
+	@Test
+	public void testShrinkIsDelayed(){
+		ConnectionHandle mockConnection = createNiceMock(ConnectionHandle.class);
+		for (int i=0; i < 5; i++){
+			this.freeConnections.add(mockConnection);
+		}
+		partitionState(20, 0, 0, 0);
+		replay(this.mockPool);
+		for (int i=1; i < PoolAutoScaler.SHRINK_DELAY_RUNS; i++){
+			this.testClass.adjust(SECOND);
+		}
+		assertEquals(5, this.freeConnections.size());
+		verify(this.mockPool);
+
+		reset(this.mockPool);
+		this.mockPool.destroyConnection(mockConnection);
+		expectLastCall().times(3); // acquireIncrement
+		replay(this.mockPool);
+		this.testClass.adjust(SECOND);
+		verify(this.mockPool);
+		assertEquals(2, this.freeConnections.size());
+		assertEquals(17, this.mockPartition.autoScaleTarget);
+	}
+
+	/** A run within the dead band interrupts an oversized streak, even one that already led to a shrink. */
+	@Test
+	public void testShrinkDelayRestartsAfterDeadBand(){
+		ConnectionHandle mockConnection = createNiceMock(ConnectionHandle.class);
+		for (int i=0; i < 10; i++){
+			this.freeConnections.add(mockConnection);
+		}
+		this.mockPool.destroyConnection(mockConnection);
+		expectLastCall().times(3); // acquireIncrement
+		replay(this.mockPool);
+		partitionState(20, 0, 0, 0);
+		for (int i=0; i < PoolAutoScaler.SHRINK_DELAY_RUNS; i++){
+			this.testClass.adjust(SECOND);
+		}
+		verify(this.mockPool);
+		assertEquals(7, this.freeConnections.size());
+
+		// 3 connections against a desired 2: within the dead band.
+		partitionState(3, 0, 0, 0);
+		this.testClass.adjust(SECOND);
+		assertEquals(0, this.testClass.oversizedRuns);
+
+		// oversized again: the delay starts over.
+		reset(this.mockPool);
+		replay(this.mockPool);
+		partitionState(17, 0, 0, 0);
+		for (int i=1; i < PoolAutoScaler.SHRINK_DELAY_RUNS; i++){
+			this.testClass.adjust(SECOND);
+		}
+		verify(this.mockPool);
+		assertEquals(7, this.freeConnections.size());
+
+		reset(this.mockPool);
+		this.mockPool.destroyConnection(mockConnection);
+		expectLastCall().times(3);
+		replay(this.mockPool);
+		this.testClass.adjust(SECOND);
+		verify(this.mockPool);
+		assertEquals(4, this.freeConnections.size());
+	}
+}
@@ -36,13 +36,17 @@ along with BoneCP.  If not, see <http://www.gnu.org/licenses/>.
 package com.jolbox.bonecp;
 
 
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.createNiceMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
 
 import java.lang.reflect.InvocationTargetException;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -113,4 +117,24 @@ public class TestPreparedStatementHandle {
 		this.testClass.setInternalPreparedStatement(mockPreparedStatement);
 		Assert.assertEquals(mockPreparedStatement, this.testClass.getInternalPreparedStatement());
 	}
+
+	/** Parameters are moved along to their place in the padded statement, the last one of a list being repeated.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testInListBucketing() throws SQLException{
+		PreparedStatement mockPreparedStatement = createMock(PreparedStatement.class);
+		mockPreparedStatement.setInt(3, 7);
+		expectLastCall().once();
+		mockPreparedStatement.setInt(4, 7);
+		expectLastCall().once();
+		mockPreparedStatement.setString(5, "x");
+		expectLastCall().once();
+		replay(mockPreparedStatement);
+		this.testClass.setInternalPreparedStatement(mockPreparedStatement);
+		this.testClass.setInListBucketing(InListBucketing.rewrite("SELECT 1 FROM t WHERE id IN (?, ?, ?) AND b = ?"));
+		this.testClass.setInt(3, 7);
+		this.testClass.setString(4, "x");
+		verify(mockPreparedStatement);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests for the rolling window statistics.
+ * @author wallacew
+ *
+ */
+public class TestRollingStatistics {
+
+	/** Windows cover the seconds before the current one, and old slices are reused. */
+	@Test
+	public void testWindows(){
+		RollingStatistics testClass = new RollingStatistics();
+		long start = 1000;
+		for (long second = start; second < start + 600; second++){
+			testClass.add(RollingStatistics.CONNECTIONS_REQUESTED, 2, second);
+			testClass.add(RollingStatistics.CONNECTION_WAIT_TIME, 10, second);
+		}
+		long now = start + 599;
+		assertEquals(20, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 10, now));
+		assertEquals(120, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 60, now));
+		assertEquals(600, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 300, now));
+		assertEquals(600, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 1000, now));
+		assertEquals(100, testClass.getSum(RollingStatistics.CONNECTION_WAIT_TIME, 10, now));
+
+		// nothing for a while: the window empties.
+		assertEquals(10, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 10, now + 6));
+		assertEquals(0, testClass.getSum(RollingStatistics.CONNECTIONS_REQUESTED, 10, now + 20));
+		assertEquals(0, testClass.getSum(RollingStatistics.CONNECTION_TIMEOUTS, 300, now));
+	}
+
+	/** Late additions to a slice that has moved on are dropped rather than counted in the wrong second. */
+	@Test
+	public void testLateAdd(){
+		RollingStatistics testClass = new RollingStatistics();
+		testClass.add(RollingStatistics.CACHE_HITS, 1, 2000);
+		testClass.add(RollingStatistics.CACHE_HITS, 1, 2000 - RollingStatistics.MAX_WINDOW_IN_SECONDS - 1);
+		assertEquals(1, testClass.getSum(RollingStatistics.CACHE_HITS, 10, 2001));
+	}
+
+	/** Threads adding to the same second at once land in different stripes, which all count.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentAdd() throws InterruptedException{
+		final RollingStatistics testClass = new RollingStatistics();
+		testClass.add(RollingStatistics.STATEMENTS_EXECUTED, 1, 3000); // claim the slice
+		Thread[] threads = new Thread[4];
+		for (int i=0; i < threads.length; i++){
+			threads[i] = new Thread(){
+				@Override
+				public void run() {
+					for (int j=0; j < 10000; j++){
+						testClass.add(RollingStatistics.STATEMENTS_EXECUTED, 1, 3000);
+						testClass.add(RollingStatistics.STATEMENT_EXECUTE_TIME, 2, 3000);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertEquals(40001, testClass.getSum(RollingStatistics.STATEMENTS_EXECUTED, 10, 3001));
+		assertEquals(80000, testClass.getSum(RollingStatistics.STATEMENT_EXECUTE_TIME, 10, 3001));
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the process-wide scheduler.
+ * @author wallacew
+ *
+ */
+public class TestSharedPoolScheduler {
+	/** Lane under test. */
+	private SharedPoolScheduler.Lane lane;
+	/** Another lane. */
+	private SharedPoolScheduler.Lane otherLane;
+
+	/** Open two lanes. */
+	@Before
+	public void before(){
+		this.lane = SharedPoolScheduler.newLane("test");
+		this.otherLane = SharedPoolScheduler.newLane("other");
+	}
+
+	/** Close them again. */
+	@After
+	public void after(){
+		this.lane.shutdown();
+		this.otherLane.shutdown();
+	}
+
+	/** Immediate, delayed and periodic tasks.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testScheduling() throws InterruptedException{
+		final CountDownLatch executed = new CountDownLatch(1);
+		this.lane.execute(new Runnable() {
+			public void run() {
+				executed.countDown();
+			}
+		});
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+		final CountDownLatch delayed = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		this.lane.schedule(new Runnable() {
+			public void run() {
+				delayed.countDown();
+			}
+		}, 300, TimeUnit.MILLISECONDS);
+		assertTrue(delayed.await(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 300 - SharedPoolScheduler.TICK_IN_MS);
+
+		final AtomicInteger runs = new AtomicInteger();
+		SharedPoolScheduler.Timeout periodic = this.lane.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 0, 100, TimeUnit.MILLISECONDS);
+		for (int i=0; i < 100 && runs.get() < 3; i++){
+			Thread.sleep(50);
+		}
+		assertTrue(runs.get() >= 3);
+		periodic.cancel();
+		Thread.sleep(3 * SharedPoolScheduler.TICK_IN_MS);
+		int runsAfterCancel = runs.get();
+		Thread.sleep(5 * SharedPoolScheduler.TICK_IN_MS);
+		assertEquals(runsAfterCancel, runs.get());
+	}
+
+	/** A lane runs one task at a time, and a busy lane doesn't hold up the others.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testLanes() throws InterruptedException{
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		Runnable slowTask = new Runnable() {
+			public void run() {
+				int now = running.incrementAndGet();
+				if (now > maxRunning.get()){
+					maxRunning.set(now);
+				}
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+				running.decrementAndGet();
+			}
+		};
+		for (int i=0; i < 3; i++){
+			this.lane.execute(slowTask);
+		}
+
+		final CountDownLatch otherExecuted = new CountDownLatch(1);
+		this.otherLane.execute(new Runnable() {
+			public void run() {
+				otherExecuted.countDown();
+			}
+		});
+		assertTrue(otherExecuted.await(2, TimeUnit.SECONDS));
+		assertEquals(1, running.get());
+
+		release.countDown();
+		for (int i=0; i < 100 && running.get() > 0; i++){
+			Thread.sleep(20);
+		}
+		assertEquals(1, maxRunning.get());
+	}
+
+	/** Shutting down a lane cancels its tasks, interrupts the running one and stops the scheduler if it was the last lane.
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testShutdown() throws InterruptedException{
+		int openLanes = SharedPoolScheduler.getOpenLanes();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		this.lane.execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+			}
+		});
+		this.lane.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		}, 200, 200, TimeUnit.MILLISECONDS);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		this.lane.shutdown();
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		assertTrue(this.lane.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(openLanes - 1, SharedPoolScheduler.getOpenLanes());
+		Thread.sleep(500);
+		assertEquals(0, runs.get());
+
+		this.otherLane.shutdown();
+		assertEquals(openLanes - 2, SharedPoolScheduler.getOpenLanes());
+		this.lane.execute(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+			}
+		});
+		assertFalse(runs.get() > 0);
+	}
+}
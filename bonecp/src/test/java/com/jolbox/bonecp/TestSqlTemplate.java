@@ -0,0 +1,48 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/** Tests for the statement templates used for logging.
+ * @author wallacew
+ *
+ */
+public class TestSqlTemplate {
+
+	/** A template renders the same as parsing the statement on every call, however often it is used. */
+	@Test
+	public void testRender(){
+		SqlTemplate testClass = new SqlTemplate("ID=? AND FOO='?' and LALA=\"B?\" ? ?");
+		assertEquals(3, testClass.getParameterCount());
+
+		Map<Object, Object> logParams = new TreeMap<Object, Object>();
+		logParams.put(1, 123);
+		logParams.put(2, "abc");
+		assertEquals("ID=123 AND FOO='?' and LALA=\"B?\" 'abc' ?", testClass.render(logParams));
+		assertEquals(PoolUtil.fillLogParams("ID=? AND FOO='?' and LALA=\"B?\" ? ?", logParams), testClass.render(logParams));
+
+		logParams.put(3, null);
+		assertEquals("ID=123 AND FOO='?' and LALA=\"B?\" 'abc' NULL", testClass.render(logParams));
+		assertEquals("ID=? AND FOO='?' and LALA=\"B?\" ? ?", testClass.render(null));
+		assertEquals("SELECT 1", new SqlTemplate("SELECT 1").render(logParams));
+	}
+}
@@ -196,6 +196,45 @@ public class TestStatementCache {
 		CommonTestUtils.logPass();
 	}
 	
+	/** Statements prepared with more than the SQL are found by their arguments, without the lookups ending up
+	 * in the cache.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testStatementCacheCompositeKeys() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setStatementsCacheSize(5);
+		BoneCP dsb = new BoneCP(config);
+		ConnectionHandle conn = (ConnectionHandle) dsb.getConnection();
+		StatementCache cache = new StatementCache(5, false, null);
+		String sql = CommonTestUtils.TEST_QUERY;
+		new StatementHandle(createNiceMock(Statement.class), sql, cache, conn, cache.calculateCacheKey(sql, 1, 2), false).close();
+		new StatementHandle(createNiceMock(Statement.class), sql, cache, conn, cache.calculateCacheKey(sql, new int[]{1}), false).close();
+		new StatementHandle(createNiceMock(Statement.class), sql, cache, conn, cache.calculateCacheKey(sql, new String[]{"id"}), false).close();
+		assertEquals(3, cache.size());
+
+		assertNull(cache.get(sql));
+		assertNull(cache.get(sql, 1, 3));
+		assertNull(cache.get(sql, 1, 2, 1));
+		assertNull(cache.get(sql, new String[]{"name"}));
+		int[] columnIndexes = new int[]{1};
+		StatementHandle hit = cache.get(sql, columnIndexes);
+		assertNotNull(hit);
+		columnIndexes[0] = 2; // the cached key keeps its own copy
+		hit.close();
+		assertNotNull(cache.get(sql, new int[]{1}));
+		assertNotNull(cache.get(sql, 1, 2));
+		assertNotNull(cache.get(sql, new String[]{"id"}));
+		assertEquals(3, cache.size());
+
+		conn.close();
+		dsb.close();
+		CommonTestUtils.logPass();
+	}
+
 	/** Test case for cache put.
 	 * @throws SQLException
 	 * @throws SecurityException
@@ -0,0 +1,164 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the pool-wide statement budget.
+ * @author wallacew
+ *
+ */
+public class TestStatementCacheBudget {
+	/** Mock handle. */
+	private ConnectionHandle mockConnection;
+	/** Mock handle. */
+	private BoneCP mockPool;
+
+	/** Mock setup. */
+	@Before
+	public void before(){
+		this.mockConnection = createNiceMock(ConnectionHandle.class);
+		this.mockPool = createNiceMock(BoneCP.class);
+		expect(this.mockConnection.getPool()).andReturn(this.mockPool).anyTimes();
+		expect(this.mockPool.getConfig()).andReturn(new BoneCPConfig()).anyTimes();
+		replay(this.mockConnection, this.mockPool);
+	}
+
+	/** Caches a new statement under the given key, like ConnectionHandle does on a miss.
+	 * @param cache cache to use
+	 * @param key sql
+	 * @param internalStatement statement to "prepare"
+	 * @return statement handle
+	 * @throws SQLException
+	 */
+	private StatementHandle prepare(IStatementCache cache, String key, Statement internalStatement) throws SQLException{
+		StatementHandle result = cache.get(key);
+		if (result == null){
+			result = new StatementHandle(internalStatement, key, cache, this.mockConnection, key, false);
+		}
+		result.close();
+		return result;
+	}
+
+	/** Slots are handed out up to the limit and given back. */
+	@Test
+	public void testAcquireRelease(){
+		StatementCacheBudget testClass = new StatementCacheBudget(2);
+		assertTrue(testClass.tryAcquire());
+		assertTrue(testClass.tryAcquire());
+		assertFalse(testClass.tryAcquire());
+		assertEquals(2, testClass.getUsage());
+		assertEquals(1, testClass.getDenials());
+		testClass.release(1);
+		assertTrue(testClass.tryAcquire());
+
+		testClass = new StatementCacheBudget(0);
+		for (int i=0; i < 100; i++){
+			assertTrue(testClass.tryAcquire());
+		}
+		assertEquals(100, testClass.getUsage());
+		assertEquals(0, testClass.getDenials());
+	}
+
+	/** Caches sharing a budget don't cache more statements between them than it allows.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testSharedBudget() throws SQLException{
+		StatementCacheBudget budget = new StatementCacheBudget(3);
+		BoundedStatementCache first = new BoundedStatementCache(10, false, null, budget);
+		BoundedStatementCache second = new BoundedStatementCache(10, false, null, budget);
+		StatementCache third = new StatementCache(10, false, null, budget);
+
+		prepare(first, "a", createNiceMock(Statement.class));
+		prepare(first, "b", createNiceMock(Statement.class));
+		prepare(second, "c", createNiceMock(Statement.class));
+		assertEquals(3, budget.getUsage());
+
+		Statement denied = createMock(Statement.class);
+		denied.close();
+		expectLastCall().once();
+		replay(denied);
+		assertFalse(prepare(third, "d", denied).inCache);
+		verify(denied);
+		assertEquals(0, third.size());
+		assertEquals(3, budget.getUsage());
+		assertTrue(budget.getDenials() > 0);
+
+		first.clear();
+		assertEquals(1, budget.getUsage());
+		assertTrue(prepare(third, "d", createNiceMock(Statement.class)).inCache);
+		assertEquals(2, budget.getUsage());
+		third.clear();
+		second.clear();
+		assertEquals(0, budget.getUsage());
+	}
+
+	/** Once the budget is used up, a popular statement takes the place of a colder one of the same cache.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testReplacementWithinBudget() throws SQLException{
+		StatementCacheBudget budget = new StatementCacheBudget(2);
+		BoundedStatementCache testClass = new BoundedStatementCache(10, false, null, budget);
+		BoundedStatementCache other = new BoundedStatementCache(10, false, null, budget);
+		prepare(testClass, "cold", createNiceMock(Statement.class));
+		prepare(other, "other", createNiceMock(Statement.class));
+
+		for (int i=0; i < 3; i++){
+			prepare(testClass, "hot", createNiceMock(Statement.class));
+		}
+		assertNotNull(testClass.get("hot"));
+		assertNull(testClass.get("cold"));
+		assertEquals(1, testClass.size());
+		assertEquals(2, budget.getUsage());
+	}
+
+	/** Trimming evicts statements and gives their slots back.
+	 * @throws SQLException
+	 */
+	@Test
+	public void testTrim() throws SQLException{
+		StatementCacheBudget budget = new StatementCacheBudget(10);
+		BoundedStatementCache testClass = new BoundedStatementCache(10, false, null, budget);
+		prepare(testClass, "a", createNiceMock(Statement.class));
+		prepare(testClass, "b", createNiceMock(Statement.class));
+		prepare(testClass, "c", createNiceMock(Statement.class));
+
+		assertEquals(2, testClass.trim(2));
+		assertEquals(1, testClass.size());
+		assertEquals(1, budget.getUsage());
+		assertEquals(1, testClass.trim(5));
+		assertEquals(0, budget.getUsage());
+		assertEquals(0, testClass.trim(1));
+	}
+}
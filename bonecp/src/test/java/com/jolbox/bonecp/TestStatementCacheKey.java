@@ -0,0 +1,74 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+/** Tests for the composite statement cache key.
+ * @author wallacew
+ *
+ */
+public class TestStatementCacheKey {
+	/** SQL used throughout. */
+	private static final String SQL = "SELECT * FROM test WHERE id = ?";
+	/** Not set. */
+	private static final int NS = StatementCacheKey.NOT_SET;
+
+	/** Keys built from the same arguments are equal, keys of different kinds of statements are not. */
+	@Test
+	public void testEquality(){
+		StatementCacheKey key = new StatementCacheKey(new String(SQL), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		StatementCacheKey same = new StatementCacheKey(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		assertEquals(key, same);
+		assertEquals(key.hashCode(), same.hashCode());
+
+		assertFalse(key.equals(new StatementCacheKey(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE)));
+		assertFalse(key.equals(new StatementCacheKey(SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, ResultSet.HOLD_CURSORS_OVER_COMMIT)));
+		assertFalse(new StatementCacheKey(SQL, Statement.RETURN_GENERATED_KEYS).equals(new StatementCacheKey(SQL, Statement.NO_GENERATED_KEYS)));
+		assertFalse(new StatementCacheKey(SQL, new int[]{1}).equals(new StatementCacheKey(SQL, new String[]{"1"})));
+		assertFalse(key.equals(SQL));
+		assertTrue(key.toString().startsWith(SQL));
+	}
+
+	/** A key can be matched against call arguments without creating another key. */
+	@Test
+	public void testMatches(){
+		StatementCacheKey key = new StatementCacheKey(SQL, new String[]{"id", "name"});
+		assertEquals(key.hashCode(), StatementCacheKey.hashOf(SQL, NS, NS, NS, NS, null, new String[]{"id", "name"}));
+		assertTrue(key.matches(SQL, NS, NS, NS, NS, null, new String[]{"id", "name"}));
+		assertFalse(key.matches(SQL, NS, NS, NS, NS, null, new String[]{"id"}));
+		assertFalse(key.matches(SQL, NS, NS, NS, NS, new int[]{1, 2}, null));
+	}
+
+	/** Column arrays are copied, so changing them later on doesn't change the key. */
+	@Test
+	public void testArraysAreCopied(){
+		int[] columnIndexes = new int[]{1, 2};
+		StatementCacheKey key = new StatementCacheKey(SQL, columnIndexes);
+		int hash = key.hashCode();
+		columnIndexes[0] = 3;
+		assertEquals(hash, key.hashCode());
+		assertTrue(key.matches(SQL, NS, NS, NS, NS, new int[]{1, 2}, null));
+		assertFalse(key.matches(SQL, NS, NS, NS, NS, columnIndexes, null));
+	}
+}
@@ -100,6 +100,7 @@ public class TestStatementHandle {
 		skipTests.add("checkClosed");
 		skipTests.add("closeStatement"); 
 		skipTests.add("closeAndClearResultSetHandles"); 
+		skipTests.add("closeInternalStatement");
 		skipTests.add("$VRi"); // this only comes into play when code coverage is started. Eclemma bug?
 
 		CommonTestUtils.testStatementBounceMethod(mockConnection, testClass, skipTests, mockClass);
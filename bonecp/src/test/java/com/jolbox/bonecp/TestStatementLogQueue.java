@@ -0,0 +1,107 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.find;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+/** Tests for the asynchronous statement log.
+ * @author wallacew
+ *
+ */
+public class TestStatementLogQueue {
+
+	/** Statements that don't fit are dropped and counted. */
+	@Test
+	public void testDrop(){
+		StatementLogQueue testClass = new StatementLogQueue(2, StatementLogQueue.DROP);
+		for (int i=0; i < 5; i++){
+			testClass.add(null, null, "SELECT 1", null, null);
+		}
+		assertEquals(2, testClass.getQueue().size());
+		assertEquals(3, testClass.getDropped());
+		testClass.resetStats();
+		assertEquals(0, testClass.getDropped());
+	}
+
+	/** Once the queue is half full, only one statement in SAMPLE_RATE gets in. */
+	@Test
+	public void testSample(){
+		StatementLogQueue testClass = new StatementLogQueue(100, StatementLogQueue.SAMPLE);
+		for (int i=0; i < 50 + 10 * StatementLogQueue.SAMPLE_RATE; i++){
+			testClass.add(null, null, "SELECT 1", null, null);
+		}
+		assertEquals(60, testClass.getQueue().size());
+		assertEquals(10 * (StatementLogQueue.SAMPLE_RATE - 1), testClass.getDropped());
+	}
+
+	/** A thread blocked for room gives up once the queue is closed, and nothing gets in after that.
+	 * @throws InterruptedException
+	 */
+	@Test(timeout=5000)
+	public void testBlockReleasedOnClose() throws InterruptedException{
+		final StatementLogQueue testClass = new StatementLogQueue(1, StatementLogQueue.BLOCK);
+		testClass.add(null, null, "SELECT 1", null, null);
+		Thread blocked = new Thread(){
+			@Override
+			public void run() {
+				testClass.add(null, null, "SELECT 2", null, null);
+			}
+		};
+		blocked.start();
+		blocked.join(2 * StatementLogQueue.BLOCK_TIMEOUT_IN_MS);
+		assertTrue(blocked.isAlive());
+
+		testClass.close();
+		blocked.join();
+		testClass.add(null, null, "SELECT 3", null, null);
+		assertEquals(1, testClass.getQueue().size());
+		assertEquals(2, testClass.getDropped());
+	}
+
+	/** Parameters are copied when queued; statements for the same logger go out as one entry. */
+	@Test
+	public void testWrite(){
+		Logger mockLogger = createMock(Logger.class);
+		mockLogger.debug(find("^ID=1 AND NAME='a' \\[connection [0-9a-f]+, queued \\d+ms\\]\\s+SELECT 2 \\[connection [0-9a-f]+, queued \\d+ms\\]$"));
+		expectLastCall().once();
+		replay(mockLogger);
+
+		StatementLogQueue testClass = new StatementLogQueue(10, StatementLogQueue.BLOCK);
+		ParameterBuffer logParams = new ParameterBuffer();
+		logParams.setInt(1, 1);
+		logParams.setObject(2, "a");
+		testClass.add(mockLogger, new SqlTemplate("ID=? AND NAME=?"), null, logParams, null);
+		logParams.clear();
+		testClass.add(mockLogger, null, "SELECT 2", logParams, null);
+
+		List<StatementLogEvent> batch = new ArrayList<StatementLogEvent>();
+		testClass.getQueue().drainTo(batch);
+		new StatementLogWriterThread(testClass).write(batch);
+		verify(mockLogger);
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ *  Copyright 2010 Wallace Wadge
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.jolbox.bonecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Tests for the per-statement profiler.
+ * @author wallacew
+ *
+ */
+public class TestStatementProfiler {
+
+	/** Literals, comments and whitespace don't make statements different. */
+	@Test
+	public void testFingerprint(){
+		assertEquals("SELECT * FROM t1 WHERE a = ? AND b = ? AND c = ?", 
+				StatementProfiler.fingerprint("SELECT *  FROM t1\n\tWHERE a = 'it''s' AND b = 12.5e-3 AND c = ? -- note"));
+		assertEquals("SELECT \"col 1\" FROM t WHERE id IN (?)", 
+				StatementProfiler.fingerprint(" SELECT \"col 1\" FROM t WHERE id IN (1, 2,3) /*x*/ "));
+		assertEquals(StatementProfiler.fingerprint("INSERT INTO t VALUES (?, ?, ?)"), StatementProfiler.fingerprint("INSERT INTO t VALUES (1,'a',  ?)"));
+		assertEquals("", StatementProfiler.fingerprint(null));
+	}
+
+	/** Executions add up per fingerprint, counting for sampleRate executions each. */
+	@Test
+	public void testTopStatements(){
+		StatementProfiler testClass = new StatementProfiler(10, 3);
+		assertEquals(4, testClass.getSampleRate());
+		testClass.record("SELECT ?", 1000000);
+		testClass.record("SELECT ?", 3000000);
+		testClass.record("UPDATE t SET a = ?", 3000000);
+		testClass.record("DELETE FROM t", 1000);
+
+		StatementProfiler.Profile top = testClass.getProfiles().get(0);
+		assertEquals("SELECT ?", top.getFingerprint());
+		assertEquals(8, top.getCount());
+		assertEquals(16000000, top.getTotalTime());
+		assertEquals(3000000, top.getMaxTime());
+		assertTrue(top.getPercentile(50) >= 1000000 && top.getPercentile(50) < 2000000);
+		assertEquals(3000000, top.getPercentile(99));
+
+		String[] report = testClass.getTopStatements(2);
+		assertEquals(2, report.length);
+		assertTrue(report[0].startsWith("total=16.0ms count=8 avg=2.000ms"));
+		assertTrue(report[1].endsWith("UPDATE t SET a = ?"));
+		assertEquals(3, testClass.getTopStatements(5).length);
+
+		testClass.reset();
+		assertEquals(0, testClass.getTopStatements(5).length);
+	}
+
+	/** Once full, the statements with the least total time make room for new ones. */
+	@Test
+	public void testEviction(){
+		StatementProfiler testClass = new StatementProfiler(4, 1);
+		for (int i=0; i < 4; i++){
+			testClass.record("SELECT "+i, (i + 1) * 1000);
+		}
+		testClass.record("SELECT new", 10000);
+		assertEquals(4, testClass.getProfiles().size());
+		assertEquals("SELECT new", testClass.getProfiles().get(0).getFingerprint());
+		for (StatementProfiler.Profile profile: testClass.getProfiles()){
+			assertTrue(!profile.getFingerprint().equals("SELECT 0"));
+		}
+	}
+}
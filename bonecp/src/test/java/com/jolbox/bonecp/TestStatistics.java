@@ -20,7 +20,6 @@ import static org.junit.Assert.assertEquals;
 
 import java.lang.reflect.Field;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -91,6 +90,13 @@ public class TestStatistics {
 		assertEquals(1, this.stats.getTotalCreatedConnections());
 		assertEquals(1, this.stats.getTotalLeased());
 		assertEquals(0.5, this.stats.getCacheHitRatio(), 0.05);
+		assertEquals(1, this.stats.getConnectionWaitTimeP50(), 0.15);
+		assertEquals(1, this.stats.getConnectionWaitTimeMax(), 0.001);
+		assertEquals(1000, this.stats.getStatementPrepareTimeP999(), 150);
+		assertEquals(1, this.stats.getStatementExecuteTimeP99(), 0.15);
+		assertEquals(0, this.stats.getConnectionHoldTimeP90(), 0.001);
+		this.stats.addConnectionHoldTime(2000000);
+		assertEquals(2, this.stats.getConnectionHoldTimeMax(), 0.001);
 		
 	}
 	/**
@@ -100,9 +106,13 @@ public class TestStatistics {
 	private void checkValuesSetToZero(Statistics stats)
 			throws IllegalAccessException {
 		for (Field field: Statistics.class.getDeclaredFields()){
-			if (field.getType().equals(AtomicLong.class) ){
+			if (field.getType().equals(StripedCounter.class) ){
 				field.setAccessible(true);
-				assertEquals(0, ((AtomicLong)field.get(stats)).get());
+				assertEquals(0, ((StripedCounter)field.get(stats)).get());
+			}
+			if (field.getType().equals(LatencyHistogram.class) ){
+				field.setAccessible(true);
+				assertEquals(0, ((LatencyHistogram)field.get(stats)).getCount());
 			}
 			
 		}
@@ -114,7 +124,9 @@ public class TestStatistics {
 	 */
 	@Test
 	public void testStatsReset() throws IllegalArgumentException, IllegalAccessException{
-		
+		this.stats.incrementCacheHits();
+		this.stats.addCumulativeConnectionWaitTime(1000000);
+		this.stats.addConnectionHoldTime(1000000);
 		this.stats.resetStats();
 		// test that the values start off at zero initially
 		checkValuesSetToZero(this.stats);
@@ -33,7 +33,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Enumeration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.RefAddr;
 import javax.naming.Reference;
@@ -44,6 +47,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import com.google.common.cache.LoadingCache;
+import com.jolbox.bonecp.hooks.AbstractConnectionHook;
 import com.jolbox.bonecp.hooks.CoverageHook;
 import com.jolbox.bonecp.hooks.CustomHook;
 
@@ -379,6 +383,488 @@ public class TestSystemTests {
 		}
 	}
 
+	/** Tests that with reuseConnectionHandle set, the same handle is recycled and stale references are harmless.
+	 * @throws SQLException */
+	@Test
+	public void testReuseConnectionHandle() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setReuseConnectionHandle(true);
+		BoneCP dsb = new BoneCP(config);
+		Connection conn = dsb.getConnection();
+		java.sql.Statement stmt = conn.createStatement();
+		conn.close();
+		assertEquals(1, dsb.getTotalFree());
+
+		Connection conn2 = dsb.getConnection();
+		assertTrue(conn == conn2);
+
+		// stale statement from the previous lease
+		try{
+			stmt.execute(CommonTestUtils.TEST_QUERY);
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		conn2.close();
+		conn.close(); // double close must not release the handle twice
+		assertEquals(1, dsb.getTotalFree());
+		assertEquals(0, dsb.getTotalLeased());
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that with reuseConnectionHandle set, two threads closing the same lease at once release it exactly once.
+	 * @throws Exception */
+	@Test
+	public void testReuseConnectionHandleConcurrentClose() throws Exception{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setReuseConnectionHandle(true);
+		final BoneCP dsb = new BoneCP(config);
+		for (int i=0; i < 500; i++){
+			final ConnectionHandle conn = (ConnectionHandle) dsb.getConnection();
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] closers = new Thread[2];
+			for (int j=0; j < closers.length; j++){
+				closers[j] = new Thread(){
+					@Override
+					public void run() {
+						try {
+							start.await();
+							conn.close();
+						} catch (Exception e) {
+							// ignore
+						}
+					}
+				};
+				closers[j].start();
+			}
+			start.countDown();
+			for (Thread closer : closers){
+				closer.join();
+			}
+			assertEquals(1, dsb.getTotalFree());
+			assertEquals(0, dsb.getTotalLeased());
+			assertEquals(0, conn.leaseGeneration.get() & 1);
+		}
+		
+		// a stale close that lost the race to the rightful owner's close must not release the next lease.
+		ConnectionHandle conn = (ConnectionHandle) dsb.getConnection();
+		int generation = conn.leaseGeneration.get();
+		conn.close();
+		ConnectionHandle conn2 = (ConnectionHandle) dsb.getConnection();
+		assertTrue(conn == conn2);
+		assertFalse(conn.leaseGeneration.compareAndSet(generation, generation + 1));
+		assertFalse(conn2.isClosed());
+		assertEquals(1, dsb.getTotalLeased());
+		conn2.close();
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that with reuseConnectionHandle set, a reference held on to after close() sees a closed connection while
+	 * the pool keeps using the handle.
+	 * @throws SQLException */
+	@Test
+	public void testReuseConnectionHandleStaleReference() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setReuseConnectionHandle(true);
+		config.setConnectionTestStatement(CommonTestUtils.TEST_QUERY);
+		BoneCP dsb = new BoneCP(config);
+		ConnectionHandle conn = (ConnectionHandle) dsb.getConnection();
+		assertFalse(conn.isClosed());
+		conn.close();
+		assertTrue(conn.isClosed());
+		try{
+			conn.commit();
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		try{
+			conn.rollback();
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		try{
+			conn.setAutoCommit(false);
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		try{
+			conn.prepareStatement(CommonTestUtils.TEST_QUERY);
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		try{
+			conn.createStatement();
+			fail("Should have thrown an exception");
+		} catch (SQLException e){
+			// expected
+		}
+		// the pool itself may still test it
+		assertTrue(dsb.isConnectionHandleAlive(conn));
+		assertTrue(conn.isClosed());
+		assertEquals(1, dsb.getTotalFree());
+
+		ConnectionHandle conn2 = (ConnectionHandle) dsb.getConnection();
+		assertTrue(conn == conn2);
+		assertFalse(conn2.isClosed());
+		conn2.createStatement().close();
+		conn2.close();
+		assertTrue(conn2.isClosed());
+		assertEquals(1, dsb.getTotalFree());
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that closing a connection twice with resetConnectionOnClose set leaves the connection alone the second
+	 * time round, even though the old handle no longer has a connection and the new one is in use elsewhere.
+	 * @throws SQLException */
+	@Test
+	public void testDoubleCloseWithResetConnectionOnClose() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setResetConnectionOnClose(true);
+		BoneCP dsb = new BoneCP(config);
+		Connection conn = dsb.getConnection();
+		conn.setAutoCommit(false);
+		conn.close();
+		Connection conn2 = dsb.getConnection();
+		conn2.setAutoCommit(false);
+		conn.close(); // must neither throw nor reset the connection now held through conn2
+		assertFalse(conn2.isClosed());
+		assertFalse(conn2.getAutoCommit());
+		assertEquals(1, dsb.getTotalLeased());
+		conn2.close();
+		assertEquals(1, dsb.getTotalFree());
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that the statement cache trimmer can take a free connection out of a LOCKFREE queue to trim it, with
+	 * and without idle connection tests in place.
+	 * @throws SQLException */
+	@Test
+	public void testStatementCacheTrimmerWithLockFreeQueue() throws SQLException{
+		config.setMinConnectionsPerPartition(2);
+		config.setMaxConnectionsPerPartition(2);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setFreeConnectionQueueType("LOCKFREE");
+		config.setStatementsCacheSize(10);
+		config.setStatementsCacheType("BOUNDED");
+		config.setStatementsCacheBudget(4);
+		for (boolean inPlace : new boolean[]{false, true}){
+			config.setIdleConnectionTestInPlace(inPlace);
+			BoneCP dsb = new BoneCP(config);
+			ConnectionHandle conn = (ConnectionHandle) dsb.getConnection();
+			for (int i=0; i < 3; i++){
+				conn.prepareStatement(CommonTestUtils.TEST_QUERY + " " + i).close();
+			}
+			conn.close();
+			ConnectionHandle handle = null;
+			for (ConnectionHandle free : dsb.partitions[0].getFreeConnections()){
+				if (free.getCachedStatementCount() == 3){
+					handle = free;
+				}
+			}
+			assertNotNull(handle);
+
+			assertEquals(2, new StatementCacheTrimmer(dsb, dsb.statementCacheBudget).trim(handle, 2));
+			assertEquals(1, handle.getCachedStatementCount());
+			assertEquals(2, dsb.getTotalFree());
+			dsb.shutdown();
+		}
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that statement cache hits are sampled into the hot statement set across checkouts, even though
+	 * every checkout hands out a new connection handle.
+	 * @throws SQLException */
+	@Test
+	public void testHotStatementSampling() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setStatementsCacheSize(10);
+		config.setStatementsCacheWarmUpSize(5);
+		BoneCP dsb = new BoneCP(config);
+		Connection conn = dsb.getConnection();
+		conn.prepareStatement(CommonTestUtils.TEST_QUERY).close(); // miss
+		conn.close();
+		for (int i=0; i < HotStatementSet.SAMPLE_RATE - 1; i++){
+			conn = dsb.getConnection();
+			conn.prepareStatement(CommonTestUtils.TEST_QUERY).close();
+			conn.close();
+		}
+		assertEquals(0, dsb.hotStatements.getTrackedCount());
+
+		conn = dsb.getConnection();
+		conn.prepareStatement(CommonTestUtils.TEST_QUERY).close();
+		conn.close();
+		assertEquals(1, dsb.hotStatements.getTrackedCount());
+		assertEquals(CommonTestUtils.TEST_QUERY, dsb.hotStatements.getHotStatements().get(0));
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that a cached statement handed out in a new handle keeps the fingerprint worked out for profiling.
+	 * @throws SQLException */
+	@Test
+	public void testProfilerFingerprintKeptAcrossHandles() throws SQLException{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setStatementsCacheSize(10);
+		config.setStatementProfilerSize(10);
+		config.setStatementProfilerSampleRate(1);
+		BoneCP dsb = new BoneCP(config);
+		Connection conn = dsb.getConnection();
+		PreparedStatementHandle first = (PreparedStatementHandle) conn.prepareStatement(CommonTestUtils.TEST_QUERY);
+		first.execute();
+		first.close();
+		assertNotNull(first.fingerprint);
+
+		PreparedStatementHandle second = (PreparedStatementHandle) conn.prepareStatement(CommonTestUtils.TEST_QUERY);
+		assertTrue(first != second);
+		assertTrue(first.fingerprint == second.fingerprint);
+		second.execute();
+		assertTrue(first.fingerprint == second.fingerprint);
+		second.close();
+		conn.close();
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that the leak detector captures the stack of one checkout in leakDetectionSampleRate per connection,
+	 * even though every checkout hands out a new connection handle.
+	 * @throws Exception */
+	@Test
+	public void testLeakDetectionSampling() throws Exception{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(1);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setLeakDetectionThresholdInMs(1);
+		config.setLeakDetectionSampleRate(4);
+		BoneCP dsb = new BoneCP(config);
+		int sampled = 0;
+		for (int i=0; i < 8; i++){
+			Connection conn = dsb.getConnection();
+			Thread.sleep(5);
+			String[] suspects = dsb.leakDetector.getSuspects();
+			assertEquals(1, suspects.length);
+			if (!suspects[0].contains("not sampled")){
+				sampled++;
+			}
+			conn.close();
+		}
+		assertEquals(2, sampled);
+		assertEquals(0, dsb.leakDetector.getLeaseCount());
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that the leak detector doesn't keep a connection the application dropped without closing it from
+	 * being garbage collected.
+	 * @throws Exception */
+	@Test
+	public void testLeakDetectionDoesNotHoldOnToConnections() throws Exception{
+		config.setMinConnectionsPerPartition(1);
+		config.setMaxConnectionsPerPartition(2);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setLeakDetectionThresholdInMs(1);
+		BoneCP dsb = new BoneCP(config);
+		Connection conn = dsb.getConnection();
+		java.lang.ref.WeakReference<Connection> ref = new java.lang.ref.WeakReference<Connection>(conn);
+		Thread.sleep(5);
+		assertEquals(1, dsb.leakDetector.getSuspects().length);
+		conn = null; // leaked
+		for (int i=0; i < 50 && ref.get() != null; i++){
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertNull(ref.get());
+		assertEquals(0, dsb.leakDetector.getSuspects().length);
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that with release helper threads, connections and statements are released in the background.
+	 * @throws SQLException
+	 * @throws InterruptedException */
+	@Test
+	public void testReleaseHelperThreads() throws SQLException, InterruptedException{
+		config.setMinConnectionsPerPartition(2);
+		config.setMaxConnectionsPerPartition(2);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setReleaseHelperThreads(1);
+		config.setStatementReleaseHelperThreads(1);
+		config.setResetConnectionOnClose(true);
+		BoneCP dsb = new BoneCP(config);
+		for (int i=0; i < 100; i++){
+			Connection conn = dsb.getConnection();
+			conn.createStatement().close();
+			conn.close();
+			try{
+				conn.createStatement();
+				fail("Should have thrown an exception");
+			} catch (SQLException e){
+				// expected
+			}
+		}
+		for (int i=0; i < 50 && dsb.getTotalFree() < 2; i++){
+			Thread.sleep(20);
+		}
+		assertEquals(2, dsb.getTotalFree());
+		assertEquals(0, dsb.getTotalLeased());
+
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests that the release helper threads carry on after a runtime exception, closing off the connection they
+	 * could not release.
+	 * @throws Exception */
+	@Test
+	public void testReleaseHelperThreadsSurviveRuntimeExceptions() throws Exception{
+		final AtomicInteger failures = new AtomicInteger(1);
+		config.setMinConnectionsPerPartition(2);
+		config.setMaxConnectionsPerPartition(2);
+		config.setAcquireIncrement(1);
+		config.setPartitionCount(1);
+		config.setReleaseHelperThreads(1);
+		config.setConnectionTimeoutInMs(5000); // fail rather than wait forever for connections nobody releases.
+		config.setConnectionHook(new AbstractConnectionHook() {
+			@Override
+			public void onCheckIn(ConnectionHandle connection) {
+				if (failures.getAndDecrement() > 0){
+					throw new IllegalStateException("hook failure");
+				}
+			}
+		});
+		BoneCP dsb = new BoneCP(config);
+		for (int i=0; i < 20; i++){
+			dsb.getConnection().close();
+		}
+		for (int i=0; i < 50 && (dsb.getTotalFree() < 2 || dsb.getTotalCreatedConnections() < 2); i++){
+			Thread.sleep(20);
+		}
+		assertEquals(2, dsb.getTotalFree());
+		assertEquals(2, dsb.getTotalCreatedConnections());
+		assertEquals(0, dsb.getTotalLeased());
+		dsb.shutdown();
+
+		LinkedBlockingQueue<java.sql.Statement> statements = new LinkedBlockingQueue<java.sql.Statement>();
+		java.sql.Statement failing = createNiceMock(java.sql.Statement.class);
+		failing.close();
+		expectLastCall().andThrow(new IllegalStateException("driver failure"));
+		java.sql.Statement next = createNiceMock(java.sql.Statement.class);
+		next.close();
+		expectLastCall().once();
+		replay(failing, next);
+		statements.add(failing);
+		statements.add(next);
+		Thread helper = new Thread(new StatementReleaseHelperThread(statements));
+		helper.start();
+		for (int i=0; i < 50 && !statements.isEmpty(); i++){
+			Thread.sleep(20);
+		}
+		helper.interrupt();
+		helper.join();
+		verify(failing, next);
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests opening connections in parallel, both at startup and when topping up in the background.
+	 * @throws SQLException
+	 * @throws InterruptedException */
+	@Test
+	public void testAcquireParallelism() throws SQLException, InterruptedException{
+		config.setMinConnectionsPerPartition(10);
+		config.setMaxConnectionsPerPartition(20);
+		config.setAcquireIncrement(5);
+		config.setPartitionCount(2);
+		config.setAcquireParallelism(4);
+		BoneCP dsb = new BoneCP(config);
+		assertEquals(20, dsb.getTotalCreatedConnections());
+		assertEquals(20, dsb.getTotalFree());
+		dsb.shutdown();
+
+		// only half of the connections up front, the rest in the background.
+		config.setWarmUpPercent(50);
+		dsb = new BoneCP(config);
+		assertTrue(dsb.getTotalCreatedConnections() >= 10);
+		for (int i=0; i < 50 && dsb.getTotalCreatedConnections() < 20; i++){
+			Thread.sleep(20);
+		}
+		assertEquals(20, dsb.getTotalCreatedConnections());
+		dsb.shutdown();
+		CommonTestUtils.logPass();
+	}
+
+	/** Tests pools running their housekeeping on the shared scheduler.
+	 * @throws SQLException
+	 * @throws InterruptedException */
+	@Test
+	public void testSharedScheduler() throws SQLException, InterruptedException{
+		config.setMinConnectionsPerPartition(2);
+		config.setMaxConnectionsPerPartition(10);
+		config.setAcquireIncrement(2);
+		config.setPartitionCount(1);
+		config.setSharedScheduler(true);
+		config.setCloseConnectionWatch(true);
+		int openLanes = SharedPoolScheduler.getOpenLanes();
+		BoneCP dsb = new BoneCP(config);
+		BoneCP dsb2 = new BoneCP(config);
+		assertEquals(openLanes + 2, SharedPoolScheduler.getOpenLanes());
+
+		// running dry must still make the pool grow.
+		Connection[] connections = new Connection[4];
+		for (int i=0; i < connections.length; i++){
+			connections[i] = dsb.getConnection();
+		}
+		for (int i=0; i < 50 && dsb.getTotalCreatedConnections() <= 4; i++){
+			Thread.sleep(20);
+		}
+		assertTrue(dsb.getTotalCreatedConnections() > 4);
+		assertEquals(2, dsb2.getTotalCreatedConnections());
+		for (Connection connection: connections){
+			connection.close();
+		}
+
+		dsb.shutdown();
+		dsb2.shutdown();
+		assertEquals(openLanes, SharedPoolScheduler.getOpenLanes());
+		CommonTestUtils.logPass();
+	}
+
 	/**
 	 * Tests general methods.
 	 * @throws CloneNotSupportedException 